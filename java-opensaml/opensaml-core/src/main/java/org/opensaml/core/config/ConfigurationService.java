@@ -15,11 +15,15 @@
  */
 package org.opensaml.core.config;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.ServiceLoader;
 
 import org.opensaml.core.config.provider.MapBasedConfiguration;
+import org.opensaml.core.config.provider.ThreadLocalConfigurationPropertiesHolder;
+import org.opensaml.core.config.provider.ThreadLocalConfigurationPropertiesSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +50,12 @@ import org.slf4j.LoggerFactory;
  * This may be useful where an application-specific means such as Spring is used to configure the environment.
  * This overrides the resolution process described above.
  * </p>
+ * 
+ * <p>
+ * The configuration meta-properties, and the partition name derived from them, are resolved once and cached. Only
+ * instances of {@link ThreadLocalConfigurationPropertiesSource} are consulted on each use, and then only once
+ * thread-local properties have been set. Changes to other properties sources take effect after {@link #reload()}.
+ * </p>
  */
 public class ConfigurationService {
     
@@ -60,7 +70,10 @@ public class ConfigurationService {
         ServiceLoader.load(ConfigurationPropertiesSource.class) ;
     
     /** The configuration instance to use. */
-    private static Configuration configuration;
+    private static volatile Configuration configuration;
+    
+    /** The resolved configuration meta-properties, or null if they are yet to be resolved. */
+    private static volatile PropertiesSnapshot propertiesSnapshot;
     
     /** Constructor. */
     protected ConfigurationService() { }
@@ -127,21 +140,24 @@ public class ConfigurationService {
      */
     public static Properties getConfigurationProperties() {
         //TODO make these immutable?
-        Logger log = getLogger();
-        log.trace("Resolving configuration propreties source");
-        Iterator<ConfigurationPropertiesSource> iter = configPropertiesLoader.iterator();
-        while (iter.hasNext()) {
-            ConfigurationPropertiesSource source = iter.next();
-            log.trace("Evaluating configuration properties implementation: {}", source.getClass().getName());
-            Properties props = source.getProperties();
-            if (props != null) {
-                log.trace("Resolved non-null configuration properties using implementation: {}", 
-                        source.getClass().getName());
-                return props;
-            }
+        PropertiesSnapshot snapshot = getPropertiesSnapshot();
+        Properties props = snapshot.getThreadLocalProperties();
+        if (props != null) {
+            return props;
+        }
+        return snapshot.getProperties();
+    }
+    
+    /**
+     * Discard the resolved configuration meta-properties, and the {@link ConfigurationPropertiesSource}
+     * implementations located via the Java Services API, so that both are resolved again on next use.
+     */
+    public static void reload() {
+        synchronized (ConfigurationService.class) {
+            getLogger().debug("Discarding resolved configuration properties");
+            configPropertiesLoader.reload();
+            propertiesSnapshot = null;
         }
-        log.trace("Unable to resolve non-null configuration properties from any ConfigurationPropertiesSource");
-        return null;
     }
     
     /**
@@ -171,16 +187,82 @@ public class ConfigurationService {
      * @return the partition name
      */
     protected static String getPartitionName() {
-        Logger log = getLogger();
-        Properties configProperties = getConfigurationProperties();
-        String partitionName = null;
+        PropertiesSnapshot snapshot = getPropertiesSnapshot();
+        Properties threadLocalProperties = snapshot.getThreadLocalProperties();
+        if (threadLocalProperties != null) {
+            return resolvePartitionName(threadLocalProperties);
+        }
+        return snapshot.getPartitionName();
+    }
+    
+    /**
+     * Resolve the partition name given by a set of configuration meta-properties.
+     * 
+     * @param configProperties the configuration meta-properties, may be null
+     * 
+     * @return the partition name
+     */
+    private static String resolvePartitionName(Properties configProperties) {
         if (configProperties != null) {
-            partitionName = configProperties.getProperty(PROPERTY_PARTITION_NAME, DEFAULT_PARTITION_NAME);
+            return configProperties.getProperty(PROPERTY_PARTITION_NAME, DEFAULT_PARTITION_NAME);
         } else {
-            partitionName = DEFAULT_PARTITION_NAME;
+            return DEFAULT_PARTITION_NAME;
         }
-        log.trace("Resolved effective configuration partition name '{}'", partitionName);
-        return partitionName;
+    }
+    
+    /**
+     * Get the resolved configuration meta-properties, resolving them if necessary.
+     * 
+     * @return the resolved configuration meta-properties
+     */
+    private static PropertiesSnapshot getPropertiesSnapshot() {
+        PropertiesSnapshot snapshot = propertiesSnapshot;
+        if (snapshot == null) {
+            synchronized (ConfigurationService.class) {
+                snapshot = propertiesSnapshot;
+                if (snapshot == null) {
+                    snapshot = resolvePropertiesSnapshot();
+                    propertiesSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Resolve the configuration meta-properties from the first registered {@link ConfigurationPropertiesSource}
+     * which returns a non-null properties set, noting any thread-local sources which precede it.
+     * 
+     * @return the resolved configuration meta-properties
+     */
+    private static PropertiesSnapshot resolvePropertiesSnapshot() {
+        Logger log = getLogger();
+        log.trace("Resolving configuration propreties source");
+        List<ThreadLocalConfigurationPropertiesSource> threadLocalSources = 
+            new ArrayList<ThreadLocalConfigurationPropertiesSource>();
+        Properties props = null;
+        Iterator<ConfigurationPropertiesSource> iter = configPropertiesLoader.iterator();
+        while (iter.hasNext()) {
+            ConfigurationPropertiesSource source = iter.next();
+            log.trace("Evaluating configuration properties implementation: {}", source.getClass().getName());
+            if (source instanceof ThreadLocalConfigurationPropertiesSource) {
+                threadLocalSources.add((ThreadLocalConfigurationPropertiesSource) source);
+                continue;
+            }
+            props = source.getProperties();
+            if (props != null) {
+                log.trace("Resolved non-null configuration properties using implementation: {}", 
+                        source.getClass().getName());
+                break;
+            }
+        }
+        if (props == null) {
+            log.trace("Unable to resolve non-null configuration properties from any ConfigurationPropertiesSource");
+        }
+        
+        PropertiesSnapshot snapshot = new PropertiesSnapshot(threadLocalSources, props, resolvePartitionName(props));
+        log.trace("Resolved effective configuration partition name '{}'", snapshot.getPartitionName());
+        return snapshot;
     }
 
     /**
@@ -195,19 +277,24 @@ public class ConfigurationService {
      * @return the Configuration implementation instance 
      */
     protected static Configuration getConfiguration() {
-        if (configuration == null) {
+        Configuration currentConfiguration = configuration;
+        if (currentConfiguration == null) {
             synchronized (ConfigurationService.class) {
-                ServiceLoader<Configuration> loader = ServiceLoader.load(Configuration.class);
-                Iterator<Configuration> iter = loader.iterator();
-                if (iter.hasNext()) {
-                    configuration = iter.next();
-                } else {
-                    // Default impl
-                    configuration = new MapBasedConfiguration();
+                currentConfiguration = configuration;
+                if (currentConfiguration == null) {
+                    ServiceLoader<Configuration> loader = ServiceLoader.load(Configuration.class);
+                    Iterator<Configuration> iter = loader.iterator();
+                    if (iter.hasNext()) {
+                        currentConfiguration = iter.next();
+                    } else {
+                        // Default impl
+                        currentConfiguration = new MapBasedConfiguration();
+                    }
+                    configuration = currentConfiguration;
                 }
             }
         }
-        return configuration;
+        return currentConfiguration;
     }
     
     /**
@@ -219,4 +306,70 @@ public class ConfigurationService {
         return LoggerFactory.getLogger(ConfigurationService.class);
     }
     
+    /** 
+     * Immutable snapshot of the resolved configuration meta-properties. 
+     */
+    private static final class PropertiesSnapshot {
+        
+        /** Thread-local properties sources which take precedence over the resolved properties. */
+        private final ThreadLocalConfigurationPropertiesSource[] threadLocalSources;
+        
+        /** The resolved properties, or null. */
+        private final Properties properties;
+        
+        /** The partition name given by the resolved properties. */
+        private final String partitionName;
+        
+        /**
+         * Constructor.
+         *
+         * @param sources thread-local properties sources which take precedence over the resolved properties
+         * @param props the resolved properties, may be null
+         * @param partition the partition name given by the resolved properties
+         */
+        private PropertiesSnapshot(List<ThreadLocalConfigurationPropertiesSource> sources, Properties props, 
+                String partition) {
+            threadLocalSources = sources.toArray(new ThreadLocalConfigurationPropertiesSource[sources.size()]);
+            properties = props;
+            partitionName = partition;
+        }
+        
+        /**
+         * Get the thread-local properties which take precedence over the resolved properties, if any are set.
+         * 
+         * @return the thread-local properties, or null
+         */
+        private Properties getThreadLocalProperties() {
+            if (threadLocalSources.length == 0 || !ThreadLocalConfigurationPropertiesHolder.isInUse()) {
+                return null;
+            }
+            Properties props;
+            for (ThreadLocalConfigurationPropertiesSource source : threadLocalSources) {
+                props = source.getProperties();
+                if (props != null) {
+                    return props;
+                }
+            }
+            return null;
+        }
+        
+        /**
+         * Get the resolved properties.
+         * 
+         * @return the resolved properties, or null
+         */
+        private Properties getProperties() {
+            return properties;
+        }
+        
+        /**
+         * Get the partition name given by the resolved properties.
+         * 
+         * @return the partition name
+         */
+        private String getPartitionName() {
+            return partitionName;
+        }
+    }
+    
 }
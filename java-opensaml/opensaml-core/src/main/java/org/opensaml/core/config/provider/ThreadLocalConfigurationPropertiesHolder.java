@@ -25,6 +25,9 @@ public final class ThreadLocalConfigurationPropertiesHolder {
     /** ThreadLocal storage for the properties set. */
     private static ThreadLocal<Properties> properties = new ThreadLocal<Properties>();
     
+    /** Whether properties have been set on any thread. */
+    private static volatile boolean inUse;
+    
     /** Constructor. */
     private ThreadLocalConfigurationPropertiesHolder() {}
     
@@ -43,9 +46,22 @@ public final class ThreadLocalConfigurationPropertiesHolder {
      * @param newProperties the new thread-local Properties instance
      */
     public static void setProperties(final Properties newProperties) {
+        if (newProperties != null) {
+            inUse = true;
+        }
         properties.set(newProperties);
     }
     
+    /**
+     * Get whether thread-local configuration Properties have been set on any thread. While they have not,
+     * consumers may skip consulting the thread-local storage.
+     * 
+     * @return true if thread-local configuration Properties have ever been set
+     */
+    public static boolean isInUse() {
+        return inUse;
+    }
+    
     /**
      *  Clear the thread-local configuration Properties instance.
      */
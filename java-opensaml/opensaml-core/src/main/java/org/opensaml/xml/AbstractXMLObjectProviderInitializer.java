@@ -17,6 +17,7 @@
 package org.opensaml.xml;
 
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.Initializer;
@@ -25,6 +26,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Reads in an XML configuration and configures the XMLTooling library accordingly.
+ * 
+ * <p>
+ * If the module provides an {@link XMLObjectProviderRegistration} generated at build time from the same configuration
+ * resources, see {@link #getGeneratedRegistrationClassName()}, it is used instead, avoiding parsing and validating the
+ * resources and reflectively instantiating the providers they configure.
+ * </p>
  */
 public abstract class AbstractXMLObjectProviderInitializer implements Initializer {
 
@@ -33,6 +40,14 @@ public abstract class AbstractXMLObjectProviderInitializer implements Initialize
     
     /** {@inheritDoc} */
     public void init() throws InitializationException {
+        XMLObjectProviderRegistration registration = getGeneratedRegistration();
+        if (registration != null) {
+            log.debug("Registering XMLObject providers using generated registration {}",
+                    registration.getClass().getName());
+            registration.register(XMLConfigurator.getOrCreateRegistry());
+            return;
+        }
+
         try {
             XMLConfigurator configurator = new XMLConfigurator();
             for (String resource : getConfigResources()) {
@@ -60,4 +75,50 @@ public abstract class AbstractXMLObjectProviderInitializer implements Initialize
      */
     protected abstract String[] getConfigResources();
 
+    /**
+     * Obtain the name of the {@link XMLObjectProviderRegistration} generated at build time from the configuration
+     * resources, by {@link XMLObjectProviderRegistrationGenerator}.
+     * 
+     * <p>
+     * The default implementation returns null, indicating that the configuration resources are always loaded.
+     * </p>
+     * 
+     * @return the name of the generated registration class, or null
+     */
+    protected String getGeneratedRegistrationClassName() {
+        return null;
+    }
+
+    /**
+     * Gets the generated registration, if it is available and was generated from the configuration resources which
+     * should be loaded.
+     * 
+     * @return the generated registration, or null if the configuration resources should be loaded
+     */
+    private XMLObjectProviderRegistration getGeneratedRegistration() {
+        String className = getGeneratedRegistrationClassName();
+        if (className == null) {
+            return null;
+        }
+
+        XMLObjectProviderRegistration registration;
+        try {
+            Class<?> clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
+            registration = (XMLObjectProviderRegistration) clazz.newInstance();
+        } catch (ClassNotFoundException e) {
+            log.debug("Generated registration {} not available, loading configuration resources", className);
+            return null;
+        } catch (Exception e) {
+            log.warn("Unable to create generated registration " + className + ", loading configuration resources", e);
+            return null;
+        }
+
+        if (!Arrays.equals(registration.getConfigResources(), getConfigResources())) {
+            log.warn("Generated registration {} does not match the configuration resources, loading resources",
+                    className);
+            return null;
+        }
+        return registration;
+    }
+
 }
\ No newline at end of file
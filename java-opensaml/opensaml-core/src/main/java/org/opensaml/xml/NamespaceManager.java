@@ -233,6 +233,30 @@ public class NamespaceManager {
         contentValue = null;
     }
     
+    /**
+     * Registers with this manager copies of all the namespaces declared and used by another manager, as when this
+     * manager's owner is a copy of the other manager's owner.
+     * 
+     * @param source the manager whose namespaces will be registered
+     */
+    public void registerNamespaces(NamespaceManager source) {
+        for (Namespace namespace : source.decls) {
+            addNamespace(decls, copyNamespaceDeclaration(namespace));
+        }
+        for (Namespace namespace : source.usage) {
+            addNamespace(usage, copyNamespaceDeclaration(namespace));
+        }
+        for (Namespace namespace : source.attrNames) {
+            addNamespace(attrNames, copyNamespaceDeclaration(namespace));
+        }
+        for (Map.Entry<String, Namespace> attrValue : source.attrValues.entrySet()) {
+            attrValues.put(attrValue.getKey(), copyNamespaceDeclaration(attrValue.getValue()));
+        }
+        if (source.contentValue != null) {
+            contentValue = copyNamespaceDeclaration(source.contentValue);
+        }
+    }
+    
     /**
      * Obtain the set of namespace prefixes used in a non-visible manner on owning XMLObject
      * and its children.
@@ -563,6 +587,18 @@ public class NamespaceManager {
         }
     }
     
+    /**
+     * Copy a Namespace, preserving whether it must always be declared.
+     * 
+     * @param orig the namespace instance to copy
+     * @return a copy of the specified Namespace instance
+     */
+    private Namespace copyNamespaceDeclaration(Namespace orig) {
+        Namespace copy = new Namespace(orig.getNamespaceURI(), orig.getNamespacePrefix());
+        copy.setAlwaysDeclare(orig.alwaysDeclare());
+        return copy;
+    }
+    
     /**
      * Add the prefixes from a collection of namespaces to a set of prefixes. The 
      * value used to represent the default namespace will be normalized to {@link NamespaceManager#DEFAULT_NS_TOKEN}.
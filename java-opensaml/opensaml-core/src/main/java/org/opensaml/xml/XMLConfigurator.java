@@ -102,13 +102,25 @@ public class XMLConfigurator {
             throw new ConfigurationException("Unable to read XMLTooling configuration schema", e);
         }
         
+        registry = getOrCreateRegistry();
+    }
+
+    /**
+     * Gets the XMLObject provider registry from the {@link ConfigurationService}, creating and registering it if it
+     * does not yet exist.
+     * 
+     * @return the registry instance
+     */
+    static XMLObjectProviderRegistry getOrCreateRegistry() {
         synchronized(ConfigurationService.class) {
-            registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+            XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
             if (registry == null) {
-                log.debug("XMLObjectProviderRegistry did not exist in ConfigurationService, will be created");
+                LoggerFactory.getLogger(XMLConfigurator.class).debug(
+                        "XMLObjectProviderRegistry did not exist in ConfigurationService, will be created");
                 registry = new XMLObjectProviderRegistry();
                 ConfigurationService.register(XMLObjectProviderRegistry.class, registry);
             }
+            return registry;
         }
     }
 
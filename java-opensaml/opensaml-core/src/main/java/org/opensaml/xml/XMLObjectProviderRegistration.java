@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml;
+
+/**
+ * Registers XMLObject providers, validator suites and ID attributes with an {@link XMLObjectProviderRegistry}.
+ * 
+ * <p>
+ * Implementations are generated at build time by {@link XMLObjectProviderRegistrationGenerator} from XMLObject provider
+ * configuration resources, so that the providers configured by those resources can be registered without parsing and
+ * validating the resources, or reflectively instantiating the providers, at runtime.
+ * </p>
+ */
+public interface XMLObjectProviderRegistration {
+
+    /**
+     * Gets the configuration resources, in the order in which they are registered, from which this registration was
+     * generated.
+     * 
+     * @return configuration resources from which this registration was generated
+     */
+    public String[] getConfigResources();
+
+    /**
+     * Registers the XMLObject providers, validator suites and ID attributes configured by the configuration resources.
+     * 
+     * @param registry the registry with which to register
+     */
+    public void register(XMLObjectProviderRegistry registry);
+
+}
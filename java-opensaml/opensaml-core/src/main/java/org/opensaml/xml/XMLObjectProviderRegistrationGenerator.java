@@ -0,0 +1,348 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLConstants;
+import org.opensaml.xml.util.XMLHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Generates the Java source of an {@link XMLObjectProviderRegistration} from XMLObject provider configuration
+ * resources.
+ * 
+ * <p>
+ * Each resource is parsed and schema validated exactly as by {@link XMLConfigurator}, but rather than the configured
+ * providers being instantiated and registered, code which instantiates and registers them is generated. The generator
+ * is run during the build of each module which provides configuration resources, see
+ * {@link AbstractXMLObjectProviderInitializer#getGeneratedRegistrationClassName()}, and is invoked as:
+ * </p>
+ * 
+ * <pre>
+ * XMLObjectProviderRegistrationGenerator resourceDirectory outputDirectory className resource...
+ * </pre>
+ * 
+ * <p>
+ * where the resources are named as returned by {@link AbstractXMLObjectProviderInitializer#getConfigResources()} and
+ * are found relative to the resource directory.
+ * </p>
+ */
+public class XMLObjectProviderRegistrationGenerator extends XMLConfigurator {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(XMLObjectProviderRegistrationGenerator.class);
+
+    /** Generated registration statements of the resource currently being loaded. */
+    private StringBuilder statements;
+
+    /** Whether a validator suite variable has been declared for the resource currently being loaded. */
+    private boolean validatorSuiteDeclared;
+
+    /**
+     * Constructor.
+     * 
+     * @throws ConfigurationException thrown if the validation schema for configuration files can not be created
+     */
+    public XMLObjectProviderRegistrationGenerator() throws ConfigurationException {
+        super();
+    }
+
+    /**
+     * Generates the Java source of a registration.
+     * 
+     * @param args the resource directory, the output directory, the fully qualified name of the generated class and
+     *            the configuration resources
+     * 
+     * @throws Exception thrown if the source can not be generated
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("Usage: XMLObjectProviderRegistrationGenerator resourceDirectory "
+                    + "outputDirectory className resource...");
+        }
+
+        String[] resources = new String[args.length - 3];
+        System.arraycopy(args, 3, resources, 0, resources.length);
+        new XMLObjectProviderRegistrationGenerator().generate(new File(args[0]), new File(args[1]), args[2],
+                resources);
+    }
+
+    /**
+     * Generates the Java source of a registration, writing it beneath the given output directory.
+     * 
+     * @param resourceDirectory directory relative to which the configuration resources are found
+     * @param outputDirectory directory beneath which the source, in its package directory, is written
+     * @param className fully qualified name of the generated class
+     * @param resources the configuration resources, in the order in which they are to be registered
+     * 
+     * @throws ConfigurationException thrown if a configuration resource can not be read or is invalid
+     * @throws IOException thrown if the source can not be written
+     */
+    public void generate(File resourceDirectory, File outputDirectory, String className, String[] resources)
+            throws ConfigurationException, IOException {
+        int packageEnd = className.lastIndexOf('.');
+        String packageName = packageEnd > 0 ? className.substring(0, packageEnd) : null;
+        String simpleName = className.substring(packageEnd + 1);
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(XMLObjectProviderRegistrationGenerator.class.getName())
+                .append(", do not edit.\n");
+        if (packageName != null) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import javax.xml.namespace.QName;\n\n");
+        source.append("import org.opensaml.xml.XMLObjectProviderRegistration;\n");
+        source.append("import org.opensaml.xml.XMLObjectProviderRegistry;\n");
+        source.append("import org.opensaml.xml.validation.ValidatorSuite;\n\n");
+        source.append("/** XMLObject provider registration generated from configuration resources. */\n");
+        source.append("public class ").append(simpleName).append(" implements XMLObjectProviderRegistration {\n\n");
+
+        source.append("    /** Configuration resources from which this registration was generated. */\n");
+        source.append("    private static final String[] CONFIG_RESOURCES = {\n");
+        for (String resource : resources) {
+            source.append("        ").append(literal(resource)).append(",\n");
+        }
+        source.append("    };\n\n");
+
+        source.append("    /** {@inheritDoc} */\n");
+        source.append("    public String[] getConfigResources() {\n");
+        source.append("        return CONFIG_RESOURCES.clone();\n");
+        source.append("    }\n\n");
+
+        source.append("    /** {@inheritDoc} */\n");
+        source.append("    public void register(XMLObjectProviderRegistry registry) {\n");
+        for (int i = 0; i < resources.length; i++) {
+            source.append("        register").append(i).append("(registry);\n");
+        }
+        source.append("    }\n");
+
+        for (int i = 0; i < resources.length; i++) {
+            statements = new StringBuilder();
+            validatorSuiteDeclared = false;
+            loadResource(resourceDirectory, resources[i]);
+
+            source.append("\n    /**\n");
+            source.append("     * Registers the configuration of ").append(resources[i]).append(".\n");
+            source.append("     *\n");
+            source.append("     * @param registry the registry with which to register\n");
+            source.append("     */\n");
+            source.append("    private void register").append(i).append("(XMLObjectProviderRegistry registry) {\n");
+            source.append(statements);
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        statements = null;
+
+        File packageDirectory = outputDirectory;
+        if (packageName != null) {
+            packageDirectory = new File(outputDirectory, packageName.replace('.', File.separatorChar));
+        }
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + packageDirectory);
+        }
+        File sourceFile = new File(packageDirectory, simpleName + ".java");
+        log.debug("Writing XMLObject provider registration to {}", sourceFile);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected void initializeObjectProviders(Element objectProviders) throws ConfigurationException {
+        Element objectProvider;
+        QName objectProviderName;
+
+        NodeList providerList = objectProviders.getElementsByTagNameNS(XMLConstants.XMLTOOLING_CONFIG_NS,
+                "ObjectProvider");
+        for (int i = 0; i < providerList.getLength(); i++) {
+            objectProvider = (Element) providerList.item(i);
+            objectProviderName = XMLHelper.getAttributeValueAsQName(objectProvider.getAttributeNodeNS(null,
+                    "qualifiedName"));
+            log.debug("Generating registration of object provider {}", objectProviderName);
+
+            statements.append("        registry.registerObjectProvider(").append(qName(objectProviderName))
+                    .append(",\n                ")
+                    .append(instance(getClassElement(objectProvider, "BuilderClass"))).append(",\n                ")
+                    .append(instance(getClassElement(objectProvider, "MarshallingClass"))).append(",\n                ")
+                    .append(instance(getClassElement(objectProvider, "UnmarshallingClass"))).append(");\n");
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected void initializeValidatorSuites(Element validatorSuitesElement) throws ConfigurationException {
+        Element validatorSuiteElement;
+        String validatorSuiteId;
+        Element validatorElement;
+
+        if (!validatorSuiteDeclared) {
+            statements.append("        ValidatorSuite validatorSuite;\n");
+            validatorSuiteDeclared = true;
+        }
+
+        NodeList validatorSuiteList = validatorSuitesElement.getElementsByTagNameNS(XMLConstants.XMLTOOLING_CONFIG_NS,
+                "ValidatorSuite");
+        for (int i = 0; i < validatorSuiteList.getLength(); i++) {
+            validatorSuiteElement = (Element) validatorSuiteList.item(i);
+            validatorSuiteId = validatorSuiteElement.getAttributeNS(null, "id");
+            log.debug("Generating registration of ValidatorSuite {}", validatorSuiteId);
+
+            statements.append("        validatorSuite = new ValidatorSuite(").append(literal(validatorSuiteId))
+                    .append(");\n");
+            NodeList validatorList = validatorSuiteElement.getElementsByTagNameNS(XMLConstants.XMLTOOLING_CONFIG_NS,
+                    "Validator");
+            for (int j = 0; j < validatorList.getLength(); j++) {
+                validatorElement = (Element) validatorList.item(j);
+                statements.append("        validatorSuite.registerValidator(")
+                        .append(qName(XMLHelper.getAttributeValueAsQName(validatorElement.getAttributeNodeNS(null,
+                                "qualifiedName")))).append(",\n                ")
+                        .append(instance(validatorElement)).append(");\n");
+            }
+            statements.append("        registry.registerValidatorSuite(").append(literal(validatorSuiteId))
+                    .append(", validatorSuite);\n");
+        }
+    }
+
+    /** {@inheritDoc} */
+    protected void initializeIDAttributes(Element idAttributesElement) throws ConfigurationException {
+        QName attributeQName;
+
+        NodeList idAttributeList = idAttributesElement.getElementsByTagNameNS(XMLConstants.XMLTOOLING_CONFIG_NS,
+                "IDAttribute");
+        for (int i = 0; i < idAttributeList.getLength(); i++) {
+            attributeQName = XMLHelper.getElementContentAsQName((Element) idAttributeList.item(i));
+            if (attributeQName != null) {
+                log.debug("Generating registration of IDAttribute {}", attributeQName);
+                statements.append("        registry.registerIDAttribute(").append(qName(attributeQName))
+                        .append(");\n");
+            }
+        }
+    }
+
+    /**
+     * Loads a configuration resource, generating the statements which register its configuration.
+     * 
+     * @param resourceDirectory directory relative to which the resource is found
+     * @param resource the resource
+     * 
+     * @throws ConfigurationException thrown if the resource can not be read or is invalid
+     */
+    private void loadResource(File resourceDirectory, String resource) throws ConfigurationException {
+        String resourcePath = resource.startsWith("/") ? resource.substring(1) : resource;
+        File resourceFile = new File(resourceDirectory, resourcePath);
+        log.debug("Generating registration of configuration resource '{}' from {}", resource, resourceFile);
+
+        InputStream is;
+        try {
+            is = new FileInputStream(resourceFile);
+        } catch (FileNotFoundException e) {
+            throw new ConfigurationException("Unable to read configuration resource " + resourceFile, e);
+        }
+        try {
+            load(is);
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                log.debug("Unable to close configuration resource " + resourceFile, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the class configuration element of the given type within an object provider.
+     * 
+     * @param objectProvider the object provider configuration element
+     * @param elementName local name of the class configuration element
+     * 
+     * @return the class configuration element, or null
+     */
+    private Element getClassElement(Element objectProvider, String elementName) {
+        return (Element) objectProvider.getElementsByTagNameNS(XMLConstants.XMLTOOLING_CONFIG_NS, elementName).item(0);
+    }
+
+    /**
+     * Generates an expression which constructs an instance of the class named by a configuration element, as
+     * {@link XMLConfigurator#createClassInstance(Element)} would.
+     * 
+     * @param configuration the configuration element
+     * 
+     * @return the expression
+     */
+    private String instance(Element configuration) {
+        String className = null;
+        if (configuration != null) {
+            className = DatatypeHelper.safeTrimOrNullString(configuration.getAttributeNS(null, "className"));
+        }
+        if (className == null) {
+            return "null";
+        }
+        return "new " + className.replace('$', '.') + "()";
+    }
+
+    /**
+     * Generates an expression which constructs the given QName.
+     * 
+     * @param name the QName
+     * 
+     * @return the expression
+     */
+    private String qName(QName name) {
+        return "new QName(" + literal(name.getNamespaceURI()) + ", " + literal(name.getLocalPart()) + ", "
+                + literal(name.getPrefix()) + ")";
+    }
+
+    /**
+     * Generates a string literal.
+     * 
+     * @param value the value of the literal
+     * 
+     * @return the literal
+     */
+    private String literal(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2);
+        literal.append('"');
+        char c;
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < ' ' || c > '~') {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -30,6 +30,7 @@ import org.opensaml.xml.io.Unmarshaller;
 import org.opensaml.xml.io.UnmarshallerFactory;
 import org.opensaml.xml.parse.ParserPool;
 import org.opensaml.xml.util.XMLConstants;
+import org.opensaml.xml.util.XMLNameTable;
 import org.opensaml.xml.validation.ValidatorSuite;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -119,7 +120,8 @@ public class XMLObjectProviderRegistry {
     }
 
     /**
-     * Adds an object provider to this configuration.
+     * Adds an object provider to this configuration. The name of the provider is registered with the
+     * {@link XMLNameTable}, so that it is interned when unmarshalling.
      * 
      * @param providerName the name of the object provider, corresponding to the element name or type name that the
      *            builder, marshaller, and unmarshaller operate on
@@ -130,6 +132,7 @@ public class XMLObjectProviderRegistry {
     public void registerObjectProvider(QName providerName, XMLObjectBuilder builder, Marshaller marshaller,
             Unmarshaller unmarshaller) {
         log.debug("Registering new builder, marshaller, and unmarshaller for {}", providerName);
+        XMLNameTable.register(providerName);
         builderFactory.registerBuilder(providerName, builder);
         marshallerFactory.registerMarshaller(providerName, marshaller);
         unmarshallerFactory.registerUnmarshaller(providerName, unmarshaller);
@@ -208,12 +211,14 @@ public class XMLObjectProviderRegistry {
     }
 
     /**
-     * Register an attribute as having a type of ID.
+     * Register an attribute as having a type of ID. The name of the attribute is registered with the
+     * {@link XMLNameTable}, so that it is interned when unmarshalling.
      * 
      * @param attributeName the QName of the ID attribute to be registered
      */
     public void registerIDAttribute(QName attributeName) {
         if (!idAttributeNames.contains(attributeName)) {
+            XMLNameTable.register(attributeName);
             idAttributeNames.add(attributeName);
         }
     }
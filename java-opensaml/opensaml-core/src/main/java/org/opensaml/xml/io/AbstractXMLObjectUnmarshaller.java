@@ -27,6 +27,7 @@ import org.opensaml.xml.schema.XSBooleanValue;
 import org.opensaml.xml.util.DatatypeHelper;
 import org.opensaml.xml.util.XMLConstants;
 import org.opensaml.xml.util.XMLHelper;
+import org.opensaml.xml.util.XMLNameTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Attr;
@@ -251,9 +252,10 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
                 .getNodeQName(attribute));
         Namespace namespace;
         if(DatatypeHelper.safeEquals(attribute.getLocalName(), XMLConstants.XMLNS_PREFIX)){
-            namespace = new Namespace(attribute.getValue(), null);
+            namespace = new Namespace(XMLNameTable.getString(attribute.getValue()), null);
         }else{
-            namespace = new Namespace(attribute.getValue(), attribute.getLocalName());
+            namespace = new Namespace(XMLNameTable.getString(attribute.getValue()), XMLNameTable.getString(attribute
+                    .getLocalName()));
         }
         namespace.setAlwaysDeclare(true);
         xmlObject.getNamespaceManager().registerNamespaceDeclaration(namespace);
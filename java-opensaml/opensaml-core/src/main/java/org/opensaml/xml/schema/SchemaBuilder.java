@@ -20,6 +20,8 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
@@ -32,7 +34,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
-/** A helper class for building {@link Schema} from a set of input. */
+/**
+ * A helper class for building {@link Schema} from a set of input.
+ * 
+ * Schemas built from files are cached, keyed by the schema language and the path, size and modification time of each
+ * schema file, so that components configured with the same schema files share a single compiled schema.
+ */
 public final class SchemaBuilder {
 
     /** Language of the schema files. */
@@ -65,6 +72,9 @@ public final class SchemaBuilder {
             return schemaFileExtension;
         }
     };
+
+    /** Schemas built from schema files, keyed by the schema language and the state of the files. */
+    private static final ConcurrentMap<String, Schema> SCHEMA_CACHE = new ConcurrentHashMap<String, Schema>();
     
     /** Constructor. */
     private SchemaBuilder() {}
@@ -102,7 +112,13 @@ public final class SchemaBuilder {
             return null;
         }
         
-        return buildSchema(lang, schemaFilesOrDirectories);
+        File[] schemaFiles = new File[schemaFilesOrDirectories.length];
+        for (int i = 0; i < schemaFilesOrDirectories.length; i++) {
+            if (schemaFilesOrDirectories[i] != null) {
+                schemaFiles[i] = new File(schemaFilesOrDirectories[i]);
+            }
+        }
+        return buildSchema(lang, schemaFiles);
     }
 
     /**
@@ -145,11 +161,32 @@ public final class SchemaBuilder {
             return null;
         }
         
+        StringBuilder cacheKey = new StringBuilder(lang.name());
+        for (File schemaFile : schemaFiles) {
+            cacheKey.append('|').append(schemaFile.getAbsolutePath()).append(':').append(schemaFile.length())
+                    .append(':').append(schemaFile.lastModified());
+        }
+
+        Schema schema = SCHEMA_CACHE.get(cacheKey.toString());
+        if (schema != null) {
+            getLogger().debug("Using cached schema built from {} schema files", schemaFiles.size());
+            return schema;
+        }
+
         ArrayList<Source> schemaSources = new ArrayList<Source>();
         for(File schemaFile : schemaFiles){
             schemaSources.add(new StreamSource(schemaFile));
         }
-        return buildSchema(lang, schemaSources.toArray(new Source[]{}));
+        schema = buildSchema(lang, schemaSources.toArray(new Source[]{}));
+        SCHEMA_CACHE.put(cacheKey.toString(), schema);
+        return schema;
+    }
+
+    /**
+     * Discards all cached schemas. Schemas built after this call are compiled from their schema files.
+     */
+    public static void clearSchemaCache() {
+        SCHEMA_CACHE.clear();
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.schema;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.transform.Source;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.xml.sax.SAXException;
+
+/**
+ * A bounded pool of {@link Validator}s created from a single {@link Schema}.
+ *
+ * <p>
+ * A {@link Schema} is thread-safe and may be shared but the {@link Validator}s it creates are not, so each validation
+ * must be performed with a validator confined to the validating thread. Pooling the validators allows concurrent
+ * validations without paying for the creation of a new validator each time. Validators are reset when returned to the
+ * pool; validators returned when the pool is full are discarded.
+ * </p>
+ */
+@ThreadSafe
+public class ValidatorPool {
+
+    /** Default maximum number of idle validators held by the pool: {@value} . */
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    /** Schema from which the pooled validators are created. */
+    private final Schema schema;
+
+    /** Idle validators available to be borrowed. */
+    private final BlockingQueue<Validator> idleValidators;
+
+    /**
+     * Constructor. Holds at most {@link #DEFAULT_MAX_IDLE} idle validators.
+     *
+     * @param validatorSchema schema from which the pooled validators are created, may not be null
+     */
+    public ValidatorPool(Schema validatorSchema) {
+        this(validatorSchema, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param validatorSchema schema from which the pooled validators are created, may not be null
+     * @param maxIdle maximum number of idle validators held by the pool
+     */
+    public ValidatorPool(Schema validatorSchema, int maxIdle) {
+        if (validatorSchema == null) {
+            throw new IllegalArgumentException("Schema may not be null");
+        }
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("Maximum number of idle validators must be greater than 0");
+        }
+        schema = validatorSchema;
+        idleValidators = new ArrayBlockingQueue<Validator>(maxIdle);
+    }
+
+    /**
+     * Gets the schema from which the pooled validators are created.
+     *
+     * @return schema from which the pooled validators are created
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Borrow a validator from the pool, creating a new one if none is idle.
+     *
+     * @return a validator for the pool's schema
+     */
+    public Validator borrowValidator() {
+        Validator validator = idleValidators.poll();
+        if (validator == null) {
+            return schema.newValidator();
+        }
+        return validator;
+    }
+
+    /**
+     * Return a validator, previously borrowed from this pool, to the pool.
+     *
+     * @param validator the validator to return, may be null
+     */
+    public void returnValidator(Validator validator) {
+        if (validator == null) {
+            return;
+        }
+        validator.reset();
+        idleValidators.offer(validator);
+    }
+
+    /**
+     * Validates the given source with a validator borrowed from this pool.
+     *
+     * @param source the source to validate
+     *
+     * @throws SAXException thrown if the source is not valid
+     * @throws IOException thrown if the source can not be read
+     */
+    public void validate(Source source) throws SAXException, IOException {
+        Validator validator = borrowValidator();
+        try {
+            validator.validate(source);
+        } finally {
+            returnValidator(validator);
+        }
+    }
+
+    /**
+     * Get the number of idle validators currently held by the pool.
+     *
+     * @return number of idle validators
+     */
+    public int getIdleCount() {
+        return idleValidators.size();
+    }
+}
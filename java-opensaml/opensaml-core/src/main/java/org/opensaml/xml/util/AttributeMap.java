@@ -84,7 +84,7 @@ public class AttributeMap implements Map<QName, String> {
         String oldValue = get(attributeName);
         if (value != oldValue) {
             releaseDOM();
-            attributes.put(attributeName, value);
+            attributes.put(XMLNameTable.intern(attributeName), value);
             if (isIDAttribute(attributeName) || Configuration.isIDAttribute(attributeName)) {
                 attributeOwner.getIDIndex().deregisterIDMapping(oldValue);
                 attributeOwner.getIDIndex().registerIDMapping(value, attributeOwner);
@@ -319,6 +319,22 @@ public class AttributeMap implements Map<QName, String> {
         inferQNameValues = flag;
     }
     
+    /**
+     * Replaces the contents of this map with the attributes, and the ID and QName attribute registrations, of another
+     * map. Neither ID mappings nor namespaces are registered with the owner of this map.
+     * 
+     * @param source the map to copy
+     */
+    void copyFrom(AttributeMap source) {
+        attributes.clear();
+        attributes.putAll(source.attributes);
+        idAttribNames.clear();
+        idAttribNames.addAll(source.idAttribNames);
+        qnameAttribNames.clear();
+        qnameAttribNames.addAll(source.qnameAttribNames);
+        inferQNameValues = source.inferQNameValues;
+    }
+    
     /**
      * Releases the DOM caching associated XMLObject and its ancestors.
      */
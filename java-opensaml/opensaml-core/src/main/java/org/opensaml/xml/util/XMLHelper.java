@@ -430,12 +430,12 @@ public final class XMLHelper {
      */
     public static QName constructQName(String namespaceURI, String localName, String prefix) {
         if (DatatypeHelper.isEmpty(prefix)) {
-            return new QName(namespaceURI, localName);
+            return XMLNameTable.getQName(namespaceURI, localName, null);
         } else if (DatatypeHelper.isEmpty(namespaceURI)) {
-            return new QName(localName);
+            return XMLNameTable.getQName(null, localName, null);
         }
 
-        return new QName(namespaceURI, localName, prefix);
+        return XMLNameTable.getQName(namespaceURI, localName, prefix);
     }
 
     /**
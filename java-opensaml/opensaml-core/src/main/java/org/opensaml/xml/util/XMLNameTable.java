@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A global table of interned {@link QName}s and XML name strings, such as namespace URIs and prefixes.
+ * 
+ * Unmarshalling a large document produces a QName for every element and attribute, yet such documents use only a few
+ * hundred distinct names. Interning them lets every XMLObject share one instance of each name, reducing the heap
+ * retained by an XMLObject tree, and lets map lookups keyed by name succeed on the identity check without comparing
+ * strings.
+ * 
+ * Only names which have been {@link #register(QName)}ed are interned. The
+ * {@link org.opensaml.xml.XMLObjectProviderRegistry} registers the name of each object provider and ID attribute, so
+ * the table holds the names known to the configuration. Any other name, such as an arbitrary name in an inbound
+ * document, is returned as a new, uninterned, instance and never enters the table.
+ * 
+ * Unlike {@link QName#equals(Object)}, names are interned by namespace URI, local part <strong>and</strong> prefix, so
+ * an interned QName always carries the prefix it was requested with. Each registered name is interned with at most
+ * {@link #MAX_PREFIXES} distinct prefixes, including the one it was registered with; other prefixes are returned as
+ * new instances.
+ */
+@ThreadSafe
+public final class XMLNameTable {
+
+    /** Maximum number of distinct prefixes with which each registered name is interned: {@value} . */
+    public static final int MAX_PREFIXES = 4;
+
+    /**
+     * Interned QNames, indexed by namespace URI and local part. Each array holds the interned variants, differing only
+     * in prefix, of a registered name, and is replaced rather than modified when a variant is added.
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, QName[]>> QNAMES =
+            new ConcurrentHashMap<String, ConcurrentMap<String, QName[]>>();
+
+    /** Interned strings: the namespace URIs, local parts and prefixes of the interned QNames. */
+    private static final ConcurrentMap<String, String> STRINGS = new ConcurrentHashMap<String, String>();
+
+    /** Constructor. */
+    private XMLNameTable() {
+    }
+
+    /**
+     * Registers a name, and the prefix it carries, to be interned.
+     * 
+     * @param name the name to register, may be null
+     */
+    public static void register(QName name) {
+        if (name == null) {
+            return;
+        }
+
+        String nsURI = addString(name.getNamespaceURI());
+        String localPart = addString(name.getLocalPart());
+        QName qname = new QName(nsURI, localPart, addString(name.getPrefix()));
+
+        ConcurrentMap<String, QName[]> localParts = QNAMES.get(nsURI);
+        if (localParts == null) {
+            localParts = new ConcurrentHashMap<String, QName[]>();
+            ConcurrentMap<String, QName[]> existing = QNAMES.putIfAbsent(nsURI, localParts);
+            if (existing != null) {
+                localParts = existing;
+            }
+        }
+        if (localParts.putIfAbsent(localPart, new QName[] {qname}) != null) {
+            addVariant(localParts, qname);
+        }
+    }
+
+    /**
+     * Gets the interned QName with the given namespace URI, local part and prefix.
+     * 
+     * @param namespaceURI namespace URI of the QName, null is treated as the empty string
+     * @param localPart local part of the QName, may not be null
+     * @param prefix prefix of the QName, null is treated as the empty string
+     * 
+     * @return the interned QName, or a new QName if the name is not registered
+     */
+    public static QName getQName(String namespaceURI, String localPart, String prefix) {
+        String nsURI = namespaceURI == null ? "" : namespaceURI;
+        String nsPrefix = prefix == null ? "" : prefix;
+        if (localPart == null) {
+            // let QName reject the null local part
+            return new QName(nsURI, localPart, nsPrefix);
+        }
+
+        ConcurrentMap<String, QName[]> localParts = QNAMES.get(nsURI);
+        QName[] variants = localParts == null ? null : localParts.get(localPart);
+        if (variants == null) {
+            return new QName(nsURI, localPart, nsPrefix);
+        }
+        for (QName variant : variants) {
+            if (variant.getPrefix().equals(nsPrefix)) {
+                return variant;
+            }
+        }
+
+        return addVariant(localParts, new QName(variants[0].getNamespaceURI(), variants[0].getLocalPart(),
+                getString(nsPrefix)));
+    }
+
+    /**
+     * Gets the interned QName equal to, and with the same prefix as, the given QName.
+     * 
+     * @param qname the QName to intern, may be null
+     * 
+     * @return the interned QName, the given QName if the name is not registered, or null if the given QName was null
+     */
+    public static QName intern(QName qname) {
+        if (qname == null) {
+            return null;
+        }
+
+        ConcurrentMap<String, QName[]> localParts = QNAMES.get(qname.getNamespaceURI());
+        QName[] variants = localParts == null ? null : localParts.get(qname.getLocalPart());
+        if (variants == null) {
+            return qname;
+        }
+        for (QName variant : variants) {
+            if (variant.getPrefix().equals(qname.getPrefix())) {
+                return variant;
+            }
+        }
+
+        return addVariant(localParts, qname);
+    }
+
+    /**
+     * Gets the interned copy of an XML name string, such as a namespace URI or prefix.
+     * 
+     * @param name the string to intern, may be null
+     * 
+     * @return the interned string, the given string if it is not part of an interned name, or null if the given
+     *          string was null
+     */
+    public static String getString(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String interned = STRINGS.get(name);
+        return interned == null ? name : interned;
+    }
+
+    /**
+     * Adds a prefixed variant of a registered name, unless the name already has {@link #MAX_PREFIXES} variants.
+     * 
+     * @param localParts the interned QNames with the namespace URI of the variant, indexed by local part
+     * @param qname the variant to add
+     * 
+     * @return the interned variant with the prefix of the given QName, or the given QName if the name already has the
+     *          maximum number of variants
+     */
+    private static QName addVariant(ConcurrentMap<String, QName[]> localParts, QName qname) {
+        String localPart = qname.getLocalPart();
+        while (true) {
+            QName[] variants = localParts.get(localPart);
+            for (QName variant : variants) {
+                if (variant.getPrefix().equals(qname.getPrefix())) {
+                    return variant;
+                }
+            }
+            if (variants.length >= MAX_PREFIXES) {
+                return qname;
+            }
+
+            QName[] updated = Arrays.copyOf(variants, variants.length + 1);
+            updated[variants.length] = qname;
+            if (localParts.replace(localPart, variants, updated)) {
+                addString(qname.getPrefix());
+                return qname;
+            }
+        }
+    }
+
+    /**
+     * Adds a string to the table of interned strings.
+     * 
+     * @param name the string to add
+     * 
+     * @return the interned string
+     */
+    private static String addString(String name) {
+        String interned = STRINGS.putIfAbsent(name, name);
+        return interned == null ? name : interned;
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.util;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.xml.namespace.QName;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.opensaml.xml.AbstractXMLObject;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.opensaml.xml.XMLRuntimeException;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.Unmarshaller;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.parse.XMLParserException;
+import org.opensaml.xml.schema.XSBooleanValue;
+import org.opensaml.xml.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Copies XMLObject trees field by field, without marshalling and unmarshalling them.
+ * 
+ * <p>
+ * Each object is copied by building a new object of the same element name and schema type and copying the instance
+ * fields declared below {@link AbstractXMLObject}: child objects are copied recursively and assigned through their
+ * setters, where the class has one, children lists, attribute maps and other collections declared by the object are
+ * filled with copies of the original contents, and immutable values, such as strings, QNames and dates, are shared.
+ * The namespaces and IDs registered with the original object are registered with its copy. The DOM cached by the
+ * original objects is not copied.
+ * </p>
+ * 
+ * <p>
+ * Objects holding values which can not be copied this way, for example signatures whose content is only held by their
+ * DOM, are copied from the DOM they have cached: the DOM is imported into a new document, which is then unmarshalled,
+ * so the copy carries a private copy of the DOM. The original is never marshalled, as that would build and cache a
+ * DOM on objects which may be shared, such as prototypes. If such an object has no cached DOM it can not be copied and
+ * a {@link MarshallingException} is thrown.
+ * </p>
+ * 
+ * <p>
+ * The fields copied for each class are looked up once and cached. The caches are keyed weakly and refer to the
+ * reflected members softly, as those refer back to their class, so that they do not prevent classes from being
+ * unloaded. A copier instance is used for a single copy.
+ * </p>
+ */
+final class XMLObjectCopier {
+
+    /** Marks classes whose fields may not be accessed. */
+    private static final Field[] INACCESSIBLE = new Field[0];
+
+    /** Fields copied for each XMLObject class. */
+    private static final Map<Class<?>, SoftReference<Field[]>> COPIED_FIELDS = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Field[]>>());
+
+    /** Public setters of the copied fields of each XMLObject class, or null for fields without one. */
+    private static final Map<Class<?>, SoftReference<Method[]>> CHILD_SETTERS = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Method[]>>());
+
+    /** Whether instances of each class are immutable, and so may be shared between an object and its copy. */
+    private static final Map<Class<?>, Boolean> IMMUTABLE_TYPES = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    static {
+        Class<?>[] immutableTypes = {String.class, Boolean.class, Character.class, Byte.class, Short.class,
+                Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, QName.class,
+                DateTime.class, DateTimeFormatter.class, };
+        for (Class<?> immutableType : immutableTypes) {
+            IMMUTABLE_TYPES.put(immutableType, Boolean.TRUE);
+        }
+    }
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(XMLObjectCopier.class);
+
+    /** Copies made so far, indexed by the original object. */
+    private final Map<XMLObject, XMLObject> copies = new IdentityHashMap<XMLObject, XMLObject>();
+
+    /** Constructor. */
+    private XMLObjectCopier() {
+    }
+
+    /**
+     * Copies an XMLObject tree.
+     * 
+     * @param <T> the type of object being copied
+     * @param original the root of the tree to copy
+     * 
+     * @return the copy of the tree, without a parent
+     * 
+     * @throws MarshallingException thrown if an object which can not be copied structurally has no cached DOM
+     * @throws UnmarshallingException thrown if the copy of a cached DOM can not be unmarshalled
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends XMLObject> T copy(T original) throws MarshallingException, UnmarshallingException {
+        if (original == null) {
+            return null;
+        }
+        return (T) new XMLObjectCopier().copyXMLObject(original);
+    }
+
+    /**
+     * Copies an object, and its children, either structurally or, if that is not possible, from its cached DOM.
+     * 
+     * @param original the object to copy
+     * 
+     * @return the copy of the object
+     * 
+     * @throws MarshallingException thrown if the object can not be copied structurally and has no cached DOM
+     * @throws UnmarshallingException thrown if the copy of the cached DOM can not be unmarshalled
+     */
+    private XMLObject copyXMLObject(XMLObject original) throws MarshallingException, UnmarshallingException {
+        XMLObject copy = copies.get(original);
+        if (copy != null) {
+            return copy;
+        }
+
+        copy = buildCopy(original);
+        if (copy != null) {
+            copies.put(original, copy);
+            copyFields(original, copy);
+        } else {
+            log.debug("{} can not be copied structurally, copying its cached DOM", original.getElementQName());
+            copy = copyDOM(original);
+            copies.put(original, copy);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies an object by unmarshalling a copy of its cached DOM, rooted in a new document. Neither the object nor its
+     * DOM are modified.
+     * 
+     * @param original the object to copy
+     * 
+     * @return the copy of the object
+     * 
+     * @throws MarshallingException thrown if the object has no cached DOM
+     * @throws UnmarshallingException thrown if the copy of the DOM can not be unmarshalled
+     */
+    private XMLObject copyDOM(XMLObject original) throws MarshallingException, UnmarshallingException {
+        Element origElement = original.getDOM();
+        if (origElement == null) {
+            throw new MarshallingException(original.getElementQName()
+                    + " can not be copied structurally and has no cached DOM to copy");
+        }
+
+        Element copiedElement;
+        try {
+            Document newDocument = Configuration.getParserPool().newDocument();
+            copiedElement = (Element) newDocument.importNode(origElement, true);
+            newDocument.appendChild(copiedElement);
+        } catch (XMLParserException e) {
+            throw new XMLRuntimeException("Error obtaining new Document from parser pool", e);
+        }
+
+        Unmarshaller unmarshaller = Configuration.getUnmarshallerFactory().getUnmarshaller(copiedElement);
+        if (unmarshaller == null) {
+            unmarshaller = Configuration.getUnmarshallerFactory().getUnmarshaller(
+                    Configuration.getDefaultProviderQName());
+        }
+        if (unmarshaller == null) {
+            throw new UnmarshallingException("No unmarshaller available for " + original.getElementQName());
+        }
+        return unmarshaller.unmarshall(copiedElement);
+    }
+
+    /**
+     * Builds an empty copy of an object, provided all the fields of the object can be copied.
+     * 
+     * @param original the object to copy
+     * 
+     * @return the empty copy, or null if the object can not be copied structurally
+     */
+    private XMLObject buildCopy(XMLObject original) {
+        if (!(original instanceof AbstractXMLObject)) {
+            return null;
+        }
+        Field[] fields = getCopiedFields(original.getClass());
+        if (fields == INACCESSIBLE) {
+            return null;
+        }
+        XMLObjectBuilder builder = null;
+        if (original.getSchemaType() != null) {
+            builder = Configuration.getBuilderFactory().getBuilder(original.getSchemaType());
+        }
+        if (builder == null) {
+            builder = Configuration.getBuilderFactory().getBuilder(original.getElementQName());
+        }
+        if (builder == null) {
+            // Unknown content is built by the default provider, as it is when unmarshalled.
+            builder = Configuration.getBuilderFactory().getBuilder(Configuration.getDefaultProviderQName());
+        }
+        if (builder == null) {
+            return null;
+        }
+
+        XMLObject copy = builder.buildObject(original.getElementQName(), original.getSchemaType());
+        if (copy.getClass() != original.getClass()) {
+            return null;
+        }
+        for (Field field : fields) {
+            if (!isCopyable(field, original, copy)) {
+                log.trace("Field {} of {} can not be copied", field.getName(), original.getClass().getName());
+                return null;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Checks whether the value of a field can be copied from an object to its copy.
+     * 
+     * @param field the field to check
+     * @param original the object being copied
+     * @param copy the copy of the object
+     * 
+     * @return true if the field can be copied
+     */
+    private boolean isCopyable(Field field, XMLObject original, XMLObject copy) {
+        Object value = getValue(field, original);
+        if (value == null) {
+            return true;
+        }
+
+        boolean isFinal = Modifier.isFinal(field.getModifiers());
+        if (value instanceof XMLObject) {
+            return !isFinal && ((XMLObject) value).getParent() == original;
+        }
+        if (value instanceof XMLObjectChildrenList || value instanceof AttributeMap) {
+            return isDistinctContainer(value, getValue(field, copy));
+        }
+        if (value instanceof Collection) {
+            return isDistinctContainer(value, getValue(field, copy)) && isShareable((Collection<?>) value);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            return isDistinctContainer(value, getValue(field, copy)) && isShareable(map.keySet())
+                    && isShareable(map.values());
+        }
+        if (isFinal) {
+            // Set by the constructor; the copy's constructor has already set it.
+            return true;
+        }
+        return value instanceof XSBooleanValue || isShareable(value);
+    }
+
+    /**
+     * Copies the fields, namespaces and IDs of an object into its copy.
+     * 
+     * @param original the object being copied
+     * @param copy the copy of the object, built by {@link #buildCopy(XMLObject)}
+     * 
+     * @throws MarshallingException thrown if a child is copied through its DOM and can not be marshalled
+     * @throws UnmarshallingException thrown if a child is copied through its DOM and can not be unmarshalled
+     */
+    @SuppressWarnings("unchecked")
+    private void copyFields(XMLObject original, XMLObject copy) throws MarshallingException,
+            UnmarshallingException {
+        copy.setSchemaLocation(original.getSchemaLocation());
+        copy.setNoNamespaceSchemaLocation(original.getNoNamespaceSchemaLocation());
+        copy.setNil(copyBoolean(original.isNilXSBoolean()));
+
+        Field[] fields = getCopiedFields(original.getClass());
+        Method[] setters = getChildSetters(original.getClass(), fields);
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            Object value = getValue(field, original);
+            Object copyValue = getValue(field, copy);
+            boolean isFinal = Modifier.isFinal(field.getModifiers());
+
+            if (value == null) {
+                if (!isFinal) {
+                    setValue(field, copy, null);
+                }
+            } else if (value instanceof XMLObject) {
+                XMLObject child = copyXMLObject((XMLObject) value);
+                if (setters[i] != null) {
+                    invokeSetter(setters[i], copy, child);
+                } else {
+                    child.setParent(copy);
+                    copy.getIDIndex().registerIDMappings(child.getIDIndex());
+                    setValue(field, copy, child);
+                }
+            } else if (value instanceof XMLObjectChildrenList) {
+                List<XMLObject> children = (List<XMLObject>) copyValue;
+                children.clear();
+                for (XMLObject child : new ArrayList<XMLObject>((List<XMLObject>) value)) {
+                    children.add(copyXMLObject(child));
+                }
+            } else if (value instanceof AttributeMap) {
+                ((AttributeMap) copyValue).copyFrom((AttributeMap) value);
+            } else if (value instanceof Collection) {
+                Collection<Object> collection = (Collection<Object>) copyValue;
+                collection.clear();
+                collection.addAll((Collection<Object>) value);
+            } else if (value instanceof Map) {
+                Map<Object, Object> map = (Map<Object, Object>) copyValue;
+                map.clear();
+                map.putAll((Map<Object, Object>) value);
+            } else if (value instanceof XSBooleanValue) {
+                setValue(field, copy, copyBoolean((XSBooleanValue) value));
+            } else if (!isFinal) {
+                setValue(field, copy, value);
+            }
+        }
+
+        copy.getNamespaceManager().registerNamespaces(original.getNamespaceManager());
+
+        IDIndex idIndex = original.getIDIndex();
+        for (String id : idIndex.getIDs()) {
+            if (idIndex.lookup(id) == original) {
+                copy.getIDIndex().registerIDMapping(id, copy);
+            }
+        }
+    }
+
+    /**
+     * Gets the fields of a class, and its superclasses below {@link AbstractXMLObject}, which are copied.
+     * 
+     * @param type the XMLObject class
+     * 
+     * @return the copied fields, or {@link #INACCESSIBLE} if the fields may not be accessed
+     */
+    private Field[] getCopiedFields(Class<?> type) {
+        SoftReference<Field[]> fieldsRef = COPIED_FIELDS.get(type);
+        Field[] fields = fieldsRef == null ? null : fieldsRef.get();
+        if (fields == null) {
+            List<Field> fieldList = new ArrayList<Field>();
+            try {
+                for (Class<?> clazz = type; clazz != AbstractXMLObject.class; clazz = clazz.getSuperclass()) {
+                    for (Field field : clazz.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers())) {
+                            field.setAccessible(true);
+                            fieldList.add(field);
+                        }
+                    }
+                }
+                fields = fieldList.toArray(new Field[fieldList.size()]);
+            } catch (SecurityException e) {
+                log.debug("Fields of {} may not be accessed", type.getName());
+                fields = INACCESSIBLE;
+            }
+            COPIED_FIELDS.put(type, new SoftReference<Field[]>(fields));
+        }
+        return fields;
+    }
+
+    /**
+     * Checks whether a value is a container of the copy distinct from the corresponding container of the original.
+     * 
+     * @param value the container held by the original object
+     * @param copyValue the value held by the copy
+     * 
+     * @return true if the copy holds its own container of the same class as the original's
+     */
+    private boolean isDistinctContainer(Object value, Object copyValue) {
+        return copyValue != null && copyValue != value && copyValue.getClass() == value.getClass();
+    }
+
+    /**
+     * Checks whether all the elements of a collection may be shared between an object and its copy.
+     * 
+     * @param values the elements to check
+     * 
+     * @return true if all the elements may be shared
+     */
+    private boolean isShareable(Collection<?> values) {
+        for (Object value : values) {
+            if (value != null && !isShareable(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a value may be shared between an object and its copy. Immutable values and validators, which are
+     * stateless, may be shared.
+     * 
+     * @param value the value to check
+     * 
+     * @return true if the value may be shared
+     */
+    private boolean isShareable(Object value) {
+        return value instanceof Enum || value instanceof Validator || isImmutable(value.getClass());
+    }
+
+    /**
+     * Checks whether instances of a class are immutable: either known to be or final classes whose instance fields
+     * are all final and of primitive or immutable types.
+     * 
+     * @param type the class to check
+     * 
+     * @return true if the instances of the class are immutable
+     */
+    private boolean isImmutable(Class<?> type) {
+        Boolean immutable = IMMUTABLE_TYPES.get(type);
+        if (immutable == null) {
+            immutable = isImmutable(type, new HashSet<Class<?>>());
+        }
+        return immutable;
+    }
+
+    /**
+     * Inspects whether instances of a class are immutable, caching the result once it is known.
+     * 
+     * @param type the class to inspect
+     * @param inspecting the classes being inspected by the callers, which are assumed to be mutable in case their
+     *            fields refer back to them
+     * 
+     * @return true if the instances of the class are immutable
+     */
+    private boolean isImmutable(Class<?> type, Set<Class<?>> inspecting) {
+        Boolean cached = IMMUTABLE_TYPES.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        if (!inspecting.add(type)) {
+            return false;
+        }
+
+        boolean immutable = Modifier.isFinal(type.getModifiers());
+        for (Class<?> clazz = type; immutable && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && (!Modifier.isFinal(modifiers)
+                        || !(field.getType().isPrimitive() || isImmutable(field.getType(), inspecting)))) {
+                    immutable = false;
+                    break;
+                }
+            }
+        }
+        inspecting.remove(type);
+        IMMUTABLE_TYPES.put(type, immutable);
+        return immutable;
+    }
+
+    /**
+     * Copies a boolean value.
+     * 
+     * @param value the value to copy, may be null
+     * 
+     * @return the copy of the value
+     */
+    private XSBooleanValue copyBoolean(XSBooleanValue value) {
+        if (value == null) {
+            return null;
+        }
+        return new XSBooleanValue(value.getValue(), value.isNumericRepresentation());
+    }
+
+    /**
+     * Gets the value of a field of an object.
+     * 
+     * @param field the field, which has been made accessible
+     * @param object the object
+     * 
+     * @return the value of the field
+     */
+    private Object getValue(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Field " + field.getName() + " is not accessible", e);
+        }
+    }
+
+    /**
+     * Gets the public setters through which child objects are assigned to the fields of a class. A field holding a
+     * child has a setter if the class has a public method named after the field which takes a single argument of the
+     * field's type. Children are assigned through their setters so that objects which bind state to their children when
+     * they are assigned, such as SAML objects adding a content reference to their signature, do so for the copy.
+     * 
+     * @param type the class of the objects being copied
+     * @param fields the copied fields of the class
+     * 
+     * @return the setters, indexed like the fields, with null for fields without a setter
+     */
+    private Method[] getChildSetters(Class<?> type, Field[] fields) {
+        SoftReference<Method[]> settersRef = CHILD_SETTERS.get(type);
+        Method[] setters = settersRef == null ? null : settersRef.get();
+        if (setters == null) {
+            setters = new Method[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                if (!XMLObject.class.isAssignableFrom(field.getType()) || Modifier.isFinal(field.getModifiers())) {
+                    continue;
+                }
+                String name = "set" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+                try {
+                    Method setter = type.getMethod(name, field.getType());
+                    if (setter.getReturnType() == Void.TYPE) {
+                        setter.setAccessible(true);
+                        setters[i] = setter;
+                    }
+                } catch (NoSuchMethodException e) {
+                    log.trace("Field {} of {} has no setter", field.getName(), type.getName());
+                } catch (SecurityException e) {
+                    log.trace("Setter of field {} of {} may not be accessed", field.getName(), type.getName());
+                }
+            }
+            CHILD_SETTERS.put(type, new SoftReference<Method[]>(setters));
+        }
+        return setters;
+    }
+
+    /**
+     * Assigns a child to an object through a setter.
+     * 
+     * @param setter the setter
+     * @param object the object
+     * @param child the child
+     */
+    private void invokeSetter(Method setter, Object object, XMLObject child) {
+        try {
+            setter.invoke(object, child);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Setter " + setter.getName() + " is not accessible", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Setter " + setter.getName() + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Sets the value of a field of an object.
+     * 
+     * @param field the field, which has been made accessible
+     * @param object the object
+     * @param value the value of the field
+     */
+    private void setValue(Field field, Object object, Object value) {
+        try {
+            field.set(object, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Field " + field.getName() + " is not accessible", e);
+        }
+    }
+}
@@ -123,6 +123,32 @@ public final class XMLObjectHelper {
         return clonedXMLObject;
     }
     
+    /**
+     * Copy an XMLObject tree structurally, without marshalling and unmarshalling it.
+     * 
+     * <p>
+     * The fields, children, attributes and namespace declarations of each object are copied into a new object and
+     * immutable values are shared. Unlike {@link #cloneXMLObject(XMLObject)}, the copy has no cached DOM and the DOM of
+     * the original is neither built nor modified. Objects whose state can not be copied field by field, such as
+     * signatures, are copied by unmarshalling a copy of the DOM they have cached, rooted in a new document, and so
+     * carry a private copy of that DOM; if such an object has no cached DOM the copy fails, since marshalling it would
+     * modify the original. Content signed by such a signature must be copied by {@link #cloneXMLObject(XMLObject)} to
+     * remain verifiable.
+     * </p>
+     * 
+     * @param originalXMLObject the object to be copied
+     * @return a copy of the original object, without a parent
+     * 
+     * @throws MarshallingException if an object which can not be copied field by field has no cached DOM
+     * @throws UnmarshallingException if the copy of a cached DOM can not be unmarshalled
+     * 
+     * @param <T> the type of object being copied
+     */
+    public static <T extends XMLObject> T copyXMLObject(T originalXMLObject)
+            throws MarshallingException, UnmarshallingException {
+        return XMLObjectCopier.copy(originalXMLObject);
+    }
+    
     /**
      * Unmarshall a Document from an InputSteam.
      * 
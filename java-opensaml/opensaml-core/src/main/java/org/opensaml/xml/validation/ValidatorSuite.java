@@ -17,10 +17,19 @@
 package org.opensaml.xml.validation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.namespace.QName;
 
@@ -35,6 +44,9 @@ import org.slf4j.LoggerFactory;
  * Registered {@link org.opensaml.xml.validation.Validator}s must be stateless. The xmlObjectTarget may be the
  * XMLObject's element QName retrieved by {@link org.opensaml.xml.XMLObject#getElementQName()} or schema type, retrieved
  * by {@link org.opensaml.xml.XMLObject#getSchemaType()}, with schema type registered checks performed first.
+ * 
+ * Registered validators are compiled into an immutable table of validator arrays which is replaced whenever a
+ * validator is registered or deregistered, so validation never contends with registration.
  */
 public class ValidatorSuite {
 
@@ -47,6 +59,12 @@ public class ValidatorSuite {
     /** Validators registered in this suite. */
     private Map<QName, List<Validator>> validators;
 
+    /** Registered validators, compiled into arrays. */
+    private volatile Map<QName, Validator[]> compiledValidators;
+
+    /** Element QNames of the XMLObjects whose subtrees {@link #validateAll(XMLObject, Executor)} validates as tasks. */
+    private volatile Set<QName> parallelBoundaries;
+
     /**
      * Constructor.
      * 
@@ -54,6 +72,8 @@ public class ValidatorSuite {
      */
     public ValidatorSuite(String suiteId) {
         validators = new ConcurrentHashMap<QName, List<Validator>>();
+        compiledValidators = Collections.emptyMap();
+        parallelBoundaries = Collections.emptySet();
         id = suiteId;
     }
 
@@ -79,14 +99,64 @@ public class ValidatorSuite {
         }
 
         log.debug("Beginning to verify XMLObject {} and its children", xmlObject.getElementQName());
-        performValidation(xmlObject);
+        validate(xmlObject, compiledValidators);
+    }
 
-        List<XMLObject> children = xmlObject.getOrderedChildren();
-        if (children != null) {
-            for (XMLObject child : children) {
-                validate(child);
+    /**
+     * Evaluates the registered validators against the given XMLObject and its children, gathering every validation
+     * failure rather than stopping at the first.
+     * 
+     * If an executor is given, the subtree rooted at each descendant whose element QName is one of the
+     * {@link #getParallelBoundaries()} is validated as a separate task by the executor. Subtrees are not split further
+     * within a task. Failures are returned in document order regardless of the order in which tasks complete.
+     * 
+     * @param xmlObject the XMLObject to validate
+     * @param executor executor used to validate subtrees concurrently, may be null
+     * 
+     * @return the validation failures, empty if the XMLObject and its children are valid
+     */
+    public List<ValidationException> validateAll(XMLObject xmlObject, Executor executor) {
+        if (xmlObject == null) {
+            return Collections.emptyList();
+        }
+
+        log.debug("Beginning to verify XMLObject {} and all its children", xmlObject.getElementQName());
+        List<Object> results = new ArrayList<Object>();
+        validateAll(xmlObject, compiledValidators, parallelBoundaries, executor, results);
+
+        List<ValidationException> failures = new ArrayList<ValidationException>();
+        for (Object result : results) {
+            if (result instanceof ValidationException) {
+                failures.add((ValidationException) result);
+            } else {
+                failures.addAll(getSubtreeFailures((FutureTask<List<ValidationException>>) result));
             }
         }
+        return failures;
+    }
+
+    /**
+     * Gets the element QNames of the XMLObjects at which {@link #validateAll(XMLObject, Executor)} splits validation
+     * into separate tasks.
+     * 
+     * @return unmodifiable set of element QNames
+     */
+    public Set<QName> getParallelBoundaries() {
+        return parallelBoundaries;
+    }
+
+    /**
+     * Sets the element QNames of the XMLObjects at which {@link #validateAll(XMLObject, Executor)} splits validation
+     * into separate tasks, for example the element QName of an entity within a metadata aggregate.
+     * 
+     * @param boundaries element QNames, may be null
+     */
+    public void setParallelBoundaries(Collection<QName> boundaries) {
+        if (boundaries == null || boundaries.isEmpty()) {
+            parallelBoundaries = Collections.emptySet();
+        } else {
+            parallelBoundaries = Collections.unmodifiableSet(new HashSet<QName>(boundaries));
+        }
     }
 
     /**
@@ -97,7 +167,11 @@ public class ValidatorSuite {
      * @return the list of validators for the XMLObject
      */
     public List<Validator> getValidators(QName xmlObjectTarget) {
-        return Collections.unmodifiableList(validators.get(xmlObjectTarget));
+        Validator[] targetValidators = compiledValidators.get(xmlObjectTarget);
+        if (targetValidators == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(targetValidators));
     }
 
     /**
@@ -106,7 +180,7 @@ public class ValidatorSuite {
      * @param validator the validator
      * @param xmlObjectTarget the XMLObject the validator should operate on
      */
-    public void registerValidator(QName xmlObjectTarget, Validator validator) {
+    public synchronized void registerValidator(QName xmlObjectTarget, Validator validator) {
         List<Validator> targetValidators = validators.get(xmlObjectTarget);
 
         if (targetValidators == null) {
@@ -115,6 +189,7 @@ public class ValidatorSuite {
         }
 
         targetValidators.add(validator);
+        compileValidators();
     }
 
     /**
@@ -123,53 +198,175 @@ public class ValidatorSuite {
      * @param xmlObjectTarget the XMLObject the validator is currently registered for
      * @param validator the validator to remove
      */
-    public void deregisterValidator(QName xmlObjectTarget, Validator validator) {
+    public synchronized void deregisterValidator(QName xmlObjectTarget, Validator validator) {
         List<Validator> targetValidators = validators.get(xmlObjectTarget);
 
         if (targetValidators != null) {
             targetValidators.remove(validator);
+            compileValidators();
+        }
+    }
+
+    /** Replaces the compiled validator table with one reflecting the currently registered validators. */
+    private void compileValidators() {
+        Map<QName, Validator[]> compiled = new HashMap<QName, Validator[]>();
+        for (Map.Entry<QName, List<Validator>> entry : validators.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                compiled.put(entry.getKey(), entry.getValue().toArray(new Validator[entry.getValue().size()]));
+            }
+        }
+        compiledValidators = compiled;
+    }
+
+    /**
+     * Evaluates the given validators against the given XMLObject and its children.
+     * 
+     * @param xmlObject the XMLObject to validate
+     * @param table compiled validators to evaluate
+     * 
+     * @throws ValidationException thrown if the element is not valid
+     */
+    private void validate(XMLObject xmlObject, Map<QName, Validator[]> table) throws ValidationException {
+        performValidation(xmlObject, table, null);
+
+        List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (XMLObject child : children) {
+                if (child != null) {
+                    validate(child, table);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the given validators against the given XMLObject and its children, adding each failure, or the task
+     * validating a subtree, to the results.
+     * 
+     * @param xmlObject the XMLObject to validate
+     * @param table compiled validators to evaluate
+     * @param boundaries element QNames of the XMLObjects whose subtrees are validated as tasks
+     * @param executor executor used to validate subtrees concurrently, may be null
+     * @param results accumulated validation failures and subtree validation tasks
+     */
+    private void validateAll(XMLObject xmlObject, final Map<QName, Validator[]> table, Set<QName> boundaries,
+            Executor executor, List<Object> results) {
+        try {
+            performValidation(xmlObject, table, results);
+        } catch (ValidationException e) {
+            // failures are gathered in to the results
+        }
+
+        List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children == null) {
+            return;
+        }
+
+        for (final XMLObject child : children) {
+            if (child == null) {
+                continue;
+            }
+
+            if (executor != null && boundaries.contains(child.getElementQName())) {
+                FutureTask<List<ValidationException>> subtreeValidation = new FutureTask<List<ValidationException>>(
+                        new Callable<List<ValidationException>>() {
+                            public List<ValidationException> call() {
+                                List<Object> subtreeResults = new ArrayList<Object>();
+                                validateAll(child, table, null, null, subtreeResults);
+                                List<ValidationException> subtreeFailures = new ArrayList<ValidationException>();
+                                for (Object result : subtreeResults) {
+                                    subtreeFailures.add((ValidationException) result);
+                                }
+                                return subtreeFailures;
+                            }
+                        });
+                results.add(subtreeValidation);
+                executor.execute(subtreeValidation);
+            } else {
+                validateAll(child, table, boundaries, executor, results);
+            }
+        }
+    }
+
+    /**
+     * Waits for the validation of a subtree to complete.
+     * 
+     * @param subtreeValidation the subtree validation task
+     * 
+     * @return the failures of the subtree validation
+     */
+    private List<ValidationException> getSubtreeFailures(FutureTask<List<ValidationException>> subtreeValidation) {
+        try {
+            return subtreeValidation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.singletonList(new ValidationException("Interrupted while validating XMLObject", e));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Unexpected failure validating XMLObject", cause);
         }
     }
 
     /**
      * Validates the given XMLObject. Does NOT validate its children.
      * 
-     * @param xmlObject the XMLObject to validate.
+     * @param xmlObject the XMLObject to validate
+     * @param table compiled validators to evaluate
+     * @param failures list to which validation failures are added, or null to fail on the first failure
      * 
-     * @throws ValidationException thrown if the XMLObject does not validate
+     * @throws ValidationException thrown if the XMLObject does not validate and failures are not being gathered
      */
-    private void performValidation(XMLObject xmlObject) throws ValidationException {
+    private void performValidation(XMLObject xmlObject, Map<QName, Validator[]> table, List<Object> failures)
+            throws ValidationException {
         QName schemaType = xmlObject.getSchemaType();
         if (schemaType != null) {
             log.debug("Validating XMLObject {} against validators registered under its schema type {}", xmlObject
                     .getElementQName(), schemaType);
-            performValidation(schemaType, xmlObject);
+            performValidation(table.get(schemaType), schemaType, xmlObject, failures);
         }
 
         log.debug("Validating XMLObject {} against validators registered under its element QName", xmlObject
                 .getElementQName());
-        performValidation(xmlObject.getElementQName(), xmlObject);
+        performValidation(table.get(xmlObject.getElementQName()), xmlObject.getElementQName(), xmlObject, failures);
     }
 
     /**
      * Validates the given XMLObject against the validators registered under the given key.
      * 
+     * @param targetValidators the validators registered under the key, may be null
      * @param validatorSetKey the key to the list of validators
      * @param xmlObject the XMLObject to validate
+     * @param failures list to which validation failures are added, or null to fail on the first failure
      * 
-     * @throws ValidationException thrown if any validations fail
+     * @throws ValidationException thrown if any validations fail and failures are not being gathered
      */
-    private void performValidation(QName validatorSetKey, XMLObject xmlObject) throws ValidationException {
-        List<Validator> elementQNameValidators = validators.get(validatorSetKey);
-        if (elementQNameValidators != null) {
-            for (Validator validator : elementQNameValidators) {
+    private void performValidation(Validator[] targetValidators, QName validatorSetKey, XMLObject xmlObject,
+            List<Object> failures) throws ValidationException {
+        if (targetValidators == null) {
+            log.debug("No validators registered for XMLObject {} under QName {}", xmlObject.getElementQName(),
+                    validatorSetKey);
+            return;
+        }
+
+        boolean debugEnabled = log.isDebugEnabled();
+        for (Validator validator : targetValidators) {
+            if (debugEnabled) {
                 log.debug("Validating XMLObject {} against Validator {}", xmlObject.getElementQName(), validator
                         .getClass().getName());
+            }
+            try {
                 validator.validate(xmlObject);
+            } catch (ValidationException e) {
+                if (failures == null) {
+                    throw e;
+                }
+                failures.add(e);
             }
-        } else {
-            log.debug("No validators registered for XMLObject {} under QName {}", xmlObject.getElementQName(),
-                    validatorSetKey);
         }
     }
 }
\ No newline at end of file
@@ -15,8 +15,12 @@
  */
 package org.opensaml.core.config;
 
+import java.util.Properties;
+
 import junit.framework.TestCase;
 
+import org.opensaml.core.config.provider.ThreadLocalConfigurationPropertiesHolder;
+
 /**
  * A class which provides basic testing for the ConfigurationService.
  */
@@ -60,6 +64,35 @@ public class ConfigurationServiceTest extends TestCase {
         assertNull(ConfigurationService.get(TestConfig.class));
     }
     
+    /**
+     *  Test that thread-local configuration properties select the partition used,
+     *  and that the resolved properties may be reloaded.
+     */
+    public void testThreadLocalPartition() {
+        BasicTestConfig config = new BasicTestConfig();
+        config.setValue("test-value");
+        
+        Properties props = new Properties();
+        props.setProperty(ConfigurationService.PROPERTY_PARTITION_NAME, "threadlocal-partition");
+        ThreadLocalConfigurationPropertiesHolder.setProperties(props);
+        try {
+            assertEquals("threadlocal-partition", ConfigurationService.getPartitionName());
+            ConfigurationService.register(TestConfig.class, config);
+            assertNotNull(ConfigurationService.get(TestConfig.class));
+            
+            ThreadLocalConfigurationPropertiesHolder.clear();
+            assertEquals(ConfigurationService.DEFAULT_PARTITION_NAME, ConfigurationService.getPartitionName());
+            assertNull(ConfigurationService.get(TestConfig.class));
+            
+            ConfigurationService.reload();
+            ThreadLocalConfigurationPropertiesHolder.setProperties(props);
+            assertEquals("test-value", ConfigurationService.get(TestConfig.class).getValue());
+            ConfigurationService.deregister(TestConfig.class);
+        } finally {
+            ThreadLocalConfigurationPropertiesHolder.clear();
+        }
+    }
+    
     /**
      * Testing config interface.
      */
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for {@link XMLObjectProviderRegistrationGenerator}.
+ */
+public class XMLObjectProviderRegistrationGeneratorTest extends TestCase {
+
+    /** Directory containing the test configuration resources. */
+    private File resourceDirectory;
+
+    /** Directory to which sources are generated. */
+    private File outputDirectory;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        resourceDirectory = new File(XMLObjectProviderRegistrationGeneratorTest.class.getResource(
+                "/xmltooling-config.xml").toURI()).getParentFile();
+        outputDirectory = File.createTempFile("xmlobject-registration", "");
+        outputDirectory.delete();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        File sourceFile = new File(outputDirectory, "org/example/TestRegistration.java");
+        sourceFile.delete();
+        sourceFile.getParentFile().delete();
+        sourceFile.getParentFile().getParentFile().delete();
+        outputDirectory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests generation of a registration from object provider and validator suite configurations.
+     * 
+     * @throws Exception if the registration can not be generated
+     */
+    public void testGenerate() throws Exception {
+        XMLObjectProviderRegistrationGenerator generator = new XMLObjectProviderRegistrationGenerator();
+        generator.generate(resourceDirectory, outputDirectory, "org.example.TestRegistration", new String[] {
+                "/xmltooling-config.xml", "/data/org/opensaml/xml/ValidatorSuiteConfiguration.xml", });
+
+        String source = readSource(new File(outputDirectory, "org/example/TestRegistration.java"));
+        assertTrue(source.contains("package org.example;"));
+        assertTrue(source.contains("public class TestRegistration implements XMLObjectProviderRegistration"));
+        assertTrue(source.contains("\"/xmltooling-config.xml\","));
+        assertTrue(source.contains("registry.registerObjectProvider(new QName(\"http://www.example.org/testObjects\", "
+                + "\"SimpleElement\", \"test\"),"));
+        assertTrue(source.contains("new org.opensaml.xml.mock.SimpleXMLObjectBuilder(),"));
+        assertTrue(source.contains("new org.opensaml.xml.mock.SimpleXMLObjectUnmarshaller());"));
+        assertTrue(source.contains("validatorSuite = new ValidatorSuite(\"TestSuite1\");"));
+        assertTrue(source.contains("registry.registerValidatorSuite(\"TestSuite2\", validatorSuite);"));
+    }
+
+    /**
+     * Tests that a schema invalid configuration is rejected.
+     * 
+     * @throws Exception if the generator can not be created
+     */
+    public void testInvalidConfiguration() throws Exception {
+        XMLObjectProviderRegistrationGenerator generator = new XMLObjectProviderRegistrationGenerator();
+        try {
+            generator.generate(resourceDirectory, outputDirectory, "org.example.TestRegistration",
+                    new String[] {"/data/org/opensaml/xml/InvalidConfiguration.xml", });
+            fail("Invalid configuration file passed schema validation");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Reads a generated source file.
+     * 
+     * @param sourceFile the source file
+     * 
+     * @return the content of the source file
+     * 
+     * @throws Exception if the file can not be read
+     */
+    private String readSource(File sourceFile) throws Exception {
+        StringBuilder source = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                source.append(line).append('\n');
+            }
+        } finally {
+            reader.close();
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.util;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.opensaml.xml.XMLObjectProviderRegistry;
+
+/**
+ * Tests {@link XMLNameTable}.
+ */
+public class XMLNameTableTest extends TestCase {
+
+    /** Namespace URI used by the test names. */
+    private static final String NS = "urn:test:xmlnametable";
+
+    /**
+     * Tests that equal names with equal prefixes are interned to the same instance.
+     */
+    public void testGetQName() {
+        XMLNameTable.register(new QName(NS, "Element", "t"));
+        XMLNameTable.register(new QName("Element"));
+
+        QName name = XMLNameTable.getQName(NS, "Element", "t");
+        assertEquals(new QName(NS, "Element", "t"), name);
+        assertEquals("t", name.getPrefix());
+        assertSame(name, XMLNameTable.getQName(new String(NS), new String("Element"), new String("t")));
+        assertSame(name, XMLNameTable.intern(new QName(NS, "Element", "t")));
+
+        QName unprefixed = XMLNameTable.getQName(NS, "Element", null);
+        assertNotSame(name, unprefixed);
+        assertEquals("", unprefixed.getPrefix());
+        assertSame(unprefixed, XMLNameTable.getQName(NS, "Element", ""));
+
+        QName unqualified = XMLNameTable.getQName(null, "Element", null);
+        assertEquals(new QName("Element"), unqualified);
+        assertSame(unqualified, XMLNameTable.intern(new QName("Element")));
+    }
+
+    /**
+     * Tests that names which have not been registered are not interned.
+     */
+    public void testUnregisteredName() {
+        QName name = XMLNameTable.getQName(NS, "Unregistered", "t");
+        assertEquals(new QName(NS, "Unregistered", "t"), name);
+        assertNotSame(name, XMLNameTable.getQName(NS, "Unregistered", "t"));
+        assertSame(name, XMLNameTable.intern(name));
+
+        String uri = new String(NS + ":unregistered");
+        assertSame(uri, XMLNameTable.getString(uri));
+    }
+
+    /**
+     * Tests that a registered name is interned with a bounded number of prefixes.
+     */
+    public void testPrefixVariants() {
+        XMLNameTable.register(new QName(NS, "Variants", "p0"));
+        for (int i = 1; i < XMLNameTable.MAX_PREFIXES; i++) {
+            QName variant = XMLNameTable.getQName(NS, "Variants", "p" + i);
+            assertEquals("p" + i, variant.getPrefix());
+            assertSame(variant, XMLNameTable.getQName(NS, "Variants", "p" + i));
+        }
+
+        QName extra = XMLNameTable.getQName(NS, "Variants", "extra");
+        assertEquals("extra", extra.getPrefix());
+        assertNotSame(extra, XMLNameTable.getQName(NS, "Variants", "extra"));
+        assertSame(XMLNameTable.getQName(NS, "Variants", "p0"), XMLNameTable.intern(new QName(NS, "Variants", "p0")));
+    }
+
+    /**
+     * Tests that the provider registry registers ID attribute names.
+     */
+    public void testRegistryRegistration() {
+        XMLObjectProviderRegistry registry = new XMLObjectProviderRegistry();
+        registry.registerIDAttribute(new QName(NS, "RegisteredID"));
+        assertSame(XMLNameTable.getQName(NS, "RegisteredID", null), XMLNameTable.getQName(NS, "RegisteredID", null));
+        assertSame(XMLNameTable.getQName(javax.xml.XMLConstants.XML_NS_URI, "id", "xml"), XMLNameTable.getQName(
+                javax.xml.XMLConstants.XML_NS_URI, "id", "xml"));
+    }
+
+    /**
+     * Tests that XMLHelper constructs interned QNames.
+     */
+    public void testConstructQName() {
+        XMLNameTable.register(new QName(NS, "Attribute", "t"));
+        XMLNameTable.register(new QName("Attribute"));
+
+        QName name = XMLHelper.constructQName(NS, "Attribute", "t");
+        assertSame(name, XMLHelper.constructQName(NS, "Attribute", "t"));
+        assertSame(XMLHelper.constructQName(NS, "Attribute", null), XMLHelper.constructQName(NS, "Attribute", ""));
+        assertEquals("", XMLHelper.constructQName(null, "Attribute", "t").getPrefix());
+    }
+
+    /**
+     * Tests interning of strings.
+     */
+    public void testGetString() {
+        assertNull(XMLNameTable.getString(null));
+        XMLNameTable.register(new QName(NS + ":string", "Element"));
+        String uri = XMLNameTable.getString(new String(NS + ":string"));
+        assertSame(uri, XMLNameTable.getString(new String(NS + ":string")));
+    }
+
+    /**
+     * Tests that a null local part is rejected.
+     */
+    public void testNullLocalPart() {
+        try {
+            XMLNameTable.getQName(NS, null, null);
+            fail("QName with a null local part was created");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -16,12 +16,22 @@
 
 package org.opensaml.xml.util;
 
+import javax.xml.namespace.QName;
+
+import org.custommonkey.xmlunit.Diff;
+import org.custommonkey.xmlunit.XMLAssert;
 import org.opensaml.xml.Configuration;
+import org.opensaml.xml.Namespace;
+import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.XMLObjectBaseTestCase;
+import org.opensaml.xml.io.Marshaller;
 import org.opensaml.xml.io.MarshallingException;
 import org.opensaml.xml.io.UnmarshallingException;
 import org.opensaml.xml.mock.SimpleXMLObject;
 import org.opensaml.xml.mock.SimpleXMLObjectBuilder;
+import org.opensaml.xml.parse.XMLParserException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
  * Tests of XMLObjectHelper utility methods.
@@ -102,5 +112,74 @@ public class XMLObjectHelperTest extends XMLObjectBaseTestCase {
                 clonedParentObj.getDOM().getOwnerDocument().getDocumentElement().isSameNode(clonedParentObj.getDOM()));
     }
     
+    /** Tests copying an XMLObject structurally. */
+    public void testXMLObjectCopy() throws MarshallingException, UnmarshallingException {
+        SimpleXMLObjectBuilder sxoBuilder = (SimpleXMLObjectBuilder) Configuration.getBuilderFactory()
+            .getBuilder(SimpleXMLObject.ELEMENT_NAME);
+        
+        SimpleXMLObject origChildObj = sxoBuilder.buildObject();
+        origChildObj.setId("Child");
+        origChildObj.setValue("FooBarBaz");
+        origChildObj.setNil(Boolean.FALSE);
+        
+        SimpleXMLObject origParentObj = sxoBuilder.buildObject();
+        origParentObj.setId("Parent");
+        origParentObj.setSchemaLocation("http://www.example.org/testObjects schema.xsd");
+        origParentObj.getUnknownAttributes().put(new QName("urn:example:attributes", "Attribute", "attr"), "Value");
+        origParentObj.addNamespace(new Namespace("urn:example:declared", "decl"));
+        origParentObj.getSimpleXMLObjects().add(origChildObj);
+        origParentObj.getUnknownXMLObjects().add(sxoBuilder.buildObject());
+        
+        SimpleXMLObject copiedParentObj = XMLObjectHelper.copyXMLObject(origParentObj);
+        
+        assertFalse("Parent XMLObjects were the same reference", origParentObj == copiedParentObj);
+        assertNull("Original parent was marshalled", origParentObj.getDOM());
+        assertNull("Copied parent had a DOM", copiedParentObj.getDOM());
+        assertNull("Copied parent had a parent", copiedParentObj.getParent());
+        
+        assertEquals("Copied parent had wrong number of children", 1, copiedParentObj.getSimpleXMLObjects().size());
+        SimpleXMLObject copiedChildObj = copiedParentObj.getSimpleXMLObjects().get(0);
+        assertFalse("Child XMLObjects were the same reference", origChildObj == copiedChildObj);
+        assertSame("Copied child had wrong parent", copiedParentObj, copiedChildObj.getParent());
+        assertEquals("Text content of child was not the expected value", "FooBarBaz", copiedChildObj.getValue());
+        assertFalse("Nil value of child was shared", origChildObj.isNilXSBoolean() == copiedChildObj.isNilXSBoolean());
+        
+        assertSame("Copied parent ID was not indexed", copiedParentObj, copiedParentObj.resolveID("Parent"));
+        assertSame("Copied child ID was not indexed", copiedChildObj, copiedParentObj.resolveID("Child"));
+        
+        copiedChildObj.setValue("Changed");
+        assertEquals("Change to copy was visible in the original", "FooBarBaz", origChildObj.getValue());
+        copiedChildObj.setValue("FooBarBaz");
+        
+        Element origElement = Configuration.getMarshallerFactory().getMarshaller(origParentObj).marshall(
+                origParentObj);
+        assertEquals("Copied XMLObject did not marshall to the original's DOM", origElement.getOwnerDocument(),
+                copiedParentObj);
+    }
+    
+    /** Tests copying an unmarshalled XMLObject structurally. */
+    public void testUnmarshalledXMLObjectCopy() throws XMLParserException, MarshallingException,
+            UnmarshallingException {
+        Document document = parserPool.parse(XMLObjectHelperTest.class
+                .getResourceAsStream("/data/org/opensaml/xml/UnknownContent.xml"));
+        XMLObject origObj = unmarshallerFactory.getUnmarshaller(Configuration.getDefaultProviderQName()).unmarshall(
+                document.getDocumentElement());
+        Element origElement = origObj.getDOM();
+        
+        XMLObject copiedObj = XMLObjectHelper.copyXMLObject(origObj);
+        
+        assertNull("Copied XMLObject had a DOM", copiedObj.getDOM());
+        assertSame("Original DOM was modified", origElement, origObj.getDOM());
+        assertEquals("Copied XMLObject had wrong number of children", origObj.getOrderedChildren().size(),
+                copiedObj.getOrderedChildren().size());
+        
+        Marshaller marshaller = marshallerFactory.getMarshaller(Configuration.getDefaultProviderQName());
+        Element copiedElement = marshaller.marshall(copiedObj);
+        origObj.releaseChildrenDOM(true);
+        origObj.releaseDOM();
+        origElement = marshaller.marshall(origObj);
+        XMLAssert.assertXMLIdentical("Copied XMLObject did not marshall to the original's DOM", new Diff(origElement
+                .getOwnerDocument(), copiedElement.getOwnerDocument()), true);
+    }
 
 }
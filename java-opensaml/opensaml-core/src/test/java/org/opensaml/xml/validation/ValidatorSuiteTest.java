@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.validation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.opensaml.xml.mock.SimpleXMLObject;
+
+/**
+ * Tests {@link ValidatorSuite}.
+ */
+public class ValidatorSuiteTest extends TestCase {
+
+    /** Element QName of the objects at which validation is split. */
+    private static final QName ENTITY_NAME = new QName(SimpleXMLObject.NAMESPACE, "Entity",
+            SimpleXMLObject.NAMESPACE_PREFIX);
+
+    private ValidatorSuite suite;
+
+    private SimpleXMLObject root;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        suite = new ValidatorSuite("test");
+        suite.registerValidator(SimpleXMLObject.ELEMENT_NAME, new ValueValidator());
+        suite.registerValidator(ENTITY_NAME, new ValueValidator());
+
+        root = newObject(SimpleXMLObject.ELEMENT_NAME, "root");
+        for (int i = 0; i < 10; i++) {
+            SimpleXMLObject entity = newObject(ENTITY_NAME, "entity" + i);
+            for (int j = 0; j < 10; j++) {
+                entity.getSimpleXMLObjects().add(newObject(SimpleXMLObject.ELEMENT_NAME, "child" + i + "." + j));
+            }
+            root.getUnknownXMLObjects().add(entity);
+        }
+    }
+
+    /**
+     * Tests registration of validators.
+     */
+    public void testRegistration() {
+        assertTrue(suite.getValidators(new QName("unknown")).isEmpty());
+        assertEquals(1, suite.getValidators(ENTITY_NAME).size());
+
+        Validator validator = suite.getValidators(ENTITY_NAME).get(0);
+        suite.deregisterValidator(ENTITY_NAME, validator);
+        assertTrue(suite.getValidators(ENTITY_NAME).isEmpty());
+    }
+
+    /**
+     * Tests that validation stops at the first failure.
+     */
+    public void testValidate() {
+        try {
+            suite.validate(root);
+        } catch (ValidationException e) {
+            fail("Valid tree failed validation");
+        }
+
+        invalidate("child3.4");
+        invalidate("entity7");
+        try {
+            suite.validate(root);
+            fail("Invalid tree passed validation");
+        } catch (ValidationException e) {
+            assertEquals("child3.4", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that all failures are gathered.
+     */
+    public void testValidateAll() {
+        assertTrue(suite.validateAll(root, null).isEmpty());
+
+        invalidate("child3.4");
+        invalidate("entity7");
+        invalidate("child9.9");
+        assertFailures(suite.validateAll(root, null));
+    }
+
+    /**
+     * Tests that all failures are gathered, in document order, when subtrees are validated concurrently.
+     */
+    public void testValidateAllConcurrently() {
+        suite.setParallelBoundaries(Collections.singleton(ENTITY_NAME));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertTrue(suite.validateAll(root, executor).isEmpty());
+
+            invalidate("child3.4");
+            invalidate("entity7");
+            invalidate("child9.9");
+            assertFailures(suite.validateAll(root, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks the failures of the invalidated tree.
+     *
+     * @param failures failures gathered from the tree
+     */
+    private void assertFailures(List<ValidationException> failures) {
+        assertEquals(3, failures.size());
+        assertEquals("child3.4", failures.get(0).getMessage());
+        assertEquals("entity7", failures.get(1).getMessage());
+        assertEquals("child9.9", failures.get(2).getMessage());
+    }
+
+    /**
+     * Marks the object with the given ID as invalid.
+     *
+     * @param id ID of the object
+     */
+    private void invalidate(String id) {
+        SimpleXMLObject object = (SimpleXMLObject) root.resolveID(id);
+        object.setValue("invalid");
+    }
+
+    /**
+     * Creates a new object.
+     *
+     * @param name element QName of the object
+     * @param id ID of the object
+     *
+     * @return the object
+     */
+    private SimpleXMLObject newObject(QName name, String id) {
+        SimpleXMLObject object = new SimpleXMLObject(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix());
+        object.setId(id);
+        return object;
+    }
+
+    /**
+     * Validator which rejects objects whose value is "invalid", failing with the object's ID.
+     */
+    private static class ValueValidator implements Validator<SimpleXMLObject> {
+
+        /** {@inheritDoc} */
+        public void validate(SimpleXMLObject xmlObject) throws ValidationException {
+            if ("invalid".equals(xmlObject.getValue())) {
+                throw new ValidationException(xmlObject.getId());
+            }
+        }
+    }
+}
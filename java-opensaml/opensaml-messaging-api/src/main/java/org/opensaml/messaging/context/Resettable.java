@@ -0,0 +1,34 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.context;
+
+/**
+ * A component of a context graph which may be returned to its initial state so that it can be reused for the handling
+ * of another message, rather than being discarded and rebuilt.
+ * 
+ * <p>
+ * Subcontexts which implement this interface are retained by their owning container when it is reset and handed
+ * back, reset, the next time a subcontext of the same type is automatically created.
+ * </p>
+ */
+public interface Resettable {
+
+    /**
+     * Return this component to its initial state, releasing any references to message specific state.
+     */
+    public void reset();
+
+}
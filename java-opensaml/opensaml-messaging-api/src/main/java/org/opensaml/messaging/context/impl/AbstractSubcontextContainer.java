@@ -15,11 +15,16 @@
  */
 package org.opensaml.messaging.context.impl;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.opensaml.messaging.MessageRuntimeException;
+import org.opensaml.messaging.context.Resettable;
 import org.opensaml.messaging.context.Subcontext;
 import org.opensaml.messaging.context.SubcontextContainer;
 import org.opensaml.util.collections.ClassIndexedSet;
@@ -29,8 +34,24 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Abstract implementation of {@link SubcontextContainer}.
+ * 
+ * <p>
+ * The container may be {@link #reset()} and reused. Subcontexts which implement {@link Resettable} are then retained
+ * and handed back the next time a subcontext of their type is automatically created, so that a reused container does
+ * not rebuild its subcontext graph for each message.
+ * </p>
  */
-public abstract class AbstractSubcontextContainer implements SubcontextContainer {
+public abstract class AbstractSubcontextContainer implements SubcontextContainer, Resettable {
+    
+    /**
+     * Constructors of the subcontext classes which have been automatically created, indexed by class. The classes are
+     * weakly referenced so that the cache does not prevent their class loaders from being unloaded. Each constructor
+     * refers to its class, so the constructors are softly referenced: they survive ordinary collections and are only
+     * released under memory pressure, after which an unused class loader can be unloaded and the constructor of a
+     * class still in use is looked up again.
+     */
+    private static final Map<Class<?>, SoftReference<Constructor<?>>> SUBCONTEXT_CONSTRUCTORS = Collections
+            .synchronizedMap(new WeakHashMap<Class<?>, SoftReference<Constructor<?>>>());
     
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractSubcontextContainer.class);
@@ -38,6 +59,9 @@ public abstract class AbstractSubcontextContainer implements SubcontextContainer
     /** The subcontexts being managed. */
     private ClassIndexedSet<Subcontext> subcontexts;
     
+    /** Resettable subcontexts retained across a reset of the container, created on first reset. */
+    private ClassIndexedSet<Subcontext> retainedSubcontexts;
+    
     /** Flag indicating whether subcontexts should, by default, be created if they do not exist. */
     private boolean autoCreateSubcontexts;
     
@@ -63,7 +87,10 @@ public abstract class AbstractSubcontextContainer implements SubcontextContainer
         
         if (autocreate) {
             log.trace("Subcontext not found of type, autocreating: {}", clazz.getName());
-            subcontext = createSubcontext(clazz);
+            subcontext = takeRetainedSubcontext(clazz);
+            if (subcontext == null) {
+                subcontext = createSubcontext(clazz);
+            }
             addSubcontext(subcontext);
             return subcontext;
         }
@@ -120,9 +147,54 @@ public abstract class AbstractSubcontextContainer implements SubcontextContainer
         autoCreateSubcontexts = autoCreate;
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Removes all subcontexts and restores automatic subcontext creation. Subcontexts owned by this container which
+     * implement {@link Resettable} are reset and retained for reuse.
+     * </p>
+     */
+    public void reset() {
+        for (Subcontext subcontext : subcontexts) {
+            if (subcontext instanceof Resettable && subcontext.getOwner() == this) {
+                ((Resettable) subcontext).reset();
+                if (retainedSubcontexts == null) {
+                    retainedSubcontexts = new ClassIndexedSet<Subcontext>();
+                }
+                retainedSubcontexts.add(subcontext, true);
+            }
+        }
+        subcontexts.clear();
+        autoCreateSubcontexts = true;
+    }
+    
+    /**
+     * Remove and return the subcontext of the specified class retained across a reset, if any.
+     * 
+     * @param <T> the type of subcontext
+     * @param clazz the class of the subcontext
+     * @return the retained subcontext, or null
+     */
+    private <T extends Subcontext> T takeRetainedSubcontext(Class<T> clazz) {
+        if (retainedSubcontexts == null) {
+            return null;
+        }
+        T subcontext = retainedSubcontexts.get(clazz);
+        if (subcontext != null) {
+            log.trace("Reusing retained subcontext of type: {}", clazz.getName());
+            retainedSubcontexts.remove(subcontext);
+        }
+        return subcontext;
+    }
+    
     /**
      * Create an instance of the specified subcontext class.
      * 
+     * <p>
+     * The constructor of each subcontext class is cached, without preventing the class from being unloaded.
+     * </p>
+     * 
      * @param <T> the type of subcontext
      * @param clazz the class of the subcontext instance to create
      * @return the new subcontext instance
@@ -130,7 +202,7 @@ public abstract class AbstractSubcontextContainer implements SubcontextContainer
     protected <T extends Subcontext> T createSubcontext(Class<T> clazz) {
         Constructor<T> constructor;
         try {
-            constructor = clazz.getConstructor(new Class[] {SubcontextContainer.class});
+            constructor = getSubcontextConstructor(clazz);
             return constructor.newInstance(new Object[] { this });
         } catch (SecurityException e) {
             log.error("Security error on creating subcontext", e);
@@ -153,4 +225,24 @@ public abstract class AbstractSubcontextContainer implements SubcontextContainer
         }
     }
     
+    /**
+     * Get the constructor, taking the owning container, of the specified subcontext class.
+     * 
+     * @param <T> the type of subcontext
+     * @param clazz the class of the subcontext
+     * @return the constructor of the subcontext class
+     * @throws NoSuchMethodException if the class does not have a public constructor taking the owning container
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Subcontext> Constructor<T> getSubcontextConstructor(Class<T> clazz)
+            throws NoSuchMethodException {
+        SoftReference<Constructor<?>> constructorRef = SUBCONTEXT_CONSTRUCTORS.get(clazz);
+        Constructor<T> constructor = constructorRef == null ? null : (Constructor<T>) constructorRef.get();
+        if (constructor == null) {
+            constructor = clazz.getConstructor(new Class[] {SubcontextContainer.class});
+            SUBCONTEXT_CONSTRUCTORS.put(clazz, new SoftReference<Constructor<?>>(constructor));
+        }
+        return constructor;
+    }
+    
 }
@@ -21,6 +21,7 @@ import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.messaging.context.InOutOperationContext;
 import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.context.Resettable;
 
 
 /**
@@ -86,5 +87,25 @@ public class BasicInOutOperationContext<InboundMessageType, OutboundMessageType>
     public String getId() {
         return id;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Also resets the inbound and outbound message contexts, where they are resettable, and sets the ID to a newly
+     * generated UUID and the creation time to now, so that the context may be reused for another operation.
+     * </p>
+     */
+    public void reset() {
+        super.reset();
+        if (inboundContext instanceof Resettable) {
+            ((Resettable) inboundContext).reset();
+        }
+        if (outboundContext instanceof Resettable) {
+            ((Resettable) outboundContext).reset();
+        }
+        id = UUID.randomUUID().toString();
+        creationTime = new DateTime(ISOChronology.getInstanceUTC());
+    }
     
 }
@@ -62,4 +62,23 @@ public class BasicMessageContext<MessageType> extends AbstractSubcontextContaine
         return creationTime;
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Also clears the message and sets the creation time to now, so that the context may be reused for another
+     * message.
+     * </p>
+     */
+    public void reset() {
+        super.reset();
+        msg = null;
+        creationTime = new DateTime();
+    }
+
+    /** Set the creation time to now, when an idle context is handed out for reuse. */
+    void markCreated() {
+        creationTime = new DateTime();
+    }
+    
 }
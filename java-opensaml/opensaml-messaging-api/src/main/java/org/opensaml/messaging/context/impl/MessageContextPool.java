@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.context.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of {@link BasicMessageContext} instances, allowing decoders handling a high rate of messages to reuse
+ * context graphs rather than building new ones for each message.
+ * 
+ * <p>
+ * Contexts are reset once, when returned to the pool, releasing their references to message specific state while they
+ * are idle. The creation time of a context is set when it is borrowed. Contexts returned when the pool is full are
+ * discarded. A context must not be used by its borrower once it has been returned.
+ * </p>
+ * 
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * 
+ * @param <MessageType> the type of message represented by the pooled message contexts
+ */
+public class MessageContextPool<MessageType> {
+
+    /** Default maximum number of idle contexts held by the pool: {@value} . */
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    /** Idle contexts available to be borrowed. */
+    private final BlockingQueue<BasicMessageContext<MessageType>> idleContexts;
+
+    /** Constructor. Holds at most {@link #DEFAULT_MAX_IDLE} idle contexts. */
+    public MessageContextPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param maxIdle maximum number of idle contexts held by the pool
+     */
+    public MessageContextPool(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("Maximum number of idle contexts must be greater than 0");
+        }
+        idleContexts = new ArrayBlockingQueue<BasicMessageContext<MessageType>>(maxIdle);
+    }
+
+    /**
+     * Borrow a context from the pool, creating a new one if none is idle.
+     * 
+     * @return a message context in its initial state
+     */
+    public BasicMessageContext<MessageType> borrowContext() {
+        BasicMessageContext<MessageType> context = idleContexts.poll();
+        if (context == null) {
+            return newContext();
+        }
+        context.markCreated();
+        return context;
+    }
+
+    /**
+     * Return a context, previously borrowed from this pool, to the pool.
+     * 
+     * @param context the context to return, may be null
+     */
+    public void returnContext(BasicMessageContext<MessageType> context) {
+        if (context == null) {
+            return;
+        }
+        context.reset();
+        idleContexts.offer(context);
+    }
+
+    /**
+     * Get the number of idle contexts currently held by the pool.
+     * 
+     * @return number of idle contexts
+     */
+    public int getIdleCount() {
+        return idleContexts.size();
+    }
+
+    /**
+     * Create a new context when none is idle.
+     * 
+     * @return the new message context
+     */
+    protected BasicMessageContext<MessageType> newContext() {
+        return new BasicMessageContext<MessageType>();
+    }
+
+}
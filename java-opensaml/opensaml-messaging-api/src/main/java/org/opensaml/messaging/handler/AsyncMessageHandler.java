@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.handler;
+
+import org.opensaml.messaging.context.MessageContext;
+
+/**
+ * A {@link MessageHandler} which may be invoked without blocking the calling thread, for example one which waits on
+ * a metadata fetch, a back-channel call or a remote store.
+ * 
+ * <p>
+ * Asynchronous handlers remain usable as ordinary handlers: {@link #invoke(MessageContext)} performs the same work,
+ * blocking until it is complete.
+ * </p>
+ * 
+ * <p>
+ * Handlers should observe the deadline and cancellation state held by the message context's
+ * {@link org.opensaml.messaging.handler.impl.InvocationControlContext}, if any.
+ * </p>
+ * 
+ * @param <MessageType> the type of message being handled
+ */
+public interface AsyncMessageHandler<MessageType> extends MessageHandler<MessageType> {
+
+    /**
+     * Start the invocation of the handler on the specified message context. This method must not block; the outcome
+     * of the invocation is reported through the callback.
+     * 
+     * @param messageContext the message context on which to invoke the handler
+     * @param callback the callback to which the outcome of the invocation is reported
+     */
+    public void invokeAsync(MessageContext<MessageType> messageContext, MessageHandlerCallback callback);
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.handler;
+
+/**
+ * A callback through which an {@link AsyncMessageHandler} reports the outcome of an asynchronous invocation.
+ * 
+ * <p>
+ * Exactly one of the callback's methods is called, exactly once, for each invocation. It may be called on any thread,
+ * including the thread which started the invocation, before {@link AsyncMessageHandler#invokeAsync} returns.
+ * </p>
+ */
+public interface MessageHandlerCallback {
+
+    /**
+     * Called when the handler has completed its work on the message context.
+     */
+    public void completed();
+
+    /**
+     * Called when the handler has failed.
+     * 
+     * @param error the error which caused the handler to fail
+     */
+    public void failed(MessageHandlerException error);
+
+}
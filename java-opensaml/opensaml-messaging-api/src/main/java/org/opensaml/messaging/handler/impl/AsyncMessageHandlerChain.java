@@ -0,0 +1,461 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.handler.impl;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.handler.AsyncMessageHandler;
+import org.opensaml.messaging.handler.MessageHandler;
+import org.opensaml.messaging.handler.MessageHandlerCallback;
+import org.opensaml.messaging.handler.MessageHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BasicMessageHandlerChain} which may be invoked without blocking the calling thread.
+ * 
+ * <p>
+ * Members implementing {@link AsyncMessageHandler} are invoked asynchronously and the chain resumes, on whichever
+ * thread reports their completion, once they complete. Other members are invoked inline. If an executor is set the
+ * invocation starts on it, otherwise it starts on the calling thread and runs inline until the first handler which
+ * does not complete immediately.
+ * </p>
+ * 
+ * <p>
+ * Before invoking each member the chain checks the message context's {@link InvocationControlContext}, failing the
+ * invocation if it has been cancelled or its deadline has passed. Cancelling the future returned by
+ * {@link #invokeAsync(MessageContext)} cancels the invocation through the same subcontext, and the future fails when
+ * the deadline passes even if the current member has not completed.
+ * </p>
+ * 
+ * <p>
+ * An invocation belongs to the generation of the control subcontext in which it started. Once the message context is
+ * reset, for instance when a pooled context is returned and reused for another message, the invocation is treated as
+ * cancelled and a member completing late is ignored rather than resuming the chain on the reused context.
+ * </p>
+ * 
+ * @param <MessageType> the type of message being handled
+ */
+public class AsyncMessageHandlerChain<MessageType> extends BasicMessageHandlerChain<MessageType> implements
+        AsyncMessageHandler<MessageType> {
+
+    /** Executor on which the futures of invocations with a deadline are failed once it passes. */
+    private static final ScheduledThreadPoolExecutor DEADLINE_EXECUTOR = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "AsyncMessageHandlerChain deadline timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(AsyncMessageHandlerChain.class);
+
+    /** Executor on which invocations are started, or null to start them on the calling thread. */
+    private Executor executor;
+
+    /**
+     * Get the executor on which invocations are started.
+     * 
+     * @return the executor on which invocations are started, or null if they are started on the calling thread
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor on which invocations are started. The lifecycle of the executor is managed by the caller.
+     * 
+     * @param newExecutor the executor on which invocations are started, or null to start them on the calling thread
+     */
+    public void setExecutor(Executor newExecutor) {
+        executor = newExecutor;
+    }
+
+    /**
+     * Invoke the handler chain on the specified message context without waiting for it to complete.
+     * 
+     * <p>
+     * If the chain fails, {@link Future#get()} throws an {@link ExecutionException} whose cause is the
+     * {@link MessageHandlerException}, or runtime exception, thrown or reported by the failing member. If the message
+     * context's {@link InvocationControlContext} has a deadline, the future fails with a
+     * {@link MessageHandlerException} once it passes, without waiting for the current member to complete.
+     * </p>
+     * 
+     * @param msgContext the message context on which to invoke the handler chain
+     * 
+     * @return a future which completes, with the message context, when the chain has completed
+     */
+    public Future<MessageContext<MessageType>> invokeAsync(final MessageContext<MessageType> msgContext) {
+        final InvocationControlContext control = msgContext.getSubcontext(InvocationControlContext.class, true);
+        final InvocationResult<MessageType> result = new InvocationResult<MessageType>(control);
+        invokeAsync(msgContext, new MessageHandlerCallback() {
+            public void completed() {
+                result.complete(msgContext);
+            }
+
+            public void failed(MessageHandlerException error) {
+                result.fail(error);
+            }
+        });
+        result.scheduleDeadline();
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public void invokeAsync(MessageContext<MessageType> msgContext, MessageHandlerCallback callback) {
+        List<MessageHandler<MessageType>> members = getHandlers();
+        @SuppressWarnings("unchecked")
+        MessageHandler<MessageType>[] handlers = members == null ? new MessageHandler[0] : members
+                .toArray(new MessageHandler[members.size()]);
+        ChainInvocation invocation = new ChainInvocation(handlers, msgContext, callback);
+
+        Executor currentExecutor = executor;
+        if (currentExecutor != null) {
+            try {
+                currentExecutor.execute(invocation);
+                return;
+            } catch (RejectedExecutionException e) {
+                log.debug("Executor rejected handler chain invocation, invoking on calling thread");
+            }
+        }
+        invocation.run();
+    }
+
+    /**
+     * The state of a single invocation of the chain, which steps through the members and acts as the callback of
+     * each asynchronous member.
+     */
+    private class ChainInvocation implements Runnable, MessageHandlerCallback {
+
+        /** Initial state of an asynchronous member invocation. */
+        private static final int CALLING = 0;
+
+        /** State of an asynchronous member invocation which completed before it returned. */
+        private static final int COMPLETED_INLINE = 1;
+
+        /** State of an asynchronous member invocation which returned before it completed. */
+        private static final int RETURNED = 2;
+
+        /** The members of the chain. */
+        private final MessageHandler<MessageType>[] handlers;
+
+        /** The message context on which the chain is invoked. */
+        private final MessageContext<MessageType> messageContext;
+
+        /** The callback to which the outcome of the chain invocation is reported. */
+        private final MessageHandlerCallback chainCallback;
+
+        /** State of the current asynchronous member invocation. */
+        private final AtomicInteger state;
+
+        /** Control subcontext of the message context. */
+        private final InvocationControlContext control;
+
+        /** Generation of the control subcontext when the invocation started. */
+        private final long controlGeneration;
+
+        /** Index of the next member to invoke. */
+        private int next;
+
+        /** Error reported by the current asynchronous member, if any. */
+        private volatile MessageHandlerException memberError;
+
+        /**
+         * Constructor.
+         * 
+         * @param members the members of the chain
+         * @param context the message context on which the chain is invoked
+         * @param callback the callback to which the outcome of the chain invocation is reported
+         */
+        public ChainInvocation(MessageHandler<MessageType>[] members, MessageContext<MessageType> context,
+                MessageHandlerCallback callback) {
+            handlers = members;
+            messageContext = context;
+            chainCallback = callback;
+            state = new AtomicInteger();
+            control = context.getSubcontext(InvocationControlContext.class, true);
+            controlGeneration = control.getGeneration();
+        }
+
+        /** Invoke members until the chain completes or a member does not complete immediately. */
+        public void run() {
+            try {
+                while (next < handlers.length) {
+                    checkControl();
+                    MessageHandler<MessageType> handler = handlers[next++];
+                    if (handler == null) {
+                        continue;
+                    }
+
+                    if (handler instanceof AsyncMessageHandler) {
+                        memberError = null;
+                        state.set(CALLING);
+                        ((AsyncMessageHandler<MessageType>) handler).invokeAsync(messageContext, this);
+                        if (state.compareAndSet(CALLING, RETURNED)) {
+                            // the member will resume the chain through its callback
+                            return;
+                        }
+                        if (memberError != null) {
+                            throw memberError;
+                        }
+                    } else {
+                        handler.invoke(messageContext);
+                    }
+                }
+            } catch (MessageHandlerException e) {
+                chainCallback.failed(e);
+                return;
+            } catch (RuntimeException e) {
+                chainCallback.failed(new MessageHandlerException(e));
+                return;
+            }
+            chainCallback.completed();
+        }
+
+        /** {@inheritDoc} */
+        public void completed() {
+            if (!state.compareAndSet(CALLING, COMPLETED_INLINE) && !isStale()) {
+                run();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void failed(MessageHandlerException error) {
+            memberError = error;
+            if (!state.compareAndSet(CALLING, COMPLETED_INLINE) && !isStale()) {
+                chainCallback.failed(error);
+            }
+        }
+
+        /**
+         * Check whether the message context has been reset since the invocation started, in which case the outcome of
+         * a member completing late belongs to a message which is no longer being handled and is dropped.
+         * 
+         * @return true if the message context has been reset since the invocation started
+         */
+        private boolean isStale() {
+            if (control.getGeneration() == controlGeneration) {
+                return false;
+            }
+            log.debug("Message context was reset before handler {} of {} completed, dropping its outcome", next,
+                    handlers.length);
+            return true;
+        }
+
+        /**
+         * Check that the invocation has not been cancelled, that the message context has not been reset since it started
+         * and that it has not passed its deadline.
+         * 
+         * @throws MessageHandlerException if the invocation has been cancelled or has passed its deadline
+         */
+        private void checkControl() throws MessageHandlerException {
+            if (control.isCancelled() || control.getGeneration() != controlGeneration) {
+                throw new MessageHandlerException("Message handling was cancelled");
+            }
+            if (control.isDeadlinePassed()) {
+                log.debug("Message handling deadline passed before invoking handler {} of {}", next + 1,
+                        handlers.length);
+                throw new MessageHandlerException("Message handling deadline passed");
+            }
+        }
+    }
+
+    /**
+     * The future result of an invocation of the chain. The first of completion, failure, cancellation and the
+     * deadline passing settles the result; later outcomes are ignored.
+     * 
+     * @param <T> the type of message being handled
+     */
+    private static final class InvocationResult<T> implements Future<MessageContext<T>> {
+
+        /** Control subcontext of the invocation. */
+        private final InvocationControlContext control;
+
+        /** Generation of the control subcontext when the invocation started. */
+        private final long controlGeneration;
+
+        /** Whether the result has been settled. */
+        private final AtomicBoolean settled;
+
+        /** Released once the result has been settled. */
+        private final CountDownLatch done;
+
+        /** The message context on which the chain was invoked, if it completed. */
+        private volatile MessageContext<T> messageContext;
+
+        /** The error with which the chain failed, if it failed. */
+        private volatile Throwable error;
+
+        /** Whether the invocation was cancelled. */
+        private volatile boolean cancelled;
+
+        /** Task failing the result once the deadline passes, if one has been scheduled. */
+        private volatile ScheduledFuture<?> deadlineTask;
+
+        /**
+         * Constructor.
+         * 
+         * @param invocationControl control subcontext of the invocation
+         */
+        private InvocationResult(InvocationControlContext invocationControl) {
+            control = invocationControl;
+            controlGeneration = invocationControl.getGeneration();
+            settled = new AtomicBoolean();
+            done = new CountDownLatch(1);
+        }
+
+        /**
+         * Complete the invocation successfully.
+         * 
+         * @param context the message context on which the chain was invoked
+         */
+        private void complete(MessageContext<T> context) {
+            if (settled.compareAndSet(false, true)) {
+                messageContext = context;
+                release();
+            }
+        }
+
+        /**
+         * Complete the invocation with an error.
+         * 
+         * @param cause the error
+         */
+        private void fail(Throwable cause) {
+            if (settled.compareAndSet(false, true)) {
+                error = cause;
+                release();
+            }
+        }
+
+        /** Fail the result once the deadline of the invocation passes, if it has one and is still running. */
+        private void scheduleDeadline() {
+            long remaining = control.getRemainingTime();
+            if (remaining == Long.MAX_VALUE || isDone()) {
+                return;
+            }
+
+            // one past the deadline, so that the control subcontext also reports it passed and stops the chain
+            ScheduledFuture<?> task = DEADLINE_EXECUTOR.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        fail(new MessageHandlerException("Message handling deadline passed"));
+                    } catch (RuntimeException e) {
+                        LoggerFactory.getLogger(AsyncMessageHandlerChain.class).error(
+                                "Unable to fail message handling whose deadline passed", e);
+                    }
+                }
+            }, Math.max(0, remaining + 1), TimeUnit.MILLISECONDS);
+            deadlineTask = task;
+            if (isDone()) {
+                // settled before the task was published, so release() could not cancel it
+                cancelDeadline(task);
+            }
+        }
+
+        /** Release waiting threads and cancel the deadline task, once the result has been settled. */
+        private void release() {
+            done.countDown();
+            ScheduledFuture<?> task = deadlineTask;
+            if (task != null) {
+                cancelDeadline(task);
+            }
+        }
+
+        /**
+         * Cancel the deadline task and remove it from the executor's queue, so that it no longer keeps the result and
+         * its message context reachable until the deadline.
+         * 
+         * @param task the deadline task
+         */
+        private void cancelDeadline(ScheduledFuture<?> task) {
+            deadlineTask = null;
+            if (task.cancel(false)) {
+                DEADLINE_EXECUTOR.purge();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!settled.compareAndSet(false, true)) {
+                return false;
+            }
+            // the context may since have been reset and reused for another message, which must not be cancelled
+            control.cancel(controlGeneration);
+            cancelled = true;
+            release();
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /** {@inheritDoc} */
+        public MessageContext<T> get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        /** {@inheritDoc} */
+        public MessageContext<T> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException("Message handling did not complete in time");
+            }
+            return getResult();
+        }
+
+        /**
+         * Get the settled result.
+         * 
+         * @return the message context on which the chain was invoked
+         * 
+         * @throws ExecutionException if the chain failed
+         */
+        private MessageContext<T> getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException("Message handling was cancelled");
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return messageContext;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensaml.messaging.handler.impl;
+
+import org.opensaml.messaging.context.Resettable;
+import org.opensaml.messaging.context.SubcontextContainer;
+import org.opensaml.messaging.context.impl.BaseSubcontext;
+
+/**
+ * A subcontext which carries the deadline and cancellation state of the handling of a message.
+ * 
+ * <p>
+ * Handler chains check this state before invoking each handler, and long running handlers should check it while
+ * they work. The state may be changed from any thread.
+ * </p>
+ * 
+ * <p>
+ * Each {@link #reset()} starts a new generation of the context, so that a party holding on to the context after the
+ * handling it controlled has finished, such as the future of an earlier invocation of a pooled message context, can
+ * cancel through {@link #cancel(long)} without affecting the handling of a later message.
+ * </p>
+ */
+public class InvocationControlContext extends BaseSubcontext implements Resettable {
+
+    /** Deadline, in milliseconds since the epoch, by which handling must complete, or 0 for none. */
+    private volatile long deadline;
+
+    /** Whether handling has been cancelled. */
+    private volatile boolean cancelled;
+
+    /** Generation of the context, incremented on each reset. */
+    private volatile long generation;
+
+    /**
+     * Constructor.
+     *
+     * @param container the owning subcontext container
+     */
+    public InvocationControlContext(SubcontextContainer container) {
+        super(container);
+    }
+
+    /**
+     * Get the deadline by which handling must complete.
+     * 
+     * @return the deadline in milliseconds since the epoch, or 0 if there is none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Set the deadline by which handling must complete.
+     * 
+     * @param newDeadline the deadline in milliseconds since the epoch, or 0 for none
+     */
+    public void setDeadline(long newDeadline) {
+        deadline = newDeadline;
+    }
+
+    /**
+     * Set the deadline by which handling must complete relative to the current time.
+     * 
+     * @param timeout the time, in milliseconds, from now by which handling must complete
+     */
+    public void setTimeout(long timeout) {
+        deadline = System.currentTimeMillis() + timeout;
+    }
+
+    /**
+     * Get the time remaining until the deadline.
+     * 
+     * @return the time remaining in milliseconds, which is negative if the deadline has passed, or
+     *          {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long getRemainingTime() {
+        long currentDeadline = deadline;
+        if (currentDeadline <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return currentDeadline - System.currentTimeMillis();
+    }
+
+    /**
+     * Get whether the deadline has passed.
+     * 
+     * @return true if there is a deadline and it has passed
+     */
+    public boolean isDeadlinePassed() {
+        return getRemainingTime() < 0;
+    }
+
+    /**
+     * Cancel handling.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Cancel handling, provided the context has not been reset since the given generation.
+     * 
+     * @param expectedGeneration the generation of the handling to cancel, as returned by {@link #getGeneration()}
+     * 
+     * @return true if handling was cancelled, false if the context has since been reset
+     */
+    public synchronized boolean cancel(long expectedGeneration) {
+        if (generation != expectedGeneration) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * Get the generation of the context, which changes each time the context is reset.
+     * 
+     * @return the generation of the context
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get whether handling has been cancelled.
+     * 
+     * @return true if handling has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Clears the deadline and cancellation state and starts a new generation. */
+    public synchronized void reset() {
+        generation++;
+        deadline = 0;
+        cancelled = false;
+    }
+
+}
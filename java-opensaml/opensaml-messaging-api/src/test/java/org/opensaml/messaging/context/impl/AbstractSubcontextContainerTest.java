@@ -0,0 +1,195 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.messaging.context.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.opensaml.messaging.context.Subcontext;
+import org.opensaml.messaging.context.SubcontextContainer;
+import org.opensaml.messaging.handler.impl.InvocationControlContext;
+
+/**
+ * Test the reset and subcontext creation behavior of subcontext containers.
+ */
+public class AbstractSubcontextContainerTest extends TestCase {
+
+    /**
+     * Test that resettable subcontexts are reset and handed back after the container is reset.
+     */
+    public void testRetainedSubcontext() {
+        BasicMessageContext<String> context = new BasicMessageContext<String>();
+        InvocationControlContext control = context.getSubcontext(InvocationControlContext.class, true);
+        control.setTimeout(1000);
+        control.cancel();
+        PlainSubcontext plain = context.getSubcontext(PlainSubcontext.class, true);
+
+        context.reset();
+        assertFalse(context.containsSubcontext(InvocationControlContext.class));
+        assertFalse(context.containsSubcontext(PlainSubcontext.class));
+
+        assertSame(control, context.getSubcontext(InvocationControlContext.class, true));
+        assertFalse(control.isCancelled());
+        assertEquals(0, control.getDeadline());
+        assertNotSame(plain, context.getSubcontext(PlainSubcontext.class, true));
+    }
+
+    /**
+     * Test that a retained subcontext is only handed back through automatic creation.
+     */
+    public void testRetainedSubcontextNotAutoCreated() {
+        BasicMessageContext<String> context = new BasicMessageContext<String>();
+        context.getSubcontext(InvocationControlContext.class, true);
+        context.reset();
+        assertNull(context.getSubcontext(InvocationControlContext.class, false));
+    }
+
+    /**
+     * Test that the cached constructor of a subcontext class survives an ordinary garbage collection.
+     */
+    public void testConstructorCacheSurvivesCollection() throws Exception {
+        new BasicMessageContext<String>().getSubcontext(PlainSubcontext.class, true);
+        Field cacheField = AbstractSubcontextContainer.class.getDeclaredField("SUBCONTEXT_CONSTRUCTORS");
+        cacheField.setAccessible(true);
+        Map<?, ?> cache = (Map<?, ?>) cacheField.get(null);
+
+        System.gc();
+        Reference<?> constructorRef = (Reference<?>) cache.get(PlainSubcontext.class);
+        assertNotNull("Constructor was not cached", constructorRef);
+        assertNotNull("Cached constructor was collected", constructorRef.get());
+    }
+
+    /**
+     * Test that caching the constructor of a subcontext class does not keep its class loader reachable once memory
+     * runs short.
+     */
+    public void testConstructorCacheDoesNotPinClassLoader() throws Exception {
+        WeakReference<ClassLoader> loaderRef = createIsolatedSubcontext();
+        for (int i = 0; i < 50 && loaderRef.get() != null; i++) {
+            exhaustMemory();
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull("Subcontext class loader was not collected", loaderRef.get());
+    }
+
+    /**
+     * Allocate until the heap is exhausted, which clears all softly referenced objects.
+     */
+    private void exhaustMemory() {
+        List<long[]> hog = new ArrayList<long[]>();
+        int size = (int) Math.min(Integer.MAX_VALUE - 8, Runtime.getRuntime().maxMemory() / 8);
+        try {
+            while (true) {
+                hog.add(new long[size]);
+            }
+        } catch (OutOfMemoryError e) {
+            hog = null;
+        }
+    }
+
+    /**
+     * Automatically create a subcontext whose class is loaded by a class loader of its own.
+     * 
+     * @return a reference to the class loader of the subcontext class
+     * 
+     * @throws ClassNotFoundException if the subcontext class can not be loaded
+     */
+    private WeakReference<ClassLoader> createIsolatedSubcontext() throws ClassNotFoundException {
+        ClassLoader loader = new IsolatingClassLoader(PlainSubcontext.class.getName());
+        Class<? extends Subcontext> clazz = loader.loadClass(PlainSubcontext.class.getName()).asSubclass(
+                Subcontext.class);
+        assertNotSame(PlainSubcontext.class, clazz);
+
+        BasicMessageContext<String> context = new BasicMessageContext<String>();
+        assertSame(clazz, context.getSubcontext(clazz, true).getClass());
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    /**
+     * A subcontext which is not resettable.
+     */
+    public static class PlainSubcontext extends BaseSubcontext {
+
+        public PlainSubcontext(SubcontextContainer container) {
+            super(container);
+        }
+    }
+
+    /**
+     * A class loader which defines one class itself and delegates the loading of all others.
+     */
+    private static class IsolatingClassLoader extends ClassLoader {
+
+        private final String isolatedName;
+
+        public IsolatingClassLoader(String className) {
+            super(IsolatingClassLoader.class.getClassLoader());
+            isolatedName = className;
+        }
+
+        /** {@inheritDoc} */
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isolatedName.equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes = readClass(name);
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.messaging.context.impl;
+
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.handler.AsyncMessageHandler;
+import org.opensaml.messaging.handler.MessageHandler;
+import org.opensaml.messaging.handler.MessageHandlerCallback;
+import org.opensaml.messaging.handler.impl.AsyncMessageHandlerChain;
+import org.opensaml.messaging.handler.impl.BaseMessageHandler;
+import org.opensaml.messaging.handler.impl.InvocationControlContext;
+
+/**
+ * Test the message context pool.
+ */
+public class MessageContextPoolTest extends TestCase {
+
+    private MessageContextPool<String> pool;
+
+    private int resets;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        resets = 0;
+        pool = new MessageContextPool<String>(2) {
+            protected BasicMessageContext<String> newContext() {
+                return new BasicMessageContext<String>() {
+                    public void reset() {
+                        resets++;
+                        super.reset();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Test that a context is reset once, on return, and then reused.
+     */
+    public void testResetOnce() throws Exception {
+        BasicMessageContext<String> context = pool.borrowContext();
+        context.setMessage("message");
+        assertEquals(0, resets);
+
+        pool.returnContext(context);
+        assertEquals(1, resets);
+        assertNull("Idle context kept its message", context.getMessage());
+        assertEquals(1, pool.getIdleCount());
+
+        long returned = context.getCreationTime().getMillis();
+        Thread.sleep(5);
+        assertSame(context, pool.borrowContext());
+        assertEquals("Context was reset again when borrowed", 1, resets);
+        assertTrue("Creation time was not set on borrow", context.getCreationTime().getMillis() > returned);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    /**
+     * Test that contexts returned to a full pool are discarded.
+     */
+    public void testFullPool() {
+        BasicMessageContext<String> first = pool.borrowContext();
+        BasicMessageContext<String> second = pool.borrowContext();
+        BasicMessageContext<String> third = pool.borrowContext();
+        pool.returnContext(first);
+        pool.returnContext(second);
+        pool.returnContext(third);
+        pool.returnContext(null);
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    /**
+     * Test that cancelling the future of an earlier use of a pooled context does not cancel the handling of the
+     * message for which the context has since been reused.
+     */
+    public void testStaleCancel() throws Exception {
+        PendingHandler pending = new PendingHandler();
+        AsyncMessageHandlerChain<String> chain = new AsyncMessageHandlerChain<String>();
+        chain.setHandlers(Collections.<MessageHandler<String>> singletonList(pending));
+
+        BasicMessageContext<String> context = pool.borrowContext();
+        Future<MessageContext<String>> staleResult = chain.invokeAsync(context);
+        InvocationControlContext control = context.getSubcontext(InvocationControlContext.class, false);
+        pending.callback.completed();
+        assertTrue(staleResult.isDone());
+        pool.returnContext(context);
+
+        assertSame(context, pool.borrowContext());
+        Future<MessageContext<String>> result = chain.invokeAsync(context);
+        assertSame("Control subcontext was not reused", control,
+                context.getSubcontext(InvocationControlContext.class, false));
+
+        assertFalse(staleResult.cancel(true));
+        MessageHandlerCallback resultCallback = pending.callback;
+
+        // a future which was still pending when its context was returned
+        BasicMessageContext<String> other = pool.borrowContext();
+        Future<MessageContext<String>> abandoned = chain.invokeAsync(other);
+        InvocationControlContext otherControl = other.getSubcontext(InvocationControlContext.class, false);
+        pool.returnContext(other);
+        assertSame(other, pool.borrowContext());
+        assertSame(otherControl, other.getSubcontext(InvocationControlContext.class, true));
+        assertTrue(abandoned.cancel(true));
+        assertFalse("Stale cancel cancelled the reused context", otherControl.isCancelled());
+
+        resultCallback.completed();
+        assertSame(context, result.get(5, TimeUnit.SECONDS));
+        assertFalse(control.isCancelled());
+    }
+
+    /**
+     * An asynchronous handler which completes only when its callback is called by the test.
+     */
+    private static class PendingHandler extends BaseMessageHandler<String> implements AsyncMessageHandler<String> {
+
+        private volatile MessageHandlerCallback callback;
+
+        /** {@inheritDoc} */
+        public void invoke(MessageContext<String> messageContext) {
+        }
+
+        /** {@inheritDoc} */
+        public void invokeAsync(MessageContext<String> messageContext, MessageHandlerCallback handlerCallback) {
+            callback = handlerCallback;
+        }
+    }
+}
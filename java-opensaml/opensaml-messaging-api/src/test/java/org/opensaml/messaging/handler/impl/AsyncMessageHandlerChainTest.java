@@ -0,0 +1,351 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.messaging.handler.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.context.impl.BasicMessageContext;
+import org.opensaml.messaging.context.impl.MessageContextPool;
+import org.opensaml.messaging.handler.AsyncMessageHandler;
+import org.opensaml.messaging.handler.MessageHandler;
+import org.opensaml.messaging.handler.MessageHandlerCallback;
+import org.opensaml.messaging.handler.MessageHandlerException;
+
+/**
+ * Test the asynchronous message handler chain.
+ */
+public class AsyncMessageHandlerChainTest extends TestCase {
+
+    private AsyncMessageHandlerChain<String> chain;
+
+    private List<MessageHandler<String>> handlers;
+
+    private List<String> invoked;
+
+    private BasicMessageContext<String> messageContext;
+
+    private ExecutorService executor;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+        chain = new AsyncMessageHandlerChain<String>();
+        handlers = new ArrayList<MessageHandler<String>>();
+        invoked = Collections.synchronizedList(new ArrayList<String>());
+        messageContext = new BasicMessageContext<String>();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    /**
+     * Test that a long chain of members which complete inline runs without growing the stack.
+     */
+    public void testTrampolining() throws Exception {
+        for (int i = 0; i < 100000; i++) {
+            handlers.add(new InlineHandler("inline"));
+        }
+        handlers.add(new SyncHandler("last"));
+
+        Future<MessageContext<String>> result = invokeChain();
+        assertTrue(result.isDone());
+        assertSame(messageContext, result.get());
+        assertEquals(100001, invoked.size());
+    }
+
+    /**
+     * Test that the chain resumes on the thread completing an asynchronous member.
+     */
+    public void testAsyncResume() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final List<Thread> resumedOn = new ArrayList<Thread>();
+        final PendingHandler pending = new PendingHandler("async");
+        handlers.add(new SyncHandler("first"));
+        handlers.add(pending);
+        handlers.add(new SyncHandler("last") {
+            public void invoke(MessageContext<String> context) throws MessageHandlerException {
+                super.invoke(context);
+                resumedOn.add(Thread.currentThread());
+            }
+        });
+
+        // complete the member only once it has returned, so the chain can not continue on the calling thread
+        Future<MessageContext<String>> result = invokeChain();
+        assertFalse(result.isDone());
+        executor.execute(new Runnable() {
+            public void run() {
+                pending.callback.completed();
+            }
+        });
+        assertSame(messageContext, result.get(5, TimeUnit.SECONDS));
+        assertEquals(3, invoked.size());
+        assertEquals("last", invoked.get(2));
+        assertNotSame("Chain did not resume on the completing thread", caller, resumedOn.get(0));
+    }
+
+    /**
+     * Test that errors thrown or reported by members fail the invocation and stop the chain.
+     */
+    public void testFailurePropagation() throws Exception {
+        final MessageHandlerException error = new MessageHandlerException("failed");
+        handlers.add(new ExecutorHandler("async"));
+        handlers.add(new SyncHandler("failing") {
+            public void invoke(MessageContext<String> context) throws MessageHandlerException {
+                super.invoke(context);
+                throw error;
+            }
+        });
+        handlers.add(new SyncHandler("unreached"));
+        assertFailure(error, invokeChain());
+        assertFalse(invoked.contains("unreached"));
+
+        handlers.clear();
+        invoked.clear();
+        handlers.add(new InlineHandler("reporting") {
+            public void invokeAsync(MessageContext<String> context, MessageHandlerCallback callback) {
+                invoked.add(getId());
+                callback.failed(error);
+            }
+        });
+        handlers.add(new SyncHandler("unreached"));
+        assertFailure(error, invokeChain());
+        assertFalse(invoked.contains("unreached"));
+
+        handlers.clear();
+        final IllegalStateException runtimeError = new IllegalStateException("broken");
+        handlers.add(new SyncHandler("throwing") {
+            public void invoke(MessageContext<String> context) {
+                throw runtimeError;
+            }
+        });
+        try {
+            invokeChain().get();
+            fail("Runtime exception did not fail the invocation");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MessageHandlerException);
+            assertSame(runtimeError, e.getCause().getCause());
+        }
+    }
+
+    /**
+     * Test that cancelling the future cancels the invocation and stops the chain.
+     */
+    public void testCancel() throws Exception {
+        PendingHandler pending = new PendingHandler("pending");
+        handlers.add(pending);
+        handlers.add(new SyncHandler("unreached"));
+
+        Future<MessageContext<String>> result = invokeChain();
+        assertFalse(result.isDone());
+        assertTrue(result.cancel(true));
+        assertTrue(result.isCancelled());
+        assertTrue(result.isDone());
+        assertFalse("Cancelled invocation was cancelled again", result.cancel(true));
+        assertTrue(messageContext.getSubcontext(InvocationControlContext.class).isCancelled());
+        try {
+            result.get();
+            fail("Cancelled invocation returned a result");
+        } catch (CancellationException e) {
+            // expected
+        }
+
+        pending.callback.completed();
+        assertFalse(invoked.contains("unreached"));
+        assertTrue(result.isCancelled());
+    }
+
+    /**
+     * Test that a member completing after its cancelled invocation's pooled context was reused does not resume the
+     * chain on the reused context.
+     */
+    public void testStaleCompletionAfterReuse() throws Exception {
+        MessageContextPool<String> pool = new MessageContextPool<String>();
+        BasicMessageContext<String> context = pool.borrowContext();
+        PendingHandler pending = new PendingHandler("pending");
+        handlers.add(pending);
+        handlers.add(new SyncHandler("unreached"));
+        chain.setHandlers(handlers);
+
+        Future<MessageContext<String>> result = chain.invokeAsync(context);
+        assertTrue(result.cancel(true));
+        pool.returnContext(context);
+        assertSame(context, pool.borrowContext());
+        assertFalse(context.getSubcontext(InvocationControlContext.class, true).isCancelled());
+
+        pending.callback.completed();
+        assertFalse(invoked.contains("unreached"));
+        assertTrue(result.isCancelled());
+
+        final List<MessageHandlerException> reported = new ArrayList<MessageHandlerException>();
+        chain.invokeAsync(context, new MessageHandlerCallback() {
+            public void completed() {
+                fail("Stale invocation completed");
+            }
+
+            public void failed(MessageHandlerException error) {
+                reported.add(error);
+            }
+        });
+        pool.returnContext(context);
+        pending.callback.failed(new MessageHandlerException("late"));
+        assertTrue("Stale failure was reported", reported.isEmpty());
+    }
+
+    /**
+     * Test that the future fails once the deadline passes while a member is still running.
+     */
+    public void testDeadline() throws Exception {
+        PendingHandler pending = new PendingHandler("pending");
+        handlers.add(pending);
+        handlers.add(new SyncHandler("unreached"));
+        messageContext.getSubcontext(InvocationControlContext.class, true).setTimeout(50);
+
+        Future<MessageContext<String>> result = invokeChain();
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Invocation completed after its deadline");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MessageHandlerException);
+        }
+        assertFalse(result.isCancelled());
+
+        pending.callback.completed();
+        assertFalse(invoked.contains("unreached"));
+    }
+
+    /**
+     * Test that the future can not be completed other than by the chain.
+     */
+    public void testFutureNotRunnable() {
+        handlers.add(new PendingHandler("pending"));
+        Future<MessageContext<String>> result = invokeChain();
+        assertFalse(result instanceof Runnable);
+        assertFalse(result.isDone());
+        result.cancel(false);
+    }
+
+    /**
+     * Invoke the chain, with the members added by the test, on the message context.
+     * 
+     * @return the future result of the invocation
+     */
+    private Future<MessageContext<String>> invokeChain() {
+        chain.setHandlers(handlers);
+        return chain.invokeAsync(messageContext);
+    }
+
+    /**
+     * Check that an invocation failed with the given error.
+     * 
+     * @param error the expected error
+     * @param result the future result of the invocation
+     */
+    private void assertFailure(MessageHandlerException error, Future<MessageContext<String>> result)
+            throws Exception {
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Invocation did not fail");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    /**
+     * A synchronous member which records its invocation.
+     */
+    private class SyncHandler extends BaseMessageHandler<String> {
+
+        public SyncHandler(String id) {
+            setId(id);
+        }
+
+        /** {@inheritDoc} */
+        public void invoke(MessageContext<String> context) throws MessageHandlerException {
+            invoked.add(getId());
+        }
+    }
+
+    /**
+     * An asynchronous member which completes before it returns.
+     */
+    private class InlineHandler extends SyncHandler implements AsyncMessageHandler<String> {
+
+        public InlineHandler(String id) {
+            super(id);
+        }
+
+        /** {@inheritDoc} */
+        public void invokeAsync(MessageContext<String> context, MessageHandlerCallback callback) {
+            invoked.add(getId());
+            callback.completed();
+        }
+    }
+
+    /**
+     * An asynchronous member which completes on the executor.
+     */
+    private class ExecutorHandler extends SyncHandler implements AsyncMessageHandler<String> {
+
+        public ExecutorHandler(String id) {
+            super(id);
+        }
+
+        /** {@inheritDoc} */
+        public void invokeAsync(MessageContext<String> context, final MessageHandlerCallback callback) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    invoked.add(getId());
+                    callback.completed();
+                }
+            });
+        }
+    }
+
+    /**
+     * An asynchronous member which completes only when its callback is called by the test.
+     */
+    private class PendingHandler extends SyncHandler implements AsyncMessageHandler<String> {
+
+        private volatile MessageHandlerCallback callback;
+
+        public PendingHandler(String id) {
+            super(id);
+        }
+
+        /** {@inheritDoc} */
+        public void invokeAsync(MessageContext<String> context, MessageHandlerCallback handlerCallback) {
+            invoked.add(getId());
+            callback = handlerCallback;
+        }
+    }
+}
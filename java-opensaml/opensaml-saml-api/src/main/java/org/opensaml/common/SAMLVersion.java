@@ -31,13 +31,13 @@ public final class SAMLVersion {
     public static final SAMLVersion VERSION_20 = new SAMLVersion(2, 0);
 
     /** Major version number. */
-    private int majorVersion;
+    private final int majorVersion;
 
     /** Minor version number. */
-    private int minorVersion;
+    private final int minorVersion;
 
     /** String representation of the version. */
-    private String versionString;
+    private final String versionString;
 
     /**
      * Constructor.
@@ -22,11 +22,11 @@ import java.io.ObjectOutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 
-import org.joda.time.DateTime;
 import org.opensaml.Configuration;
 import org.opensaml.common.SAMLObject;
 import org.opensaml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntry;
 import org.opensaml.util.storage.AbstractExpiringObject;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLRuntimeException;
 import org.opensaml.xml.io.MarshallingException;
 import org.opensaml.xml.io.UnmarshallingException;
@@ -74,7 +74,7 @@ public class BasicSAMLArtifactMapEntry extends AbstractExpiringObject implements
      */
     public BasicSAMLArtifactMapEntry(String samlArtifact, String issuerId, String relyingPartyId, 
             String serializedSAML, long lifetime) {
-        super(new DateTime().plus(lifetime));
+        super(ClockSupport.currentTimeMillis() + lifetime);
         artifact = samlArtifact;
         issuer = issuerId;
         relyingParty = relyingPartyId;
@@ -92,7 +92,7 @@ public class BasicSAMLArtifactMapEntry extends AbstractExpiringObject implements
      */
     public BasicSAMLArtifactMapEntry(String samlArtifact, String issuerId, String relyingPartyId, 
             SAMLObject samlMessage, long lifetime) {
-        super(new DateTime().plus(lifetime));
+        super(ClockSupport.currentTimeMillis() + lifetime);
         artifact = samlArtifact;
         issuer = issuerId;
         relyingParty = relyingPartyId;
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.artifact;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.opensaml.Configuration;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntry;
+import org.opensaml.util.storage.AbstractExpiringObject;
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.xml.XMLRuntimeException;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.parse.ParserPool;
+import org.opensaml.xml.parse.XMLParserException;
+import org.opensaml.xml.util.XMLObjectHelper;
+
+/**
+ * Implementation of {@link SAMLArtifactMapEntry} which holds the SAML message only as DEFLATE compressed, UTF-8
+ * encoded, XML.
+ *
+ * The message is serialized and compressed when the entry is created and is parsed anew each time it is retrieved, no
+ * reference to the message object is retained. Since an artifact is normally dereferenced only once this trades a
+ * single parse for a far smaller footprint while the entry is stored.
+ */
+public class CompressedSAMLArtifactMapEntry extends AbstractExpiringObject implements SAMLArtifactMapEntry {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = -3436146290591843374L;
+
+    /** SAML artifact being mapped. */
+    private String artifact;
+
+    /** Entity ID of the issuer of the artifact. */
+    private String issuer;
+
+    /** Entity ID of the receiver of the artifact. */
+    private String relyingParty;
+
+    /** Compressed serialized SAML message mapped to the artifact. */
+    private byte[] compressedMessage;
+
+    /**
+     * Constructor.
+     *
+     * @param samlArtifact artifact associated with the message
+     * @param issuerId issuer of the artifact
+     * @param relyingPartyId receiver of the artifact
+     * @param samlMessage SAML message mapped to the artifact, which must be the root of its DOM document
+     * @param lifetime lifetime of the artifact in milliseconds
+     */
+    public CompressedSAMLArtifactMapEntry(String samlArtifact, String issuerId, String relyingPartyId,
+            SAMLObject samlMessage, long lifetime) {
+        super(ClockSupport.currentTimeMillis() + lifetime);
+        artifact = samlArtifact;
+        issuer = issuerId;
+        relyingParty = relyingPartyId;
+        compressedMessage = compress(samlMessage);
+    }
+
+    /** {@inheritDoc} */
+    public String getArtifact() {
+        return artifact;
+    }
+
+    /** {@inheritDoc} */
+    public String getIssuerId() {
+        return issuer;
+    }
+
+    /** {@inheritDoc} */
+    public String getRelyingPartyId() {
+        return relyingParty;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A new message object is parsed from the stored form on each call.
+     */
+    public SAMLObject getSamlMessage() {
+        ParserPool parserPool = Configuration.getParserPool();
+        if (parserPool == null) {
+            throw new XMLRuntimeException("No ParserPool was available for parsing the artifact map entry");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            InflaterInputStream messageIn = new InflaterInputStream(new ByteArrayInputStream(compressedMessage),
+                    inflater);
+            return (SAMLObject) XMLObjectHelper.unmarshallFromInputStream(parserPool, messageIn);
+        } catch (XMLParserException e) {
+            throw new XMLRuntimeException("Error parsing XML into DOM", e);
+        } catch (UnmarshallingException e) {
+            throw new XMLRuntimeException("Error unmarshalling DOM into SAMLObject", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Gets the size in bytes of the stored form of the SAML message.
+     *
+     * @return size in bytes of the stored form of the SAML message
+     */
+    public int getCompressedMessageSize() {
+        return compressedMessage.length;
+    }
+
+    /**
+     * Serializes and compresses the given SAML message.
+     *
+     * @param samlMessage the SAML message
+     *
+     * @return the compressed serialized message
+     */
+    private byte[] compress(SAMLObject samlMessage) {
+        if (samlMessage == null) {
+            throw new IllegalArgumentException("SAMLObject message may not be null");
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            DeflaterOutputStream messageOut = new DeflaterOutputStream(bytesOut, deflater);
+            XMLObjectHelper.marshallToOutputStream(samlMessage, messageOut);
+            messageOut.finish();
+            return bytesOut.toByteArray();
+        } catch (MarshallingException e) {
+            throw new XMLRuntimeException("Error marshalling the SAMLObject", e);
+        } catch (IOException e) {
+            throw new XMLRuntimeException("Error compressing the SAMLObject", e);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.artifact;
+
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntry;
+import org.opensaml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntryFactory;
+import org.opensaml.xml.XMLRuntimeException;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.util.XMLObjectHelper;
+
+/**
+ * A factory for {@link CompressedSAMLArtifactMapEntry} instances, which hold the SAML message only in compressed,
+ * serialized, form.
+ * 
+ * <p>
+ * If the SAMLObject being stored has a parent it is first cloned, with its cloned DOM rooted in a new Document, so
+ * that the serialized form carries all in-scope namespace declarations.
+ * </p>
+ */
+public class CompressedSAMLArtifactMapEntryFactory implements SAMLArtifactMapEntryFactory {
+
+    /** {@inheritDoc} */
+    public SAMLArtifactMapEntry newEntry(String artifact, String issuerId, String relyingPartyId,
+            SAMLObject samlMessage, long lifetime) {
+        SAMLObject rootMessage = samlMessage;
+        if (samlMessage.hasParent()) {
+            try {
+                rootMessage = XMLObjectHelper.cloneXMLObject(samlMessage, true);
+            } catch (MarshallingException e) {
+                throw new XMLRuntimeException("Error during marshalling of SAMLObject", e);
+            } catch (UnmarshallingException e) {
+                throw new XMLRuntimeException("Error during unmarshalling of SAMLObject", e);
+            }
+        }
+
+        return new CompressedSAMLArtifactMapEntry(artifact, issuerId, relyingPartyId, rootMessage, lifetime);
+    }
+}
@@ -45,7 +45,7 @@ public abstract class BaseSAMLMessageDecoder extends BaseMessageDecoder implemen
     /** Constructor. */
     public BaseSAMLMessageDecoder() {
         super();
-        setURIComparator(new BasicURLComparator());
+        setURIComparator(new CompiledURLComparator());
     }
 
     /**
@@ -55,7 +55,7 @@ public abstract class BaseSAMLMessageDecoder extends BaseMessageDecoder implemen
      */
     public BaseSAMLMessageDecoder(ParserPool pool) {
         super(pool);
-        setURIComparator(new BasicURLComparator());
+        setURIComparator(new CompiledURLComparator());
     }
 
     /**
@@ -154,7 +154,7 @@ public abstract class BaseSAMLMessageDecoder extends BaseMessageDecoder implemen
      * 
      * <p>The comparison is performed using the configured instance of {@link URIComparator}.
      * By default, the URL subtype of URI is supported, and the default comparator implementation used 
-     * is {@link BasicURLComparator}. Other types of URI's may be supported by configuring a 
+     * is {@link CompiledURLComparator}. Other types of URI's may be supported by configuring a 
      * different implementation of {@link URIComparator}.
      * </p>
      * 
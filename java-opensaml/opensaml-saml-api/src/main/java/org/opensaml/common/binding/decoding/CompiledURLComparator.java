@@ -0,0 +1,336 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.decoding;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opensaml.util.SimpleURLCanonicalizer;
+import org.opensaml.xml.util.DatatypeHelper;
+
+/**
+ * An implementation of {@link URIComparator} which gives the same results as {@link BasicURLComparator} while
+ * avoiding the canonicalization of both URL's on each comparison.
+ * 
+ * <p>
+ * Each URL is compiled once, by canonicalizing it and locating its scheme, host, port and remaining components.
+ * The receiver endpoints known at startup may be compiled up front with {@link #setReceiverEndpoints(Collection)};
+ * other URL's are compiled on demand and the most recently used are cached. A message destination is first scanned,
+ * without allocation, against the compiled receiver endpoint, matching when the two differ at most in the case of the
+ * scheme and host and the presence of the default port. Only if that scan does not match are the canonical forms
+ * compared.
+ * </p>
+ * 
+ * <p>
+ * Default ports are those registered with {@link SimpleURLCanonicalizer} at the time a URL is compiled.
+ * </p>
+ */
+public class CompiledURLComparator extends BasicURLComparator {
+
+    /** Default number of recently used URL's whose compiled form is cached: {@value} . */
+    public static final int DEFAULT_CACHE_SIZE = 128;
+
+    /** Compiled receiver endpoints, indexed by URL. */
+    private volatile Map<String, CompiledURL> receiverEndpoints;
+
+    /** Compiled recently used URL's, indexed by URL, in access order. */
+    private final Map<String, CompiledURL> recentURLs;
+
+    /** Constructor. */
+    public CompiledURLComparator() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param cacheSize number of recently used URL's whose compiled form is cached
+     */
+    public CompiledURLComparator(final int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size may not be negative");
+        }
+        receiverEndpoints = Collections.emptyMap();
+        recentURLs = new LinkedHashMap<String, CompiledURL>(16, 0.75f, true) {
+
+            /** Serial version UID. */
+            private static final long serialVersionUID = -3871942610519207652L;
+
+            /** {@inheritDoc} */
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledURL> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the receiver endpoint URL's compiled up front.
+     * 
+     * @return receiver endpoint URL's compiled up front
+     */
+    public Collection<String> getReceiverEndpoints() {
+        return receiverEndpoints.keySet();
+    }
+
+    /**
+     * Sets the receiver endpoint URL's to compile up front. These are never evicted from the cache.
+     * 
+     * @param endpoints receiver endpoint URL's to compile up front
+     * 
+     * @throws IllegalArgumentException thrown if an endpoint is not a well formed URL
+     */
+    public void setReceiverEndpoints(Collection<String> endpoints) {
+        HashMap<String, CompiledURL> compiledEndpoints = new HashMap<String, CompiledURL>();
+        if (endpoints != null) {
+            String trimmedEndpoint;
+            for (String endpoint : endpoints) {
+                trimmedEndpoint = DatatypeHelper.safeTrimOrNullString(endpoint);
+                if (trimmedEndpoint != null) {
+                    compiledEndpoints.put(trimmedEndpoint, new CompiledURL(trimmedEndpoint));
+                }
+            }
+        }
+        receiverEndpoints = Collections.unmodifiableMap(compiledEndpoints);
+    }
+
+    /** {@inheritDoc} */
+    public boolean compare(String uri1, String uri2) {
+        if (uri1 == null) {
+            return uri2 == null;
+        } else if (uri2 == null) {
+            return false;
+        }
+
+        CompiledURL receiver = getCompiledURL(uri2);
+        if (receiver.matches(uri1, isCaseInsensitive())) {
+            return true;
+        }
+
+        String uri1Canon = getCompiledURL(uri1).getCanonicalURL();
+        if (isCaseInsensitive()) {
+            return uri1Canon.equalsIgnoreCase(receiver.getCanonicalURL());
+        } else {
+            return uri1Canon.equals(receiver.getCanonicalURL());
+        }
+    }
+
+    /**
+     * Gets the compiled form of a URL, compiling and caching it if necessary.
+     * 
+     * @param url the URL
+     * 
+     * @return the compiled URL
+     */
+    private CompiledURL getCompiledURL(String url) {
+        CompiledURL compiledURL = receiverEndpoints.get(url);
+        if (compiledURL != null) {
+            return compiledURL;
+        }
+
+        synchronized (recentURLs) {
+            compiledURL = recentURLs.get(url);
+        }
+        if (compiledURL == null) {
+            compiledURL = new CompiledURL(url);
+            synchronized (recentURLs) {
+                recentURLs.put(url, compiledURL);
+            }
+        }
+        return compiledURL;
+    }
+
+    /** A URL with its canonical form and the location of its components. */
+    private static class CompiledURL {
+
+        /** Port value indicating that the URL has no port, or has the default port for its scheme. */
+        private static final int NO_PORT = -1;
+
+        /** Largest valid port number. */
+        private static final int MAX_PORT = 65535;
+
+        /** Canonical form of the URL. */
+        private final String canonicalURL;
+
+        /** Whether the URL's authority has a form which may be scanned. */
+        private final boolean scannable;
+
+        /** Scheme of the URL. */
+        private String scheme;
+
+        /** Host of the URL. */
+        private String host;
+
+        /** Default port registered for the scheme of the URL, or {@link #NO_PORT}. */
+        private int defaultPort;
+
+        /** Port of the URL, or {@link #NO_PORT}. */
+        private int port;
+
+        /** Path, query and fragment of the URL, as given. */
+        private String remainder;
+
+        /**
+         * Constructor.
+         * 
+         * @param url the URL to compile
+         * 
+         * @throws IllegalArgumentException thrown if the URL is not well formed
+         */
+        public CompiledURL(String url) {
+            canonicalURL = SimpleURLCanonicalizer.canonicalize(url);
+            scannable = parse(url);
+        }
+
+        /**
+         * Gets the canonical form of the URL.
+         * 
+         * @return canonical form of the URL
+         */
+        public String getCanonicalURL() {
+            return canonicalURL;
+        }
+
+        /**
+         * Checks whether the given URL differs from this one at most in the case of its scheme and host and the
+         * presence of the default port. Such URL's have the same canonical form.
+         * 
+         * @param url the URL to scan
+         * @param caseInsensitive whether the path, query and fragment are compared without regard to case
+         * 
+         * @return true if the URL matches, false if it does not or if a match can not be established by scanning
+         */
+        public boolean matches(String url, boolean caseInsensitive) {
+            if (!scannable) {
+                return false;
+            }
+
+            int schemeLength = scheme.length();
+            if (!url.regionMatches(true, 0, scheme, 0, schemeLength) || !url.startsWith("://", schemeLength)) {
+                return false;
+            }
+
+            int position = schemeLength + 3;
+            if (!url.regionMatches(true, position, host, 0, host.length())) {
+                return false;
+            }
+            position += host.length();
+
+            int urlPort = NO_PORT;
+            int length = url.length();
+            if (position < length && url.charAt(position) == ':') {
+                position++;
+                int portStart = position;
+                int portValue = 0;
+                char c;
+                while (position < length) {
+                    c = url.charAt(position);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    portValue = portValue * 10 + (c - '0');
+                    if (portValue > MAX_PORT) {
+                        return false;
+                    }
+                    position++;
+                }
+                if (position == portStart) {
+                    return false;
+                }
+                urlPort = normalizePort(portValue);
+            }
+            if (urlPort != port) {
+                return false;
+            }
+
+            return length - position == remainder.length()
+                    && url.regionMatches(caseInsensitive, position, remainder, 0, remainder.length());
+        }
+
+        /**
+         * Locates the components of the URL.
+         * 
+         * @param url the URL
+         * 
+         * @return true if the URL may be scanned, false if its authority has a form, such as one with user
+         *          information or an IPv6 host, which is not scanned
+         */
+        private boolean parse(String url) {
+            int schemeEnd = url.indexOf("://");
+            if (schemeEnd <= 0) {
+                return false;
+            }
+
+            int authorityStart = schemeEnd + 3;
+            int authorityEnd = authorityStart;
+            char c;
+            while (authorityEnd < url.length()) {
+                c = url.charAt(authorityEnd);
+                if (c == '/' || c == '?' || c == '#') {
+                    break;
+                }
+                if (c == '@' || c == '[') {
+                    return false;
+                }
+                authorityEnd++;
+            }
+
+            scheme = url.substring(0, schemeEnd);
+            Integer registeredPort = SimpleURLCanonicalizer.getRegisteredPort(scheme);
+            defaultPort = registeredPort != null ? registeredPort : NO_PORT;
+
+            int portSeparator = url.indexOf(':', authorityStart);
+            if (portSeparator < 0 || portSeparator >= authorityEnd) {
+                host = url.substring(authorityStart, authorityEnd);
+                port = NO_PORT;
+            } else {
+                host = url.substring(authorityStart, portSeparator);
+                String portString = url.substring(portSeparator + 1, authorityEnd);
+                if (portString.length() == 0 || portString.length() > 5) {
+                    return false;
+                }
+                for (int i = 0; i < portString.length(); i++) {
+                    c = portString.charAt(i);
+                    if (c < '0' || c > '9') {
+                        return false;
+                    }
+                }
+                port = normalizePort(Integer.parseInt(portString));
+            }
+
+            remainder = url.substring(authorityEnd);
+            return host.length() > 0;
+        }
+
+        /**
+         * Normalizes a port so that the default port for the scheme, and port 0, are treated as no port, as they are
+         * by canonicalization.
+         * 
+         * @param portValue the port
+         * 
+         * @return the normalized port
+         */
+        private int normalizePort(int portValue) {
+            if (portValue == 0 || portValue == defaultPort) {
+                return NO_PORT;
+            }
+            return portValue;
+        }
+    }
+}
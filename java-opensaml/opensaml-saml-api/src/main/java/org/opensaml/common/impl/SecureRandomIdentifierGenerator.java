@@ -18,17 +18,44 @@ package org.opensaml.common.impl;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jcip.annotations.ThreadSafe;
 
-import org.bouncycastle.util.encoders.Hex;
 import org.opensaml.common.IdentifierGenerator;
 
 /**
  * Generates identifiers using random data obtained from a {@link java.security.SecureRandom} instance.
+ * 
+ * Each thread is given its own random number generator for each algorithm, shared by every generator using that
+ * algorithm, so concurrent threads never contend for one. Each thread's generator is seeded from, and after every
+ * {@link #getReseedInterval()} identifiers reseeded with additional material from, a shared seed source.
  */
+@ThreadSafe
 public class SecureRandomIdentifierGenerator implements IdentifierGenerator {
 
-    /** Random number generator. */
-    private static SecureRandom random;
+    /** Default number of identifiers a thread generates between reseeds. */
+    public static final int DEFAULT_RESEED_INTERVAL = 65536;
+
+    /** Number of bytes of seed material added at each reseed. */
+    private static final int SEED_SIZE = 20;
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Source of seed material for the per-thread generators. */
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    /** Per-thread random number generators, indexed by algorithm. */
+    private static final ConcurrentMap<String, ThreadLocal<ThreadRandom>> THREAD_RANDOMS =
+            new ConcurrentHashMap<String, ThreadLocal<ThreadRandom>>();
+
+    /** Random number generator of each thread. */
+    private final ThreadLocal<ThreadRandom> threadRandom;
+
+    /** Number of identifiers a thread generates between reseeds. */
+    private final int reseedInterval;
 
     /**
      * Constructor.
@@ -36,7 +63,7 @@ public class SecureRandomIdentifierGenerator implements IdentifierGenerator {
      * @throws NoSuchAlgorithmException thrown if the SHA1PRNG algorithm is not supported by the JVM
      */
     public SecureRandomIdentifierGenerator() throws NoSuchAlgorithmException {
-        random = SecureRandom.getInstance("SHA1PRNG");
+        this("SHA1PRNG");
     }
 
     /**
@@ -47,7 +74,32 @@ public class SecureRandomIdentifierGenerator implements IdentifierGenerator {
      * @throws NoSuchAlgorithmException thrown if the algorithm is not supported by the JVM
      */
     public SecureRandomIdentifierGenerator(String algorithm) throws NoSuchAlgorithmException {
-        random = SecureRandom.getInstance(algorithm);
+        this(algorithm, DEFAULT_RESEED_INTERVAL);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param algorithm the random number generation algorithm to use
+     * @param interval number of identifiers a thread generates between reseeds
+     * 
+     * @throws NoSuchAlgorithmException thrown if the algorithm is not supported by the JVM
+     */
+    public SecureRandomIdentifierGenerator(String algorithm, int interval) throws NoSuchAlgorithmException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Reseed interval must be greater than 0");
+        }
+        threadRandom = getThreadRandom(algorithm);
+        reseedInterval = interval;
+    }
+
+    /**
+     * Gets the number of identifiers a thread generates between reseeds.
+     * 
+     * @return number of identifiers a thread generates between reseeds
+     */
+    public int getReseedInterval() {
+        return reseedInterval;
     }
 
     /** {@inheritDoc} */
@@ -57,8 +109,103 @@ public class SecureRandomIdentifierGenerator implements IdentifierGenerator {
 
     /** {@inheritDoc} */
     public String generateIdentifier(int size) {
-        byte[] buf = new byte[size];
-        random.nextBytes(buf);
-        return "_".concat(new String(Hex.encode(buf)));
+        byte[] buf = threadRandom.get().nextBytes(size, reseedInterval);
+
+        char[] id = new char[2 * size + 1];
+        id[0] = '_';
+        for (int i = 0; i < size; i++) {
+            id[2 * i + 1] = HEX_DIGITS[(buf[i] >> 4) & 0x0f];
+            id[2 * i + 2] = HEX_DIGITS[buf[i] & 0x0f];
+        }
+        return new String(id);
+    }
+
+    /**
+     * Gets the per-thread random number generators for an algorithm, creating them if necessary.
+     * 
+     * @param algorithm the random number generation algorithm
+     * 
+     * @return the per-thread random number generators for the algorithm
+     * 
+     * @throws NoSuchAlgorithmException thrown if the algorithm is not supported by the JVM
+     */
+    private static ThreadLocal<ThreadRandom> getThreadRandom(final String algorithm) throws NoSuchAlgorithmException {
+        ThreadLocal<ThreadRandom> holder = THREAD_RANDOMS.get(algorithm);
+        if (holder != null) {
+            return holder;
+        }
+
+        // fail fast, rather than on first use, if the algorithm is unsupported
+        SecureRandom.getInstance(algorithm);
+
+        holder = new ThreadLocal<ThreadRandom>() {
+            protected ThreadRandom initialValue() {
+                return new ThreadRandom(algorithm);
+            }
+        };
+        ThreadLocal<ThreadRandom> existing = THREAD_RANDOMS.putIfAbsent(algorithm, holder);
+        return existing != null ? existing : holder;
+    }
+
+    /** The random number generator, and its state, of a single thread for a single algorithm. */
+    private static class ThreadRandom {
+
+        /** The random number generator. */
+        private final SecureRandom random;
+
+        /** Buffer receiving random bytes, reused between identifiers. */
+        private byte[] buffer;
+
+        /** Number of identifiers generated since the last reseed. */
+        private int generated;
+
+        /**
+         * Constructor.
+         * 
+         * @param algorithm the random number generation algorithm
+         */
+        public ThreadRandom(String algorithm) {
+            try {
+                random = SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                // algorithm was checked when its per-thread generators were created
+                throw new IllegalStateException("Random number generation algorithm " + algorithm
+                        + " is no longer supported", e);
+            }
+            random.setSeed(nextSeed());
+            buffer = new byte[16];
+        }
+
+        /**
+         * Gets the given number of random bytes, reseeding first if the reseed interval has been reached.
+         * 
+         * @param size number of random bytes
+         * @param reseedInterval number of identifiers generated between reseeds
+         * 
+         * @return buffer of the given size holding the random bytes
+         */
+        public byte[] nextBytes(int size, int reseedInterval) {
+            if (++generated >= reseedInterval) {
+                random.setSeed(nextSeed());
+                generated = 0;
+            }
+
+            if (buffer.length != size) {
+                buffer = new byte[size];
+            }
+            random.nextBytes(buffer);
+            return buffer;
+        }
+
+        /**
+         * Gets seed material from the shared seed source.
+         * 
+         * @return the seed material
+         */
+        private static byte[] nextSeed() {
+            byte[] seed = new byte[SEED_SIZE];
+            SEED_SOURCE.nextBytes(seed);
+            return seed;
+        }
     }
 }
\ No newline at end of file
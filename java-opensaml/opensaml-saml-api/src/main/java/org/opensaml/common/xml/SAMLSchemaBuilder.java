@@ -163,11 +163,15 @@ public final class SAMLSchemaBuilder {
     }
 
     /**
-     * Registers a new schema extension. The schema location will be searched for on the classpath.
+     * Registers a new schema extension. The schema location will be searched for on the classpath. Registering an
+     * already registered extension has no effect and leaves the cached schemas in place.
      * 
      * @param schema new schema extension
      */
-    public static void addExtensionSchema(String schema) {
+    public static synchronized void addExtensionSchema(String schema) {
+        if (extensionSchema.contains(schema)) {
+            return;
+        }
         extensionSchema.add(schema);
 
         saml10Schema = null;
@@ -180,16 +184,12 @@ public final class SAMLSchemaBuilder {
      * 
      * @param schema currently registered schema
      */
-    public static void removeSchema(String schema) {
+    public static synchronized void removeSchema(String schema) {
         extensionSchema.remove(schema);
 
-        synchronized (saml10Schema) {
-            saml10Schema = null;
-        }
+        saml10Schema = null;
 
-        synchronized (saml11Schema) {
-            saml11Schema = null;
-        }
+        saml11Schema = null;
     }
 
     /**
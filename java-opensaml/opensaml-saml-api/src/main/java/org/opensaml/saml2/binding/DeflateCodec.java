@@ -0,0 +1,345 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.binding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Raw DEFLATE (RFC1951) compression and decompression, as used by the SAML 2 HTTP Redirect binding, backed by pools
+ * of {@link Inflater} and {@link Deflater} instances.
+ *
+ * Each Inflater and Deflater holds native zlib state which, unless explicitly ended, is only released when the
+ * object is finalized. Instances are therefore borrowed from a bounded pool, reset after use and returned to it.
+ * Instances which do not fit in the pool are ended immediately.
+ *
+ * Decompression is performed incrementally as the returned stream is read, and is aborted once the inflated data
+ * exceeds either the configured maximum size or the configured maximum ratio to the compressed size. This protects
+ * consumers of the stream, typically a parser, from "decompression bomb" messages.
+ */
+@ThreadSafe
+public class DeflateCodec {
+
+    /** Default maximum number of pooled Inflater and Deflater instances: {@value} . */
+    public static final int DEFAULT_POOL_SIZE = 32;
+
+    /** Default maximum inflated message size in bytes: {@value} . */
+    public static final int DEFAULT_MAX_INFLATED_SIZE = 1024 * 1024;
+
+    /** Default maximum ratio between inflated and compressed size: {@value} . */
+    public static final int DEFAULT_MAX_INFLATION_RATIO = 100;
+
+    /** Size of the buffer used when compressing data. */
+    private static final int BUFFER_SIZE = 1024;
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(DeflateCodec.class);
+
+    /** Compression level used by pooled Deflaters. */
+    private final int compressionLevel;
+
+    /** Pool of idle Inflaters. */
+    private final BlockingQueue<Inflater> inflaterPool;
+
+    /** Pool of idle Deflaters. */
+    private final BlockingQueue<Deflater> deflaterPool;
+
+    /** Maximum inflated message size in bytes. */
+    private volatile int maxInflatedSize;
+
+    /** Maximum ratio between inflated and compressed size. */
+    private volatile int maxInflationRatio;
+
+    /** Number of Inflaters created. */
+    private final AtomicLong inflatersCreated;
+
+    /** Number of Deflaters created. */
+    private final AtomicLong deflatersCreated;
+
+    /** Number of messages whose inflation was aborted because they exceeded the configured limits. */
+    private final AtomicLong rejectedMessages;
+
+    /** Constructor. Uses the default pool size and the compression level used by the HTTP Redirect encoder. */
+    public DeflateCodec() {
+        this(DEFAULT_POOL_SIZE, Deflater.DEFLATED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param poolSize maximum number of idle Inflaters and, separately, Deflaters retained for reuse
+     * @param level compression level used when deflating
+     */
+    public DeflateCodec(int poolSize, int level) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be greater than 0");
+        }
+        compressionLevel = level;
+        inflaterPool = new ArrayBlockingQueue<Inflater>(poolSize);
+        deflaterPool = new ArrayBlockingQueue<Deflater>(poolSize);
+        maxInflatedSize = DEFAULT_MAX_INFLATED_SIZE;
+        maxInflationRatio = DEFAULT_MAX_INFLATION_RATIO;
+        inflatersCreated = new AtomicLong();
+        deflatersCreated = new AtomicLong();
+        rejectedMessages = new AtomicLong();
+    }
+
+    /**
+     * Gets the maximum inflated message size in bytes.
+     *
+     * @return maximum inflated message size in bytes
+     */
+    public int getMaxInflatedSize() {
+        return maxInflatedSize;
+    }
+
+    /**
+     * Sets the maximum inflated message size in bytes.
+     *
+     * @param size maximum inflated message size in bytes, must be greater than 0
+     */
+    public void setMaxInflatedSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Maximum inflated size must be greater than 0");
+        }
+        maxInflatedSize = size;
+    }
+
+    /**
+     * Gets the maximum ratio between the inflated and compressed size of a message.
+     *
+     * @return maximum ratio between the inflated and compressed size of a message
+     */
+    public int getMaxInflationRatio() {
+        return maxInflationRatio;
+    }
+
+    /**
+     * Sets the maximum ratio between the inflated and compressed size of a message.
+     *
+     * @param ratio maximum ratio between the inflated and compressed size of a message, must be greater than 0
+     */
+    public void setMaxInflationRatio(int ratio) {
+        if (ratio < 1) {
+            throw new IllegalArgumentException("Maximum inflation ratio must be greater than 0");
+        }
+        maxInflationRatio = ratio;
+    }
+
+    /**
+     * Gets the number of Inflaters created by this codec.
+     *
+     * @return number of Inflaters created
+     */
+    public long getInflatersCreated() {
+        return inflatersCreated.get();
+    }
+
+    /**
+     * Gets the number of Deflaters created by this codec.
+     *
+     * @return number of Deflaters created
+     */
+    public long getDeflatersCreated() {
+        return deflatersCreated.get();
+    }
+
+    /**
+     * Gets the number of idle Inflaters currently pooled.
+     *
+     * @return number of idle Inflaters
+     */
+    public int getIdleInflaters() {
+        return inflaterPool.size();
+    }
+
+    /**
+     * Gets the number of idle Deflaters currently pooled.
+     *
+     * @return number of idle Deflaters
+     */
+    public int getIdleDeflaters() {
+        return deflaterPool.size();
+    }
+
+    /**
+     * Gets the number of messages whose inflation was aborted because they exceeded the configured size or ratio.
+     *
+     * @return number of rejected messages
+     */
+    public long getRejectedMessages() {
+        return rejectedMessages.get();
+    }
+
+    /**
+     * Compresses the given data.
+     *
+     * @param data data to compress
+     *
+     * @return the compressed data
+     */
+    public byte[] deflate(byte[] data) {
+        Deflater deflater = deflaterPool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+            deflatersCreated.incrementAndGet();
+        }
+
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, data.length / 2));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                bytesOut.write(buffer, 0, length);
+            }
+            return bytesOut.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!deflaterPool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Returns a stream which decompresses the given data as it is read. The stream must be closed in order to return
+     * the underlying Inflater to the pool.
+     *
+     * Reading the stream fails with an {@link IOException} if the data is not valid DEFLATE data, is truncated, or
+     * inflates beyond the configured limits.
+     *
+     * @param compressedData data to decompress
+     *
+     * @return stream of decompressed data
+     */
+    public InputStream inflate(byte[] compressedData) {
+        Inflater inflater = inflaterPool.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+            inflatersCreated.incrementAndGet();
+        }
+        inflater.setInput(compressedData);
+
+        long limit = Math.min((long) maxInflatedSize, (long) compressedData.length * maxInflationRatio);
+        return new BoundedInflaterInputStream(inflater, limit);
+    }
+
+    /**
+     * Resets the given Inflater and returns it to the pool, ending it if the pool is full.
+     *
+     * @param inflater the Inflater to release
+     */
+    private void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaterPool.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /** Stream which inflates data with a pooled Inflater, up to a fixed number of bytes. */
+    private class BoundedInflaterInputStream extends InputStream {
+
+        /** Inflater used, null once the stream has been closed. */
+        private Inflater inflater;
+
+        /** Maximum number of bytes which may be inflated. */
+        private final long limit;
+
+        /** Number of bytes inflated so far. */
+        private long inflated;
+
+        /** Buffer used by single byte reads. */
+        private final byte[] singleByte;
+
+        /**
+         * Constructor.
+         *
+         * @param pooledInflater Inflater to use, already supplied with the compressed data
+         * @param maxBytes maximum number of bytes which may be inflated
+         */
+        public BoundedInflaterInputStream(Inflater pooledInflater, long maxBytes) {
+            inflater = pooledInflater;
+            limit = maxBytes;
+            singleByte = new byte[1];
+        }
+
+        /** {@inheritDoc} */
+        public int read() throws IOException {
+            int length = read(singleByte, 0, 1);
+            if (length < 0) {
+                return -1;
+            }
+            return singleByte[0] & 0xff;
+        }
+
+        /** {@inheritDoc} */
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (inflater == null) {
+                throw new IOException("Stream closed");
+            }
+            if (length == 0) {
+                return 0;
+            }
+
+            try {
+                int count = 0;
+                while (count == 0) {
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        throw new IOException("Compressed data is truncated or requires a preset dictionary");
+                    }
+                    count = inflater.inflate(buffer, offset, length);
+                }
+
+                inflated += count;
+                if (inflated > limit) {
+                    rejectedMessages.incrementAndGet();
+                    log.warn("Inflated message exceeded the limit of {} bytes, aborting decompression", limit);
+                    throw new IOException("Inflated message exceeds the permitted size");
+                }
+                return count;
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed data: " + e.getMessage());
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void close() {
+            if (inflater != null) {
+                release(inflater);
+                inflater = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.binding;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.opensaml.util.Base64;
+
+/**
+ * The raw query string of a SAML 2 HTTP-Redirect binding request, parsed once.
+ *
+ * The offsets of each <code>name=value</code> parameter within the raw query string are recorded when the query is
+ * parsed. Parameter values are URL-decoded and, where requested, Base64-decoded lazily, at most once, and cached. The
+ * octet string over which a simple signature is computed is likewise built from the raw parameter segments at most
+ * once.
+ *
+ * A single instance is shared, for the lifetime of a request, between the HTTP-Redirect decoder and the
+ * HTTP-Redirect simple signature security policy rule by storing it as an attribute of the inbound request; see
+ * {@link #getInstance(HttpServletRequest)}.
+ */
+@NotThreadSafe
+public class HTTPRedirectQuery {
+
+    /** Name of the request attribute under which the parsed query of a request is stored. */
+    public static final String REQUEST_ATTRIBUTE = HTTPRedirectQuery.class.getName();
+
+    /** The raw, undecoded, query string. */
+    private final String queryString;
+
+    /** Raw names of the parameters, in query string order. */
+    private final List<String> names;
+
+    /** Start offset of each parameter segment. */
+    private final List<Integer> starts;
+
+    /** End offset, exclusive, of each parameter segment. */
+    private final List<Integer> ends;
+
+    /** Cache of URL-decoded parameter values, parallel to {@link #names}. */
+    private final String[] decodedValues;
+
+    /** Cache of Base64-decoded parameter values, parallel to {@link #names}. */
+    private final byte[][] decodedBytes;
+
+    /** Cached signed content octets. */
+    private byte[] signedContent;
+
+    /**
+     * Constructor.
+     *
+     * @param rawQueryString the raw, undecoded, query string, may be null
+     */
+    public HTTPRedirectQuery(String rawQueryString) {
+        queryString = rawQueryString == null ? "" : rawQueryString;
+        names = new ArrayList<String>();
+        starts = new ArrayList<Integer>();
+        ends = new ArrayList<Integer>();
+
+        int start = 0;
+        int length = queryString.length();
+        while (start < length) {
+            int end = queryString.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (end > start) {
+                int separator = queryString.indexOf('=', start);
+                int nameEnd = separator == -1 || separator > end ? end : separator;
+                names.add(queryString.substring(start, nameEnd));
+                starts.add(start);
+                ends.add(end);
+            }
+            start = end + 1;
+        }
+
+        decodedValues = new String[names.size()];
+        decodedBytes = new byte[names.size()][];
+    }
+
+    /**
+     * Gets the parsed query of the given request, parsing it and storing it as a request attribute on first use. A
+     * stored query is only reused while it was parsed from the request's current query string, so a request which is
+     * re-decoded after its query string changed, for example after a forward, is parsed again.
+     *
+     * @param request the HTTP request
+     *
+     * @return the parsed query of the request
+     */
+    public static HTTPRedirectQuery getInstance(HttpServletRequest request) {
+        String rawQueryString = request.getQueryString();
+        Object query = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (query instanceof HTTPRedirectQuery) {
+            HTTPRedirectQuery parsedQuery = (HTTPRedirectQuery) query;
+            if (parsedQuery.getQueryString().equals(rawQueryString == null ? "" : rawQueryString)) {
+                return parsedQuery;
+            }
+        }
+
+        HTTPRedirectQuery parsedQuery = new HTTPRedirectQuery(rawQueryString);
+        request.setAttribute(REQUEST_ATTRIBUTE, parsedQuery);
+        return parsedQuery;
+    }
+
+    /**
+     * Gets the raw, undecoded, query string.
+     *
+     * @return the raw query string
+     */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     * Gets whether the query contains the given parameter.
+     *
+     * @param name the parameter name
+     *
+     * @return true if the query contains the parameter
+     */
+    public boolean hasParameter(String name) {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * Gets the first occurrence of the given parameter as it appears in the raw query string, i.e. in the form
+     * <code>name=value</code> with the value still URL-encoded.
+     *
+     * @param name the parameter name
+     *
+     * @return the raw parameter or null if the query does not contain the parameter
+     */
+    public String getRawParameter(String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            return null;
+        }
+        return queryString.substring(starts.get(index), ends.get(index));
+    }
+
+    /**
+     * Gets the URL-decoded value of the first occurrence of the given parameter.
+     *
+     * @param name the parameter name
+     *
+     * @return the decoded parameter value or null if the query does not contain the parameter
+     */
+    public String getParameter(String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            return null;
+        }
+
+        if (decodedValues[index] == null) {
+            int valueStart = starts.get(index) + names.get(index).length() + 1;
+            int end = ends.get(index);
+            if (valueStart >= end) {
+                decodedValues[index] = "";
+            } else {
+                try {
+                    decodedValues[index] = URLDecoder.decode(queryString.substring(valueStart, end), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    // JVM is required to support UTF-8
+                    return null;
+                } catch (IllegalArgumentException e) {
+                    // malformed escape sequence
+                    return null;
+                }
+            }
+        }
+        return decodedValues[index];
+    }
+
+    /**
+     * Gets the Base64-decoded value of the first occurrence of the given parameter.
+     *
+     * @param name the parameter name
+     *
+     * @return the decoded parameter value or null if the query does not contain the parameter or its value can not be
+     *         decoded
+     */
+    public byte[] getBase64DecodedParameter(String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            return null;
+        }
+
+        if (decodedBytes[index] == null) {
+            String value = getParameter(name);
+            if (value == null || value.length() == 0) {
+                return null;
+            }
+            decodedBytes[index] = Base64.decode(value);
+        }
+        return decodedBytes[index];
+    }
+
+    /**
+     * Gets the octets over which an HTTP-Redirect simple signature is computed. These are the UTF-8 encoded raw
+     * <code>SAMLRequest</code> or <code>SAMLResponse</code>, <code>RelayState</code> and <code>SigAlg</code>
+     * parameters, in that order, joined by '&amp;'.
+     *
+     * @return the signed content or null if the query contains neither a SAMLRequest nor a SAMLResponse parameter
+     */
+    public byte[] getSignedContent() {
+        if (signedContent != null) {
+            return signedContent;
+        }
+
+        StringBuilder builder = new StringBuilder(queryString.length());
+        // One of these two is mandatory
+        if (!appendRawParameter(builder, "SAMLRequest") && !appendRawParameter(builder, "SAMLResponse")) {
+            return null;
+        }
+        appendRawParameter(builder, "RelayState");
+        appendRawParameter(builder, "SigAlg");
+
+        try {
+            signedContent = builder.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // JVM is required to support UTF-8
+        }
+        return signedContent;
+    }
+
+    /**
+     * Appends the raw segment of the given parameter to the builder, preceded by a '&amp;' if the builder is not empty.
+     *
+     * @param builder builder to append to
+     * @param name the parameter name
+     *
+     * @return true if the parameter was present, false otherwise
+     */
+    private boolean appendRawParameter(StringBuilder builder, String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            return false;
+        }
+        if (builder.length() > 0) {
+            builder.append('&');
+        }
+        builder.append(queryString, starts.get(index), ends.get(index));
+        return true;
+    }
+
+    /**
+     * Gets the index of the first occurrence of the given parameter.
+     *
+     * @param name the parameter name
+     *
+     * @return the index of the parameter or -1 if the query does not contain the parameter
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
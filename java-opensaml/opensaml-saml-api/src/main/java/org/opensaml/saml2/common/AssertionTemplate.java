@@ -0,0 +1,541 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.IdentifierGenerator;
+import org.opensaml.common.SAMLRuntimeException;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeStatement;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.Subject;
+import org.opensaml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml2.core.SubjectConfirmationData;
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.schema.XSAny;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.util.XMLObjectHelper;
+
+/**
+ * A template from which assertions sharing the same structure, for example those issued to a given relying party, are
+ * produced.
+ * 
+ * <p>
+ * The template holds a prototype assertion carrying the parts of the assertion which do not change between issued
+ * assertions: the issuer, conditions and audience restrictions, the format of the subject's name identifier, the
+ * subject confirmation methods, the authentication context and the attributes which may be released. Each assertion is
+ * produced by structurally copying the prototype, see {@link XMLObjectHelper#copyXMLObject(XMLObject)}, and filling in
+ * its variable parts from a {@link Values} instance:
+ * <ul>
+ * <li>the assertion ID, generated for each assertion</li>
+ * <li>the issue instant; the instants of the prototype's conditions, subject confirmation data and authentication
+ * statement session expiration are shifted by the difference between this issue instant and the prototype's</li>
+ * <li>the name identifier value</li>
+ * <li>the recipient, request ID and address of each subject confirmation data</li>
+ * <li>the authentication instant and session index of each authentication statement</li>
+ * <li>the values of each attribute, each built from the first value of the prototype attribute, which must be an
+ * {@link XSString} or {@link XSAny}; prototype attributes without values are removed</li>
+ * </ul>
+ * </p>
+ * 
+ * <p>
+ * Values which identify the subject or the request are never taken from the prototype: the name identifier value is
+ * required if the prototype has a name identifier, and the recipient, request ID, address and session index are each
+ * required if the prototype holds a placeholder for them. Producing an assertion without a required value fails with
+ * an {@link IllegalArgumentException}.
+ * </p>
+ * 
+ * <p>
+ * The prototype is copied when the template is created and is never modified afterwards, so that assertions may be
+ * produced concurrently. The prototype may not be signed: produced assertions are marshalled and signed as usual.
+ * </p>
+ */
+@ThreadSafe
+public class AssertionTemplate {
+
+    /** Prototype from which assertions are copied. */
+    private final Assertion prototype;
+
+    /** Generator of assertion IDs. */
+    private final IdentifierGenerator idGenerator;
+
+    /** Whether produced assertions require a name identifier value. */
+    private final boolean nameIDValueRequired;
+
+    /** Whether produced assertions require a subject confirmation recipient. */
+    private final boolean recipientRequired;
+
+    /** Whether produced assertions require the ID of the request to which they respond. */
+    private final boolean inResponseToRequired;
+
+    /** Whether produced assertions require the address of the subject. */
+    private final boolean addressRequired;
+
+    /** Whether produced assertions require a session index. */
+    private final boolean sessionIndexRequired;
+
+    /**
+     * Constructor.
+     * 
+     * @param prototypeAssertion assertion from which assertions are produced, which is copied
+     * @param generator generator of the IDs of produced assertions
+     */
+    public AssertionTemplate(Assertion prototypeAssertion, IdentifierGenerator generator) {
+        if (prototypeAssertion == null) {
+            throw new IllegalArgumentException("Prototype assertion may not be null");
+        }
+        if (prototypeAssertion.getSignature() != null) {
+            throw new IllegalArgumentException("Prototype assertion may not be signed");
+        }
+        if (generator == null) {
+            throw new IllegalArgumentException("Identifier generator may not be null");
+        }
+        for (AttributeStatement statement : prototypeAssertion.getAttributeStatements()) {
+            for (Attribute attribute : statement.getAttributes()) {
+                if (!attribute.getAttributeValues().isEmpty()) {
+                    XMLObject value = attribute.getAttributeValues().get(0);
+                    if (!(value instanceof XSString || value instanceof XSAny)) {
+                        throw new IllegalArgumentException("First value of prototype attribute " + attribute.getName()
+                                + " is neither an XSString nor an XSAny");
+                    }
+                }
+            }
+        }
+
+        prototype = copy(prototypeAssertion);
+        idGenerator = generator;
+
+        boolean nameID = false;
+        boolean recipient = false;
+        boolean inResponseTo = false;
+        boolean address = false;
+        Subject subject = prototype.getSubject();
+        if (subject != null) {
+            nameID = subject.getNameID() != null;
+            for (SubjectConfirmation confirmation : subject.getSubjectConfirmations()) {
+                SubjectConfirmationData data = confirmation.getSubjectConfirmationData();
+                if (data != null) {
+                    recipient |= data.getRecipient() != null;
+                    inResponseTo |= data.getInResponseTo() != null;
+                    address |= data.getAddress() != null;
+                }
+            }
+        }
+        boolean sessionIndex = false;
+        for (AuthnStatement statement : prototype.getAuthnStatements()) {
+            sessionIndex |= statement.getSessionIndex() != null;
+        }
+        nameIDValueRequired = nameID;
+        recipientRequired = recipient;
+        inResponseToRequired = inResponseTo;
+        addressRequired = address;
+        sessionIndexRequired = sessionIndex;
+    }
+
+    /**
+     * Gets a copy of the prototype assertion of this template.
+     * 
+     * @return a copy of the prototype assertion
+     */
+    public Assertion getPrototype() {
+        return copy(prototype);
+    }
+
+    /**
+     * Produces a new assertion from this template.
+     * 
+     * @param values values of the variable parts of the assertion
+     * 
+     * @return the new assertion, without a cached DOM
+     * 
+     * @throws IllegalArgumentException if a value required by the prototype is missing
+     */
+    public Assertion newAssertion(Values values) {
+        checkRequiredValues(values);
+        Assertion assertion = copy(prototype);
+
+        assertion.setID(idGenerator.generateIdentifier());
+
+        DateTime issueInstant = values.getIssueInstant();
+        if (issueInstant == null) {
+            issueInstant = new DateTime(ClockSupport.currentTimeMillis());
+        }
+        long shift = 0;
+        if (prototype.getIssueInstant() != null) {
+            shift = issueInstant.getMillis() - prototype.getIssueInstant().getMillis();
+        }
+        assertion.setIssueInstant(issueInstant);
+
+        Conditions conditions = assertion.getConditions();
+        if (conditions != null) {
+            conditions.setNotBefore(shift(conditions.getNotBefore(), shift));
+            conditions.setNotOnOrAfter(shift(conditions.getNotOnOrAfter(), shift));
+        }
+
+        fillSubject(assertion.getSubject(), values, shift);
+
+        for (AuthnStatement statement : assertion.getAuthnStatements()) {
+            if (values.getAuthnInstant() != null) {
+                statement.setAuthnInstant(values.getAuthnInstant());
+            } else {
+                statement.setAuthnInstant(issueInstant);
+            }
+            if (values.getSessionIndex() != null) {
+                statement.setSessionIndex(values.getSessionIndex());
+            }
+            statement.setSessionNotOnOrAfter(shift(statement.getSessionNotOnOrAfter(), shift));
+        }
+
+        fillAttributes(assertion, values.getAttributeValues());
+
+        return assertion;
+    }
+
+    /**
+     * Checks that the values which replace the prototype's per subject and per request values are set.
+     * 
+     * @param values values of the variable parts of the assertion
+     * 
+     * @throws IllegalArgumentException if the values are null or a required value is missing
+     */
+    private void checkRequiredValues(Values values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Assertion values may not be null");
+        }
+        checkRequired(nameIDValueRequired, values.getNameIDValue(), "name identifier value");
+        checkRequired(recipientRequired, values.getRecipient(), "subject confirmation recipient");
+        checkRequired(inResponseToRequired, values.getInResponseTo(), "request ID");
+        checkRequired(addressRequired, values.getAddress(), "subject address");
+        checkRequired(sessionIndexRequired, values.getSessionIndex(), "session index");
+    }
+
+    /**
+     * Checks that a required value is set.
+     * 
+     * @param required whether the value is required
+     * @param value the value
+     * @param description description of the value used in the error message
+     * 
+     * @throws IllegalArgumentException if the value is required but missing
+     */
+    private void checkRequired(boolean required, String value, String description) {
+        if (required && value == null) {
+            throw new IllegalArgumentException("The prototype assertion requires a " + description
+                    + " for each produced assertion");
+        }
+    }
+
+    /**
+     * Fills in the name identifier and subject confirmation data of a produced assertion's subject.
+     * 
+     * @param subject the subject, may be null
+     * @param values values of the variable parts of the assertion
+     * @param shift milliseconds by which the instants of the subject confirmation data are shifted
+     */
+    private void fillSubject(Subject subject, Values values, long shift) {
+        if (subject == null) {
+            return;
+        }
+
+        NameID nameID = subject.getNameID();
+        if (nameID != null) {
+            nameID.setValue(values.getNameIDValue());
+        }
+
+        for (SubjectConfirmation confirmation : subject.getSubjectConfirmations()) {
+            SubjectConfirmationData data = confirmation.getSubjectConfirmationData();
+            if (data == null) {
+                continue;
+            }
+            data.setNotBefore(shift(data.getNotBefore(), shift));
+            data.setNotOnOrAfter(shift(data.getNotOnOrAfter(), shift));
+            if (values.getRecipient() != null) {
+                data.setRecipient(values.getRecipient());
+            }
+            if (values.getInResponseTo() != null) {
+                data.setInResponseTo(values.getInResponseTo());
+            }
+            if (values.getAddress() != null) {
+                data.setAddress(values.getAddress());
+            }
+        }
+    }
+
+    /**
+     * Fills in the values of a produced assertion's attributes. Attributes without values, and attribute statements
+     * left without attributes, are removed.
+     * 
+     * @param assertion the produced assertion
+     * @param attributeValues values of the attributes, indexed by attribute name
+     */
+    private void fillAttributes(Assertion assertion, Map<String, List<String>> attributeValues) {
+        List<AttributeStatement> statements = assertion.getAttributeStatements();
+        for (AttributeStatement statement : new ArrayList<AttributeStatement>(statements)) {
+            List<Attribute> attributes = statement.getAttributes();
+            for (Attribute attribute : new ArrayList<Attribute>(attributes)) {
+                List<String> stringValues = attributeValues.get(attribute.getName());
+                if (stringValues == null || stringValues.isEmpty() || attribute.getAttributeValues().isEmpty()) {
+                    attributes.remove(attribute);
+                    continue;
+                }
+
+                List<XMLObject> valueObjects = attribute.getAttributeValues();
+                XMLObject prototypeValue = valueObjects.get(0);
+                valueObjects.clear();
+                for (String stringValue : stringValues) {
+                    XMLObject valueObject = copy(prototypeValue);
+                    if (valueObject instanceof XSString) {
+                        ((XSString) valueObject).setValue(stringValue);
+                    } else {
+                        ((XSAny) valueObject).setTextContent(stringValue);
+                    }
+                    valueObjects.add(valueObject);
+                }
+            }
+            if (statement.getAttributes().isEmpty() && statement.getEncryptedAttributes().isEmpty()) {
+                statements.remove(statement);
+            }
+        }
+    }
+
+    /**
+     * Shifts an instant.
+     * 
+     * @param instant the instant to shift, may be null
+     * @param shift the number of milliseconds by which the instant is shifted
+     * 
+     * @return the shifted instant, or null if the instant is null
+     */
+    private DateTime shift(DateTime instant, long shift) {
+        if (instant == null) {
+            return null;
+        }
+        return instant.plus(shift);
+    }
+
+    /**
+     * Structurally copies an object.
+     * 
+     * @param <T> the type of the object
+     * @param object the object to copy
+     * 
+     * @return the copy
+     */
+    private <T extends XMLObject> T copy(T object) {
+        try {
+            return XMLObjectHelper.copyXMLObject(object);
+        } catch (MarshallingException e) {
+            throw new SAMLRuntimeException("Unable to copy " + object.getElementQName(), e);
+        } catch (UnmarshallingException e) {
+            throw new SAMLRuntimeException("Unable to copy " + object.getElementQName(), e);
+        }
+    }
+
+    /**
+     * Values of the variable parts of an assertion produced from a template. The issue and authentication instants
+     * default to the current time. The other values must be set where the template's prototype requires them, and are
+     * otherwise added to the assertion when set.
+     */
+    public static class Values {
+
+        /** Issue instant of the assertion. */
+        private DateTime issueInstant;
+
+        /** Value of the subject's name identifier. */
+        private String nameIDValue;
+
+        /** Recipient of the subject confirmation data. */
+        private String recipient;
+
+        /** ID of the request to which the assertion responds. */
+        private String inResponseTo;
+
+        /** Address of the subject. */
+        private String address;
+
+        /** Instant at which the subject authenticated. */
+        private DateTime authnInstant;
+
+        /** Index of the subject's session. */
+        private String sessionIndex;
+
+        /** Values of the attributes, indexed by attribute name. */
+        private final Map<String, List<String>> attributeValues = new HashMap<String, List<String>>();
+
+        /**
+         * Gets the issue instant of the assertion.
+         * 
+         * @return issue instant of the assertion
+         */
+        public DateTime getIssueInstant() {
+            return issueInstant;
+        }
+
+        /**
+         * Sets the issue instant of the assertion. Defaults to the current time.
+         * 
+         * @param instant issue instant of the assertion
+         */
+        public void setIssueInstant(DateTime instant) {
+            issueInstant = instant;
+        }
+
+        /**
+         * Gets the value of the subject's name identifier.
+         * 
+         * @return value of the subject's name identifier
+         */
+        public String getNameIDValue() {
+            return nameIDValue;
+        }
+
+        /**
+         * Sets the value of the subject's name identifier.
+         * 
+         * @param value value of the subject's name identifier
+         */
+        public void setNameIDValue(String value) {
+            nameIDValue = value;
+        }
+
+        /**
+         * Gets the recipient of the subject confirmation data.
+         * 
+         * @return recipient of the subject confirmation data
+         */
+        public String getRecipient() {
+            return recipient;
+        }
+
+        /**
+         * Sets the recipient of the subject confirmation data.
+         * 
+         * @param newRecipient recipient of the subject confirmation data
+         */
+        public void setRecipient(String newRecipient) {
+            recipient = newRecipient;
+        }
+
+        /**
+         * Gets the ID of the request to which the assertion responds.
+         * 
+         * @return ID of the request to which the assertion responds
+         */
+        public String getInResponseTo() {
+            return inResponseTo;
+        }
+
+        /**
+         * Sets the ID of the request to which the assertion responds.
+         * 
+         * @param requestID ID of the request to which the assertion responds
+         */
+        public void setInResponseTo(String requestID) {
+            inResponseTo = requestID;
+        }
+
+        /**
+         * Gets the address of the subject.
+         * 
+         * @return address of the subject
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Sets the address of the subject.
+         * 
+         * @param newAddress address of the subject
+         */
+        public void setAddress(String newAddress) {
+            address = newAddress;
+        }
+
+        /**
+         * Gets the instant at which the subject authenticated.
+         * 
+         * @return instant at which the subject authenticated
+         */
+        public DateTime getAuthnInstant() {
+            return authnInstant;
+        }
+
+        /**
+         * Sets the instant at which the subject authenticated. Defaults to the issue instant.
+         * 
+         * @param instant instant at which the subject authenticated
+         */
+        public void setAuthnInstant(DateTime instant) {
+            authnInstant = instant;
+        }
+
+        /**
+         * Gets the index of the subject's session.
+         * 
+         * @return index of the subject's session
+         */
+        public String getSessionIndex() {
+            return sessionIndex;
+        }
+
+        /**
+         * Sets the index of the subject's session.
+         * 
+         * @param index index of the subject's session
+         */
+        public void setSessionIndex(String index) {
+            sessionIndex = index;
+        }
+
+        /**
+         * Gets the values of the attributes, indexed by attribute name. Attributes of the prototype without values are
+         * not included in the assertion.
+         * 
+         * @return values of the attributes
+         */
+        public Map<String, List<String>> getAttributeValues() {
+            return attributeValues;
+        }
+
+        /**
+         * Sets the values of an attribute.
+         * 
+         * @param attributeName name of the attribute
+         * @param values values of the attribute
+         */
+        public void setAttributeValues(String attributeName, String... values) {
+            List<String> valueList = new ArrayList<String>(values.length);
+            Collections.addAll(valueList, values);
+            attributeValues.put(attributeName, valueList);
+        }
+    }
+}
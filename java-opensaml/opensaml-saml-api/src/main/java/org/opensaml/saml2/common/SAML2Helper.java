@@ -19,6 +19,7 @@ package org.opensaml.saml2.common;
 import java.util.List;
 
 import org.joda.time.DateTime;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 
 public class SAML2Helper {
@@ -60,7 +61,7 @@ public class SAML2Helper {
      * @return the earliest expiration time
      */
     public static DateTime getEarliestExpiration(XMLObject xmlObject) {
-        DateTime now = new DateTime();
+        DateTime now = new DateTime(ClockSupport.currentTimeMillis());
         return getEarliestExpiration(xmlObject, null, now);
     }
 
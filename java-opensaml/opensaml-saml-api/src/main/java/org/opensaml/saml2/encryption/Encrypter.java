@@ -20,6 +20,10 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.namespace.QName;
 
@@ -48,6 +52,8 @@ import org.opensaml.xml.encryption.EncryptionParameters;
 import org.opensaml.xml.encryption.KeyEncryptionParameters;
 import org.opensaml.xml.encryption.ReferenceList;
 import org.opensaml.xml.encryption.XMLEncryptionBuilder;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
 import org.opensaml.xml.security.SecurityException;
 import org.opensaml.xml.security.SecurityHelper;
 import org.opensaml.xml.security.keyinfo.KeyInfoGenerator;
@@ -56,6 +62,7 @@ import org.opensaml.xml.signature.KeyName;
 import org.opensaml.xml.signature.RetrievalMethod;
 import org.opensaml.xml.signature.XMLSignatureBuilder;
 import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLObjectHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -87,6 +94,13 @@ import org.w3c.dom.Document;
  * </p>
  * 
  * <p>
+ * An Assertion may also be encrypted for several recipients at once with
+ * {@link #encrypt(Assertion, List)}. The Assertion is encrypted only once, under a single data encryption key,
+ * and that key is then encrypted separately for each recipient. If a key encryption executor has been set via
+ * {@link #setKeyEncryptionExecutor(ExecutorService)} the per-recipient key encryptions are performed in parallel.
+ * </p>
+ * 
+ * <p>
  * For information on other parameters and options, and general XML Encryption issues,
  * see {@link org.opensaml.xml.encryption.Encrypter}.
  * </p>
@@ -139,6 +153,9 @@ public class Encrypter extends org.opensaml.xml.encryption.Encrypter {
     /** The option for where to place the generated EncryptedKey elements. */
     private KeyPlacement keyPlacement;
 
+    /** Executor used to encrypt the data encryption key for multiple recipients in parallel. */
+    private ExecutorService keyEncryptionExecutor;
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(Encrypter.class);
 
@@ -246,6 +263,25 @@ public class Encrypter extends org.opensaml.xml.encryption.Encrypter {
         this.keyPlacement = newKeyPlacement;
     }
 
+    /**
+     * Get the executor used to encrypt the data encryption key for multiple recipients in parallel.
+     * 
+     * @return the key encryption executor, or null if keys are encrypted on the calling thread
+     */
+    public ExecutorService getKeyEncryptionExecutor() {
+        return keyEncryptionExecutor;
+    }
+
+    /**
+     * Set the executor used to encrypt the data encryption key for multiple recipients in parallel. The lifecycle of
+     * the executor is managed by the caller.
+     * 
+     * @param executor the key encryption executor, or null if keys should be encrypted on the calling thread
+     */
+    public void setKeyEncryptionExecutor(ExecutorService executor) {
+        this.keyEncryptionExecutor = executor;
+    }
+
     /**
      * Encrypt the specified Assertion.
      * 
@@ -257,6 +293,31 @@ public class Encrypter extends org.opensaml.xml.encryption.Encrypter {
         return (EncryptedAssertion) encrypt(assertion, EncryptedAssertion.DEFAULT_ELEMENT_NAME);
     }
 
+    /**
+     * Encrypt the specified Assertion for multiple recipients.
+     * 
+     * The Assertion is encrypted once, and the resulting data encryption key is encrypted separately using each of
+     * the supplied key encryption parameters. One EncryptedAssertion is returned per recipient, containing a copy of
+     * the EncryptedData and only that recipient's EncryptedKey, placed according to the current key placement option.
+     * The key encryption parameters supplied at construction are not used.
+     * 
+     * @param assertion the Assertion to encrypt
+     * @param recipientKEKParams the key encryption parameters of each recipient
+     * @return the EncryptedAssertions, in the same order as the supplied key encryption parameters
+     * @throws EncryptionException thrown when encryption generates an error
+     */
+    public List<EncryptedAssertion> encrypt(Assertion assertion, List<KeyEncryptionParameters> recipientKEKParams)
+            throws EncryptionException {
+        List<EncryptedElementType> encElements =
+            encrypt(assertion, EncryptedAssertion.DEFAULT_ELEMENT_NAME, recipientKEKParams);
+
+        List<EncryptedAssertion> encryptedAssertions = new ArrayList<EncryptedAssertion>(encElements.size());
+        for (EncryptedElementType encElement : encElements) {
+            encryptedAssertions.add((EncryptedAssertion) encElement);
+        }
+        return encryptedAssertions;
+    }
+
     /**
      * Encrypt the specified Assertion, treating as an identifier and returning
      * an EncryptedID.
@@ -341,6 +402,142 @@ public class Encrypter extends org.opensaml.xml.encryption.Encrypter {
         }
         
         EncryptedData encryptedData = encryptElement(xmlObject, encryptionKey, encryptionAlgorithmURI, false);
+        generateKeyInfo(encryptedData);
+        
+        List<EncryptedKey> encryptedKeys = new ArrayList<EncryptedKey>();
+        if (kekParamsList != null && ! kekParamsList.isEmpty()) {
+            encryptedKeys.addAll( encryptKey(encryptionKey, kekParamsList, ownerDocument) );
+        }
+        
+        return processElements(encElement, encryptedData, encryptedKeys);
+    }
+
+    /**
+     * Encrypt the specified XMLObject once and return, for each recipient, an instance of the specified QName holding
+     * a copy of the EncryptedData and the data encryption key encrypted for that recipient.
+     * 
+     * @param xmlObject the XMLObject to encrypt
+     * @param encElementName the QName of the specialization of EncryptedElementType to return
+     * @param recipientKEKParams the key encryption parameters of each recipient
+     * @return a specialization of {@link org.opensaml.saml2.core.EncryptedElementType} per recipient
+     * @throws EncryptionException thrown when encryption generates an error
+     */
+    private List<EncryptedElementType> encrypt(XMLObject xmlObject, QName encElementName,
+            List<KeyEncryptionParameters> recipientKEKParams) throws EncryptionException {
+
+        checkParams(encParams);
+        checkParams(recipientKEKParams, false);
+
+        // Marshall each containing element, the encrypted keys of each recipient are created in its Document
+        List<EncryptedElementType> encElements = new ArrayList<EncryptedElementType>(recipientKEKParams.size());
+        for (int i = 0; i < recipientKEKParams.size(); i++) {
+            EncryptedElementType encElement =
+                (EncryptedElementType) builderFactory.getBuilder(encElementName).buildObject(encElementName);
+            checkAndMarshall(encElement);
+            encElements.add(encElement);
+        }
+
+        String encryptionAlgorithmURI = encParams.getAlgorithm();
+        Key encryptionKey = SecurityHelper.extractEncryptionKey(encParams.getEncryptionCredential());
+        if (encryptionKey == null) {
+            encryptionKey = generateEncryptionKey(encryptionAlgorithmURI);
+        }
+
+        log.debug("Encrypting XMLObject once for {} recipients", recipientKEKParams.size());
+        EncryptedData encryptedData = encryptElement(xmlObject, encryptionKey, encryptionAlgorithmURI, false);
+        generateKeyInfo(encryptedData);
+        if (encryptedData.getID() == null) {
+            encryptedData.setID(idGenerator.generateIdentifier());
+        }
+
+        List<EncryptedKey> encryptedKeys = encryptRecipientKeys(encryptionKey, recipientKEKParams, encElements);
+
+        // Each recipient gets its own copy of the EncryptedData, the last one takes the original
+        List<EncryptedData> recipientData = new ArrayList<EncryptedData>(encElements.size());
+        try {
+            for (int i = 0; i < encElements.size() - 1; i++) {
+                recipientData.add(XMLObjectHelper.cloneXMLObject(encryptedData));
+            }
+        } catch (MarshallingException e) {
+            log.error("Error copying EncryptedData for recipient", e);
+            throw new EncryptionException("Error copying EncryptedData for recipient", e);
+        } catch (UnmarshallingException e) {
+            log.error("Error copying EncryptedData for recipient", e);
+            throw new EncryptionException("Error copying EncryptedData for recipient", e);
+        }
+        recipientData.add(encryptedData);
+
+        List<EncryptedElementType> processed = new ArrayList<EncryptedElementType>(encElements.size());
+        for (int i = 0; i < encElements.size(); i++) {
+            List<EncryptedKey> recipientKeys = new ArrayList<EncryptedKey>(1);
+            recipientKeys.add(encryptedKeys.get(i));
+            processed.add(processElements(encElements.get(i), recipientData.get(i), recipientKeys));
+        }
+        return processed;
+    }
+
+    /**
+     * Encrypt the data encryption key for each recipient, in parallel if a key encryption executor is available.
+     * 
+     * @param encryptionKey the data encryption key
+     * @param recipientKEKParams the key encryption parameters of each recipient
+     * @param encElements the EncryptedElementType of each recipient, whose Document will own the EncryptedKey
+     * @return the EncryptedKey of each recipient, in the same order as the key encryption parameters
+     * @throws EncryptionException thrown when encryption generates an error
+     */
+    private List<EncryptedKey> encryptRecipientKeys(final Key encryptionKey,
+            List<KeyEncryptionParameters> recipientKEKParams, List<EncryptedElementType> encElements)
+            throws EncryptionException {
+
+        List<EncryptedKey> encryptedKeys = new ArrayList<EncryptedKey>(recipientKEKParams.size());
+        ExecutorService executor = keyEncryptionExecutor;
+        if (executor == null || recipientKEKParams.size() == 1) {
+            for (int i = 0; i < recipientKEKParams.size(); i++) {
+                encryptedKeys.add(encryptKey(encryptionKey, recipientKEKParams.get(i),
+                        encElements.get(i).getDOM().getOwnerDocument()));
+            }
+            return encryptedKeys;
+        }
+
+        List<Future<EncryptedKey>> futures = new ArrayList<Future<EncryptedKey>>(recipientKEKParams.size());
+        for (int i = 0; i < recipientKEKParams.size(); i++) {
+            final KeyEncryptionParameters kekParams = recipientKEKParams.get(i);
+            final Document ownerDocument = encElements.get(i).getDOM().getOwnerDocument();
+            futures.add(executor.submit(new Callable<EncryptedKey>() {
+                public EncryptedKey call() throws EncryptionException {
+                    return encryptKey(encryptionKey, kekParams, ownerDocument);
+                }
+            }));
+        }
+
+        try {
+            for (Future<EncryptedKey> future : futures) {
+                encryptedKeys.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EncryptionException("Interrupted while encrypting keys for recipients", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EncryptionException) {
+                throw (EncryptionException) e.getCause();
+            }
+            log.error("Error encrypting key for recipient", e.getCause());
+            throw new EncryptionException("Error encrypting key for recipient", e);
+        } finally {
+            for (Future<EncryptedKey> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return encryptedKeys;
+    }
+
+    /**
+     * Dynamically generate the KeyInfo of the EncryptedData if a KeyInfo generator has been configured.
+     * 
+     * @param encryptedData the EncryptedData
+     * @throws EncryptionException thrown if the KeyInfo can not be generated
+     */
+    private void generateKeyInfo(EncryptedData encryptedData) throws EncryptionException {
         if (encParams.getKeyInfoGenerator() != null) {
             KeyInfoGenerator generator = encParams.getKeyInfoGenerator();
             log.debug("Dynamically generating KeyInfo from Credential for EncryptedData using generator: {}",
@@ -351,13 +548,6 @@ public class Encrypter extends org.opensaml.xml.encryption.Encrypter {
                 throw new EncryptionException("Error generating EncryptedData KeyInfo", e);
             }
         }
-        
-        List<EncryptedKey> encryptedKeys = new ArrayList<EncryptedKey>();
-        if (kekParamsList != null && ! kekParamsList.isEmpty()) {
-            encryptedKeys.addAll( encryptKey(encryptionKey, kekParamsList, ownerDocument) );
-        }
-        
-        return processElements(encElement, encryptedData, encryptedKeys);
     }
 
     /**
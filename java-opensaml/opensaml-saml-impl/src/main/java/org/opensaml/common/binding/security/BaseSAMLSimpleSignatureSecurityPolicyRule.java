@@ -16,6 +16,7 @@
 
 package org.opensaml.common.binding.security;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -23,6 +24,8 @@ import javax.servlet.http.HttpServletRequest;
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.security.MetadataCriteria;
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
@@ -41,7 +44,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Base class for security rules which verify simple "blob" signatures computed over some components of a request.
  */
-public abstract class BaseSAMLSimpleSignatureSecurityPolicyRule implements SecurityPolicyRule {
+public abstract class BaseSAMLSimpleSignatureSecurityPolicyRule implements CostedSecurityPolicyRule,
+        IssuerDerivingSecurityPolicyRule {
 
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(BaseSAMLSimpleSignatureSecurityPolicyRule.class);
@@ -327,4 +331,19 @@ public abstract class BaseSAMLSimpleSignatureSecurityPolicyRule implements Secur
     protected abstract boolean ruleHandles(HttpServletRequest request, SAMLMessageContext samlMsgCtx)
             throws SecurityPolicyException;
 
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.EXPENSIVE;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // the signature is validated for the context issuer, which another rule may derive
+        return Collections.<Class<? extends SecurityPolicyRule>>singletonList(IssuerDerivingSecurityPolicyRule.class);
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return true;
+    }
 }
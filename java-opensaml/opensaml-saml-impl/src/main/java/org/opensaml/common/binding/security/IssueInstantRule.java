@@ -16,9 +16,14 @@
 
 package org.opensaml.common.binding.security;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.joda.time.DateTime;
 import org.opensaml.common.binding.SAMLMessageContext;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.slf4j.Logger;
@@ -27,7 +32,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Security policy rule implementation that checks for validity of SAML message issue instant date and time.
  */
-public class IssueInstantRule implements SecurityPolicyRule {
+public class IssueInstantRule implements CostedSecurityPolicyRule {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(IssueInstantRule.class);
@@ -92,22 +97,37 @@ public class IssueInstantRule implements SecurityPolicyRule {
         }
 
         DateTime issueInstant = samlMsgCtx.getInboundSAMLMessageIssueInstant();
-        DateTime now = new DateTime();
-        DateTime latestValid = now.plusSeconds(clockSkew);
-        DateTime expiration = issueInstant.plusSeconds(clockSkew + expires);
+        long now = ClockSupport.currentTimeMillis();
+        long issueInstantMillis = issueInstant.getMillis();
 
         // Check message wasn't issued in the future
-        if (issueInstant.isAfter(latestValid)) {
-            log.warn("Message was not yet valid: message time was {}, latest valid is: {}", issueInstant, latestValid);
+        if (issueInstantMillis > now + clockSkew * 1000L) {
+            log.warn("Message was not yet valid: message time was {}, latest valid is: {}", issueInstant,
+                    new DateTime(now).plusSeconds(clockSkew));
             throw new SecurityPolicyException("Message was rejected because was issued in the future");
         }
 
         // Check message has not expired
-        if (expiration.isBefore(now)) {
+        if (issueInstantMillis + (clockSkew + expires) * 1000L < now) {
             log.warn("Message was expired: message issue time was '" + issueInstant + "', message expired at: '"
-                    + expiration + "', current time: '" + now + "'");
+                    + issueInstant.plusSeconds(clockSkew + expires) + "', current time: '" + new DateTime(now) + "'");
             throw new SecurityPolicyException("Message was rejected due to issue instant expiration");
         }
 
     }
+
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.CHEAP;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
\ No newline at end of file
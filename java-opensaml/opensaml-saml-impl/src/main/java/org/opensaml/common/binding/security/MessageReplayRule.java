@@ -16,9 +16,14 @@
 
 package org.opensaml.common.binding.security;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.util.storage.ReplayCache;
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.xml.util.DatatypeHelper;
@@ -28,7 +33,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Security policy rule implementation that which checks for replay of SAML messages.
  */
-public class MessageReplayRule implements SecurityPolicyRule {
+public class MessageReplayRule implements CostedSecurityPolicyRule {
 
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(MessageReplayRule.class);
@@ -101,4 +106,23 @@ public class MessageReplayRule implements SecurityPolicyRule {
         }
 
     }
+
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.CHEAP;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // stale messages are not to be recorded in the replay cache, and messages are recorded under their issuer,
+        // which another rule may derive
+        return Arrays.<Class<? extends SecurityPolicyRule>>asList(IssueInstantRule.class,
+                IssuerDerivingSecurityPolicyRule.class);
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
\ No newline at end of file
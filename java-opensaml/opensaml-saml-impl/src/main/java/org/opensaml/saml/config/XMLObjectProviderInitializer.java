@@ -47,4 +47,9 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    protected String getGeneratedRegistrationClassName() {
+        return "org.opensaml.saml.config.GeneratedXMLObjectProviderRegistration";
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.binding.artifact;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.util.Base64;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.util.DatatypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the SAML 2 type 0x0004 artifact SourceIDs, the SHA-1 digests of entity IDs, of every entity within the
+ * metadata of a {@link MetadataProvider}.
+ *
+ * The index is built the first time it is consulted and then reused until, if the provider is an
+ * {@link ObservableMetadataProvider}, the provider signals that its metadata has changed. Resolving the issuer of an
+ * artifact is thus a single map lookup rather than a digest computation for each entity in the metadata. An index
+ * which is no longer used must be destroyed in order to remove its observer from the provider.
+ */
+@ThreadSafe
+public class SAML2SourceIDIndex {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(SAML2SourceIDIndex.class);
+
+    /** Provider of the indexed metadata. */
+    private final MetadataProvider metadataProvider;
+
+    /** Observer registered with an observable provider, or null if the provider is not observable. */
+    private final MetadataProviderObserver observer;
+
+    /** Base64 encoded SourceIDs mapped to their entity IDs, or null if the index must be (re)built. */
+    private volatile Map<String, String> index;
+
+    /** Number of times the index has been cleared, used to discard indexes built from superseded metadata. */
+    private final AtomicLong generation;
+
+    /**
+     * Constructor.
+     *
+     * @param provider provider of the metadata to index
+     */
+    public SAML2SourceIDIndex(MetadataProvider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("Metadata provider may not be null");
+        }
+        metadataProvider = provider;
+        generation = new AtomicLong();
+
+        if (provider instanceof ObservableMetadataProvider) {
+            observer = new MetadataProviderObserver();
+            ((ObservableMetadataProvider) provider).getObservers().add(observer);
+        } else {
+            observer = null;
+        }
+    }
+
+    /**
+     * Gets the provider of the indexed metadata.
+     *
+     * @return provider of the indexed metadata
+     */
+    public MetadataProvider getMetadataProvider() {
+        return metadataProvider;
+    }
+
+    /**
+     * Gets the ID of the entity whose SourceID is given.
+     *
+     * @param sourceID the SourceID of an artifact
+     *
+     * @return the entity ID or null if no entity within the metadata has the given SourceID
+     *
+     * @throws MetadataProviderException thrown if the metadata can not be retrieved
+     */
+    public String getEntityID(byte[] sourceID) throws MetadataProviderException {
+        if (sourceID == null) {
+            return null;
+        }
+
+        Map<String, String> currentIndex = index;
+        if (currentIndex == null) {
+            currentIndex = rebuild();
+        }
+        return currentIndex.get(Base64.encodeBytes(sourceID, Base64.DONT_BREAK_LINES));
+    }
+
+    /** Discards the current index, it will be rebuilt the next time it is consulted. */
+    public void clear() {
+        generation.incrementAndGet();
+        index = null;
+    }
+
+    /**
+     * Removes the observer of this index from the metadata provider and discards the current index. The index remains
+     * usable but is no longer cleared when the metadata changes.
+     */
+    public void destroy() {
+        if (observer != null) {
+            ((ObservableMetadataProvider) metadataProvider).getObservers().remove(observer);
+        }
+        clear();
+    }
+
+    /**
+     * Rebuilds the index from the current metadata. The rebuilt index is only kept if the index was not cleared while
+     * it was being built, otherwise it is returned to the caller but rebuilt again the next time it is consulted.
+     *
+     * @return the rebuilt index
+     *
+     * @throws MetadataProviderException thrown if the metadata can not be retrieved
+     */
+    protected synchronized Map<String, String> rebuild() throws MetadataProviderException {
+        Map<String, String> currentIndex = index;
+        if (currentIndex != null) {
+            return currentIndex;
+        }
+
+        MessageDigest sha1Digester;
+        try {
+            sha1Digester = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            log.error("JVM does not support required cryptography algorithm: SHA-1.", e);
+            throw new InternalError("JVM does not support required cryptography algorithm: SHA-1.");
+        }
+
+        long startGeneration = generation.get();
+        currentIndex = new HashMap<String, String>();
+        indexMetadata(metadataProvider.getMetadata(), currentIndex, sha1Digester);
+        log.debug("Indexed the artifact SourceIDs of {} entities", currentIndex.size());
+
+        if (generation.get() == startGeneration) {
+            index = currentIndex;
+            if (generation.get() != startGeneration) {
+                // cleared while being published, clear() may have run before the index was set
+                index = null;
+            }
+        } else {
+            log.debug("Artifact SourceID index was cleared while being rebuilt, discarding it");
+        }
+        return currentIndex;
+    }
+
+    /**
+     * Adds the SourceIDs of all entities within the given metadata to the index.
+     *
+     * @param metadata the metadata, an {@link EntitiesDescriptor} or {@link EntityDescriptor}
+     * @param sourceIDs the index being built
+     * @param sha1Digester digester used to compute SourceIDs
+     */
+    private void indexMetadata(XMLObject metadata, Map<String, String> sourceIDs, MessageDigest sha1Digester) {
+        if (metadata instanceof EntitiesDescriptor) {
+            EntitiesDescriptor entities = (EntitiesDescriptor) metadata;
+            for (EntitiesDescriptor childEntities : entities.getEntitiesDescriptors()) {
+                indexMetadata(childEntities, sourceIDs, sha1Digester);
+            }
+            for (EntityDescriptor entity : entities.getEntityDescriptors()) {
+                indexMetadata(entity, sourceIDs, sha1Digester);
+            }
+        } else if (metadata instanceof EntityDescriptor) {
+            String entityID = DatatypeHelper.safeTrimOrNullString(((EntityDescriptor) metadata).getEntityID());
+            if (entityID == null) {
+                return;
+            }
+
+            try {
+                byte[] sourceID = sha1Digester.digest(entityID.getBytes("UTF-8"));
+                sourceIDs.put(Base64.encodeBytes(sourceID, Base64.DONT_BREAK_LINES), entityID);
+            } catch (UnsupportedEncodingException e) {
+                // JVM is required to support UTF-8
+            }
+        }
+    }
+
+    /** An observer that discards the index if the underlying metadata changes. */
+    protected class MetadataProviderObserver implements ObservableMetadataProvider.Observer {
+
+        /** {@inheritDoc} */
+        public void onEvent(MetadataProvider provider) {
+            clear();
+            log.debug("Artifact SourceID index cleared");
+        }
+    }
+}
@@ -16,34 +16,153 @@
 
 package org.opensaml.saml2.binding.decoding;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
+import javax.xml.namespace.QName;
+
+import org.joda.time.DateTime;
+import org.opensaml.Configuration;
+import org.opensaml.common.IdentifierGenerator;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.SAMLObjectBuilder;
+import org.opensaml.common.SAMLVersion;
 import org.opensaml.common.binding.SAMLMessageContext;
+import org.opensaml.common.impl.SecureRandomIdentifierGenerator;
 import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.binding.artifact.AbstractSAML2Artifact;
+import org.opensaml.saml2.binding.artifact.SAML2ArtifactType0004;
+import org.opensaml.saml2.binding.artifact.SAML2SourceIDIndex;
+import org.opensaml.saml2.core.Artifact;
+import org.opensaml.saml2.core.ArtifactResolve;
+import org.opensaml.saml2.core.ArtifactResponse;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.metadata.ArtifactResolutionService;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml2.metadata.SSODescriptor;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.ws.message.MessageContext;
 import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.soap.client.BasicSOAPMessageContext;
+import org.opensaml.ws.soap.client.SOAPClient;
+import org.opensaml.ws.soap.common.SOAPException;
+import org.opensaml.ws.soap.common.SOAPObjectBuilder;
+import org.opensaml.ws.soap.soap11.Body;
+import org.opensaml.ws.soap.soap11.Envelope;
 import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.XMLObjectBuilderFactory;
+import org.opensaml.xml.io.Marshaller;
+import org.opensaml.xml.io.MarshallingException;
 import org.opensaml.xml.parse.ParserPool;
+import org.opensaml.xml.parse.XMLParserException;
+import org.opensaml.xml.security.SecurityException;
 import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLConstants;
+import org.opensaml.xml.util.XMLHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
-/** 
+/**
  * SAML 2 Artifact Binding decoder, support both HTTP GET and POST.
  * 
- * <strong>NOTE: This decoder is not yet implemented.</strong>
- * */
+ * The artifact is decoded, the issuer of a type 0x0004 artifact is identified by means of a {@link SAML2SourceIDIndex}
+ * over the metadata of the message context, and the artifact is dereferenced by sending an {@link ArtifactResolve}
+ * request to the issuer's SOAP 1.1 {@link ArtifactResolutionService} using the configured {@link SOAPClient}.
+ * Connection pooling, per-host connection limits and timeouts for the back-channel are those of the SOAP client, e.g.
+ * those configured on the HTTP client given to {@link org.opensaml.ws.soap.client.http.HttpSOAPClient}.
+ * 
+ * Artifacts are single use. If the same artifact is presented concurrently, for example because a browser submitted
+ * it twice, with the same metadata provider, local entity ID and peer entity role, only one artifact resolution
+ * request is sent. The caller that sends the request serializes the resulting message before using it and each
+ * concurrent caller parses its own copy from that serialized form, so the DOM of a message is never shared between
+ * callers.
+ * 
+ * Note that the {@link ArtifactResolve} request is not signed. The back-channel must therefore be authenticated by the
+ * SOAP client, e.g. by means of client TLS.
+ */
 public class HTTPArtifactDecoder extends BaseSAML2MessageDecoder {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(HTTPArtifactDecoder.class);
-    
+
+    /** Client used to dereference artifacts. */
+    private SOAPClient soapClient;
+
+    /** Generator of ArtifactResolve request IDs. */
+    private IdentifierGenerator idGenerator;
+
+    /** Index of the SourceIDs of the entities within the metadata of the most recently used metadata provider. */
+    private volatile SAML2SourceIDIndex sourceIDIndex;
+
+    /** Artifact resolutions in progress, indexed by artifact and resolution context. */
+    private final ConcurrentMap<ResolutionKey, ArtifactResolution> pendingResolutions;
+
     /**
-     * Constructor.
+     * Constructor. Artifacts can not be dereferenced until a SOAP client is set.
      * 
      * @param pool parser pool used to deserialize messages
      */
     public HTTPArtifactDecoder(ParserPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param pool parser pool used to deserialize messages
+     * @param client client used to send artifact resolution requests to the artifact issuer
+     */
+    public HTTPArtifactDecoder(ParserPool pool, SOAPClient client) {
         super(pool);
+        soapClient = client;
+        pendingResolutions = new ConcurrentHashMap<ResolutionKey, ArtifactResolution>();
+
+        try {
+            idGenerator = new SecureRandomIdentifierGenerator();
+        } catch (NoSuchAlgorithmException e) {
+            log.error("JVM does not support SHA1PRNG random number generation algorithm.");
+        }
+    }
+
+    /**
+     * Gets the client used to send artifact resolution requests to the artifact issuer.
+     * 
+     * @return client used to send artifact resolution requests
+     */
+    public SOAPClient getSOAPClient() {
+        return soapClient;
+    }
+
+    /**
+     * Sets the client used to send artifact resolution requests to the artifact issuer.
+     * 
+     * @param client client used to send artifact resolution requests
+     */
+    public void setSOAPClient(SOAPClient client) {
+        soapClient = client;
+    }
+
+    /**
+     * Sets the generator of ArtifactResolve request IDs.
+     * 
+     * @param generator generator of ArtifactResolve request IDs
+     */
+    public void setIDGenerator(IdentifierGenerator generator) {
+        idGenerator = generator;
     }
 
     /** {@inheritDoc} */
@@ -101,10 +220,530 @@ public class HTTPArtifactDecoder extends BaseSAML2MessageDecoder {
         String encodedArtifact = DatatypeHelper.safeTrimOrNullString(inTransport.getParameterValue("SAMLart"));
         if (encodedArtifact == null) {
             log.error("URL SAMLart parameter was missing or did not contain a value.");
-            throw new MessageDecodingException("URL TARGET parameter was missing or did not contain a value.");
+            throw new MessageDecodingException("URL SAMLart parameter was missing or did not contain a value.");
+        }
+
+        AbstractSAML2Artifact artifact = decodeArtifact(encodedArtifact);
+
+        ResolutionKey key = new ResolutionKey(encodedArtifact, samlMsgCtx);
+        SAMLObject samlMessage = null;
+        while (samlMessage == null) {
+            ArtifactResolution resolution = new ArtifactResolution();
+            ArtifactResolution pendingResolution = pendingResolutions.putIfAbsent(key, resolution);
+            if (pendingResolution == null) {
+                samlMessage = resolvePendingArtifact(samlMsgCtx, encodedArtifact, artifact, key, resolution);
+            } else if (pendingResolution.join()) {
+                log.debug("Artifact is already being dereferenced, waiting for the pending resolution");
+                samlMessage = pendingResolution.getMessageCopy();
+            }
+            // otherwise the pending resolution completed before it could be joined, the artifact is dereferenced again
+        }
+
+        samlMsgCtx.setInboundMessage(samlMessage);
+        samlMsgCtx.setInboundSAMLMessage(samlMessage);
+        log.debug("Decoded SAML message");
+    }
+
+    /**
+     * Decodes the Base64 encoded artifact.
+     * 
+     * @param encodedArtifact the Base64 encoded artifact
+     * 
+     * @return the decoded artifact
+     * 
+     * @throws MessageDecodingException thrown if the artifact can not be decoded or is of an unknown type
+     */
+    protected AbstractSAML2Artifact decodeArtifact(String encodedArtifact) throws MessageDecodingException {
+        AbstractSAML2Artifact artifact = null;
+        try {
+            artifact = Configuration.getSAML2ArtifactBuilderFactory().buildArtifact(encodedArtifact);
+        } catch (RuntimeException e) {
+            log.debug("Unable to decode artifact", e);
+        }
+
+        if (artifact == null) {
+            log.error("Unable to decode SAML 2 artifact or artifact type is not supported");
+            throw new MessageDecodingException("Unable to decode SAML 2 artifact or artifact type is not supported");
+        }
+        return artifact;
+    }
+
+    /**
+     * Dereferences an artifact from its issuer.
+     * 
+     * @param samlMsgCtx current message context
+     * @param encodedArtifact the Base64 encoded artifact
+     * @param artifact the decoded artifact
+     * 
+     * @return the protocol message referenced by the artifact
+     * 
+     * @throws MessageDecodingException thrown if the artifact can not be dereferenced
+     */
+    protected SAMLObject resolveArtifact(SAMLMessageContext samlMsgCtx, String encodedArtifact,
+            AbstractSAML2Artifact artifact) throws MessageDecodingException {
+        if (soapClient == null) {
+            log.error("No SOAP client configured, unable to dereference artifact");
+            throw new MessageDecodingException("No SOAP client configured, unable to dereference artifact");
+        }
+
+        String issuer = resolveArtifactIssuer(samlMsgCtx, artifact);
+        ArtifactResolutionService resolutionService = selectArtifactResolutionService(samlMsgCtx, issuer, artifact);
+        String endpoint = resolutionService.getLocation();
+
+        ArtifactResolve request = buildArtifactResolve(samlMsgCtx, encodedArtifact, endpoint);
+        BasicSOAPMessageContext soapContext = new BasicSOAPMessageContext();
+        soapContext.setOutboundMessage(buildEnvelope(request));
+        soapContext.setOutboundMessageIssuer(samlMsgCtx.getLocalEntityId());
+        soapContext.setInboundMessageIssuer(issuer);
+
+        log.debug("Dereferencing artifact from {} at {}", issuer, endpoint);
+        try {
+            soapClient.send(endpoint, soapContext);
+        } catch (SOAPException e) {
+            log.error("Unable to dereference artifact from " + endpoint, e);
+            throw new MessageDecodingException("Unable to dereference artifact from " + endpoint, e);
+        } catch (SecurityException e) {
+            log.error("Artifact response from " + endpoint + " does not meet security policy", e);
+            throw new MessageDecodingException("Artifact response from " + endpoint
+                    + " does not meet security policy", e);
+        }
+
+        return extractMessage(request, soapContext.getInboundMessage());
+    }
+
+    /**
+     * Identifies the entity that issued the artifact.
+     * 
+     * @param samlMsgCtx current message context
+     * @param artifact the decoded artifact
+     * 
+     * @return the entity ID of the artifact issuer
+     * 
+     * @throws MessageDecodingException thrown if the issuer can not be identified
+     */
+    protected String resolveArtifactIssuer(SAMLMessageContext samlMsgCtx, AbstractSAML2Artifact artifact)
+            throws MessageDecodingException {
+        if (!(artifact instanceof SAML2ArtifactType0004)) {
+            log.error("Unsupported SAML 2 artifact type");
+            throw new MessageDecodingException("Unsupported SAML 2 artifact type");
+        }
+
+        MetadataProvider metadataProvider = samlMsgCtx.getMetadataProvider();
+        if (metadataProvider == null) {
+            log.error("No metadata provider available, unable to identify artifact issuer");
+            throw new MessageDecodingException("No metadata provider available, unable to identify artifact issuer");
+        }
+
+        String issuer;
+        try {
+            issuer = getSourceIDIndex(metadataProvider).getEntityID(((SAML2ArtifactType0004) artifact).getSourceID());
+        } catch (MetadataProviderException e) {
+            log.error("Unable to read metadata, unable to identify artifact issuer", e);
+            throw new MessageDecodingException("Unable to read metadata, unable to identify artifact issuer", e);
+        }
+
+        if (issuer == null) {
+            log.error("Artifact SourceID does not match any entity within the metadata");
+            throw new MessageDecodingException("Artifact SourceID does not match any entity within the metadata");
+        }
+        return issuer;
+    }
+
+    /**
+     * Gets the SourceID index for the given metadata provider, creating it if this is not the provider that was
+     * indexed previously. A replaced index is destroyed so that it no longer observes its metadata provider.
+     * 
+     * @param metadataProvider the metadata provider
+     * 
+     * @return the SourceID index
+     */
+    protected SAML2SourceIDIndex getSourceIDIndex(MetadataProvider metadataProvider) {
+        SAML2SourceIDIndex currentIndex = sourceIDIndex;
+        if (currentIndex != null && currentIndex.getMetadataProvider() == metadataProvider) {
+            return currentIndex;
+        }
+
+        synchronized (this) {
+            currentIndex = sourceIDIndex;
+            if (currentIndex == null || currentIndex.getMetadataProvider() != metadataProvider) {
+                if (currentIndex != null) {
+                    currentIndex.destroy();
+                }
+                currentIndex = new SAML2SourceIDIndex(metadataProvider);
+                sourceIDIndex = currentIndex;
+            }
+            return currentIndex;
+        }
+    }
+
+    /**
+     * Selects the SOAP 1.1 artifact resolution service, of the artifact issuer, which is identified by the endpoint
+     * index of the artifact. If the issuer has no such service its default SOAP 1.1 service is used.
+     * 
+     * @param samlMsgCtx current message context
+     * @param issuer entity ID of the artifact issuer
+     * @param artifact the decoded artifact
+     * 
+     * @return the selected artifact resolution service
+     * 
+     * @throws MessageDecodingException thrown if the issuer has no suitable artifact resolution service
+     */
+    protected ArtifactResolutionService selectArtifactResolutionService(SAMLMessageContext samlMsgCtx, String issuer,
+            AbstractSAML2Artifact artifact) throws MessageDecodingException {
+        QName issuerRole = samlMsgCtx.getPeerEntityRole();
+        if (issuerRole == null) {
+            issuerRole = IDPSSODescriptor.DEFAULT_ELEMENT_NAME;
+        }
+
+        RoleDescriptor role;
+        try {
+            role = samlMsgCtx.getMetadataProvider().getRole(issuer, issuerRole, SAMLConstants.SAML20P_NS);
+        } catch (MetadataProviderException e) {
+            log.error("Unable to read metadata for artifact issuer " + issuer, e);
+            throw new MessageDecodingException("Unable to read metadata for artifact issuer " + issuer, e);
+        }
+
+        if (role instanceof SSODescriptor) {
+            byte[] indexBytes = artifact.getEndpointIndex();
+            int endpointIndex = ((indexBytes[0] & 0xff) << 8) | (indexBytes[1] & 0xff);
+
+            List<ArtifactResolutionService> services = ((SSODescriptor) role).getArtifactResolutionServices();
+            for (ArtifactResolutionService service : services) {
+                if (SAMLConstants.SAML2_SOAP11_BINDING_URI.equals(service.getBinding()) && service.getIndex() != null
+                        && service.getIndex() == endpointIndex) {
+                    return service;
+                }
+            }
+
+            ArtifactResolutionService defaultService = ((SSODescriptor) role).getDefaultArtifactResolutionService();
+            if (defaultService != null
+                    && SAMLConstants.SAML2_SOAP11_BINDING_URI.equals(defaultService.getBinding())) {
+                log.debug("Artifact issuer has no artifact resolution service with index {}, using the default",
+                        endpointIndex);
+                return defaultService;
+            }
+        }
+
+        log.error("No SOAP 1.1 artifact resolution service found for artifact issuer {} in role {}", issuer,
+                issuerRole);
+        throw new MessageDecodingException("No SOAP 1.1 artifact resolution service found for artifact issuer "
+                + issuer);
+    }
+
+    /**
+     * Builds the request used to dereference the artifact.
+     * 
+     * @param samlMsgCtx current message context
+     * @param encodedArtifact the Base64 encoded artifact
+     * @param endpoint location of the artifact resolution service
+     * 
+     * @return the artifact resolution request
+     */
+    @SuppressWarnings("unchecked")
+    protected ArtifactResolve buildArtifactResolve(SAMLMessageContext samlMsgCtx, String encodedArtifact,
+            String endpoint) {
+        XMLObjectBuilderFactory builderFactory = Configuration.getBuilderFactory();
+
+        Artifact artifact = ((SAMLObjectBuilder<Artifact>) builderFactory.getBuilder(Artifact.DEFAULT_ELEMENT_NAME))
+                .buildObject();
+        artifact.setArtifact(encodedArtifact);
+
+        ArtifactResolve request = ((SAMLObjectBuilder<ArtifactResolve>) builderFactory
+                .getBuilder(ArtifactResolve.DEFAULT_ELEMENT_NAME)).buildObject();
+        request.setID(idGenerator.generateIdentifier());
+        request.setVersion(SAMLVersion.VERSION_20);
+        request.setIssueInstant(new DateTime());
+        request.setDestination(endpoint);
+        request.setArtifact(artifact);
+
+        String localEntityId = DatatypeHelper.safeTrimOrNullString(samlMsgCtx.getLocalEntityId());
+        if (localEntityId != null) {
+            Issuer issuer = ((SAMLObjectBuilder<Issuer>) builderFactory.getBuilder(Issuer.DEFAULT_ELEMENT_NAME))
+                    .buildObject();
+            issuer.setValue(localEntityId);
+            request.setIssuer(issuer);
+        }
+
+        return request;
+    }
+
+    /**
+     * Wraps the given request in a SOAP envelope.
+     * 
+     * @param request the request
+     * 
+     * @return the SOAP envelope
+     */
+    @SuppressWarnings("unchecked")
+    protected Envelope buildEnvelope(ArtifactResolve request) {
+        XMLObjectBuilderFactory builderFactory = Configuration.getBuilderFactory();
+
+        Body body = ((SOAPObjectBuilder<Body>) builderFactory.getBuilder(Body.DEFAULT_ELEMENT_NAME)).buildObject();
+        body.getUnknownXMLObjects().add(request);
+
+        Envelope envelope = ((SOAPObjectBuilder<Envelope>) builderFactory.getBuilder(Envelope.DEFAULT_ELEMENT_NAME))
+                .buildObject();
+        envelope.setBody(body);
+
+        return envelope;
+    }
+
+    /**
+     * Extracts the dereferenced protocol message from the artifact response.
+     * 
+     * @param request the artifact resolution request
+     * @param response the SOAP envelope received in response
+     * 
+     * @return the protocol message referenced by the artifact
+     * 
+     * @throws MessageDecodingException thrown if the response is not a successful artifact response to the request
+     */
+    protected SAMLObject extractMessage(ArtifactResolve request, XMLObject response) throws MessageDecodingException {
+        if (!(response instanceof Envelope) || ((Envelope) response).getBody() == null) {
+            log.error("Artifact resolution response was not a SOAP envelope");
+            throw new MessageDecodingException("Artifact resolution response was not a SOAP envelope");
+        }
+
+        List<XMLObject> responses = ((Envelope) response).getBody().getUnknownXMLObjects(
+                ArtifactResponse.DEFAULT_ELEMENT_NAME);
+        if (responses.isEmpty()) {
+            log.error("Artifact resolution response did not contain an ArtifactResponse");
+            throw new MessageDecodingException("Artifact resolution response did not contain an ArtifactResponse");
+        }
+        ArtifactResponse artifactResponse = (ArtifactResponse) responses.get(0);
+
+        if (!DatatypeHelper.safeEquals(request.getID(), artifactResponse.getInResponseTo())) {
+            log.error("ArtifactResponse InResponseTo {} does not match ArtifactResolve ID {}", artifactResponse
+                    .getInResponseTo(), request.getID());
+            throw new MessageDecodingException("ArtifactResponse was not issued in response to the ArtifactResolve");
+        }
+
+        if (artifactResponse.getStatus() == null || artifactResponse.getStatus().getStatusCode() == null
+                || !StatusCode.SUCCESS_URI.equals(artifactResponse.getStatus().getStatusCode().getValue())) {
+            log.error("ArtifactResponse did not indicate success");
+            throw new MessageDecodingException("ArtifactResponse did not indicate success");
+        }
+
+        if (artifactResponse.getMessage() == null) {
+            log.error("ArtifactResponse did not contain a protocol message, the artifact is unknown or was used");
+            throw new MessageDecodingException("ArtifactResponse did not contain a protocol message");
+        }
+
+        return artifactResponse.getMessage();
+    }
+
+    /**
+     * Dereferences an artifact on behalf of all callers which join the given pending resolution.
+     * 
+     * @param samlMsgCtx current message context
+     * @param encodedArtifact the Base64 encoded artifact
+     * @param artifact the decoded artifact
+     * @param key key under which the resolution is pending
+     * @param resolution the pending resolution
+     * 
+     * @return the protocol message referenced by the artifact
+     * 
+     * @throws MessageDecodingException thrown if the artifact can not be dereferenced
+     */
+    private SAMLObject resolvePendingArtifact(SAMLMessageContext samlMsgCtx, String encodedArtifact,
+            AbstractSAML2Artifact artifact, ResolutionKey key, ArtifactResolution resolution)
+            throws MessageDecodingException {
+        SAMLObject samlMessage = null;
+        MessageDecodingException error = null;
+        try {
+            samlMessage = resolveArtifact(samlMsgCtx, encodedArtifact, artifact);
+            return samlMessage;
+        } catch (MessageDecodingException e) {
+            error = e;
+            throw e;
+        } finally {
+            pendingResolutions.remove(key, resolution);
+            resolution.complete(samlMessage, error);
+        }
+    }
+
+    /**
+     * Serializes a dereferenced message so that callers other than the one that dereferenced it may parse their own
+     * copy. The message is imported into a new document, together with the namespace declarations in scope of the
+     * message element, so the DOM of the message itself is not modified.
+     * 
+     * @param samlMessage the dereferenced message
+     * 
+     * @return the serialized message
+     * 
+     * @throws MessageDecodingException thrown if the message can not be serialized
+     */
+    private byte[] serializeMessage(SAMLObject samlMessage) throws MessageDecodingException {
+        try {
+            Marshaller marshaller = Configuration.getMarshallerFactory().getMarshaller(samlMessage);
+            if (marshaller == null) {
+                throw new MessageDecodingException("No marshaller registered for dereferenced message "
+                        + samlMessage.getElementQName());
+            }
+            Element messageElement = marshaller.marshall(samlMessage);
+
+            Document copyDocument = getParserPool().newDocument();
+            Element copyElement = (Element) copyDocument.importNode(messageElement, true);
+            copyDocument.appendChild(copyElement);
+            for (Node ancestor = messageElement.getParentNode(); ancestor instanceof Element; ancestor = ancestor
+                    .getParentNode()) {
+                NamedNodeMap attributes = ancestor.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attribute = (Attr) attributes.item(i);
+                    if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                            && !copyElement.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                        copyElement.setAttributeNS(XMLConstants.XMLNS_NS, attribute.getName(), attribute.getValue());
+                    }
+                }
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            XMLHelper.writeNode(copyElement, output);
+            return output.toByteArray();
+        } catch (MarshallingException e) {
+            throw new MessageDecodingException("Unable to serialize dereferenced message", e);
+        } catch (XMLParserException e) {
+            throw new MessageDecodingException("Unable to serialize dereferenced message", e);
+        }
+    }
+
+    /** Key identifying an artifact together with the context in which it is dereferenced. */
+    private static final class ResolutionKey {
+
+        /** The Base64 encoded artifact. */
+        private final String encodedArtifact;
+
+        /** Metadata provider used to identify the artifact issuer. */
+        private final MetadataProvider metadataProvider;
+
+        /** Entity ID of the local entity which dereferences the artifact. */
+        private final String localEntityId;
+
+        /** Role of the artifact issuer. */
+        private final QName peerEntityRole;
+
+        /**
+         * Constructor.
+         * 
+         * @param encoded the Base64 encoded artifact
+         * @param samlMsgCtx message context of the caller that dereferences the artifact
+         */
+        public ResolutionKey(String encoded, SAMLMessageContext samlMsgCtx) {
+            encodedArtifact = encoded;
+            metadataProvider = samlMsgCtx.getMetadataProvider();
+            localEntityId = samlMsgCtx.getLocalEntityId();
+            peerEntityRole = samlMsgCtx.getPeerEntityRole();
+        }
+
+        /** {@inheritDoc} */
+        public int hashCode() {
+            return encodedArtifact.hashCode();
+        }
+
+        /** {@inheritDoc} */
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey) obj;
+            return encodedArtifact.equals(other.encodedArtifact) && metadataProvider == other.metadataProvider
+                    && DatatypeHelper.safeEquals(localEntityId, other.localEntityId)
+                    && DatatypeHelper.safeEquals(peerEntityRole, other.peerEntityRole);
+        }
+    }
+
+    /** An artifact resolution in progress, which other callers presenting the same artifact may join. */
+    private class ArtifactResolution {
+
+        /** Latch released once the resolution has completed. */
+        private final CountDownLatch completion;
+
+        /** Number of callers waiting for the message. */
+        private int waiters;
+
+        /** Whether the resolution has completed and may no longer be joined. */
+        private boolean completed;
+
+        /** The serialized message, set upon completion if any caller is waiting. */
+        private byte[] serializedMessage;
+
+        /** The error which prevented the message from being dereferenced or serialized. */
+        private MessageDecodingException error;
+
+        /** Constructor. */
+        public ArtifactResolution() {
+            completion = new CountDownLatch(1);
+        }
+
+        /**
+         * Registers a caller waiting for the message.
+         * 
+         * @return true if the caller was registered, false if the resolution had already completed
+         */
+        public synchronized boolean join() {
+            if (completed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Completes the resolution. If any caller is waiting, the message is serialized before this method returns and
+         * thus before the caller that dereferenced the message can make use of it.
+         * 
+         * @param samlMessage the dereferenced message, or null if it could not be dereferenced
+         * @param failure the error which prevented the message from being dereferenced, may be null
+         */
+        public void complete(SAMLObject samlMessage, MessageDecodingException failure) {
+            boolean serialize;
+            synchronized (this) {
+                completed = true;
+                serialize = waiters > 0;
+            }
+
+            if (serialize) {
+                if (samlMessage != null) {
+                    try {
+                        serializedMessage = serializeMessage(samlMessage);
+                    } catch (MessageDecodingException e) {
+                        error = e;
+                    }
+                } else if (failure != null) {
+                    error = failure;
+                } else {
+                    error = new MessageDecodingException("Unable to dereference artifact");
+                }
+            }
+            completion.countDown();
+        }
+
+        /**
+         * Waits for the resolution to complete and parses a copy of the dereferenced message.
+         * 
+         * @return a copy of the message owned by the caller
+         * 
+         * @throws MessageDecodingException thrown if the artifact could not be dereferenced
+         */
+        public SAMLObject getMessageCopy() throws MessageDecodingException {
+            try {
+                completion.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessageDecodingException("Interrupted while waiting for artifact to be dereferenced", e);
+            }
+
+            if (error != null) {
+                throw new MessageDecodingException(error.getMessage(), error);
+            }
+            XMLObject message = unmarshallMessage(new ByteArrayInputStream(serializedMessage));
+            if (!(message instanceof SAMLObject)) {
+                throw new MessageDecodingException("Dereferenced message was not a SAML message");
+            }
+            return (SAMLObject) message;
         }
-        
-        // TODO decode artifact; resolve issuer resolution endpoint; dereference using ArtifactResolve
-        // over synchronous backchannel binding; store resultant protocol message as the inbound SAML message.
     }
 }
\ No newline at end of file
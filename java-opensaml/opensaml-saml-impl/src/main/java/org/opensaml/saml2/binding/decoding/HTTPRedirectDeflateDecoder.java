@@ -16,17 +16,18 @@
 
 package org.opensaml.saml2.binding.decoding;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import org.opensaml.common.SAMLObject;
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.binding.DeflateCodec;
+import org.opensaml.saml2.binding.HTTPRedirectQuery;
+import org.opensaml.util.CloseableSupport;
 import org.opensaml.ws.message.MessageContext;
 import org.opensaml.ws.message.decoder.MessageDecodingException;
 import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
 import org.opensaml.xml.parse.ParserPool;
 import org.opensaml.util.Base64;
 import org.opensaml.xml.util.DatatypeHelper;
@@ -36,16 +37,21 @@ import org.slf4j.LoggerFactory;
 /**
  * SAML 2.0 HTTP Redirect decoder using the DEFLATE encoding method.
  * 
- * This decoder only supports DEFLATE compression.
+ * This decoder only supports DEFLATE compression. Messages are inflated, with bounded size, by a pooled
+ * {@link DeflateCodec} which may be shared between decoders.
  */
 public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(HTTPRedirectDeflateDecoder.class);
 
+    /** Codec used to inflate messages. */
+    private DeflateCodec deflateCodec;
+
     /** Constructor. */
     public HTTPRedirectDeflateDecoder() {
         super();
+        deflateCodec = new DeflateCodec();
     }
 
     /**
@@ -55,6 +61,28 @@ public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
      */
     public HTTPRedirectDeflateDecoder(ParserPool pool) {
         super(pool);
+        deflateCodec = new DeflateCodec();
+    }
+
+    /**
+     * Gets the codec used to inflate messages.
+     * 
+     * @return codec used to inflate messages
+     */
+    public DeflateCodec getDeflateCodec() {
+        return deflateCodec;
+    }
+
+    /**
+     * Sets the codec used to inflate messages.
+     * 
+     * @param codec codec used to inflate messages
+     */
+    public void setDeflateCodec(DeflateCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Deflate codec may not be null");
+        }
+        deflateCodec = codec;
     }
 
     /** {@inheritDoc} */
@@ -84,12 +112,18 @@ public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
         SAMLMessageContext samlMsgCtx = (SAMLMessageContext) messageContext;
 
         HTTPInTransport inTransport = (HTTPInTransport) samlMsgCtx.getInboundMessageTransport();
-        String relayState = inTransport.getParameterValue("RelayState");
+        HTTPRedirectQuery query = getQuery(inTransport);
+
+        String relayState = getParameterValue(inTransport, query, "RelayState");
         samlMsgCtx.setRelayState(relayState);
         log.debug("Decoded RelayState: {}", relayState);
 
         InputStream samlMessageIns;
-        if (!DatatypeHelper.isEmpty(inTransport.getParameterValue("SAMLRequest"))) {
+        if (query != null && !DatatypeHelper.isEmpty(query.getParameter("SAMLRequest"))) {
+            samlMessageIns = decodeMessage(query.getBase64DecodedParameter("SAMLRequest"));
+        } else if (query != null && !DatatypeHelper.isEmpty(query.getParameter("SAMLResponse"))) {
+            samlMessageIns = decodeMessage(query.getBase64DecodedParameter("SAMLResponse"));
+        } else if (!DatatypeHelper.isEmpty(inTransport.getParameterValue("SAMLRequest"))) {
             samlMessageIns = decodeMessage(inTransport.getParameterValue("SAMLRequest"));
         } else if (!DatatypeHelper.isEmpty(inTransport.getParameterValue("SAMLResponse"))) {
             samlMessageIns = decodeMessage(inTransport.getParameterValue("SAMLResponse"));
@@ -98,7 +132,12 @@ public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
                     "No SAMLRequest or SAMLResponse query path parameter, invalid SAML 2 HTTP Redirect message");
         }
 
-        SAMLObject samlMessage = (SAMLObject) unmarshallMessage(samlMessageIns);
+        SAMLObject samlMessage;
+        try {
+            samlMessage = (SAMLObject) unmarshallMessage(samlMessageIns);
+        } finally {
+            CloseableSupport.closeQuietly(samlMessageIns);
+        }
         samlMsgCtx.setInboundSAMLMessage(samlMessage);
         samlMsgCtx.setInboundMessage(samlMessage);
         log.debug("Decoded SAML message");
@@ -109,12 +148,13 @@ public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
     /** {@inheritDoc} */
     protected boolean isMessageSigned(SAMLMessageContext messageContext) {
         HTTPInTransport inTransport = (HTTPInTransport) messageContext.getInboundMessageTransport();
-        String sigParam = inTransport.getParameterValue("Signature");
+        String sigParam = getParameterValue(inTransport, getQuery(inTransport), "Signature");
         return (!DatatypeHelper.isEmpty(sigParam)) || super.isMessageSigned(messageContext);
     }
 
     /**
-     * Base64 decodes the SAML message and then decompresses the message.
+     * Base64 decodes the SAML message and then decompresses the message. The returned stream must be closed in order
+     * to release the Inflater used to decompress the message.
      * 
      * @param message Base64 encoded, DEFALTE compressed, SAML message
      * 
@@ -124,20 +164,62 @@ public class HTTPRedirectDeflateDecoder extends BaseSAML2MessageDecoder {
      */
     protected InputStream decodeMessage(String message) throws MessageDecodingException {
         log.debug("Base64 decoding and inflating SAML message");
+        return decodeMessage(Base64.decode(message));
+    }
 
-        byte[] decodedBytes = Base64.decode(message);
-        if(decodedBytes == null){
+    /**
+     * Decompresses the already Base64 decoded SAML message. The returned stream must be closed in order to release the
+     * Inflater used to decompress the message.
+     * 
+     * @param decodedBytes Base64 decoded, DEFLATE compressed, SAML message
+     * 
+     * @return the SAML message
+     * 
+     * @throws MessageDecodingException thrown if the message can not be decoded
+     */
+    protected InputStream decodeMessage(byte[] decodedBytes) throws MessageDecodingException {
+        if (decodedBytes == null) {
             log.error("Unable to Base64 decode incoming message");
             throw new MessageDecodingException("Unable to Base64 decode incoming message");
         }
-        
+
         try {
-            ByteArrayInputStream bytesIn = new ByteArrayInputStream(decodedBytes);
-            InflaterInputStream inflater = new InflaterInputStream(bytesIn, new Inflater(true));
-            return inflater;
+            return deflateCodec.inflate(decodedBytes);
         } catch (Exception e) {
             log.error("Unable to Base64 decode and inflate SAML message", e);
             throw new MessageDecodingException("Unable to Base64 decode and inflate SAML message", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the parsed query string of the inbound request. The parsed query is shared with the HTTP-Redirect simple
+     * signature security policy rule so that each query parameter is only decoded once.
+     * 
+     * @param inTransport the inbound transport
+     * 
+     * @return the parsed query or null if the transport does not wrap a servlet request
+     */
+    protected HTTPRedirectQuery getQuery(HTTPInTransport inTransport) {
+        if (inTransport instanceof HttpServletRequestAdapter) {
+            return HTTPRedirectQuery.getInstance(((HttpServletRequestAdapter) inTransport).getWrappedRequest());
+        }
+        return null;
+    }
+
+    /**
+     * Gets the decoded value of a request parameter, from the parsed query string if it contains the parameter and
+     * otherwise from the transport.
+     * 
+     * @param inTransport the inbound transport
+     * @param query the parsed query string, may be null
+     * @param name the parameter name
+     * 
+     * @return the decoded parameter value or null
+     */
+    private String getParameterValue(HTTPInTransport inTransport, HTTPRedirectQuery query, String name) {
+        if (query != null && query.hasParameter(name)) {
+            return query.getParameter(name);
+        }
+        return inTransport.getParameterValue(name);
+    }
+}
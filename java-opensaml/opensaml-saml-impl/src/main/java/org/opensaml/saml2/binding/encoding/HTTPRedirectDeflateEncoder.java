@@ -16,17 +16,15 @@
 
 package org.opensaml.saml2.binding.encoding;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 import org.opensaml.common.SAMLObject;
 import org.opensaml.common.SignableSAMLObject;
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.binding.DeflateCodec;
 import org.opensaml.saml2.core.RequestAbstractType;
 import org.opensaml.saml2.core.StatusResponseType;
 import org.opensaml.util.URLBuilder;
@@ -51,16 +49,42 @@ import org.slf4j.LoggerFactory;
 /**
  * SAML 2.0 HTTP Redirect encoder using the DEFLATE encoding method.
  * 
- * This encoder only supports DEFLATE compression and DSA-SHA1 and RSA-SHA1 signatures.
+ * This encoder only supports DEFLATE compression and DSA-SHA1 and RSA-SHA1 signatures. Messages are compressed by a
+ * pooled {@link DeflateCodec} which may be shared between encoders.
  */
 public class HTTPRedirectDeflateEncoder extends BaseSAML2MessageEncoder {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(HTTPRedirectDeflateEncoder.class);
 
+    /** Codec used to compress messages. */
+    private DeflateCodec deflateCodec;
+
     /** Constructor. */
     public HTTPRedirectDeflateEncoder() {
         super();
+        deflateCodec = new DeflateCodec();
+    }
+
+    /**
+     * Gets the codec used to compress messages.
+     * 
+     * @return codec used to compress messages
+     */
+    public DeflateCodec getDeflateCodec() {
+        return deflateCodec;
+    }
+
+    /**
+     * Sets the codec used to compress messages.
+     * 
+     * @param codec codec used to compress messages
+     */
+    public void setDeflateCodec(DeflateCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Deflate codec may not be null");
+        }
+        deflateCodec = codec;
     }
 
     /** {@inheritDoc} */
@@ -138,13 +162,9 @@ public class HTTPRedirectDeflateEncoder extends BaseSAML2MessageEncoder {
         try {
             String messageStr = XMLHelper.nodeToString(marshallMessage(message));
 
-            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-            Deflater deflater = new Deflater(Deflater.DEFLATED, true);
-            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(bytesOut, deflater);
-            deflaterStream.write(messageStr.getBytes("UTF-8"));
-            deflaterStream.finish();
+            byte[] deflated = deflateCodec.deflate(messageStr.getBytes("UTF-8"));
 
-            return Base64.encodeBytes(bytesOut.toByteArray(), Base64.DONT_BREAK_LINES);
+            return Base64.encodeBytes(deflated, Base64.DONT_BREAK_LINES);
         } catch (IOException e) {
             throw new MessageEncodingException("Unable to DEFLATE and Base64 encode SAML message", e);
         }
@@ -16,6 +16,9 @@
 
 package org.opensaml.saml2.binding.security;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opensaml.common.SAMLObject;
 import org.opensaml.common.SignableSAMLObject;
 import org.opensaml.common.binding.SAMLMessageContext;
@@ -25,6 +28,8 @@ import org.opensaml.saml2.metadata.SPSSODescriptor;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.ws.transport.http.HTTPInTransport;
@@ -36,7 +41,7 @@ import org.slf4j.LoggerFactory;
  * Security policy rule implementation that enforces the AuthnRequestsSigned flag of 
  * SAML 2 metadata element @{link {@link SPSSODescriptor}.
  */
-public class SAML2AuthnRequestsSignedRule implements SecurityPolicyRule {
+public class SAML2AuthnRequestsSignedRule implements CostedSecurityPolicyRule {
     
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(SAML2AuthnRequestsSignedRule.class);
@@ -119,4 +124,19 @@ public class SAML2AuthnRequestsSignedRule implements SecurityPolicyRule {
         return !DatatypeHelper.isEmpty(sigParam);
     }
 
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.MODERATE;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // metadata is looked up for the inbound message issuer, which another rule may derive
+        return Collections.<Class<? extends SecurityPolicyRule>>singletonList(IssuerDerivingSecurityPolicyRule.class);
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
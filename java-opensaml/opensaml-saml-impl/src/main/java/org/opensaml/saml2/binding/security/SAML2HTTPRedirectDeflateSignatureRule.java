@@ -16,16 +16,13 @@
 
 package org.opensaml.saml2.binding.security;
 
-import java.io.UnsupportedEncodingException;
-
 import javax.servlet.http.HttpServletRequest;
 
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.common.binding.security.BaseSAMLSimpleSignatureSecurityPolicyRule;
+import org.opensaml.saml2.binding.HTTPRedirectQuery;
 import org.opensaml.ws.security.SecurityPolicyException;
-import org.opensaml.ws.transport.http.HTTPTransportUtils;
 import org.opensaml.xml.signature.SignatureTrustEngine;
-import org.opensaml.xml.util.DatatypeHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,75 +52,44 @@ public class SAML2HTTPRedirectDeflateSignatureRule extends BaseSAMLSimpleSignatu
     /** {@inheritDoc} */
     protected byte[] getSignedContent(HttpServletRequest request) throws SecurityPolicyException {
         // We need the raw non-URL-decoded query string param values for HTTP-Redirect DEFLATE simple signature
-        // validation.
-        // We have to construct a string containing the signature input by accessing the
-        // request directly. We can't use the decoded parameters because we need the raw
-        // data and URL-encoding isn't canonical.
-        String queryString = request.getQueryString();
-        log.debug("Constructing signed content string from URL query string {}", queryString);
-
-        String constructed = buildSignedContentString(queryString);
-        if (DatatypeHelper.isEmpty(constructed)) {
-            log.warn("Could not extract signed content string from query string");
-            return null;
-        }
-        log.debug("Constructed signed content string for HTTP-Redirect DEFLATE {}", constructed);
-
-        try {
-            return constructed.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // JVM is required to support UTF-8
+        // validation. We can't use the decoded parameters because we need the raw data and URL-encoding isn't
+        // canonical. The raw parameter segments are taken from the query string as parsed, once, by the decoder.
+        HTTPRedirectQuery query = HTTPRedirectQuery.getInstance(request);
+        log.debug("Constructing signed content string from URL query string {}", query.getQueryString());
+
+        byte[] signedContent = query.getSignedContent();
+        if (signedContent == null) {
+            log.warn("Could not extract either a SAMLRequest or a SAMLResponse from the query string");
+            throw new SecurityPolicyException("Extract of SAMLRequest or SAMLResponse from query string failed");
         }
-        return null;
+        return signedContent;
     }
 
     /**
-     * Extract the raw request parameters and build a string representation of the content that was signed.
+     * {@inheritDoc}
      * 
-     * @param queryString the raw HTTP query string from the request
-     * @return a string representation of the signed content
-     * @throws SecurityPolicyException thrown if there is an error during request processing
+     * The value is taken from the parsed query string shared with the decoder, falling back to the request parameters
+     * if the query string does not contain a <code>Signature</code> parameter.
      */
-    private String buildSignedContentString(String queryString) throws SecurityPolicyException {
-        StringBuilder builder = new StringBuilder();
-
-        // One of these two is mandatory
-        if (!appendParameter(builder, queryString, "SAMLRequest")) {
-            if (!appendParameter(builder, queryString, "SAMLResponse")) {
-                log.warn("Could not extract either a SAMLRequest or a SAMLResponse from the query string");
-                throw new SecurityPolicyException("Extract of SAMLRequest or SAMLResponse from query string failed");
-            }
+    protected byte[] getSignature(HttpServletRequest request) throws SecurityPolicyException {
+        HTTPRedirectQuery query = HTTPRedirectQuery.getInstance(request);
+        if (query.hasParameter("Signature")) {
+            return query.getBase64DecodedParameter("Signature");
         }
-        // This is optional
-        appendParameter(builder, queryString, "RelayState");
-        // This is mandatory, but has already been checked in superclass
-        appendParameter(builder, queryString, "SigAlg");
-
-        return builder.toString();
+        return super.getSignature(request);
     }
 
     /**
-     * Find the raw query string parameter indicated and append it to the string builder.
+     * {@inheritDoc}
      * 
-     * The appended value will be in the form 'paramName=paramValue' (minus the quotes).
-     * 
-     * @param builder string builder to which to append the parameter
-     * @param queryString the URL query string containing parameters
-     * @param paramName the name of the parameter to append
-     * @return true if parameter was found, false otherwise
+     * The value is taken from the parsed query string shared with the decoder, falling back to the request parameters
+     * if the query string does not contain a <code>SigAlg</code> parameter.
      */
-    private boolean appendParameter(StringBuilder builder, String queryString, String paramName) {
-        String rawParam = HTTPTransportUtils.getRawQueryStringParameter(queryString, paramName);
-        if (rawParam == null) {
-            return false;
-        }
-
-        if (builder.length() > 0) {
-            builder.append('&');
+    protected String getSignatureAlgorithm(HttpServletRequest request) throws SecurityPolicyException {
+        HTTPRedirectQuery query = HTTPRedirectQuery.getInstance(request);
+        if (query.hasParameter("SigAlg")) {
+            return query.getParameter("SigAlg");
         }
-
-        builder.append(rawParam);
-
-        return true;
+        return super.getSignatureAlgorithm(request);
     }
 }
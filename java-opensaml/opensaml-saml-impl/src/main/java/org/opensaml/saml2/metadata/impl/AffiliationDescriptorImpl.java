@@ -30,6 +30,7 @@ import org.opensaml.saml2.common.Extensions;
 import org.opensaml.saml2.metadata.AffiliateMember;
 import org.opensaml.saml2.metadata.AffiliationDescriptor;
 import org.opensaml.saml2.metadata.KeyDescriptor;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.util.AttributeMap;
 import org.opensaml.xml.util.XMLObjectChildrenList;
@@ -102,7 +103,11 @@ public class AffiliationDescriptorImpl extends AbstractSignableSAMLObject implem
 
     /** {@inheritDoc} */
     public boolean isValid() {
-        return validUntil.isBeforeNow();
+        if (null == validUntil) {
+            return true;
+        }
+
+        return ClockSupport.currentTimeMillis() < validUntil.getMillis();
     }
 
     /** {@inheritDoc} */
@@ -26,6 +26,7 @@ import org.opensaml.common.impl.AbstractSignableSAMLObject;
 import org.opensaml.saml2.common.Extensions;
 import org.opensaml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.util.IndexedXMLObjectChildrenList;
 
@@ -91,9 +92,7 @@ public class EntitiesDescriptorImpl extends AbstractSignableSAMLObject implement
         if (null == validUntil) {
             return true;
         }
-        
-        DateTime now = new DateTime();
-        return now.isBefore(validUntil);
+        return ClockSupport.currentTimeMillis() < validUntil.getMillis();
     }
 
     /** {@inheritDoc} */
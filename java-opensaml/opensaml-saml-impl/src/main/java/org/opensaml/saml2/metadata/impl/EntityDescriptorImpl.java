@@ -36,6 +36,7 @@ import org.opensaml.saml2.metadata.Organization;
 import org.opensaml.saml2.metadata.PDPDescriptor;
 import org.opensaml.saml2.metadata.RoleDescriptor;
 import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.util.AttributeMap;
 import org.opensaml.xml.util.IndexedXMLObjectChildrenList;
@@ -124,9 +125,7 @@ public class EntityDescriptorImpl extends AbstractSignableSAMLObject implements
         if (null == validUntil) {
             return true;
         }
-
-        DateTime now = new DateTime();
-        return now.isBefore(validUntil);
+        return ClockSupport.currentTimeMillis() < validUntil.getMillis();
     }
 
     /** {@inheritDoc} */
@@ -28,6 +28,7 @@ import org.opensaml.saml2.metadata.ContactPerson;
 import org.opensaml.saml2.metadata.KeyDescriptor;
 import org.opensaml.saml2.metadata.Organization;
 import org.opensaml.saml2.metadata.RoleDescriptor;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.util.AttributeMap;
 import org.opensaml.xml.util.DatatypeHelper;
@@ -97,7 +98,7 @@ public abstract class RoleDescriptorImpl extends AbstractSignableSAMLObject impl
     /** {@inheritDoc} */
     public boolean isValid() {
         if (validUntil != null) {
-            return validUntil.isBeforeNow();
+            return ClockSupport.currentTimeMillis() < validUntil.getMillis();
         } else {
             return true;
         }
@@ -27,10 +27,12 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
-import org.opensaml.saml2.common.SAML2Helper;
+import org.joda.time.DateTime;
+import org.opensaml.saml2.common.TimeBoundSAMLObject;
 import org.opensaml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.RoleDescriptor;
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.io.Unmarshaller;
 import org.opensaml.xml.io.UnmarshallingException;
@@ -59,6 +61,12 @@ public abstract class AbstractMetadataProvider extends BaseMetadataProvider {
     /** Cache of entity IDs to their descriptors. */
     private Map<String, EntityDescriptor> indexedDescriptors;
 
+    /**
+     * Cache of descriptors to the earliest validUntil, in milliseconds since the epoch, of the descriptor and its
+     * ancestors.
+     */
+    private Map<XMLObject, Long> indexedValidUntil;
+
     /** Pool of parsers used to process XML. */
     private ParserPool parser;
 
@@ -66,6 +74,7 @@ public abstract class AbstractMetadataProvider extends BaseMetadataProvider {
     public AbstractMetadataProvider() {
         super();
         indexedDescriptors = new ConcurrentHashMap<String, EntityDescriptor>();
+        indexedValidUntil = new ConcurrentHashMap<XMLObject, Long>();
         failFastInitialization = true;
         initialized = false;
     }
@@ -426,10 +435,11 @@ public abstract class AbstractMetadataProvider extends BaseMetadataProvider {
     }
 
     /**
-     * Clears the entity ID to entity descriptor index.
+     * Clears the entity ID to entity descriptor index and the index of descriptor validity.
      */
     protected void clearDescriptorIndex() {
         indexedDescriptors.clear();
+        indexedValidUntil.clear();
     }
 
     /**
@@ -512,7 +522,7 @@ public abstract class AbstractMetadataProvider extends BaseMetadataProvider {
                 log.trace("Entity descriptor for the ID {} was found in index cache, returning", entityID);
                 return descriptor;
             } else {
-                indexedDescriptors.remove(descriptor);
+                indexedDescriptors.remove(entityID);
             }
         }
 
@@ -629,6 +639,39 @@ public abstract class AbstractMetadataProvider extends BaseMetadataProvider {
             return true;
         }
 
-        return SAML2Helper.isValid(descriptor);
+        return ClockSupport.currentTimeMillis() < getEffectiveValidUntil(descriptor);
+    }
+
+    /**
+     * Gets the earliest validUntil of the given descriptor and its ancestors. The result is indexed, as are the
+     * results for each ancestor, so that later validity checks of the descriptor, or of other descendants of its
+     * ancestors, do not walk the metadata tree.
+     * 
+     * @param descriptor the descriptor whose validity is being checked
+     * 
+     * @return earliest validUntil, in milliseconds since the epoch, or {@link Long#MAX_VALUE} if neither the descriptor
+     *         nor its ancestors carry a validUntil
+     */
+    protected long getEffectiveValidUntil(XMLObject descriptor) {
+        Long indexed = indexedValidUntil.get(descriptor);
+        if (indexed != null) {
+            return indexed;
+        }
+
+        long validUntil = Long.MAX_VALUE;
+        if (descriptor instanceof TimeBoundSAMLObject) {
+            DateTime descriptorValidUntil = ((TimeBoundSAMLObject) descriptor).getValidUntil();
+            if (descriptorValidUntil != null) {
+                validUntil = descriptorValidUntil.getMillis();
+            }
+        }
+
+        XMLObject parent = descriptor.getParent();
+        if (parent != null) {
+            validUntil = Math.min(validUntil, getEffectiveValidUntil(parent));
+        }
+
+        indexedValidUntil.put(descriptor, validUntil);
+        return validUntil;
     }
 }
\ No newline at end of file
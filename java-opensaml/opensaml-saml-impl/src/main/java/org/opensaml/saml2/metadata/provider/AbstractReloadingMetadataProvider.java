@@ -344,6 +344,9 @@ public abstract class AbstractReloadingMetadataProvider extends AbstractObservab
             XMLObject metadata) {
         log.warn("Entire metadata document from '{}' was expired at time of loading", metadataIdentifier);
 
+        // release the validity index entries created while checking the discarded metadata
+        clearDescriptorIndex();
+
         lastUpdate = refreshStart;
         taskTimer.schedule(new RefreshMetadataTask(), getMinRefreshDelay());
         nextRefresh = new DateTime(ISOChronology.getInstanceUTC()).plus(getMinRefreshDelay());
@@ -16,24 +16,53 @@
 
 package org.opensaml.saml2.metadata.provider;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Validator;
+import javax.xml.validation.Schema;
 
+import org.opensaml.common.xml.SAMLConstants;
 import org.opensaml.common.xml.SAMLSchemaBuilder;
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.schema.ValidatorPool;
 import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLConstants;
+import org.opensaml.xml.util.XMLHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
  * A metadata filter that schema validates an incoming metadata file.
+ * 
+ * Validation is performed with validators drawn from a pool so that concurrent filtering does not create a validator
+ * per invocation. If an {@link Executor} is set, the entities of an {@link EntitiesDescriptor} are copied into
+ * documents of their own and validated concurrently. Each entity is then validated separately so the uniqueness of
+ * <code>ID</code> attributes is only checked within an entity.
  */
 public class SchemaValidationFilter implements MetadataFilter {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(SchemaValidationFilter.class);
 
+    /** Pool of validators for the current metadata validation schema. */
+    private volatile ValidatorPool validatorPool;
+
+    /** Executor used to validate entities concurrently, may be null. */
+    private Executor executor;
+
     /**
      * Constructor.
      * 
@@ -50,21 +79,187 @@ public class SchemaValidationFilter implements MetadataFilter {
         }
     }
 
+    /**
+     * Gets the executor used to validate the entities of an {@link EntitiesDescriptor} concurrently.
+     * 
+     * @return executor used to validate entities concurrently, may be null
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to validate the entities of an {@link EntitiesDescriptor} concurrently. If null, the
+     * default, metadata is validated as a whole on the calling thread.
+     * 
+     * @param newExecutor executor used to validate entities concurrently, may be null
+     */
+    public void setExecutor(Executor newExecutor) {
+        executor = newExecutor;
+    }
+
     /** {@inheritDoc} */
     public void doFilter(XMLObject metadata) throws FilterException {
-        Validator schemaValidator = null;
+        ValidatorPool pool = getValidatorPool();
+
+        try {
+            Element metadataElement = metadata.getDOM();
+            Executor currentExecutor = executor;
+            if (currentExecutor != null && metadata instanceof EntitiesDescriptor) {
+                validateConcurrently(pool, metadataElement, currentExecutor);
+            } else {
+                pool.validate(new DOMSource(metadataElement));
+            }
+        } catch (Exception e) {
+            log.error("Incoming metadata was not schema valid.", e);
+            throw new FilterException("Incoming metadata was not schema valid.", e);
+        }
+    }
+
+    /**
+     * Gets the validator pool for the current metadata validation schema, replacing the pool if the schema has been
+     * rebuilt since the pool was created.
+     * 
+     * @return validator pool for the current metadata validation schema
+     * 
+     * @throws FilterException thrown if the metadata validation schema can not be built
+     */
+    protected ValidatorPool getValidatorPool() throws FilterException {
+        Schema schema;
         try {
-            schemaValidator = SAMLSchemaBuilder.getSAML11Schema().newValidator();
+            schema = SAMLSchemaBuilder.getSAML11Schema();
         } catch (SAXException e) {
             log.error("Unable to build metadata validation schema", e);
             throw new FilterException("Unable to build metadata validation schema", e);
         }
 
-        try {
-            schemaValidator.validate(new DOMSource(metadata.getDOM()));
-        } catch (Exception e) {
-            log.error("Incoming metadata was not schema valid.", e);
-            throw new FilterException("Incoming metadata was not schema valid.", e);
+        ValidatorPool pool = validatorPool;
+        if (pool == null || pool.getSchema() != schema) {
+            pool = new ValidatorPool(schema);
+            validatorPool = pool;
+        }
+        return pool;
+    }
+
+    /**
+     * Validates an <code>EntitiesDescriptor</code>, validating all but its first child entity concurrently.
+     * 
+     * The descriptor itself is validated, on the calling thread, with only its first child entity since the schema
+     * requires at least one. Each remaining child entity is copied, on the calling thread, into a document of its own
+     * which is then validated by the executor.
+     * 
+     * @param pool pool of validators to validate with
+     * @param entitiesElement the <code>EntitiesDescriptor</code> element
+     * @param validationExecutor executor to validate the child entities with
+     * 
+     * @throws Exception thrown if the descriptor or any of its entities is not valid or can not be validated
+     */
+    protected void validateConcurrently(ValidatorPool pool, Element entitiesElement, Executor validationExecutor)
+            throws Exception {
+        Element descriptor = (Element) entitiesElement.cloneNode(false);
+        List<FutureTask<Object>> validations = new ArrayList<FutureTask<Object>>();
+
+        boolean firstEntity = true;
+        Node child = entitiesElement.getFirstChild();
+        while (child != null) {
+            if (!firstEntity && isEntity(child)) {
+                FutureTask<Object> validation = new FutureTask<Object>(new EntityValidation(pool, copyEntity(
+                        (Element) child, entitiesElement)));
+                validations.add(validation);
+                validationExecutor.execute(validation);
+            } else {
+                firstEntity = firstEntity && !isEntity(child);
+                descriptor.appendChild(child.cloneNode(true));
+            }
+            child = child.getNextSibling();
+        }
+
+        Element descriptorCopy = copyEntity(descriptor, entitiesElement.getParentNode());
+        pool.validate(new DOMSource(descriptorCopy.getOwnerDocument()));
+
+        for (FutureTask<Object> validation : validations) {
+            try {
+                validation.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a node is an <code>EntityDescriptor</code> or <code>EntitiesDescriptor</code> element.
+     * 
+     * @param node node to check
+     * 
+     * @return true if the node is an entity element
+     */
+    private boolean isEntity(Node node) {
+        if (node.getNodeType() != Node.ELEMENT_NODE || !SAMLConstants.SAML20MD_NS.equals(node.getNamespaceURI())) {
+            return false;
+        }
+        String localName = node.getLocalName();
+        return EntityDescriptor.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName)
+                || EntitiesDescriptor.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName);
+    }
+
+    /**
+     * Copies an element into a new document of its own, declaring on the copy the namespaces declared by the given
+     * parent and its ancestors.
+     * 
+     * @param entity element to copy
+     * @param parent the node whose namespace declarations are in scope for the element, may be null
+     * 
+     * @return the copy of the element
+     */
+    private Element copyEntity(Element entity, Node parent) {
+        Document entityDocument = entity.getOwnerDocument().getImplementation().createDocument(null, null, null);
+        Element entityCopy = (Element) entityDocument.importNode(entity, true);
+        entityDocument.appendChild(entityCopy);
+
+        Node ancestor = parent;
+        while (ancestor != null && ancestor.getNodeType() == Node.ELEMENT_NODE) {
+            NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                        && !entityCopy.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                    XMLHelper.appendNamespaceDeclaration(entityCopy, attribute.getValue(),
+                            XMLConstants.XMLNS_PREFIX.equals(attribute.getName()) ? null : attribute.getLocalName());
+                }
+            }
+            ancestor = ancestor.getParentNode();
+        }
+
+        return entityCopy;
+    }
+
+    /** Validation of an entity which has been copied into a document of its own. */
+    private static class EntityValidation implements Callable<Object> {
+
+        /** Pool of validators to validate with. */
+        private final ValidatorPool pool;
+
+        /** Copy of the entity to validate. */
+        private final Element entity;
+
+        /**
+         * Constructor.
+         * 
+         * @param validatorPool pool of validators to validate with
+         * @param entityCopy copy of the entity to validate
+         */
+        public EntityValidation(ValidatorPool validatorPool, Element entityCopy) {
+            pool = validatorPool;
+            entity = entityCopy;
+        }
+
+        /** {@inheritDoc} */
+        public Object call() throws Exception {
+            pool.validate(new DOMSource(entity.getOwnerDocument()));
+            return null;
         }
     }
 }
\ No newline at end of file
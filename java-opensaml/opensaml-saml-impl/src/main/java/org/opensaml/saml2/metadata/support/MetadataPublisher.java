@@ -0,0 +1,705 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.metadata.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.joda.time.DateTime;
+import org.opensaml.Configuration;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.util.Base64;
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.ws.transport.http.HTTPOutTransport;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.opensaml.xml.io.Marshaller;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.XMLSecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureException;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.util.DatatypeHelper;
+import org.opensaml.xml.util.XMLHelper;
+import org.opensaml.xml.util.XMLObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+/**
+ * Publishes an entity's own metadata, for example to the relying parties which poll it.
+ * 
+ * <p>
+ * The metadata is marshalled, optionally given a validUntil and signed, and serialized once, into a
+ * {@link Publication} holding the serialized document and its gzip and deflate encodings, each with a strong entity
+ * tag. The publication is reused for every request until the configuration of the publisher changes or the
+ * publication expires, so that requests, and in particular conditional requests, are answered without any XML
+ * processing. When a validity period is set, the publisher sets the validUntil of the metadata and a new publication is
+ * built, and signed, in the background ahead of its expiration. If that fails the current publication is kept and
+ * rebuilding is retried halfway to its expiration.
+ * </p>
+ * 
+ * <p>
+ * The configured metadata is copied, and never modified, when a publication is built.
+ * </p>
+ */
+@ThreadSafe
+public class MetadataPublisher {
+
+    /** Identity content coding. */
+    public static final String ENCODING_IDENTITY = "identity";
+
+    /** Gzip content coding. */
+    public static final String ENCODING_GZIP = "gzip";
+
+    /** Deflate, that is zlib, content coding. */
+    public static final String ENCODING_DEFLATE = "deflate";
+
+    /** Media type of published metadata. */
+    public static final String CONTENT_TYPE = "application/samlmetadata+xml";
+
+    /** Default time, in milliseconds, ahead of the expiration of a publication at which it is rebuilt: {@value} . */
+    public static final long DEFAULT_REPUBLISH_AHEAD = 60 * 60 * 1000;
+
+    /** Minimum time, in milliseconds, after which a failed background rebuilding of a publication is retried. */
+    private static final long MIN_REPUBLISH_RETRY_DELAY = 1000;
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(MetadataPublisher.class);
+
+    /** Timer used to schedule the background rebuilding of publications. */
+    private final Timer taskTimer;
+
+    /** Whether the task timer was created by, and so must be cancelled by, this publisher. */
+    private final boolean ownsTaskTimer;
+
+    /** Metadata to publish. */
+    private EntityDescriptor metadata;
+
+    /** Credential with which the metadata is signed, or null if it is not signed. */
+    private Credential signingCredential;
+
+    /** Period, in milliseconds, for which published metadata is valid, or 0 if no validUntil is set. */
+    private long validityPeriod;
+
+    /** Time, in milliseconds, ahead of the expiration of a publication at which it is rebuilt. */
+    private long republishAhead;
+
+    /** Current publication, or null if it must be built. */
+    private volatile Publication publication;
+
+    /** Task rebuilding the current publication ahead of its expiration. */
+    private TimerTask republishTask;
+
+    /** Constructor. */
+    public MetadataPublisher() {
+        this(new Timer(true), true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param backgroundTaskTimer timer used to schedule the background rebuilding of publications
+     */
+    public MetadataPublisher(Timer backgroundTaskTimer) {
+        this(backgroundTaskTimer, false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param backgroundTaskTimer timer used to schedule the background rebuilding of publications
+     * @param ownsTimer whether the timer must be cancelled by this publisher
+     */
+    private MetadataPublisher(Timer backgroundTaskTimer, boolean ownsTimer) {
+        if (backgroundTaskTimer == null) {
+            throw new IllegalArgumentException("Task timer may not be null");
+        }
+        taskTimer = backgroundTaskTimer;
+        ownsTaskTimer = ownsTimer;
+        republishAhead = DEFAULT_REPUBLISH_AHEAD;
+    }
+
+    /**
+     * Gets the metadata to publish.
+     * 
+     * @return metadata to publish
+     */
+    public synchronized EntityDescriptor getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Sets the metadata to publish. The metadata must not be modified afterwards; changed metadata must be set again.
+     * 
+     * @param entityMetadata metadata to publish
+     */
+    public synchronized void setMetadata(EntityDescriptor entityMetadata) {
+        metadata = entityMetadata;
+        invalidate();
+    }
+
+    /**
+     * Gets the credential with which the metadata is signed.
+     * 
+     * @return credential with which the metadata is signed, or null if it is not signed
+     */
+    public synchronized Credential getSigningCredential() {
+        return signingCredential;
+    }
+
+    /**
+     * Sets the credential with which the metadata is signed.
+     * 
+     * @param credential credential with which the metadata is signed, or null if it is not signed
+     */
+    public synchronized void setSigningCredential(Credential credential) {
+        signingCredential = credential;
+        invalidate();
+    }
+
+    /**
+     * Gets the period for which published metadata is valid.
+     * 
+     * @return period, in milliseconds, for which published metadata is valid, or 0 if no validUntil is set
+     */
+    public synchronized long getValidityPeriod() {
+        return validityPeriod;
+    }
+
+    /**
+     * Sets the period for which published metadata is valid. The validUntil of the published metadata is set to the
+     * time at which it is published plus this period.
+     * 
+     * @param period period, in milliseconds, for which published metadata is valid, or 0 if the validUntil of the
+     *            metadata is left as is
+     */
+    public synchronized void setValidityPeriod(long period) {
+        if (period < 0) {
+            throw new IllegalArgumentException("Validity period may not be negative");
+        }
+        validityPeriod = period;
+        invalidate();
+    }
+
+    /**
+     * Gets the time ahead of the expiration of a publication at which it is rebuilt.
+     * 
+     * @return time, in milliseconds, ahead of the expiration of a publication at which it is rebuilt
+     */
+    public synchronized long getRepublishAhead() {
+        return republishAhead;
+    }
+
+    /**
+     * Sets the time ahead of the expiration of a publication at which it is rebuilt. At most half the validity period
+     * of the publication is used. Defaults to {@link #DEFAULT_REPUBLISH_AHEAD}.
+     * 
+     * @param ahead time, in milliseconds, ahead of the expiration of a publication at which it is rebuilt
+     */
+    public synchronized void setRepublishAhead(long ahead) {
+        if (ahead < 0) {
+            throw new IllegalArgumentException("Republishing time may not be negative");
+        }
+        republishAhead = ahead;
+        invalidate();
+    }
+
+    /**
+     * Gets the current publication, building it if the configuration of this publisher has changed or the previous
+     * publication has expired.
+     * 
+     * @return the current publication
+     * 
+     * @throws SAMLException thrown if no metadata is set or the metadata can not be marshalled, signed or serialized
+     */
+    public Publication getPublication() throws SAMLException {
+        Publication current = publication;
+        if (current != null && !current.isExpired()) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = publication;
+            if (current == null || current.isExpired()) {
+                current = republish();
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Answers an HTTP request for the metadata with the current publication. A request whose If-None-Match header
+     * matches the entity tag of the publication is answered with a 304 (Not Modified) response. Otherwise the
+     * publication is sent in the content coding preferred by the Accept-Encoding header of the request.
+     * 
+     * @param request the request
+     * @param response the response
+     * 
+     * @throws SAMLException thrown if the publication can not be built
+     * @throws IOException thrown if the publication can not be written to the response
+     */
+    public void publish(HTTPInTransport request, HTTPOutTransport response) throws SAMLException, IOException {
+        Publication current = getPublication();
+        String encoding = selectEncoding(request.getHeaderValue("Accept-Encoding"));
+        String entityTag = current.getEntityTag(encoding);
+
+        response.setHeader("ETag", entityTag);
+        response.setHeader("Vary", "Accept-Encoding");
+        if (matches(request.getHeaderValue("If-None-Match"), entityTag)) {
+            response.setStatusCode(304);
+            return;
+        }
+
+        response.setHeader("Content-Type", CONTENT_TYPE);
+        if (!ENCODING_IDENTITY.equals(encoding)) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setHeader("Content-Length", Integer.toString(current.getContentLength(encoding)));
+        response.setStatusCode(200);
+
+        OutputStream output = response.getOutgoingStream();
+        current.writeContent(encoding, output);
+        output.flush();
+    }
+
+    /**
+     * Stops the background rebuilding of publications. The timer is cancelled if it was created by this publisher.
+     */
+    public synchronized void destroy() {
+        cancelRepublishTask();
+        if (ownsTaskTimer) {
+            taskTimer.cancel();
+        }
+        publication = null;
+    }
+
+    /**
+     * Discards the current publication, after a change of configuration.
+     */
+    private void invalidate() {
+        cancelRepublishTask();
+        publication = null;
+    }
+
+    /**
+     * Cancels the task rebuilding the current publication, if any.
+     */
+    private void cancelRepublishTask() {
+        if (republishTask != null) {
+            republishTask.cancel();
+            republishTask = null;
+        }
+    }
+
+    /**
+     * Builds a new publication, makes it current and schedules its rebuilding ahead of its expiration. Must be called
+     * while holding the lock of this publisher.
+     * 
+     * @return the new publication
+     * 
+     * @throws SAMLException thrown if no metadata is set or the metadata can not be marshalled, signed or serialized
+     */
+    private Publication republish() throws SAMLException {
+        cancelRepublishTask();
+
+        long now = ClockSupport.currentTimeMillis();
+        Publication newPublication = buildPublication(now);
+        publication = newPublication;
+
+        if (newPublication.getValidUntil() != null) {
+            long validUntil = newPublication.getValidUntil().getMillis();
+            long delay = Math.max(validUntil - now - Math.min(republishAhead, (validUntil - now) / 2), 0);
+            republishTask = new RepublishTask();
+            taskTimer.schedule(republishTask, delay);
+            log.debug("Metadata publication valid until {} will be rebuilt in {}ms", newPublication.getValidUntil(),
+                    delay);
+        }
+        return newPublication;
+    }
+
+    /**
+     * Schedules another background rebuilding of the current publication after one failed, halfway to the expiration
+     * of the publication, which is kept meanwhile. If it expires too soon, it is rebuilt by the first request after it
+     * has expired instead. Must be called while holding the lock of this publisher.
+     * 
+     * @param error the error with which the rebuilding failed
+     */
+    private void retryRepublish(Exception error) {
+        republishTask = null;
+        Publication current = publication;
+        long delay = 0;
+        if (current != null && current.getValidUntil() != null) {
+            delay = (current.getValidUntil().getMillis() - ClockSupport.currentTimeMillis()) / 2;
+        }
+        if (delay < MIN_REPUBLISH_RETRY_DELAY) {
+            log.error("Unable to rebuild metadata publication, it will be rebuilt once it has expired", error);
+            return;
+        }
+
+        republishTask = new RepublishTask();
+        taskTimer.schedule(republishTask, delay);
+        log.error("Unable to rebuild metadata publication, current publication is kept and rebuilding is retried in "
+                + delay + "ms", error);
+    }
+
+    /**
+     * Builds a publication of the metadata.
+     * 
+     * @param now the current time, in milliseconds
+     * 
+     * @return the publication
+     * 
+     * @throws SAMLException thrown if no metadata is set or the metadata can not be marshalled, signed or serialized
+     */
+    private Publication buildPublication(long now) throws SAMLException {
+        if (metadata == null) {
+            throw new SAMLException("No metadata to publish");
+        }
+
+        EntityDescriptor published;
+        try {
+            published = XMLObjectHelper.copyXMLObject(metadata);
+        } catch (MarshallingException e) {
+            throw new SAMLException("Unable to copy metadata for publication", e);
+        } catch (UnmarshallingException e) {
+            throw new SAMLException("Unable to copy metadata for publication", e);
+        }
+        if (validityPeriod > 0) {
+            published.setValidUntil(new DateTime(now + validityPeriod));
+        }
+        if (signingCredential != null) {
+            published.setSignature(buildSignature());
+        } else if (published.getSignature() != null) {
+            published.setSignature(null);
+        }
+
+        Element element;
+        try {
+            Marshaller marshaller = Configuration.getMarshallerFactory().getMarshaller(published);
+            if (marshaller == null) {
+                throw new SAMLException("No marshaller registered for " + published.getElementQName());
+            }
+            element = marshaller.marshall(published);
+            if (published.getSignature() != null) {
+                Signer.signObject(published.getSignature());
+            }
+        } catch (MarshallingException e) {
+            throw new SAMLException("Unable to marshall metadata for publication", e);
+        } catch (SignatureException e) {
+            throw new SAMLException("Unable to sign metadata for publication", e);
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        XMLHelper.writeNode(element, content);
+        DateTime expiration = null;
+        if (validityPeriod > 0) {
+            expiration = published.getValidUntil();
+        }
+        Publication newPublication = new Publication(content.toByteArray(), now, expiration);
+        log.info("Published metadata for {}, {} bytes", published.getEntityID(), newPublication
+                .getContentLength(ENCODING_IDENTITY));
+        return newPublication;
+    }
+
+    /**
+     * Builds the signature of published metadata.
+     * 
+     * @return the signature
+     * 
+     * @throws SAMLException thrown if the signature can not be prepared
+     */
+    private Signature buildSignature() throws SAMLException {
+        XMLObjectBuilder<Signature> signatureBuilder = Configuration.getBuilderFactory().getBuilder(
+                Signature.DEFAULT_ELEMENT_NAME);
+        Signature signature = signatureBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(signingCredential);
+        try {
+            XMLSecurityHelper.prepareSignatureParams(signature, signingCredential, null, null);
+        } catch (SecurityException e) {
+            throw new SAMLException("Unable to prepare signature of metadata", e);
+        }
+        return signature;
+    }
+
+    /**
+     * Selects the content coding of a response from the Accept-Encoding header of a request. Gzip is preferred over
+     * deflate when both are equally acceptable.
+     * 
+     * @param acceptEncoding the Accept-Encoding header, may be null
+     * 
+     * @return the selected content coding
+     */
+    private String selectEncoding(String acceptEncoding) {
+        if (DatatypeHelper.isEmpty(acceptEncoding)) {
+            return ENCODING_IDENTITY;
+        }
+
+        Float gzipQuality = null;
+        Float deflateQuality = null;
+        float anyQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase();
+            float quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (ENCODING_GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzipQuality = quality;
+            } else if (ENCODING_DEFLATE.equals(name)) {
+                deflateQuality = quality;
+            } else if ("*".equals(name)) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality == null) {
+            gzipQuality = anyQuality;
+        }
+        if (deflateQuality == null) {
+            deflateQuality = anyQuality;
+        }
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return ENCODING_GZIP;
+        } else if (deflateQuality > 0) {
+            return ENCODING_DEFLATE;
+        }
+        return ENCODING_IDENTITY;
+    }
+
+    /**
+     * Checks whether an If-None-Match header matches an entity tag.
+     * 
+     * @param ifNoneMatch the If-None-Match header, may be null
+     * @param entityTag the entity tag
+     * 
+     * @return true if the header matches the entity tag
+     */
+    private boolean matches(String ifNoneMatch, String entityTag) {
+        if (DatatypeHelper.isEmpty(ifNoneMatch)) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                // Weak comparison is used for If-None-Match.
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || entityTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A serialized publication of metadata, with its gzip and deflate encodings. Each encoding is a distinct
+     * representation with its own strong entity tag.
+     */
+    public static final class Publication {
+
+        /** Serialized metadata. */
+        private final byte[] identityContent;
+
+        /** Gzip encoding of the serialized metadata. */
+        private final byte[] gzipContent;
+
+        /** Deflate encoding of the serialized metadata. */
+        private final byte[] deflateContent;
+
+        /** Entity tag of the serialized metadata, without quotes, from which the tags of the encodings derive. */
+        private final String tag;
+
+        /** Time, in milliseconds, at which the publication was built. */
+        private final long creationTime;
+
+        /** ValidUntil set by the publisher, or null. */
+        private final DateTime validUntil;
+
+        /**
+         * Constructor.
+         * 
+         * @param content serialized metadata
+         * @param created time, in milliseconds, at which the publication was built
+         * @param expiration validUntil set by the publisher, may be null
+         * 
+         * @throws SAMLException thrown if the metadata can not be encoded
+         */
+        Publication(byte[] content, long created, DateTime expiration) throws SAMLException {
+            identityContent = content;
+            creationTime = created;
+            validUntil = expiration;
+            try {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                GZIPOutputStream gzipStream = new GZIPOutputStream(gzipped);
+                gzipStream.write(content);
+                gzipStream.close();
+                gzipContent = gzipped.toByteArray();
+
+                ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+                DeflaterOutputStream deflateStream = new DeflaterOutputStream(deflated);
+                deflateStream.write(content);
+                deflateStream.close();
+                deflateContent = deflated.toByteArray();
+
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                tag = Base64.encodeBytes(digest.digest(content), Base64.DONT_BREAK_LINES);
+            } catch (IOException e) {
+                throw new SAMLException("Unable to encode published metadata", e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new SAMLException("Unable to compute entity tag of published metadata", e);
+            }
+        }
+
+        /**
+         * Gets the time at which the publication was built.
+         * 
+         * @return time, in milliseconds, at which the publication was built
+         */
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        /**
+         * Gets the validUntil set on the published metadata by the publisher. Publications with a validUntil are
+         * rebuilt ahead of, and no later than, their expiration.
+         * 
+         * @return validUntil set by the publisher, or null if the publisher does not set one
+         */
+        public DateTime getValidUntil() {
+            return validUntil;
+        }
+
+        /**
+         * Gets whether the published metadata has expired.
+         * 
+         * @return true if the published metadata has expired
+         */
+        public boolean isExpired() {
+            return validUntil != null && validUntil.getMillis() <= ClockSupport.currentTimeMillis();
+        }
+
+        /**
+         * Gets the quoted, strong entity tag of an encoding of the published metadata.
+         * 
+         * @param encoding the content coding
+         * 
+         * @return the entity tag
+         */
+        public String getEntityTag(String encoding) {
+            if (ENCODING_IDENTITY.equals(encoding)) {
+                return "\"" + tag + "\"";
+            }
+            return "\"" + tag + "-" + encoding + "\"";
+        }
+
+        /**
+         * Gets the length of an encoding of the published metadata.
+         * 
+         * @param encoding the content coding
+         * 
+         * @return length, in bytes, of the encoded metadata
+         */
+        public int getContentLength(String encoding) {
+            return getContentBytes(encoding).length;
+        }
+
+        /**
+         * Gets a copy of an encoding of the published metadata.
+         * 
+         * @param encoding the content coding
+         * 
+         * @return the encoded metadata
+         */
+        public byte[] getContent(String encoding) {
+            return getContentBytes(encoding).clone();
+        }
+
+        /**
+         * Writes an encoding of the published metadata.
+         * 
+         * @param encoding the content coding
+         * @param output stream to which the encoded metadata is written
+         * 
+         * @throws IOException thrown if the metadata can not be written
+         */
+        public void writeContent(String encoding, OutputStream output) throws IOException {
+            output.write(getContentBytes(encoding));
+        }
+
+        /**
+         * Gets an encoding of the published metadata.
+         * 
+         * @param encoding the content coding
+         * 
+         * @return the encoded metadata, which must not be modified
+         */
+        private byte[] getContentBytes(String encoding) {
+            if (ENCODING_IDENTITY.equals(encoding)) {
+                return identityContent;
+            } else if (ENCODING_GZIP.equals(encoding)) {
+                return gzipContent;
+            } else if (ENCODING_DEFLATE.equals(encoding)) {
+                return deflateContent;
+            }
+            throw new IllegalArgumentException("Unsupported content coding " + encoding);
+        }
+    }
+
+    /**
+     * Task rebuilding the current publication ahead of its expiration.
+     */
+    private class RepublishTask extends TimerTask {
+
+        /** {@inheritDoc} */
+        public void run() {
+            synchronized (MetadataPublisher.this) {
+                if (republishTask != this) {
+                    return;
+                }
+                try {
+                    republish();
+                } catch (SAMLException e) {
+                    retryRepublish(e);
+                } catch (RuntimeException e) {
+                    retryRepublish(e);
+                }
+            }
+        }
+    }
+}
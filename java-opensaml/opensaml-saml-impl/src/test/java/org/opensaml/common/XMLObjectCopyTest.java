@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common;
+
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.io.UnmarshallingException;
+import org.opensaml.xml.signature.SignableXMLObject;
+import org.opensaml.xml.util.XMLObjectHelper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests that SAML objects copied by {@link XMLObjectHelper#copyXMLObject(XMLObject)} marshall to the same document as
+ * the objects they were copied from, and that copying leaves the originals untouched.
+ */
+public class XMLObjectCopyTest extends BaseTestCase {
+
+    /** Tests copying an assertion. */
+    public void testAssertionCopy() throws MarshallingException, UnmarshallingException {
+        assertCopies("/data/org/opensaml/saml2/core/impl/AssertionChildElements.xml");
+    }
+
+    /** Tests copying an assertion carrying statements and typed attribute values. */
+    public void testResponseAssertionCopy() throws MarshallingException, UnmarshallingException {
+        Response response = (Response) unmarshallElement(
+                "/data/org/opensaml/saml2/core/ResponseSuccessAuthnAttrib.xml");
+        Assertion original = response.getAssertions().get(0);
+        Document expected = marshall(original);
+        
+        Assertion copy = XMLObjectHelper.copyXMLObject(original);
+        assertNotSame("Copy was the original", original, copy);
+        assertNull("Copy had a parent", copy.getParent());
+        assertSame("Original still had its parent", response, original.getParent());
+        assertEquals(expected, copy);
+    }
+
+    /** Tests copying an entity descriptor. */
+    public void testEntityDescriptorCopy() throws MarshallingException, UnmarshallingException {
+        assertCopies("/data/org/opensaml/saml2/metadata/impl/EntityDescriptorChildElements.xml");
+    }
+
+    /** Tests copying an authentication request. */
+    public void testAuthnRequestCopy() throws MarshallingException, UnmarshallingException {
+        assertCopies("/data/org/opensaml/saml2/core/impl/AuthnRequestChildElements.xml");
+    }
+
+    /** Tests copying a signed authentication request, whose signature is copied from its cached DOM. */
+    public void testSignedAuthnRequestCopy() throws MarshallingException, UnmarshallingException {
+        AuthnRequest original = (AuthnRequest) unmarshallElement(
+                "/data/org/opensaml/saml2/binding/AuthnRequest-Signed.xml");
+        Element originalElement = original.getDOM();
+        Element originalSignatureElement = original.getSignature().getDOM();
+
+        AuthnRequest copy = XMLObjectHelper.copyXMLObject(original);
+
+        assertSame("Original DOM was replaced", originalElement, original.getDOM());
+        assertSame("Original signature DOM was replaced", originalSignatureElement, original.getSignature().getDOM());
+        assertNull("Copy had a DOM", copy.getDOM());
+        assertNotSame("Signature was not copied", original.getSignature(), copy.getSignature());
+        assertNotSame("Copied signature shared the original document", originalSignatureElement.getOwnerDocument(),
+                copy.getSignature().getDOM().getOwnerDocument());
+        assertEquals(marshall(unmarshallElement("/data/org/opensaml/saml2/binding/AuthnRequest-Signed.xml")), copy);
+    }
+
+    /** Tests that a signature without a cached DOM is not copied by marshalling it. */
+    public void testSignedPrototypeCopy() throws UnmarshallingException {
+        AuthnRequest original = (AuthnRequest) unmarshallElement(
+                "/data/org/opensaml/saml2/binding/AuthnRequest-Signed.xml");
+        original.releaseChildrenDOM(true);
+        original.releaseDOM();
+
+        try {
+            XMLObjectHelper.copyXMLObject(original);
+            fail("Signature without a DOM was copied");
+        } catch (MarshallingException e) {
+            // expected
+        }
+        assertNoDOM(original);
+    }
+
+    /**
+     * Copies the object in a file, both with the DOM it was unmarshalled from cached and, as a built prototype would
+     * be, without any DOM or signature, and checks that the copies marshall to the same document as the original.
+     * 
+     * @param elementFile the file holding the object to copy
+     * 
+     * @throws MarshallingException if an object can not be copied or marshalled
+     * @throws UnmarshallingException if an object can not be copied
+     */
+    private void assertCopies(String elementFile) throws MarshallingException, UnmarshallingException {
+        XMLObject original = unmarshallElement(elementFile);
+        Element originalElement = original.getDOM();
+
+        XMLObject copy = XMLObjectHelper.copyXMLObject(original);
+        assertNotSame("Copy was the original", original, copy);
+        assertSame("Original DOM was replaced", originalElement, original.getDOM());
+        assertNull("Copy had a DOM", copy.getDOM());
+        assertEquals(marshall(unmarshallElement(elementFile)), copy);
+
+        original = buildPrototype(elementFile);
+        copy = XMLObjectHelper.copyXMLObject(original);
+        assertNoDOM(original);
+        assertNoDOM(copy);
+        assertEquals(marshall(buildPrototype(elementFile)), copy);
+    }
+
+    /**
+     * Unmarshalls the object in a file and strips it of its DOM and signature, as if it had been built.
+     * 
+     * @param elementFile the file holding the object
+     * 
+     * @return the object
+     */
+    private XMLObject buildPrototype(String elementFile) {
+        XMLObject prototype = unmarshallElement(elementFile);
+        if (prototype instanceof SignableXMLObject) {
+            ((SignableXMLObject) prototype).setSignature(null);
+        }
+        prototype.releaseChildrenDOM(true);
+        prototype.releaseDOM();
+        return prototype;
+    }
+
+    /**
+     * Marshalls an object without the DOM it was unmarshalled from.
+     * 
+     * @param xmlObject the object to marshall
+     * 
+     * @return the document the object was marshalled into
+     * 
+     * @throws MarshallingException if the object can not be marshalled
+     */
+    private Document marshall(XMLObject xmlObject) throws MarshallingException {
+        xmlObject.releaseChildrenDOM(true);
+        xmlObject.releaseDOM();
+        return marshallerFactory.getMarshaller(xmlObject).marshall(xmlObject).getOwnerDocument();
+    }
+
+    /**
+     * Checks that neither an object nor its descendants have a cached DOM.
+     * 
+     * @param xmlObject the object to check
+     */
+    private void assertNoDOM(XMLObject xmlObject) {
+        assertNull(xmlObject.getElementQName() + " had a DOM", xmlObject.getDOM());
+        if (xmlObject.getOrderedChildren() != null) {
+            for (XMLObject child : xmlObject.getOrderedChildren()) {
+                if (child != null) {
+                    assertNoDOM(child);
+                }
+            }
+        }
+    }
+}
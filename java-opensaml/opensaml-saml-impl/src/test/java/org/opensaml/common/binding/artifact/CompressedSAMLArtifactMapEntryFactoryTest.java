@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.artifact;
+
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntry;
+import org.opensaml.saml1.core.Assertion;
+import org.opensaml.saml1.core.Response;
+
+/**
+ * Test the compressed SAML artifact map entry factory.
+ */
+public class CompressedSAMLArtifactMapEntryFactoryTest extends BaseTestCase {
+
+    private CompressedSAMLArtifactMapEntryFactory factory;
+    private SAMLObject samlObject;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        factory = new CompressedSAMLArtifactMapEntryFactory();
+
+        //Don't typically store assertions, but need something that can take a parent, for testing purposes.
+        samlObject = (SAMLObject) unmarshallElement("/data/org/opensaml/saml1/core/SignedAssertion.xml");
+    }
+
+    public void testNoParent() {
+        SAMLArtifactMapEntry entry = factory.newEntry("the-artifact", "the-issuer", "the-rp", samlObject, 60*60*1000);
+        assertEquals("the-artifact", entry.getArtifact());
+        assertEquals("the-issuer", entry.getIssuerId());
+        assertEquals("the-rp", entry.getRelyingPartyId());
+
+        Assertion message = (Assertion) entry.getSamlMessage();
+        assertFalse("Retrieved message was the stored object", samlObject == message);
+        assertEquals(((Assertion) samlObject).getID(), message.getID());
+        assertNotNull("Retrieved message lost its signature", message.getSignature());
+        assertFalse("Each retrieval did not produce a new object", message == entry.getSamlMessage());
+    }
+
+    public void testWithParent() {
+        Response response = (Response) buildXMLObject(Response.DEFAULT_ELEMENT_NAME);
+        response.getAssertions().add((Assertion)samlObject);
+        assertTrue(samlObject.hasParent());
+
+        SAMLArtifactMapEntry entry = factory.newEntry("the-artifact", "the-issuer", "the-rp", samlObject, 60*60*1000);
+        Assertion message = (Assertion) entry.getSamlMessage();
+        assertFalse("Retrieved message had a parent", message.hasParent());
+        assertEquals(((Assertion) samlObject).getID(), message.getID());
+        assertTrue("Stored message was detached from its parent", samlObject.getParent() == response);
+    }
+
+    public void testCompression() {
+        CompressedSAMLArtifactMapEntry entry = (CompressedSAMLArtifactMapEntry) factory.newEntry("the-artifact",
+                "the-issuer", "the-rp", samlObject, 60*60*1000);
+        assertTrue("Stored form was empty", entry.getCompressedMessageSize() > 0);
+        assertFalse("Entry was already expired", entry.isExpired());
+    }
+}
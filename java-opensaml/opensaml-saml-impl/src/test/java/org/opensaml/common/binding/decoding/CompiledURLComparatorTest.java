@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.decoding;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the compiled URL comparator.
+ */
+public class CompiledURLComparatorTest extends TestCase {
+
+    /** URL's to compare, pairwise, against the basic comparator. */
+    private static final String[] URLS = {
+        "https://sp.example.org/Shibboleth.sso/SAML2/POST",
+        "HTTPS://SP.Example.ORG/Shibboleth.sso/SAML2/POST",
+        "https://sp.example.org:443/Shibboleth.sso/SAML2/POST",
+        "https://sp.example.org:8443/Shibboleth.sso/SAML2/POST",
+        "https://sp.example.org/shibboleth.sso/saml2/post",
+        "https://sp.example.org/Shibboleth.sso/SAML2/POST?a=b",
+        "https://sp.example.org/Shibboleth.sso/SAML2/POST?a=b&c=d",
+        "https://sp.example.org/Shibboleth.sso/SAML2/POST?a=b%20c",
+        "https://sp.example.org/Shibboleth.sso/SAML2/POST?a=b+c",
+        "https://sp.example.org.evil.example.com/Shibboleth.sso/SAML2/POST",
+        "https://sp.example.org",
+        "https://sp.example.org:443",
+        "https://user@sp.example.org/Shibboleth.sso/SAML2/POST",
+        "http://sp.example.org/Shibboleth.sso/SAML2/POST",
+        "http://sp.example.org:80/Shibboleth.sso/SAML2/POST",
+        "http://sp.example.org:443/Shibboleth.sso/SAML2/POST",
+        "https://idp.example.org/idp/profile/SAML2/Redirect/SSO",
+        "https://idp.example.org:0443/idp/profile/SAML2/Redirect/SSO",
+    };
+
+    /**
+     * Test that the compiled comparator gives the same results as the basic comparator.
+     */
+    public void testConsistentWithBasicComparator() {
+        for (boolean caseInsensitive : new boolean[] {false, true}) {
+            BasicURLComparator basic = new BasicURLComparator();
+            basic.setCaseInsensitive(caseInsensitive);
+            CompiledURLComparator compiled = new CompiledURLComparator(4);
+            compiled.setCaseInsensitive(caseInsensitive);
+            compiled.setReceiverEndpoints(Arrays.asList(URLS[0], URLS[16]));
+
+            for (int pass = 0; pass < 2; pass++) {
+                for (String url1 : URLS) {
+                    for (String url2 : URLS) {
+                        assertEquals(url1 + " compared to " + url2, basic.compare(url1, url2),
+                                compiled.compare(url1, url2));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test comparison of null URL's.
+     */
+    public void testNull() {
+        CompiledURLComparator compiled = new CompiledURLComparator();
+        assertTrue(compiled.compare(null, null));
+        assertFalse(compiled.compare(URLS[0], null));
+        assertFalse(compiled.compare(null, URLS[0]));
+    }
+
+    /**
+     * Test that URL's which are not well formed are rejected as by the basic comparator.
+     */
+    public void testInvalidURL() {
+        CompiledURLComparator compiled = new CompiledURLComparator();
+        try {
+            compiled.compare("urn:example:sp", "urn:example:sp");
+            fail("Comparison of invalid URL's should have failed");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.binding.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.opensaml.saml2.core.AttributeQuery;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.util.storage.MapBasedStorageService;
+import org.opensaml.util.storage.ReplayCache;
+import org.opensaml.util.storage.ReplayCacheEntry;
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.SecurityPolicyException;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.opensaml.ws.security.provider.CostOrderedSecurityPolicy;
+import org.opensaml.ws.security.provider.CostOrderedSecurityPolicy.RuleStatistics;
+
+/**
+ * Test the cost ordered security policy.
+ */
+public class CostOrderedSecurityPolicyTest extends
+        BaseSAMLSecurityPolicyRuleTestCase<AttributeQuery, Response, NameID> {
+
+    private CostOrderedSecurityPolicy policy;
+
+    private List<SecurityPolicyRule> evaluated;
+
+    private RecordingRule expensiveRule;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        messageContext.setInboundMessageIssuer("issuer");
+        messageContext.setInboundSAMLMessageId("abc123");
+        messageContext.setInboundSAMLMessageIssueInstant(new DateTime());
+
+        evaluated = Collections.synchronizedList(new ArrayList<SecurityPolicyRule>());
+        expensiveRule = new RecordingRule(CostedSecurityPolicyRule.Cost.EXPENSIVE);
+
+        policy = new CostOrderedSecurityPolicy();
+        policy.getPolicyRules().add(expensiveRule);
+        policy.getPolicyRules().add(new MessageReplayRule(new ReplayCache(
+                new MapBasedStorageService<String, ReplayCacheEntry>(), 60 * 10 * 1000)));
+        policy.getPolicyRules().add(new IssueInstantRule(60 * 5, 60 * 10));
+        rule = new SecurityPolicyRule() {
+            public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+                policy.evaluate(messageContext);
+            }
+        };
+    }
+
+    /**
+     * Test that cheap rules are evaluated before expensive ones.
+     */
+    public void testCheapRulesFirst() {
+        assertRuleSuccess("Message was valid");
+
+        List<RuleStatistics> statistics = policy.getRuleStatistics();
+        assertEquals(3, statistics.size());
+        assertTrue(statistics.get(0).getRule() instanceof IssueInstantRule);
+        assertTrue(statistics.get(1).getRule() instanceof MessageReplayRule);
+        assertSame(expensiveRule, statistics.get(2).getRule());
+        for (RuleStatistics ruleStatistics : statistics) {
+            assertEquals(1, ruleStatistics.getEvaluationCount());
+            assertEquals(0, ruleStatistics.getFailureCount());
+        }
+    }
+
+    /**
+     * Test that a replayed message does not reach the expensive rule.
+     */
+    public void testReplayShortCircuits() {
+        assertRuleSuccess("Message was valid");
+        evaluated.clear();
+
+        assertRuleFailure("Message was a replay");
+        assertTrue("Expensive rule evaluated for replayed message", evaluated.isEmpty());
+        assertEquals(1, policy.getRuleStatistics().get(1).getFailureCount());
+    }
+
+    /**
+     * Test that a stale message reaches neither the replay cache nor the expensive rule.
+     */
+    public void testStaleShortCircuits() {
+        messageContext.setInboundSAMLMessageIssueInstant(new DateTime().minusHours(1));
+        assertRuleFailure("Message was stale");
+        assertTrue("Expensive rule evaluated for stale message", evaluated.isEmpty());
+        assertEquals(0, policy.getRuleStatistics().get(1).getEvaluationCount());
+    }
+
+    /**
+     * Test that rules which do not declare a cost keep their position.
+     */
+    public void testUncostedRuleIsBarrier() {
+        messageContext.setInboundMessageIssuer(null);
+        policy.getPolicyRules().add(0, new StaticIssuerRule("issuer", null));
+        assertRuleSuccess("Issuer was set before the replay check");
+        assertTrue(policy.getRuleStatistics().get(0).getRule() instanceof StaticIssuerRule);
+    }
+
+    /**
+     * Test concurrent evaluation of expensive rules.
+     */
+    public void testConcurrentExpensiveRules() {
+        RecordingRule otherExpensiveRule = new RecordingRule(CostedSecurityPolicyRule.Cost.EXPENSIVE);
+        policy.getPolicyRules().add(otherExpensiveRule);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            policy.setExecutor(executor);
+            assertRuleSuccess("Message was valid");
+            assertTrue(evaluated.contains(expensiveRule));
+            assertTrue(evaluated.contains(otherExpensiveRule));
+
+            otherExpensiveRule.fail = true;
+            messageContext.setInboundSAMLMessageId("def456");
+            assertRuleFailure("Expensive rule failed");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that expensive rules which do not modify the context are evaluated at the same time.
+     */
+    public void testReadOnlyRulesOverlap() {
+        final CountDownLatch overlap = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            policy.getPolicyRules().add(new RecordingRule(CostedSecurityPolicyRule.Cost.EXPENSIVE) {
+                public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+                    super.evaluate(messageContext);
+                    overlap.countDown();
+                    try {
+                        if (!overlap.await(5, TimeUnit.SECONDS)) {
+                            throw new SecurityPolicyException("Rules were not evaluated concurrently");
+                        }
+                    } catch (InterruptedException e) {
+                        throw new SecurityPolicyException("Interrupted", e);
+                    }
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            policy.setExecutor(executor);
+            assertRuleSuccess("Read-only expensive rules were evaluated concurrently");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that rules which modify the context are never evaluated concurrently, with each other or any other rule.
+     */
+    public void testModifyingRulesSerialized() {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        policy.getPolicyRules().clear();
+        for (int i = 0; i < 4; i++) {
+            RecordingRule rule = new RecordingRule(CostedSecurityPolicyRule.Cost.EXPENSIVE) {
+                public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+                    if (active.incrementAndGet() != 1 && modifiesMessageContext()) {
+                        overlaps.incrementAndGet();
+                    }
+                    try {
+                        Thread.sleep(20);
+                        super.evaluate(messageContext);
+                    } catch (InterruptedException e) {
+                        throw new SecurityPolicyException("Interrupted", e);
+                    } finally {
+                        if (active.getAndDecrement() != 1 && modifiesMessageContext()) {
+                            overlaps.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            rule.modifiesContext = i % 2 == 0;
+            policy.getPolicyRules().add(rule);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            policy.setExecutor(executor);
+            assertRuleSuccess("Message was valid");
+            assertEquals(4, evaluated.size());
+            assertEquals("Context modifying rule was evaluated concurrently", 0, overlaps.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A rule which records its evaluation.
+     */
+    private class RecordingRule implements CostedSecurityPolicyRule {
+
+        private final Cost cost;
+
+        private volatile boolean fail;
+
+        private boolean modifiesContext;
+
+        public RecordingRule(Cost ruleCost) {
+            cost = ruleCost;
+        }
+
+        /** {@inheritDoc} */
+        public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+            evaluated.add(this);
+            if (fail) {
+                throw new SecurityPolicyException("Rule failed");
+            }
+        }
+
+        /** {@inheritDoc} */
+        public boolean modifiesMessageContext() {
+            return modifiesContext;
+        }
+
+        /** {@inheritDoc} */
+        public Cost getEvaluationCost() {
+            return cost;
+        }
+
+        /** {@inheritDoc} */
+        public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+            return Collections.emptyList();
+        }
+    }
+}
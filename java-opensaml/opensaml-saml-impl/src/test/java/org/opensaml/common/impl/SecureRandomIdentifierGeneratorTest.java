@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.common.impl;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the secure random identifier generator.
+ */
+public class SecureRandomIdentifierGeneratorTest extends TestCase {
+
+    /**
+     * Test the form of generated identifiers.
+     *
+     * @throws NoSuchAlgorithmException
+     */
+    public void testIdentifierForm() throws NoSuchAlgorithmException {
+        SecureRandomIdentifierGenerator generator = new SecureRandomIdentifierGenerator();
+
+        String id = generator.generateIdentifier();
+        assertEquals(33, id.length());
+        assertTrue("Identifier was not an NCName of hex digits", id.matches("_[0-9a-f]{32}"));
+
+        assertTrue(generator.generateIdentifier(4).matches("_[0-9a-f]{8}"));
+        assertTrue(generator.generateIdentifier(20).matches("_[0-9a-f]{40}"));
+    }
+
+    /**
+     * Test that identifiers are unique across reseeds.
+     *
+     * @throws NoSuchAlgorithmException
+     */
+    public void testUniqueAcrossReseeds() throws NoSuchAlgorithmException {
+        SecureRandomIdentifierGenerator generator = new SecureRandomIdentifierGenerator("SHA1PRNG", 10);
+
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue("Identifier was repeated", ids.add(generator.generateIdentifier()));
+        }
+    }
+
+    /**
+     * Test that identifiers are unique across generators of the same algorithm, which share each thread's random
+     * number generator.
+     *
+     * @throws NoSuchAlgorithmException
+     */
+    public void testUniqueAcrossInstances() throws NoSuchAlgorithmException {
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            SecureRandomIdentifierGenerator generator = new SecureRandomIdentifierGenerator("SHA1PRNG", 1 + i % 3);
+            assertTrue("Identifier was repeated", ids.add(generator.generateIdentifier()));
+            assertTrue("Identifier was repeated", ids.add(generator.generateIdentifier(8)));
+        }
+    }
+
+    /**
+     * Test that identifiers generated concurrently are unique.
+     *
+     * @throws Exception
+     */
+    public void testConcurrentUnique() throws Exception {
+        final SecureRandomIdentifierGenerator generator = new SecureRandomIdentifierGenerator();
+        final Set<String> ids = Collections.synchronizedSet(new HashSet<String>());
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        ids.add(generator.generateIdentifier());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Identifiers were repeated", 8000, ids.size());
+    }
+
+    /**
+     * Test that an unsupported algorithm is rejected at construction.
+     */
+    public void testUnsupportedAlgorithm() {
+        try {
+            new SecureRandomIdentifierGenerator("NoSuchPRNG");
+            fail("Unsupported algorithm was accepted");
+        } catch (NoSuchAlgorithmException e) {
+            // expected
+        }
+    }
+}
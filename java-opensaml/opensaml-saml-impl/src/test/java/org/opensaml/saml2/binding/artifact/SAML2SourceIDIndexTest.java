@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.binding.artifact;
+
+import java.io.File;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.saml2.metadata.provider.FilesystemMetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.xml.XMLObject;
+
+/**
+ * Test of {@link SAML2SourceIDIndex}.
+ */
+public class SAML2SourceIDIndexTest extends BaseTestCase {
+
+    /** Provider of the indexed metadata. */
+    private FilesystemMetadataProvider metadataProvider;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        URL mdURL = SAML2SourceIDIndexTest.class.getResource("/data/org/opensaml/saml2/metadata/InCommon-metadata.xml");
+        metadataProvider = new FilesystemMetadataProvider(new File(mdURL.toURI()));
+        metadataProvider.setParserPool(parser);
+        metadataProvider.initialize();
+    }
+
+    /**
+     * Tests resolving known and unknown SourceIDs.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testGetEntityID() throws Exception {
+        String entityID = "urn:mace:incommon:washington.edu";
+        byte[] sourceID = MessageDigest.getInstance("SHA-1").digest(entityID.getBytes("UTF-8"));
+
+        SAML2SourceIDIndex index = new SAML2SourceIDIndex(metadataProvider);
+        assertEquals(entityID, index.getEntityID(sourceID));
+
+        byte[] unknownSourceID = MessageDigest.getInstance("SHA-1").digest("urn:example:unknown".getBytes("UTF-8"));
+        assertNull(index.getEntityID(unknownSourceID));
+        assertNull(index.getEntityID(null));
+
+        index.clear();
+        assertEquals(entityID, index.getEntityID(sourceID));
+    }
+
+    /**
+     * Tests that an index built from metadata which changed while it was being built is not kept.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testClearDuringRebuild() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        final SAML2SourceIDIndex[] index = new SAML2SourceIDIndex[1];
+        URL mdURL = SAML2SourceIDIndexTest.class.getResource("/data/org/opensaml/saml2/metadata/InCommon-metadata.xml");
+        FilesystemMetadataProvider changingProvider = new FilesystemMetadataProvider(new File(mdURL.toURI())) {
+            public XMLObject getMetadata() throws MetadataProviderException {
+                XMLObject metadata = super.getMetadata();
+                if (reads.incrementAndGet() == 1) {
+                    // the metadata changes while the first index is being built
+                    index[0].clear();
+                }
+                return metadata;
+            }
+        };
+        changingProvider.setParserPool(parser);
+        changingProvider.initialize();
+
+        String entityID = "urn:mace:incommon:washington.edu";
+        byte[] sourceID = MessageDigest.getInstance("SHA-1").digest(entityID.getBytes("UTF-8"));
+        index[0] = new SAML2SourceIDIndex(changingProvider);
+        reads.set(0);
+
+        assertEquals(entityID, index[0].getEntityID(sourceID));
+        assertEquals(1, reads.get());
+        assertEquals(entityID, index[0].getEntityID(sourceID));
+        assertEquals("Index built from superseded metadata was kept", 2, reads.get());
+        assertEquals(entityID, index[0].getEntityID(sourceID));
+        assertEquals("Rebuilt index was not kept", 2, reads.get());
+    }
+
+    /**
+     * Tests that a destroyed index no longer observes its metadata provider.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testDestroy() throws Exception {
+        int observers = metadataProvider.getObservers().size();
+        SAML2SourceIDIndex index = new SAML2SourceIDIndex(metadataProvider);
+        assertEquals(observers + 1, metadataProvider.getObservers().size());
+
+        index.destroy();
+        assertEquals(observers, metadataProvider.getObservers().size());
+    }
+}
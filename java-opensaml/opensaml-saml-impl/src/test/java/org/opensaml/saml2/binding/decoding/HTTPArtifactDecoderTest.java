@@ -0,0 +1,400 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.binding.decoding;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.SAMLVersion;
+import org.opensaml.common.binding.BasicSAMLMessageContext;
+import org.opensaml.saml2.binding.artifact.SAML2ArtifactType0004;
+import org.opensaml.saml2.binding.artifact.SAML2SourceIDIndex;
+import org.opensaml.saml2.core.ArtifactResolve;
+import org.opensaml.saml2.core.ArtifactResponse;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.Status;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.provider.DOMMetadataProvider;
+import org.opensaml.ws.soap.client.SOAPClient;
+import org.opensaml.ws.soap.client.SOAPMessageContext;
+import org.opensaml.ws.soap.common.SOAPException;
+import org.opensaml.ws.soap.soap11.Body;
+import org.opensaml.ws.soap.soap11.Envelope;
+import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
+import org.opensaml.xml.util.XMLObjectHelper;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Test case for {@link HTTPArtifactDecoder}.
+ */
+public class HTTPArtifactDecoderTest extends BaseTestCase {
+
+    /** Entity ID of the artifact issuer. */
+    private String issuerEntityID = "https://idp.example.org/idp";
+
+    /** Location of the artifact resolution service of the issuer. */
+    private String resolutionServiceLocation = "https://idp.example.org/idp/profile/SAML2/SOAP/ArtifactResolution";
+
+    /** Entity ID of the artifact receiver. */
+    private String localEntityID = "https://sp.example.org/sp";
+
+    /** ID of the dereferenced message. */
+    private String messageID = "_dereferenced";
+
+    /** The encoded artifact. */
+    private String encodedArtifact;
+
+    /** Provider of the metadata of the artifact issuer. */
+    private DOMMetadataProvider metadataProvider;
+
+    /** Client answering artifact resolution requests. */
+    private MockSOAPClient soapClient;
+
+    /** The decoder. */
+    private HTTPArtifactDecoder decoder;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        metadataProvider = newMetadataProvider();
+
+        byte[] sourceID = MessageDigest.getInstance("SHA-1").digest(issuerEntityID.getBytes("UTF-8"));
+        byte[] messageHandle = new byte[20];
+        messageHandle[0] = 1;
+        encodedArtifact = new SAML2ArtifactType0004(new byte[] { 0, 1 }, sourceID, messageHandle).base64Encode();
+
+        soapClient = new MockSOAPClient();
+        decoder = new HTTPArtifactDecoder(parser, soapClient);
+    }
+
+    /**
+     * Tests dereferencing an artifact.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testDecode() throws Exception {
+        BasicSAMLMessageContext messageContext = buildMessageContext(localEntityID);
+        decoder.decode(messageContext);
+
+        assertTrue(messageContext.getInboundSAMLMessage() instanceof Response);
+        assertEquals(messageID, ((Response) messageContext.getInboundSAMLMessage()).getID());
+        assertEquals("relay", messageContext.getRelayState());
+
+        assertEquals(1, soapClient.sends.get());
+        ArtifactResolve request = soapClient.requests.get(0);
+        assertEquals(encodedArtifact, request.getArtifact().getArtifact());
+        assertEquals(resolutionServiceLocation, request.getDestination());
+        assertEquals(localEntityID, request.getIssuer().getValue());
+    }
+
+    /**
+     * Tests that the SourceID index is reused while the metadata provider does not change.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testSourceIDIndexReused() throws Exception {
+        int observers = metadataProvider.getObservers().size();
+
+        decoder.decode(buildMessageContext(localEntityID));
+        SAML2SourceIDIndex index = decoder.getSourceIDIndex(metadataProvider);
+        decoder.decode(buildMessageContext(localEntityID));
+
+        assertSame("SourceID index was not reused", index, decoder.getSourceIDIndex(metadataProvider));
+        assertEquals("Unexpected number of metadata observers", observers + 1, metadataProvider.getObservers().size());
+        assertEquals(2, soapClient.sends.get());
+    }
+
+    /**
+     * Tests that the SourceID index of a replaced metadata provider stops observing that provider.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testMetadataProviderChange() throws Exception {
+        int observers = metadataProvider.getObservers().size();
+        decoder.decode(buildMessageContext(localEntityID));
+        SAML2SourceIDIndex index = decoder.getSourceIDIndex(metadataProvider);
+        assertEquals(observers + 1, metadataProvider.getObservers().size());
+
+        DOMMetadataProvider newProvider = newMetadataProvider();
+        int newObservers = newProvider.getObservers().size();
+        BasicSAMLMessageContext messageContext = buildMessageContext(localEntityID);
+        messageContext.setMetadataProvider(newProvider);
+        decoder.decode(messageContext);
+
+        assertEquals(messageID, ((Response) messageContext.getInboundSAMLMessage()).getID());
+        SAML2SourceIDIndex newIndex = decoder.getSourceIDIndex(newProvider);
+        assertNotSame("SourceID index was not replaced", index, newIndex);
+        assertSame(newProvider, newIndex.getMetadataProvider());
+        assertEquals("Replaced index still observes its provider", observers, metadataProvider.getObservers().size());
+        assertEquals(newObservers + 1, newProvider.getObservers().size());
+    }
+
+    /**
+     * Tests that an artifact presented concurrently in the same context is dereferenced once and that each caller
+     * receives its own copy of the message.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testConcurrentDecodeCoalesced() throws Exception {
+        soapClient.release = new CountDownLatch(1);
+
+        DecodingThread leader = new DecodingThread(buildMessageContext(localEntityID));
+        leader.start();
+        assertTrue("Artifact was not dereferenced", soapClient.arrivals.await(10, TimeUnit.SECONDS));
+
+        List<DecodingThread> waiters = new ArrayList<DecodingThread>();
+        for (int i = 0; i < 3; i++) {
+            DecodingThread waiter = new DecodingThread(buildMessageContext(localEntityID));
+            waiters.add(waiter);
+            waiter.start();
+        }
+        for (DecodingThread waiter : waiters) {
+            awaitWaiting(waiter);
+        }
+        soapClient.release.countDown();
+
+        leader.join(10000);
+        leader.assertDecoded();
+        for (DecodingThread waiter : waiters) {
+            waiter.join(10000);
+            waiter.assertDecoded();
+            assertNotSame("Message was shared between callers", leader.getMessage(), waiter.getMessage());
+            assertNotSame("Message DOM was shared between callers", leader.getMessage().getDOM(), waiter.getMessage()
+                    .getDOM());
+        }
+        assertEquals("Artifact was dereferenced more than once", 1, soapClient.sends.get());
+    }
+
+    /**
+     * Tests that an artifact presented concurrently in different contexts is dereferenced in each context.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testConcurrentDecodeDifferentContext() throws Exception {
+        soapClient.arrivals = new CountDownLatch(2);
+        soapClient.release = new CountDownLatch(1);
+
+        DecodingThread first = new DecodingThread(buildMessageContext(localEntityID));
+        DecodingThread second = new DecodingThread(buildMessageContext("https://sp2.example.org/sp"));
+        first.start();
+        second.start();
+        assertTrue("Artifact was not dereferenced in each context", soapClient.arrivals.await(10, TimeUnit.SECONDS));
+        soapClient.release.countDown();
+
+        first.join(10000);
+        second.join(10000);
+        first.assertDecoded();
+        second.assertDecoded();
+        assertEquals(2, soapClient.sends.get());
+    }
+
+    /**
+     * Creates and initializes a provider of the metadata of the artifact issuer.
+     *
+     * @return the metadata provider
+     *
+     * @throws Exception if something goes wrong
+     */
+    private DOMMetadataProvider newMetadataProvider() throws Exception {
+        DOMMetadataProvider provider = new DOMMetadataProvider(parser.parse(
+                HTTPArtifactDecoderTest.class.getResourceAsStream(
+                        "/data/org/opensaml/saml2/binding/Metadata-ArtifactIssuer.xml")).getDocumentElement());
+        provider.initialize();
+        return provider;
+    }
+
+    /**
+     * Builds the context of a request carrying the artifact.
+     *
+     * @param localEntity entity ID of the artifact receiver
+     *
+     * @return the message context
+     */
+    private BasicSAMLMessageContext buildMessageContext(String localEntity) {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setMethod("GET");
+        httpRequest.setParameter("SAMLart", encodedArtifact);
+        httpRequest.setParameter("RelayState", "relay");
+
+        BasicSAMLMessageContext messageContext = new BasicSAMLMessageContext();
+        messageContext.setInboundMessageTransport(new HttpServletRequestAdapter(httpRequest));
+        messageContext.setMetadataProvider(metadataProvider);
+        messageContext.setLocalEntityId(localEntity);
+        messageContext.setPeerEntityRole(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        return messageContext;
+    }
+
+    /**
+     * Waits until the given thread is blocked waiting for a pending resolution.
+     *
+     * @param thread the thread
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Thread did not wait for the pending resolution", System.currentTimeMillis() < deadline);
+            assertTrue("Thread completed without waiting", thread.isAlive());
+            Thread.sleep(10);
+        }
+    }
+
+    /** Thread which decodes a message context. */
+    private class DecodingThread extends Thread {
+
+        /** The context to decode. */
+        private final BasicSAMLMessageContext messageContext;
+
+        /** The error which occurred while decoding. */
+        private volatile Throwable error;
+
+        /**
+         * Constructor.
+         *
+         * @param context the context to decode
+         */
+        public DecodingThread(BasicSAMLMessageContext context) {
+            messageContext = context;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            try {
+                decoder.decode(messageContext);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        /**
+         * Gets the decoded message.
+         *
+         * @return the decoded message
+         */
+        public SAMLObject getMessage() {
+            return messageContext.getInboundSAMLMessage();
+        }
+
+        /** Asserts that the context was decoded. */
+        public void assertDecoded() {
+            assertFalse("Decoding did not complete", isAlive());
+            if (error != null) {
+                fail("Decoding failed: " + error);
+            }
+            assertTrue(getMessage() instanceof Response);
+            assertEquals(messageID, ((Response) getMessage()).getID());
+            assertEquals(issuerEntityID, ((Response) getMessage()).getIssuer().getValue());
+        }
+    }
+
+    /** SOAP client which answers each artifact resolution request with a successful response. */
+    private class MockSOAPClient implements SOAPClient {
+
+        /** Number of requests sent. */
+        private final AtomicInteger sends = new AtomicInteger();
+
+        /** Requests sent. */
+        private final List<ArtifactResolve> requests = Collections.synchronizedList(new ArrayList<ArtifactResolve>());
+
+        /** Latch counted down as each request is sent. */
+        private volatile CountDownLatch arrivals = new CountDownLatch(1);
+
+        /** Latch which, if set, must be released before a response is returned. */
+        private volatile CountDownLatch release;
+
+        /** {@inheritDoc} */
+        public void send(String endpoint, SOAPMessageContext messageContext) throws SOAPException {
+            sends.incrementAndGet();
+            ArtifactResolve request = (ArtifactResolve) ((Envelope) messageContext.getOutboundMessage()).getBody()
+                    .getUnknownXMLObjects().get(0);
+            requests.add(request);
+
+            arrivals.countDown();
+            if (release != null) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            try {
+                // unmarshall the response from a DOM, as a response received over the wire would be
+                messageContext.setInboundMessage(XMLObjectHelper.cloneXMLObject(buildResponse(request), true));
+            } catch (Exception e) {
+                throw new SOAPException("Unable to build response", e);
+            }
+        }
+
+        /**
+         * Builds the response to an artifact resolution request.
+         *
+         * @param request the request
+         *
+         * @return the response
+         */
+        private Envelope buildResponse(ArtifactResolve request) {
+            Issuer messageIssuer = (Issuer) buildXMLObject(Issuer.DEFAULT_ELEMENT_NAME);
+            messageIssuer.setValue(issuerEntityID);
+            Response message = (Response) buildXMLObject(Response.DEFAULT_ELEMENT_NAME);
+            message.setID(messageID);
+            message.setVersion(SAMLVersion.VERSION_20);
+            message.setIssueInstant(new DateTime());
+            message.setIssuer(messageIssuer);
+            message.setStatus(buildSuccess());
+
+            ArtifactResponse response = (ArtifactResponse) buildXMLObject(ArtifactResponse.DEFAULT_ELEMENT_NAME);
+            response.setID("_response" + sends.get());
+            response.setVersion(SAMLVersion.VERSION_20);
+            response.setIssueInstant(new DateTime());
+            response.setInResponseTo(request.getID());
+            response.setStatus(buildSuccess());
+            response.setMessage(message);
+
+            Body body = (Body) buildXMLObject(Body.DEFAULT_ELEMENT_NAME);
+            body.getUnknownXMLObjects().add(response);
+            Envelope envelope = (Envelope) buildXMLObject(Envelope.DEFAULT_ELEMENT_NAME);
+            envelope.setBody(body);
+            return envelope;
+        }
+
+        /**
+         * Builds a success status.
+         *
+         * @return the status
+         */
+        private Status buildSuccess() {
+            StatusCode statusCode = (StatusCode) buildXMLObject(StatusCode.DEFAULT_ELEMENT_NAME);
+            statusCode.setValue(StatusCode.SUCCESS_URI);
+            Status status = (Status) buildXMLObject(Status.DEFAULT_ELEMENT_NAME);
+            status.setStatusCode(statusCode);
+            return status;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.opensaml.common.BaseTestCase;
 import org.opensaml.common.SAMLObject;
 import org.opensaml.common.binding.BasicSAMLMessageContext;
 import org.opensaml.common.binding.decoding.SAMLMessageDecoder;
+import org.opensaml.saml2.binding.DeflateCodec;
 import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.saml2.core.RequestAbstractType;
 import org.opensaml.saml2.core.Response;
@@ -212,6 +213,32 @@ public class HTTPRedirectDeflateDecoderTest extends BaseTestCase {
         }
     }
     
+    public void testInflatedSizeLimit() throws Exception {
+        AuthnRequest samlRequest =
+                (AuthnRequest) unmarshallElement("/data/org/opensaml/saml2/binding/AuthnRequest.xml");
+        samlRequest.setDestination(null);
+
+        httpRequest.setParameter("SAMLRequest", encodeMessage(samlRequest));
+
+        DeflateCodec codec = new DeflateCodec();
+        codec.setMaxInflatedSize(64);
+        ((HTTPRedirectDeflateDecoder) decoder).setDeflateCodec(codec);
+
+        try {
+            decoder.decode(messageContext);
+            fail("Decoded message exceeding the maximum inflated size");
+        } catch (MessageDecodingException e) {
+            // do nothing, failure expected
+        }
+        assertEquals(1, codec.getRejectedMessages());
+        assertEquals("Inflater was not returned to the pool", 1, codec.getIdleInflaters());
+
+        codec.setMaxInflatedSize(DeflateCodec.DEFAULT_MAX_INFLATED_SIZE);
+        decoder.decode(messageContext);
+        assertTrue(messageContext.getInboundSAMLMessage() instanceof RequestAbstractType);
+        assertEquals("Pooled Inflater was not reused", 1, codec.getInflatersCreated());
+    }
+    
     private void populateRequestURL(MockHttpServletRequest request, String requestURL) {
         URL url = null;
         try {
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml2.binding.security;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.common.SAMLObjectBuilder;
+import org.opensaml.common.SAMLTestHelper;
+import org.opensaml.common.binding.BasicSAMLMessageContext;
+import org.opensaml.common.binding.security.IssueInstantRule;
+import org.opensaml.common.binding.security.MessageReplayRule;
+import org.opensaml.saml2.binding.encoding.HTTPRedirectDeflateEncoder;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.Endpoint;
+import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml2.metadata.provider.DOMMetadataProvider;
+import org.opensaml.util.Pair;
+import org.opensaml.util.URLBuilder;
+import org.opensaml.util.storage.MapBasedStorageService;
+import org.opensaml.util.storage.ReplayCache;
+import org.opensaml.util.storage.ReplayCacheEntry;
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
+import org.opensaml.ws.security.SecurityPolicy;
+import org.opensaml.ws.security.SecurityPolicyException;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.opensaml.ws.security.provider.BasicSecurityPolicy;
+import org.opensaml.ws.security.provider.CostOrderedSecurityPolicy;
+import org.opensaml.ws.security.provider.HTTPRule;
+import org.opensaml.ws.security.provider.MandatoryIssuerRule;
+import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
+import org.opensaml.ws.transport.http.HttpServletResponseAdapter;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.BasicCredential;
+import org.opensaml.xml.security.credential.CollectionCredentialResolver;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.impl.ExplicitKeySignatureTrustEngine;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+/**
+ * Test that the SAML 2 HTTP Redirect rule set reaches the same outcome whether it is evaluated in configured order or
+ * by a {@link CostOrderedSecurityPolicy}, with and without concurrent evaluation.
+ */
+public class SAML2CostOrderedSecurityPolicyTest extends BaseTestCase {
+
+    /** Issuer whose metadata requires signed AuthnRequests. */
+    private final String issuer = "urn:test:issuer:required";
+
+    private DOMMetadataProvider metadataProvider;
+
+    private BasicCredential signingCredential;
+
+    private List<Credential> trustedCredentials;
+
+    private ExecutorService executor;
+
+    private boolean signed;
+
+    private String derivedIssuer;
+
+    private DateTime issueInstant;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        String mdfile = "/data/org/opensaml/saml2/binding/Metadata-AuthnRequestsSigned.xml";
+        Document mdDoc = parser.parse(SAML2CostOrderedSecurityPolicyTest.class.getResourceAsStream(mdfile));
+        metadataProvider = new DOMMetadataProvider(mdDoc.getDocumentElement());
+        metadataProvider.initialize();
+
+        KeyPair keyPair = SecurityHelper.generateKeyPair("RSA", 1024, null);
+        signingCredential = SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        trustedCredentials = new ArrayList<Credential>();
+        trustedCredentials.add(signingCredential);
+
+        executor = Executors.newFixedThreadPool(4);
+
+        signed = true;
+        derivedIssuer = issuer;
+        issueInstant = new DateTime();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Test a message signed with a trusted key.
+     */
+    public void testSignedAndTrusted() throws Exception {
+        assertSameOutcome(true, 1);
+    }
+
+    /**
+     * Test a message signed with a key unknown to the trust engine.
+     */
+    public void testUntrustedKey() throws Exception {
+        trustedCredentials.clear();
+        assertSameOutcome(false, 1);
+    }
+
+    /**
+     * Test an unsigned message from an issuer whose metadata requires signed AuthnRequests.
+     */
+    public void testUnsignedButRequired() throws Exception {
+        signed = false;
+        assertSameOutcome(false, 1);
+    }
+
+    /**
+     * Test an unsigned message from an issuer whose metadata does not require signed AuthnRequests.
+     */
+    public void testUnsignedAndNotRequired() throws Exception {
+        signed = false;
+        derivedIssuer = "urn:test:issuer:notrequired";
+        assertSameOutcome(true, 1);
+    }
+
+    /**
+     * Test a message issued too long ago.
+     */
+    public void testStale() throws Exception {
+        issueInstant = new DateTime().minusHours(1);
+        assertSameOutcome(false, 1);
+    }
+
+    /**
+     * Test a replayed message.
+     */
+    public void testReplay() throws Exception {
+        assertSameOutcome(false, 2);
+    }
+
+    /**
+     * Test a message whose issuer can not be derived.
+     */
+    public void testNoIssuer() throws Exception {
+        derivedIssuer = null;
+        assertSameOutcome(false, 1);
+    }
+
+    /**
+     * Evaluates the message the given number of times with each policy and checks that the outcome of the last
+     * evaluation is the same as in configured order. The state of the message context is only compared after a
+     * successful evaluation, since a failed evaluation stops at whichever rule fails first.
+     * 
+     * @param expectSuccess whether the last evaluation is expected to succeed
+     * @param evaluations number of times the message is evaluated
+     * 
+     * @throws Exception thrown if the message can not be built
+     */
+    private void assertSameOutcome(boolean expectSuccess, int evaluations) throws Exception {
+        CostOrderedSecurityPolicy concurrentPolicy = new CostOrderedSecurityPolicy();
+        concurrentPolicy.setExecutor(executor);
+        SecurityPolicy[] policies = {new BasicSecurityPolicy(), new CostOrderedSecurityPolicy(), concurrentPolicy,};
+
+        Outcome configured = null;
+        for (SecurityPolicy policy : policies) {
+            policy.getPolicyRules().addAll(buildRules());
+            Outcome outcome = null;
+            for (int i = 0; i < evaluations; i++) {
+                outcome = evaluate(policy);
+            }
+
+            String name = policy == concurrentPolicy ? "concurrent cost ordered" : policy.getClass().getSimpleName();
+            assertEquals("Unexpected outcome for " + name, expectSuccess, outcome.success);
+            if (configured == null) {
+                configured = outcome;
+            } else if (configured.success) {
+                assertEquals("Issuer differs from configured order for " + name, configured.issuer, outcome.issuer);
+                assertEquals("Authentication state differs from configured order for " + name,
+                        configured.authenticated, outcome.authenticated);
+            }
+        }
+    }
+
+    /**
+     * Builds the rules of the policy in the order in which they would be configured.
+     * 
+     * @return the rules of the policy
+     */
+    private List<SecurityPolicyRule> buildRules() {
+        CollectionCredentialResolver credResolver = new CollectionCredentialResolver(trustedCredentials);
+        ExplicitKeySignatureTrustEngine engine = new ExplicitKeySignatureTrustEngine(credResolver,
+                SAMLTestHelper.buildBasicInlineKeyInfoResolver());
+
+        List<SecurityPolicyRule> rules = new ArrayList<SecurityPolicyRule>();
+        rules.add(new HTTPRule(null, "GET", false));
+        rules.add(new DerivedIssuerRule());
+        rules.add(new IssueInstantRule(60 * 5, 60 * 10));
+        rules.add(new MessageReplayRule(new ReplayCache(new MapBasedStorageService<String, ReplayCacheEntry>(),
+                60 * 10 * 1000)));
+        rules.add(new SAML2HTTPRedirectDeflateSignatureRule(engine));
+        rules.add(new SAML2AuthnRequestsSignedRule());
+        rules.add(new MandatoryIssuerRule());
+        return rules;
+    }
+
+    /**
+     * Evaluates a freshly decoded message with the given policy.
+     * 
+     * @param policy the policy to evaluate
+     * 
+     * @return the outcome of the evaluation
+     * 
+     * @throws Exception thrown if the message can not be built
+     */
+    private Outcome evaluate(SecurityPolicy policy) throws Exception {
+        BasicSAMLMessageContext<AuthnRequest, Response, NameID> messageContext = buildMessageContext();
+        Outcome outcome = new Outcome();
+        try {
+            policy.evaluate(messageContext);
+            outcome.success = true;
+        } catch (SecurityPolicyException e) {
+            outcome.success = false;
+        }
+        outcome.issuer = messageContext.getInboundMessageIssuer();
+        outcome.authenticated = messageContext.isInboundSAMLMessageAuthenticated();
+        return outcome;
+    }
+
+    /**
+     * Builds the message context a decoder would produce for the HTTP Redirect encoding of the test AuthnRequest.
+     * 
+     * @return the inbound message context
+     * 
+     * @throws Exception thrown if the message can not be encoded
+     */
+    @SuppressWarnings("unchecked")
+    private BasicSAMLMessageContext<AuthnRequest, Response, NameID> buildMessageContext() throws Exception {
+        AuthnRequest authnRequest =
+            (AuthnRequest) unmarshallElement("/data/org/opensaml/saml2/binding/AuthnRequest.xml");
+
+        SAMLObjectBuilder<Endpoint> endpointBuilder = (SAMLObjectBuilder<Endpoint>) builderFactory
+                .getBuilder(AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        Endpoint samlEndpoint = endpointBuilder.buildObject();
+        samlEndpoint.setLocation("http://example.org");
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        BasicSAMLMessageContext outboundContext = new BasicSAMLMessageContext();
+        outboundContext.setOutboundMessageTransport(new HttpServletResponseAdapter(response, false));
+        outboundContext.setOutboundSAMLMessage(authnRequest);
+        outboundContext.setPeerEntityEndpoint(samlEndpoint);
+        if (signed) {
+            outboundContext.setOutboundSAMLMessageSigningCredential(signingCredential);
+        }
+        new HTTPRedirectDeflateEncoder().encode(outboundContext);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setMethod("GET");
+        URLBuilder urlBuilder = new URLBuilder(response.getRedirectedUrl());
+        request.setQueryString(urlBuilder.buildQueryString());
+        for (Pair<String, String> param : urlBuilder.getQueryParams()) {
+            request.setParameter(param.getFirst(), param.getSecond());
+        }
+
+        BasicSAMLMessageContext<AuthnRequest, Response, NameID> messageContext =
+            new BasicSAMLMessageContext<AuthnRequest, Response, NameID>();
+        messageContext.setInboundMessageTransport(new HttpServletRequestAdapter(request));
+        messageContext.setInboundMessage(authnRequest);
+        messageContext.setInboundSAMLMessage(authnRequest);
+        messageContext.setInboundSAMLMessageId(authnRequest.getID());
+        messageContext.setInboundSAMLMessageIssueInstant(issueInstant);
+        messageContext.setPeerEntityRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        messageContext.setMetadataProvider(metadataProvider);
+        return messageContext;
+    }
+
+    /**
+     * Outcome of evaluating a policy.
+     */
+    private static class Outcome {
+
+        private boolean success;
+
+        private String issuer;
+
+        private boolean authenticated;
+    }
+
+    /**
+     * Derives the issuer of the message, as a rule authenticating the issuer by other means would. The rule is
+     * declared expensive so that cost ordering alone would evaluate it after the rules which read the issuer.
+     */
+    private class DerivedIssuerRule implements CostedSecurityPolicyRule, IssuerDerivingSecurityPolicyRule {
+
+        /** {@inheritDoc} */
+        public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+            if (messageContext.getInboundMessageIssuer() == null) {
+                messageContext.setInboundMessageIssuer(derivedIssuer);
+            }
+        }
+
+        /** {@inheritDoc} */
+        public Cost getEvaluationCost() {
+            return Cost.EXPENSIVE;
+        }
+
+        /** {@inheritDoc} */
+        public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+            return Collections.emptyList();
+        }
+
+        /** {@inheritDoc} */
+        public boolean modifiesMessageContext() {
+            return true;
+        }
+    }
+}
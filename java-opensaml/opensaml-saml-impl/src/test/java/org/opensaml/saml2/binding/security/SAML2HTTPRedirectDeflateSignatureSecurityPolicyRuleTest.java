@@ -28,6 +28,7 @@ import org.opensaml.common.SAMLTestHelper;
 import org.opensaml.common.binding.BasicSAMLMessageContext;
 import org.opensaml.common.binding.SAMLMessageContext;
 import org.opensaml.common.binding.security.BaseSAMLSecurityPolicyRuleTestCase;
+import org.opensaml.saml2.binding.HTTPRedirectQuery;
 import org.opensaml.saml2.binding.encoding.HTTPRedirectDeflateEncoder;
 import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.saml2.core.NameID;
@@ -224,6 +225,39 @@ public class SAML2HTTPRedirectDeflateSignatureSecurityPolicyRuleTest
         assertRuleFailure("Protocol message signature was invalid due to modification of the signed content");
     }
     
+    /**
+     * Test that the query string is parsed once and shared via the request.
+     */
+    public void testSharedQuery() {
+        trustedCredentials.add(signingX509Cred);
+
+        HttpServletRequestAdapter inTransport = (HttpServletRequestAdapter) messageContext.getInboundMessageTransport();
+        MockHttpServletRequest request = (MockHttpServletRequest) inTransport.getWrappedRequest();
+        HTTPRedirectQuery query = HTTPRedirectQuery.getInstance(request);
+        assertEquals("Unexpected SigAlg parameter", request.getParameter("SigAlg"), query.getParameter("SigAlg"));
+        assertEquals("Unexpected RelayState parameter", request.getParameter("RelayState"),
+                query.getParameter("RelayState"));
+
+        assertRuleSuccess("Protocol message was signed with trusted credential known to trust engine resolver");
+        assertSame("Parsed query was not shared", query, request.getAttribute(HTTPRedirectQuery.REQUEST_ATTRIBUTE));
+    }
+    
+    /**
+     * Test that a shared query is parsed again when the query string of the request changes.
+     */
+    public void testSharedQueryStale() {
+        HttpServletRequestAdapter inTransport = (HttpServletRequestAdapter) messageContext.getInboundMessageTransport();
+        MockHttpServletRequest request = (MockHttpServletRequest) inTransport.getWrappedRequest();
+        HTTPRedirectQuery query = HTTPRedirectQuery.getInstance(request);
+        assertSame("Parsed query was not reused", query, HTTPRedirectQuery.getInstance(request));
+
+        request.setQueryString(request.getQueryString() + "&foo=bar");
+        HTTPRedirectQuery reparsed = HTTPRedirectQuery.getInstance(request);
+        assertNotSame("Stale parsed query was reused", query, reparsed);
+        assertEquals("Unexpected query string", request.getQueryString(), reparsed.getQueryString());
+        assertSame("Parsed query was not stored", reparsed, request.getAttribute(HTTPRedirectQuery.REQUEST_ATTRIBUTE));
+    }
+
     /**
      * Test context issuer set, valid signature with untrusted credential.
      */
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.common;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.common.impl.SecureRandomIdentifierGenerator;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeStatement;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.Subject;
+import org.opensaml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml2.core.SubjectConfirmationData;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.opensaml.xml.schema.XSString;
+
+/**
+ * Tests {@link AssertionTemplate}.
+ */
+public class AssertionTemplateTest extends BaseTestCase {
+
+    private DateTime prototypeInstant;
+
+    private Assertion prototype;
+
+    private AssertionTemplate template;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        prototypeInstant = new DateTime(2011, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+
+        prototype = (Assertion) buildXMLObject(Assertion.DEFAULT_ELEMENT_NAME);
+        prototype.setIssueInstant(prototypeInstant);
+
+        Issuer issuer = (Issuer) buildXMLObject(Issuer.DEFAULT_ELEMENT_NAME);
+        issuer.setValue("https://idp.example.org");
+        prototype.setIssuer(issuer);
+
+        Conditions conditions = (Conditions) buildXMLObject(Conditions.DEFAULT_ELEMENT_NAME);
+        conditions.setNotBefore(prototypeInstant.minusMinutes(1));
+        conditions.setNotOnOrAfter(prototypeInstant.plusMinutes(5));
+        prototype.setConditions(conditions);
+
+        Subject subject = (Subject) buildXMLObject(Subject.DEFAULT_ELEMENT_NAME);
+        NameID nameID = (NameID) buildXMLObject(NameID.DEFAULT_ELEMENT_NAME);
+        nameID.setFormat(NameID.TRANSIENT);
+        subject.setNameID(nameID);
+        SubjectConfirmation confirmation = (SubjectConfirmation) buildXMLObject(
+                SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+        confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+        SubjectConfirmationData data = (SubjectConfirmationData) buildXMLObject(
+                SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+        data.setNotOnOrAfter(prototypeInstant.plusMinutes(5));
+        confirmation.setSubjectConfirmationData(data);
+        subject.getSubjectConfirmations().add(confirmation);
+        prototype.setSubject(subject);
+
+        prototype.getAuthnStatements().add((AuthnStatement) buildXMLObject(AuthnStatement.DEFAULT_ELEMENT_NAME));
+
+        AttributeStatement statement = (AttributeStatement) buildXMLObject(AttributeStatement.DEFAULT_ELEMENT_NAME);
+        statement.getAttributes().add(buildAttribute("mail"));
+        statement.getAttributes().add(buildAttribute("affiliation"));
+        prototype.getAttributeStatements().add(statement);
+
+        template = new AssertionTemplate(prototype, new SecureRandomIdentifierGenerator());
+    }
+
+    /**
+     * Tests filling in the variable parts of an assertion.
+     */
+    public void testNewAssertion() {
+        DateTime issueInstant = prototypeInstant.plusDays(1);
+        AssertionTemplate.Values values = new AssertionTemplate.Values();
+        values.setIssueInstant(issueInstant);
+        values.setNameIDValue("principal");
+        values.setRecipient("https://sp.example.org/acs");
+        values.setInResponseTo("request");
+        values.setSessionIndex("session");
+        values.setAttributeValues("affiliation", "member", "staff");
+
+        Assertion assertion = template.newAssertion(values);
+
+        assertNotNull(assertion.getID());
+        assertNull(assertion.getDOM());
+        assertEquals(issueInstant, assertion.getIssueInstant());
+        assertEquals("https://idp.example.org", assertion.getIssuer().getValue());
+        assertEquals(issueInstant.minusMinutes(1), assertion.getConditions().getNotBefore());
+        assertEquals(issueInstant.plusMinutes(5), assertion.getConditions().getNotOnOrAfter());
+
+        assertEquals("principal", assertion.getSubject().getNameID().getValue());
+        assertEquals(NameID.TRANSIENT, assertion.getSubject().getNameID().getFormat());
+        SubjectConfirmationData data = assertion.getSubject().getSubjectConfirmations().get(0)
+                .getSubjectConfirmationData();
+        assertEquals("https://sp.example.org/acs", data.getRecipient());
+        assertEquals("request", data.getInResponseTo());
+        assertEquals(issueInstant.plusMinutes(5), data.getNotOnOrAfter());
+
+        AuthnStatement authnStatement = assertion.getAuthnStatements().get(0);
+        assertEquals(issueInstant, authnStatement.getAuthnInstant());
+        assertEquals("session", authnStatement.getSessionIndex());
+
+        List<Attribute> attributes = assertion.getAttributeStatements().get(0).getAttributes();
+        assertEquals(1, attributes.size());
+        assertEquals("affiliation", attributes.get(0).getName());
+        List<XMLObject> attributeValues = attributes.get(0).getAttributeValues();
+        assertEquals(2, attributeValues.size());
+        assertEquals("member", ((XSString) attributeValues.get(0)).getValue());
+        assertEquals("staff", ((XSString) attributeValues.get(1)).getValue());
+        assertSame(assertion.getAttributeStatements().get(0), attributes.get(0).getParent());
+    }
+
+    /**
+     * Tests that produced assertions are independent of each other and of the prototype.
+     */
+    public void testIndependentAssertions() {
+        AssertionTemplate.Values values = new AssertionTemplate.Values();
+        values.setNameIDValue("first");
+        Assertion first = template.newAssertion(values);
+        values.setNameIDValue("second");
+        Assertion second = template.newAssertion(values);
+
+        assertFalse(first.getID().equals(second.getID()));
+        assertEquals("first", first.getSubject().getNameID().getValue());
+        assertEquals("second", second.getSubject().getNameID().getValue());
+        assertTrue(first.getAttributeStatements().isEmpty());
+        assertNull(template.getPrototype().getDOM());
+
+        prototype.getIssuer().setValue("changed");
+        assertEquals("https://idp.example.org", template.newAssertion(values).getIssuer().getValue());
+        assertEquals(2, template.getPrototype().getAttributeStatements().get(0).getAttributes().size());
+    }
+
+    /**
+     * Tests that per subject and per request values held as placeholders by the prototype must be supplied.
+     */
+    public void testRequiredValues() throws Exception {
+        AssertionTemplate.Values values = new AssertionTemplate.Values();
+        assertMissingValue(template, values);
+
+        SubjectConfirmationData data = prototype.getSubject().getSubjectConfirmations().get(0)
+                .getSubjectConfirmationData();
+        data.setRecipient("https://placeholder.example.org/acs");
+        data.setInResponseTo("placeholder");
+        data.setAddress("192.0.2.1");
+        prototype.getAuthnStatements().get(0).setSessionIndex("placeholder");
+        AssertionTemplate placeholderTemplate = new AssertionTemplate(prototype,
+                new SecureRandomIdentifierGenerator());
+
+        values.setNameIDValue("principal");
+        assertNotNull(template.newAssertion(values));
+        assertMissingValue(placeholderTemplate, values);
+        values.setRecipient("https://sp.example.org/acs");
+        assertMissingValue(placeholderTemplate, values);
+        values.setInResponseTo("request");
+        assertMissingValue(placeholderTemplate, values);
+        values.setAddress("198.51.100.7");
+        assertMissingValue(placeholderTemplate, values);
+        values.setSessionIndex("session");
+
+        Assertion assertion = placeholderTemplate.newAssertion(values);
+        data = assertion.getSubject().getSubjectConfirmations().get(0).getSubjectConfirmationData();
+        assertEquals("https://sp.example.org/acs", data.getRecipient());
+        assertEquals("request", data.getInResponseTo());
+        assertEquals("198.51.100.7", data.getAddress());
+        assertEquals("session", assertion.getAuthnStatements().get(0).getSessionIndex());
+    }
+
+    /**
+     * Checks that producing an assertion fails because a required value is missing.
+     * 
+     * @param assertionTemplate the template
+     * @param values the incomplete values
+     */
+    private void assertMissingValue(AssertionTemplate assertionTemplate, AssertionTemplate.Values values) {
+        try {
+            assertionTemplate.newAssertion(values);
+            fail("Assertion was produced without a required value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Builds a prototype attribute with a single string value.
+     * 
+     * @param name name of the attribute
+     * 
+     * @return the attribute
+     */
+    private Attribute buildAttribute(String name) {
+        Attribute attribute = (Attribute) buildXMLObject(Attribute.DEFAULT_ELEMENT_NAME);
+        attribute.setName(name);
+        XMLObjectBuilder<XSString> valueBuilder = builderFactory.getBuilder(XSString.TYPE_NAME);
+        XSString value = valueBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        value.setValue("prototype");
+        attribute.getAttributeValues().add(value);
+        return attribute;
+    }
+}
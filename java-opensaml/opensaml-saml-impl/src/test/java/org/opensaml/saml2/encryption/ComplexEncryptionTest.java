@@ -18,6 +18,8 @@ package org.opensaml.saml2.encryption;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.opensaml.common.BaseTestCase;
 import org.opensaml.saml2.core.Assertion;
@@ -26,21 +28,27 @@ import org.opensaml.saml2.core.EncryptedAssertion;
 import org.opensaml.saml2.core.EncryptedAttribute;
 import org.opensaml.saml2.encryption.Encrypter.KeyPlacement;
 import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.encryption.ChainingEncryptedKeyResolver;
 import org.opensaml.xml.encryption.DataReference;
+import org.opensaml.xml.encryption.DecryptionException;
 import org.opensaml.xml.encryption.EncryptedData;
 import org.opensaml.xml.encryption.EncryptedKey;
 import org.opensaml.xml.encryption.EncryptionConstants;
 import org.opensaml.xml.encryption.EncryptionException;
 import org.opensaml.xml.encryption.EncryptionParameters;
+import org.opensaml.xml.encryption.InlineEncryptedKeyResolver;
 import org.opensaml.xml.encryption.KeyEncryptionParameters;
 import org.opensaml.xml.security.SecurityHelper;
 import org.opensaml.xml.security.XMLSecurityHelper;
 import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.parse.XMLParserException;
+import org.opensaml.xml.security.keyinfo.StaticKeyInfoCredentialResolver;
 import org.opensaml.xml.security.keyinfo.StaticKeyInfoGenerator;
 import org.opensaml.xml.signature.KeyInfo;
 import org.opensaml.xml.signature.KeyName;
 import org.opensaml.xml.signature.RetrievalMethod;
 import org.opensaml.xml.util.DatatypeHelper;
+import org.w3c.dom.Document;
 
 /**
  * Tests for encryption using single and multicast key encryption keys, 
@@ -80,7 +88,7 @@ public class ComplexEncryptionTest extends BaseTestCase {
         
         Credential encCred = XMLSecurityHelper.generateKeyAndCredential(algoURI);
         Credential kekCredAES = XMLSecurityHelper.generateKeyAndCredential(kekURIAES);
-        Credential kekCredRSA = XMLSecurityHelper.generateKeyPairAndCredential(kekURIRSA, 2048, false);
+        Credential kekCredRSA = XMLSecurityHelper.generateKeyPairAndCredential(kekURIRSA, 2048, true);
         
         encParams = new EncryptionParameters();
         encParams.setAlgorithm(algoURI);
@@ -348,4 +356,87 @@ public class ComplexEncryptionTest extends BaseTestCase {
                 encObject2 instanceof EncryptedAttribute);
     }
 
+    /** Test encryption of one assertion for multiple recipients with key placement as peer and inline. */
+    public void testMultipleRecipients() throws EncryptionException, DecryptionException, XMLParserException {
+        Assertion target = (Assertion) unmarshallElement("/data/org/opensaml/saml2/encryption/Assertion.xml");
+        Document plaintext = parser.parse(ComplexEncryptionTest.class
+                .getResourceAsStream("/data/org/opensaml/saml2/encryption/Assertion.xml"));
+        Credential[] kekCredentials = {kekParamsRSA.getEncryptionCredential(),
+                kekParamsAES.getEncryptionCredential(), };
+
+        kekParamsRSA.setRecipient(expectedRecipientRSA);
+        kekParamsAES.setRecipient(expectedRecipientAES);
+        List<KeyEncryptionParameters> recipients = new ArrayList<KeyEncryptionParameters>();
+        recipients.add(kekParamsRSA);
+        recipients.add(kekParamsAES);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            encrypter = new Encrypter(encParams);
+            encrypter.setKeyEncryptionExecutor(executor);
+
+            encrypter.setKeyPlacement(KeyPlacement.PEER);
+            List<EncryptedAssertion> encTargets = encrypter.encrypt(target, recipients);
+            assertEquals("Number of EncryptedAssertions", 2, encTargets.size());
+
+            String cipherValue = encTargets.get(0).getEncryptedData().getCipherData().getCipherValue().getValue();
+            String dataID = encTargets.get(0).getEncryptedData().getID();
+            String[] expectedRecipients = {expectedRecipientRSA, expectedRecipientAES};
+            for (int i = 0; i < encTargets.size(); i++) {
+                EncryptedAssertion encTarget = encTargets.get(i);
+                EncryptedData encData = encTarget.getEncryptedData();
+                assertEquals("EncryptedData was not shared", cipherValue,
+                        encData.getCipherData().getCipherValue().getValue());
+                assertEquals("EncryptedData ID", dataID, encData.getID());
+                assertEquals("Number of peer EncryptedKeys", 1, encTarget.getEncryptedKeys().size());
+
+                EncryptedKey encKey = encTarget.getEncryptedKeys().get(0);
+                assertEquals("EncryptedKey Recipient", expectedRecipients[i], encKey.getRecipient());
+                RetrievalMethod rm = encData.getKeyInfo().getRetrievalMethods().get(0);
+                assertEquals("EncryptedData RetrievalMethod had incorrect URI value", "#" + encKey.getID(),
+                        rm.getURI());
+                assertEquals("EncryptedKey DataReference had incorrect URI value", "#" + encData.getID(),
+                        encKey.getReferenceList().getDataReferences().get(0).getURI());
+
+                assertEquals(plaintext, decrypt(encTarget, kekCredentials[i]));
+                try {
+                    decrypt(encTarget, kekCredentials[1 - i]);
+                    fail("EncryptedAssertion was decrypted with another recipient's key encryption key");
+                } catch (DecryptionException e) {
+                    // expected
+                }
+            }
+
+            encrypter.setKeyPlacement(KeyPlacement.INLINE);
+            encTargets = encrypter.encrypt(target, recipients);
+            assertEquals("Number of EncryptedAssertions", 2, encTargets.size());
+            for (int i = 0; i < encTargets.size(); i++) {
+                EncryptedAssertion encTarget = encTargets.get(i);
+                assertEquals("Number of peer EncryptedKeys", 0, encTarget.getEncryptedKeys().size());
+                List<EncryptedKey> inlineKeys = encTarget.getEncryptedData().getKeyInfo().getEncryptedKeys();
+                assertEquals("Number of inline EncryptedKeys", 1, inlineKeys.size());
+                assertEquals("EncryptedKey Recipient", expectedRecipients[i], inlineKeys.get(0).getRecipient());
+                assertEquals(plaintext, decrypt(encTarget, kekCredentials[i]));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Decrypts an EncryptedAssertion with a decrypter which holds only the given key encryption credential.
+     * 
+     * @param encTarget the EncryptedAssertion to decrypt
+     * @param kekCredential the key encryption credential of a single recipient
+     * @return the decrypted Assertion
+     * @throws DecryptionException if the assertion can not be decrypted with the credential
+     */
+    private Assertion decrypt(EncryptedAssertion encTarget, Credential kekCredential) throws DecryptionException {
+        ChainingEncryptedKeyResolver encKeyResolver = new ChainingEncryptedKeyResolver();
+        encKeyResolver.getResolverChain().add(new InlineEncryptedKeyResolver());
+        encKeyResolver.getResolverChain().add(new EncryptedElementTypeEncryptedKeyResolver());
+        Decrypter decrypter = new Decrypter(null, new StaticKeyInfoCredentialResolver(kekCredential), encKeyResolver);
+        return decrypter.decrypt(encTarget);
+    }
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.metadata.provider;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.RoleDescriptor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit tests for {@link DOMMetadataProvider}.
+ */
+public class DOMMetadataProviderTest extends BaseTestCase {
+
+    private String entityID;
+
+    private Element metadataElement;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        entityID = "urn:mace:incommon:washington.edu";
+
+        Document metadataDocument = parser.parse(DOMMetadataProviderTest.class
+                .getResourceAsStream("/data/org/opensaml/saml2/metadata/InCommon-metadata.xml"));
+        metadataElement = metadataDocument.getDocumentElement();
+    }
+
+    /**
+     * Tests lookups in valid metadata.
+     */
+    public void testValidMetadata() throws MetadataProviderException {
+        metadataElement.setAttributeNS(null, "validUntil", new DateTime().plusDays(1).toString());
+        DOMMetadataProvider metadataProvider = newProvider();
+
+        EntityDescriptor descriptor = metadataProvider.getEntityDescriptor(entityID);
+        assertNotNull("Retrieved entity descriptor was null", descriptor);
+        assertEquals("Entity's ID does not match requested ID", entityID, descriptor.getEntityID());
+
+        List<RoleDescriptor> roles = metadataProvider.getRole(entityID, IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        assertEquals("Unexpected number of roles", 1, roles.size());
+
+        assertSame(descriptor, metadataProvider.getEntityDescriptor(entityID));
+    }
+
+    /**
+     * Tests that descriptors are not returned when an ancestor has expired.
+     */
+    public void testExpiredAncestor() throws MetadataProviderException {
+        metadataElement.setAttributeNS(null, "validUntil", new DateTime().minusDays(1).toString());
+        DOMMetadataProvider metadataProvider = newProvider();
+
+        assertNull("Descriptor of expired metadata was returned", metadataProvider.getEntityDescriptor(entityID));
+        assertNull("Role of expired metadata was returned", metadataProvider.getRole(entityID,
+                IDPSSODescriptor.DEFAULT_ELEMENT_NAME, "urn:oasis:names:tc:SAML:1.1:protocol"));
+    }
+
+    /**
+     * Creates and initializes a provider, requiring valid metadata, of the test metadata.
+     *
+     * @return the provider
+     *
+     * @throws MetadataProviderException thrown if the provider can not be initialized
+     */
+    private DOMMetadataProvider newProvider() throws MetadataProviderException {
+        DOMMetadataProvider metadataProvider = new DOMMetadataProvider(metadataElement);
+        metadataProvider.setRequireValidMetadata(true);
+        metadataProvider.initialize();
+        return metadataProvider;
+    }
+}
@@ -16,7 +16,15 @@
 
 package org.opensaml.saml2.metadata.provider;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.opensaml.common.BaseTestCase;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  * Unit tests for {@link SchemaValidationFilter}.
@@ -26,11 +34,15 @@ public class SchemaValidationFilterTest extends BaseTestCase {
     /** URL to InCommon metadata. */
     private String inCommonMDURL;
 
+    /** Classpath location of a metadata aggregate. */
+    private String aggregateMDFile;
+
     /** {@inheritDoc} */
     protected void setUp() throws Exception {
         super.setUp();
 
         inCommonMDURL = "http://wayf.incommonfederation.org/InCommon/InCommon-metadata.xml";
+        aggregateMDFile = "/data/org/opensaml/saml2/metadata/ukfederation-metadata.xml";
     }
 
     public void test() throws Exception {
@@ -41,4 +53,31 @@ public class SchemaValidationFilterTest extends BaseTestCase {
 
         metadataProvider.getMetadata();
     }
+
+    /**
+     * Tests concurrent validation of the entities of an aggregate.
+     */
+    public void testConcurrentValidation() throws Exception {
+        EntitiesDescriptor aggregate = (EntitiesDescriptor) unmarshallElement(aggregateMDFile);
+        SchemaValidationFilter filter = new SchemaValidationFilter(null);
+        filter.doFilter(aggregate);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            filter.setExecutor(executor);
+            filter.doFilter(aggregate);
+
+            NodeList entities = aggregate.getDOM().getElementsByTagNameNS(SAMLConstants.SAML20MD_NS,
+                    EntityDescriptor.DEFAULT_ELEMENT_LOCAL_NAME);
+            ((Element) entities.item(entities.getLength() - 1)).removeAttributeNS(null, "entityID");
+            try {
+                filter.doFilter(aggregate);
+                fail("Invalid entity was not detected");
+            } catch (FilterException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
\ No newline at end of file
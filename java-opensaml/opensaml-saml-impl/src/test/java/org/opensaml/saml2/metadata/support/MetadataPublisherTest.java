@@ -0,0 +1,270 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml2.metadata.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.GZIPInputStream;
+
+import org.opensaml.common.BaseTestCase;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.support.MetadataPublisher.Publication;
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.util.time.ManualClock;
+import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
+import org.opensaml.ws.transport.http.HttpServletResponseAdapter;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.BasicCredential;
+import org.opensaml.xml.signature.Signature;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+/**
+ * Tests {@link MetadataPublisher}.
+ */
+public class MetadataPublisherTest extends BaseTestCase {
+
+    private ManualClock clock;
+
+    private EntityDescriptor metadata;
+
+    private MetadataPublisher publisher;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        clock = new ManualClock(System.currentTimeMillis());
+        ClockSupport.setClock(clock);
+
+        metadata = (EntityDescriptor) buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        metadata.setEntityID("https://idp.example.org");
+
+        publisher = new MetadataPublisher();
+        publisher.setMetadata(metadata);
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        publisher.destroy();
+        ClockSupport.setClock(null);
+        super.tearDown();
+    }
+
+    /**
+     * Tests publishing the metadata in each content coding.
+     */
+    public void testPublish() throws Exception {
+        MockHttpServletResponse response = publish(null, null);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        byte[] content = response.getContentAsByteArray();
+        Document document = parser.parse(new ByteArrayInputStream(content));
+        assertEquals("https://idp.example.org", document.getDocumentElement().getAttributeNS(null, "entityID"));
+
+        response = publish("deflate;q=0.5, gzip", null);
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(content, gunzip(response.getContentAsByteArray())));
+
+        response = publish("deflate", null);
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+
+        response = publish("gzip;q=0, *", null);
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+    }
+
+    /**
+     * Tests that conditional requests for the current publication are answered without content.
+     */
+    public void testConditionalRequest() throws Exception {
+        MockHttpServletResponse response = publish("gzip", null);
+        String entityTag = (String) response.getHeader("ETag");
+        assertNotNull(entityTag);
+
+        response = publish("gzip", entityTag);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        response = publish(null, entityTag);
+        assertEquals("Identity and gzip representations shared an entity tag", 200, response.getStatus());
+    }
+
+    /**
+     * Tests that the publication is reused until the configuration changes.
+     */
+    public void testConfigurationChange() throws Exception {
+        Publication publication = publisher.getPublication();
+        assertSame(publication, publisher.getPublication());
+
+        EntityDescriptor changed = (EntityDescriptor) buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        changed.setEntityID("https://idp2.example.org");
+        publisher.setMetadata(changed);
+        Publication changedPublication = publisher.getPublication();
+        assertNotSame(publication, changedPublication);
+        assertFalse(publication.getEntityTag(MetadataPublisher.ENCODING_IDENTITY).equals(
+                changedPublication.getEntityTag(MetadataPublisher.ENCODING_IDENTITY)));
+    }
+
+    /**
+     * Tests that publications with a validity period are rebuilt once expired.
+     */
+    public void testValidityPeriod() throws Exception {
+        publisher.setValidityPeriod(24 * 60 * 60 * 1000);
+        Publication publication = publisher.getPublication();
+        assertEquals(clock.currentTimeMillis() + 24 * 60 * 60 * 1000, publication.getValidUntil().getMillis());
+        assertNull("Configured metadata was modified", metadata.getValidUntil());
+
+        clock.advance(12 * 60 * 60 * 1000);
+        assertSame(publication, publisher.getPublication());
+
+        clock.advance(12 * 60 * 60 * 1000);
+        Publication newPublication = publisher.getPublication();
+        assertNotSame(publication, newPublication);
+        assertEquals(clock.currentTimeMillis() + 24 * 60 * 60 * 1000, newPublication.getValidUntil().getMillis());
+    }
+
+    /**
+     * Tests that published metadata is signed without signing the configured metadata.
+     */
+    public void testSigned() throws Exception {
+        KeyPair keyPair = SecurityHelper.generateKeyPair("RSA", 1024, null);
+        publisher.setSigningCredential(SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate()));
+
+        byte[] content = publisher.getPublication().getContent(MetadataPublisher.ENCODING_IDENTITY);
+        Document document = parser.parse(new ByteArrayInputStream(content));
+        assertEquals(1, document.getDocumentElement().getElementsByTagNameNS(Signature.DEFAULT_ELEMENT_NAME
+                .getNamespaceURI(), Signature.DEFAULT_ELEMENT_LOCAL_NAME).getLength());
+        assertNull("Configured metadata was signed", metadata.getSignature());
+    }
+
+    /**
+     * Tests that a failed background rebuilding keeps the current publication and is retried before it expires.
+     */
+    public void testRepublishRetry() throws Exception {
+        KeyPair keyPair = SecurityHelper.generateKeyPair("RSA", 1024, null);
+        FailingCredential credential = new FailingCredential();
+        credential.setPublicKey(keyPair.getPublic());
+        credential.setPrivateKey(keyPair.getPrivate());
+        RecordingTimer timer = new RecordingTimer();
+        MetadataPublisher retryingPublisher = new MetadataPublisher(timer);
+        try {
+            retryingPublisher.setMetadata(metadata);
+            retryingPublisher.setSigningCredential(credential);
+            retryingPublisher.setValidityPeriod(24 * 60 * 60 * 1000);
+            Publication publication = retryingPublisher.getPublication();
+            assertEquals(23 * 60 * 60 * 1000, timer.delay);
+
+            clock.advance(23 * 60 * 60 * 1000);
+            credential.failing = true;
+            timer.task.run();
+            assertSame(publication, retryingPublisher.getPublication());
+            assertEquals("Rebuilding was not retried halfway to expiration", 30 * 60 * 1000, timer.delay);
+
+            clock.advance(30 * 60 * 1000);
+            credential.failing = false;
+            timer.task.run();
+            Publication newPublication = retryingPublisher.getPublication();
+            assertNotSame(publication, newPublication);
+            assertEquals(clock.currentTimeMillis() + 24 * 60 * 60 * 1000, newPublication.getValidUntil().getMillis());
+        } finally {
+            retryingPublisher.destroy();
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Requests the metadata from the publisher.
+     * 
+     * @param acceptEncoding Accept-Encoding header of the request, may be null
+     * @param ifNoneMatch If-None-Match header of the request, may be null
+     * 
+     * @return the response
+     */
+    private MockHttpServletResponse publish(String acceptEncoding, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        publisher.publish(new HttpServletRequestAdapter(request), new HttpServletResponseAdapter(response, false));
+        return response;
+    }
+
+    /**
+     * Decompresses gzip encoded content.
+     * 
+     * @param content the encoded content
+     * 
+     * @return the decoded content
+     */
+    private byte[] gunzip(byte[] content) throws Exception {
+        InputStream input = new GZIPInputStream(new ByteArrayInputStream(content));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = input.read(buffer); read > 0; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * A timer which records the last task scheduled on it instead of running it.
+     */
+    private static class RecordingTimer extends Timer {
+
+        private TimerTask task;
+
+        private long delay;
+
+        public RecordingTimer() {
+            super(true);
+        }
+
+        /** {@inheritDoc} */
+        public void schedule(TimerTask scheduledTask, long scheduledDelay) {
+            task = scheduledTask;
+            delay = scheduledDelay;
+        }
+    }
+
+    /**
+     * A credential whose private key can not be retrieved while it is failing.
+     */
+    private static class FailingCredential extends BasicCredential {
+
+        private volatile boolean failing;
+
+        /** {@inheritDoc} */
+        public PrivateKey getPrivateKey() {
+            if (failing) {
+                throw new IllegalStateException("Private key is unavailable");
+            }
+            return super.getPrivateKey();
+        }
+    }
+}
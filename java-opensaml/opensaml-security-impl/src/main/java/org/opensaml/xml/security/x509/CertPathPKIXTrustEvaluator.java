@@ -37,6 +37,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.opensaml.util.time.ClockSupport;
 import org.opensaml.xml.security.SecurityException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -310,7 +311,7 @@ public class CertPathPKIXTrustEvaluator implements PKIXTrustEvaluator {
             }
         }
         
-        Date now = new Date();
+        Date now = new Date(ClockSupport.currentTimeMillis());
         
         if (validationInfo.getCRLs() != null && !validationInfo.getCRLs().isEmpty()) {
             log.trace("Processing CRL's from PKIX info set");
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client;
+
+import java.util.concurrent.Future;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.ws.soap.soap11.Envelope;
+
+/**
+ * A SOAP client which can send a message without waiting for the response.
+ */
+@ThreadSafe
+public interface AsyncSOAPClient extends SOAPClient {
+
+    /**
+     * Sends a message and returns immediately. Once received, the response is set as the inbound message of the
+     * message context and the returned future completes with it.
+     *
+     * If sending the message or receiving the response fails, {@link Future#get()} throws an
+     * {@link java.util.concurrent.ExecutionException} whose cause is the {@link SOAPClientException},
+     * {@link SOAPFaultException} or {@link org.opensaml.xml.security.SecurityException} that
+     * {@link #send(String, SOAPMessageContext)} would have thrown.
+     *
+     * @param endpoint the endpoint to which to send the message
+     * @param messageContext the message context containing the outbound SOAP message
+     *
+     * @return the future response
+     */
+    public Future<Envelope> sendAsync(String endpoint, SOAPMessageContext messageContext);
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.opensaml.ws.soap.client.AsyncSOAPClient;
+import org.opensaml.ws.soap.client.SOAPClientException;
+import org.opensaml.ws.soap.client.SOAPMessageContext;
+import org.opensaml.ws.soap.common.SOAPException;
+import org.opensaml.ws.soap.soap11.Envelope;
+import org.opensaml.xml.parse.ParserPool;
+import org.opensaml.xml.security.SecurityException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SOAP client that uses HTTP as the underlying transport and POST as the binding, and which sends messages on
+ * behalf of the caller using a caller supplied {@link ExecutorService}.
+ *
+ * The number of requests concurrently in progress to any one host is limited. Requests in excess of the limit wait,
+ * at most until their deadline, for an earlier request to that host to complete. The HTTP client's connection manager
+ * should permit at least as many connections per host.
+ *
+ * A request's deadline is taken from its {@link HttpSOAPRequestParameters} or, if those carry none, derived from the
+ * default request timeout. The deadline bounds both the wait for a per-host slot and the exchange with the endpoint,
+ * which is aborted if it has not completed by then. The latency of every completed request is recorded in a
+ * per-endpoint {@link LatencyHistogram}.
+ *
+ * The message context passed to {@link #sendAsync(String, SOAPMessageContext)} is used by the thread sending the
+ * message and must not be accessed by the caller until the returned future has completed.
+ */
+@ThreadSafe
+public class AsyncHttpSOAPClient extends HttpSOAPClient implements AsyncSOAPClient {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(AsyncHttpSOAPClient.class);
+
+    /** Executor used to send messages. */
+    private final ExecutorService executor;
+
+    /** Maximum number of requests concurrently in progress to a single host. */
+    private final int maxRequestsPerHost;
+
+    /** Default request timeout in milliseconds, 0 for none. */
+    private volatile long defaultRequestTimeout;
+
+    /** Permits for requests to each host, indexed by host and port. */
+    private final ConcurrentMap<String, Semaphore> hostPermits;
+
+    /** Latency histogram of each endpoint. */
+    private final ConcurrentMap<String, LatencyHistogram> latencies;
+
+    /**
+     * Constructor.
+     *
+     * @param client Client used to make outbound HTTP requests. This client SHOULD employ a
+     *            {@link org.apache.commons.httpclient.MultiThreadedHttpConnectionManager} and may be shared with other
+     *            objects.
+     * @param parser pool of XML parsers used to parse incoming responses
+     * @param sendingExecutor executor used to send messages, the lifecycle of which is managed by the caller
+     * @param maxPerHost maximum number of requests concurrently in progress to a single host
+     */
+    public AsyncHttpSOAPClient(HttpClient client, ParserPool parser, ExecutorService sendingExecutor,
+            int maxPerHost) {
+        super(client, parser);
+
+        if (sendingExecutor == null) {
+            throw new IllegalArgumentException("Sending executor may not be null");
+        }
+        executor = sendingExecutor;
+
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException("Maximum requests per host must be greater than 0");
+        }
+        maxRequestsPerHost = maxPerHost;
+
+        hostPermits = new ConcurrentHashMap<String, Semaphore>();
+        latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    }
+
+    /**
+     * Gets the default request timeout, applied to requests whose parameters carry no deadline.
+     *
+     * @return default request timeout in milliseconds, 0 for none
+     */
+    public long getDefaultRequestTimeout() {
+        return defaultRequestTimeout;
+    }
+
+    /**
+     * Sets the default request timeout, applied to requests whose parameters carry no deadline.
+     *
+     * @param timeout default request timeout in milliseconds, 0 for none
+     */
+    public void setDefaultRequestTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Default request timeout may not be negative");
+        }
+        defaultRequestTimeout = timeout;
+    }
+
+    /**
+     * Gets the maximum number of requests concurrently in progress to a single host.
+     *
+     * @return maximum number of requests concurrently in progress to a single host
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * Gets the latency histogram of the given endpoint.
+     *
+     * @param endpoint the endpoint
+     *
+     * @return the latency histogram of the endpoint or null if no request to the endpoint has completed
+     */
+    public LatencyHistogram getLatencyHistogram(String endpoint) {
+        return latencies.get(endpoint);
+    }
+
+    /** {@inheritDoc} */
+    public void send(String endpoint, SOAPMessageContext messageContext) throws SOAPException, SecurityException {
+        Future<Envelope> response = sendAsync(endpoint, messageContext);
+        try {
+            response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SOAPClientException("Interrupted while waiting for response from " + endpoint, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SOAPException) {
+                throw (SOAPException) cause;
+            } else if (cause instanceof SecurityException) {
+                throw (SecurityException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SOAPClientException("Unable to send request to " + endpoint, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Future<Envelope> sendAsync(String endpoint, SOAPMessageContext messageContext) {
+        HttpSOAPRequestParameters requestParams = (HttpSOAPRequestParameters) messageContext
+                .getSOAPRequestParameters();
+        long timeout = defaultRequestTimeout;
+        if (timeout > 0 && (requestParams == null || requestParams.getDeadline() <= 0)) {
+            String soapAction = requestParams == null ? null : requestParams.getSoapAction();
+            long deadline = System.currentTimeMillis() + timeout;
+            messageContext.setSOAPRequestParameters(new HttpSOAPRequestParameters(soapAction, deadline));
+        }
+
+        return executor.submit(new SendTask(endpoint, messageContext));
+    }
+
+    /**
+     * Sends a message, within the per-host request limit, and records its latency.
+     *
+     * @param endpoint the endpoint to which to send the message
+     * @param messageContext the message context containing the outbound SOAP message
+     *
+     * @return the response
+     *
+     * @throws SOAPException thrown if there is a problem sending the message or receiving the response or if the
+     *             response is a SOAP fault
+     * @throws SecurityException thrown if the response does not meet any security policy associated with the message
+     *             context
+     */
+    protected Envelope sendWithinLimit(String endpoint, SOAPMessageContext messageContext) throws SOAPException,
+            SecurityException {
+        HttpSOAPRequestParameters requestParams = (HttpSOAPRequestParameters) messageContext
+                .getSOAPRequestParameters();
+        long deadline = requestParams == null ? 0 : requestParams.getDeadline();
+
+        Semaphore permits = getHostPermits(endpoint);
+        try {
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !permits.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+                    log.debug("Deadline passed while waiting to send request to {}", endpoint);
+                    throw new SOAPClientException("Deadline passed while waiting to send request to " + endpoint);
+                }
+            } else {
+                permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SOAPClientException("Interrupted while waiting to send request to " + endpoint, e);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            super.send(endpoint, messageContext);
+            return (Envelope) messageContext.getInboundMessage();
+        } finally {
+            permits.release();
+            recordLatency(endpoint, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Gets the permits for requests to the host of the given endpoint.
+     *
+     * @param endpoint the endpoint
+     *
+     * @return the permits for requests to the host of the endpoint
+     *
+     * @throws SOAPClientException thrown if the endpoint is not a valid URI
+     */
+    private Semaphore getHostPermits(String endpoint) throws SOAPClientException {
+        String host;
+        try {
+            URI endpointURI = new URI(endpoint);
+            host = endpointURI.getHost() + ":" + endpointURI.getPort();
+        } catch (URISyntaxException e) {
+            throw new SOAPClientException("Invalid endpoint " + endpoint, e);
+        }
+
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(maxRequestsPerHost);
+            Semaphore existing = hostPermits.putIfAbsent(host, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Records the latency of a request to the given endpoint.
+     *
+     * @param endpoint the endpoint
+     * @param millis the latency in milliseconds
+     */
+    private void recordLatency(String endpoint, long millis) {
+        LatencyHistogram histogram = latencies.get(endpoint);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = latencies.putIfAbsent(endpoint, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        histogram.record(millis);
+    }
+
+    /** Task which sends a single message. */
+    private class SendTask implements Callable<Envelope> {
+
+        /** Endpoint to which to send the message. */
+        private final String endpoint;
+
+        /** Message context containing the outbound SOAP message. */
+        private final SOAPMessageContext messageContext;
+
+        /**
+         * Constructor.
+         *
+         * @param target endpoint to which to send the message
+         * @param context message context containing the outbound SOAP message
+         */
+        public SendTask(String target, SOAPMessageContext context) {
+            endpoint = target;
+            messageContext = context;
+        }
+
+        /** {@inheritDoc} */
+        public Envelope call() throws SOAPException, SecurityException {
+            return sendWithinLimit(endpoint, messageContext);
+        }
+    }
+}
@@ -16,18 +16,22 @@
 
 package org.opensaml.ws.soap.client.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import net.jcip.annotations.ThreadSafe;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.opensaml.ws.security.SecurityPolicy;
@@ -63,6 +67,16 @@ import org.w3c.dom.Element;
 @ThreadSafe
 public class HttpSOAPClient implements SOAPClient {
 
+    /** Executor used to abort requests which have not completed by their deadline. */
+    private static final ScheduledThreadPoolExecutor DEADLINE_EXECUTOR = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "HttpSOAPClient deadline timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(HttpSOAPClient.class);
 
@@ -94,10 +108,15 @@ public class HttpSOAPClient implements SOAPClient {
 
     /** {@inheritDoc} */
     public void send(String endpoint, SOAPMessageContext messageContext) throws SOAPException, SecurityException {
+        HttpSOAPRequestParameters requestParams = (HttpSOAPRequestParameters) messageContext
+                .getSOAPRequestParameters();
         PostMethod post = null;
+        ScheduledFuture<?> deadlineTask = null;
         try {
-            post = createPostMethod(endpoint, (HttpSOAPRequestParameters) messageContext.getSOAPRequestParameters(),
-                    (Envelope) messageContext.getOutboundMessage());
+            post = createPostMethod(endpoint, requestParams, (Envelope) messageContext.getOutboundMessage());
+            if (requestParams != null && requestParams.getDeadline() > 0) {
+                deadlineTask = scheduleDeadline(post, requestParams.getDeadline());
+            }
 
             int result = httpClient.executeMethod(post);
             log.debug("Received HTTP status code of {} when POSTing SOAP message to {}", result, endpoint);
@@ -111,14 +130,46 @@ public class HttpSOAPClient implements SOAPClient {
                         + endpoint);
             }
         } catch (IOException e) {
+            if (post != null && post.isAborted()) {
+                throw new SOAPClientException("Deadline passed before response was received from " + endpoint, e);
+            }
             throw new SOAPClientException("Unable to send request to " + endpoint, e);
         } finally {
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
+                // cancelled tasks are otherwise only dropped, with their request, once their deadline passes
+                DEADLINE_EXECUTOR.purge();
+            }
             if (post != null) {
                 post.releaseConnection();
             }
         }
     }
 
+    /**
+     * Schedules the given request to be aborted if it has not completed by the given deadline. Aborting the request
+     * closes its connection and so fails any write to, or read from, it that is in progress.
+     * 
+     * @param post the request
+     * @param deadline time, in milliseconds since the epoch, by which the request must have completed
+     * 
+     * @return the task which aborts the request, to be cancelled once the request has completed
+     */
+    protected ScheduledFuture<?> scheduleDeadline(final PostMethod post, long deadline) {
+        Runnable deadlineTask = new Runnable() {
+            public void run() {
+                try {
+                    log.debug("Aborting request to {} which has passed its deadline", post.getPath());
+                    post.abort();
+                } catch (RuntimeException e) {
+                    log.error("Unable to abort request which has passed its deadline", e);
+                }
+            }
+        };
+        return DEADLINE_EXECUTOR.schedule(deadlineTask, Math.max(0, deadline - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Creates the post method used to send the SOAP request.
      * 
@@ -140,11 +191,20 @@ public class HttpSOAPClient implements SOAPClient {
             post.setRequestHeader(HttpSOAPRequestParameters.SOAP_ACTION_HEADER, requestParams.getSoapAction());
         }
 
+        if (requestParams != null && requestParams.getDeadline() > 0) {
+            long remaining = requestParams.getDeadline() - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SOAPClientException("Deadline for request to " + endpoint + " has already passed");
+            }
+            post.getParams().setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+        }
+
         return post;
     }
 
     /**
-     * Creates the request entity that makes up the POST message body.
+     * Creates the request entity that makes up the POST message body. The message is marshalled immediately but is
+     * serialized directly onto the connection as the request is sent, rather than into a buffer.
      * 
      * @param message message to be sent
      * @param charset character set used for the message
@@ -156,14 +216,12 @@ public class HttpSOAPClient implements SOAPClient {
     protected RequestEntity createRequestEntity(Envelope message, Charset charset) throws SOAPClientException {
         try {
             Marshaller marshaller = Configuration.getMarshallerFactory().getMarshaller(message);
-            ByteArrayOutputStream arrayOut = new ByteArrayOutputStream();
-            OutputStreamWriter writer = new OutputStreamWriter(arrayOut, charset);
+            Element messageElem = marshaller.marshall(message);
 
             if (log.isDebugEnabled()) {
-                log.debug("Outbound SOAP message is:\n" + XMLHelper.prettyPrintXML(marshaller.marshall(message)));
+                log.debug("Outbound SOAP message is:\n" + XMLHelper.prettyPrintXML(messageElem));
             }
-            XMLHelper.writeNode(marshaller.marshall(message), writer);
-            return new ByteArrayRequestEntity(arrayOut.toByteArray(), "text/xml");
+            return new ElementRequestEntity(messageElem, charset);
         } catch (MarshallingException e) {
             throw new SOAPClientException("Unable to marshall SOAP envelope", e);
         }
@@ -275,4 +333,91 @@ public class HttpSOAPClient implements SOAPClient {
             throw new SOAPClientException("Inbound SOAP response does not meet security policy", e);
         }
     }
+
+    /**
+     * Request entity which serializes a DOM element directly to the request body. The length of the body is found by
+     * serializing the element once without keeping its bytes, so that the request is sent with a Content-Length rather
+     * than chunked.
+     */
+    protected static class ElementRequestEntity implements RequestEntity {
+
+        /** Element to serialize. */
+        private final Element element;
+
+        /** Character set used to serialize the element. */
+        private final Charset charset;
+
+        /** Length of the serialized element, or -1 if it has not yet been computed. */
+        private long contentLength;
+
+        /**
+         * Constructor.
+         * 
+         * @param messageElement element to serialize
+         * @param messageCharset character set used to serialize the element
+         */
+        public ElementRequestEntity(Element messageElement, Charset messageCharset) {
+            element = messageElement;
+            charset = messageCharset;
+            contentLength = -1;
+        }
+
+        /** {@inheritDoc} */
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public void writeRequest(OutputStream out) throws IOException {
+            Writer writer = new OutputStreamWriter(out, charset);
+            XMLHelper.writeNode(element, writer);
+            writer.flush();
+        }
+
+        /** {@inheritDoc} */
+        public synchronized long getContentLength() {
+            if (contentLength < 0) {
+                CountingOutputStream counter = new CountingOutputStream();
+                try {
+                    writeRequest(counter);
+                    contentLength = counter.getCount();
+                } catch (IOException e) {
+                    // not thrown when counting, the body would be sent chunked
+                    return -1;
+                }
+            }
+            return contentLength;
+        }
+
+        /** {@inheritDoc} */
+        public String getContentType() {
+            return "text/xml";
+        }
+    }
+
+    /** Output stream which discards what is written to it and only counts the bytes. */
+    private static class CountingOutputStream extends OutputStream {
+
+        /** Number of bytes written. */
+        private long count;
+
+        /**
+         * Gets the number of bytes written.
+         * 
+         * @return number of bytes written
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        public void write(int b) {
+            count++;
+        }
+
+        /** {@inheritDoc} */
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
 }
\ No newline at end of file
@@ -31,13 +31,28 @@ public class HttpSOAPRequestParameters implements SOAPRequestParameters {
     /** HTTP SOAPAction header. */
     private String soapAction;
 
+    /** Time, in milliseconds since the epoch, by which the response must have been received, or 0 for none. */
+    private long deadline;
+
     /**
      * Constructor.
      * 
      * @param action value for the SOAPAction HTTP header
      */
     public HttpSOAPRequestParameters(String action) {
+        this(action, 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param action value for the SOAPAction HTTP header
+     * @param responseDeadline time, in milliseconds since the epoch, by which the response must have been received, or
+     *            0 for none
+     */
+    public HttpSOAPRequestParameters(String action, long responseDeadline) {
         soapAction = DatatypeHelper.safeTrimOrNullString(action);
+        deadline = responseDeadline;
     }
 
     /**
@@ -48,4 +63,13 @@ public class HttpSOAPRequestParameters implements SOAPRequestParameters {
     public String getSoapAction() {
         return soapAction;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the time, in milliseconds since the epoch, by which the response must have been received.
+     * 
+     * @return the response deadline, or 0 if there is none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A histogram of request latencies with fixed, roughly logarithmic, buckets.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    /** Inclusive upper bounds, in milliseconds, of each bucket but the last, which is unbounded. */
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    /** Number of latencies recorded in each bucket. */
+    private final AtomicLongArray counts;
+
+    /** Constructor. */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    }
+
+    /**
+     * Gets the inclusive upper bounds, in milliseconds, of each bucket but the last, which is unbounded.
+     *
+     * @return the bucket bounds
+     */
+    public long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param millis the latency in milliseconds
+     */
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * Gets the number of latencies recorded in each bucket.
+     *
+     * @return the number of latencies in each bucket, one more entry than there are bucket bounds
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the total number of latencies recorded.
+     *
+     * @return the total number of latencies recorded
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+}
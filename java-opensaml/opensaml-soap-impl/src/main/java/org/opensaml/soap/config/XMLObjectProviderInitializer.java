@@ -37,4 +37,9 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    protected String getGeneratedRegistrationClassName() {
+        return "org.opensaml.soap.config.GeneratedXMLObjectProviderRegistration";
+    }
+
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.message.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.opensaml.ws.message.MessageContext;
+
+/**
+ * Tests the phase ordering and recompilation of the {@link BasicPhasedHandlerChain}.
+ */
+public class BasicPhasedHandlerChainTest extends TestCase {
+
+    /** Names of the handlers invoked, in invocation order. */
+    private List<String> invoked;
+
+    private BasicPhasedHandlerChain chain;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        invoked = Collections.synchronizedList(new ArrayList<String>());
+        chain = new BasicPhasedHandlerChain();
+        chain.getPhaseChains().put("first", buildPhase("first-1", "first-2"));
+        chain.getPhaseChains().put("second", buildPhase("second-1"));
+        chain.getPhaseChains().put("third", buildPhase("third-1", "third-2"));
+        chain.setPhaseOrder(Arrays.asList("third", "first", "second"));
+    }
+
+    /**
+     * Test that handlers are invoked phase by phase in the phase order and that unknown phases are skipped.
+     *
+     * @throws HandlerException
+     */
+    public void testPhaseOrder() throws HandlerException {
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-1");
+
+        chain.setPhaseOrder(Arrays.asList("second", "missing", "first"));
+        assertInvocationOrder("second-1", "first-1", "first-2");
+    }
+
+    /**
+     * Test that changes to the phase order list are reflected.
+     *
+     * @throws HandlerException
+     */
+    public void testRecompileAfterPhaseOrderChange() throws HandlerException {
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-1");
+
+        chain.getPhaseOrder().remove("first");
+        assertInvocationOrder("third-1", "third-2", "second-1");
+
+        chain.getPhaseOrder().add(0, "first");
+        assertInvocationOrder("first-1", "first-2", "third-1", "third-2", "second-1");
+    }
+
+    /**
+     * Test that the phase order list passed to the chain is copied.
+     *
+     * @throws HandlerException
+     */
+    public void testPhaseOrderCopied() throws HandlerException {
+        List<String> order = new ArrayList<String>(Arrays.asList("first", "second"));
+        chain.setPhaseOrder(order);
+        order.add("third");
+        assertInvocationOrder("first-1", "first-2", "second-1");
+    }
+
+    /**
+     * Test that changes to the phase map are reflected.
+     *
+     * @throws HandlerException
+     */
+    public void testRecompileAfterPhaseMapChange() throws HandlerException {
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-1");
+
+        chain.getPhaseChains().put("second", buildPhase("second-a"));
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-a");
+
+        chain.getPhaseChains().remove("third");
+        assertInvocationOrder("first-1", "first-2", "second-a");
+
+        for (Map.Entry<String, HandlerChain> entry : chain.getPhaseChains().entrySet()) {
+            if (entry.getKey().equals("first")) {
+                entry.setValue(buildPhase("first-a"));
+            }
+        }
+        assertInvocationOrder("first-a", "second-a");
+    }
+
+    /**
+     * Test that changes to the handlers of a basic phase chain are reflected.
+     *
+     * @throws HandlerException
+     */
+    public void testRecompileAfterPhaseHandlerChange() throws HandlerException {
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-1");
+
+        chain.getPhaseChains().get("second").getHandlers().add(new RecordingHandler("second-2"));
+        assertInvocationOrder("third-1", "third-2", "first-1", "first-2", "second-1", "second-2");
+
+        chain.getPhaseChains().get("third").getHandlers().remove(0);
+        assertInvocationOrder("third-2", "first-1", "first-2", "second-1", "second-2");
+    }
+
+    /**
+     * Test that changes to the handlers of another kind of phase chain take effect once the chain is compiled.
+     *
+     * @throws HandlerException
+     */
+    public void testExplicitCompile() throws HandlerException {
+        final List<Handler> handlers = new ArrayList<Handler>();
+        handlers.add(new RecordingHandler("custom-1"));
+        chain.getPhaseChains().put("custom", new HandlerChain() {
+            public List<Handler> getHandlers() {
+                return handlers;
+            }
+
+            public void invoke(MessageContext msgContext) throws HandlerException {
+                for (Handler handler : handlers) {
+                    handler.invoke(msgContext);
+                }
+            }
+        });
+        chain.setPhaseOrder(Arrays.asList("custom", "second"));
+        assertInvocationOrder("custom-1", "second-1");
+
+        handlers.add(new RecordingHandler("custom-2"));
+        assertInvocationOrder("custom-1", "second-1");
+
+        chain.compile();
+        assertInvocationOrder("custom-1", "custom-2", "second-1");
+    }
+
+    /**
+     * Test that the chain is compiled only when stale and that the statistics of retained handlers survive a
+     * recompilation.
+     *
+     * @throws HandlerException
+     */
+    public void testStatisticsRetained() throws HandlerException {
+        chain.setInstrumented(true);
+        chain.invoke(null);
+        int compilations = chain.getModificationCount();
+        chain.invoke(null);
+        assertEquals("Current chain was recompiled", compilations, chain.getModificationCount());
+
+        chain.getPhaseChains().get("second").getHandlers().add(new RecordingHandler("second-2"));
+        chain.invoke(null);
+        assertEquals(compilations + 1, chain.getModificationCount());
+
+        List<BasicPhasedHandlerChain.HandlerStatistics> statistics = chain.getHandlerStatistics();
+        assertEquals(6, statistics.size());
+        assertEquals(3, statistics.get(0).getInvocationCount());
+        assertEquals(1, statistics.get(5).getInvocationCount());
+    }
+
+    /**
+     * Test that threads which find the chain stale at the same time compile it only once.
+     *
+     * @throws Exception
+     */
+    public void testConcurrentCompile() throws Exception {
+        chain.invoke(null);
+        int compilations = chain.getModificationCount();
+        chain.getPhaseChains().get("second").getHandlers().add(new RecordingHandler("second-2"));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        assertEquals(6, chain.getHandlers().size());
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue("Concurrent use failed: " + failures, failures.isEmpty());
+        assertEquals("Stale chain was compiled more than once", compilations + 1, chain.getModificationCount());
+    }
+
+    /**
+     * Invokes the chain and checks the order in which handlers were invoked.
+     *
+     * @param expected names of the handlers expected to be invoked, in order
+     *
+     * @throws HandlerException
+     */
+    private void assertInvocationOrder(String... expected) throws HandlerException {
+        invoked.clear();
+        chain.invoke(null);
+        assertEquals(Arrays.asList(expected), invoked);
+        assertEquals(expected.length, chain.getHandlers().size());
+    }
+
+    /**
+     * Builds a basic phase chain of recording handlers.
+     *
+     * @param names names of the handlers
+     *
+     * @return the phase chain
+     */
+    private HandlerChain buildPhase(String... names) {
+        BasicHandlerChain phase = new BasicHandlerChain();
+        for (String name : names) {
+            phase.getHandlers().add(new RecordingHandler(name));
+        }
+        return phase;
+    }
+
+    /** Handler which records its invocation. */
+    private class RecordingHandler implements Handler {
+
+        /** Name of the handler. */
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param handlerName name of the handler
+         */
+        public RecordingHandler(String handlerName) {
+            name = handlerName;
+        }
+
+        /** {@inheritDoc} */
+        public void invoke(MessageContext msgContext) {
+            invoked.add(name);
+        }
+    }
+}
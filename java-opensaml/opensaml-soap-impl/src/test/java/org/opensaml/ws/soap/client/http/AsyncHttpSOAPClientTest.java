@@ -0,0 +1,242 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.opensaml.ws.BaseTestCase;
+import org.opensaml.ws.soap.client.BasicSOAPMessageContext;
+import org.opensaml.ws.soap.client.SOAPClientException;
+import org.opensaml.ws.soap.soap11.Body;
+import org.opensaml.ws.soap.soap11.Envelope;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test the {@link AsyncHttpSOAPClient} against a local HTTP endpoint.
+ */
+public class AsyncHttpSOAPClientTest extends BaseTestCase {
+
+    /** Local HTTP endpoint. */
+    private HttpServer server;
+
+    /** Executor used by the local HTTP endpoint. */
+    private ExecutorService serverExecutor;
+
+    /** URL of the local HTTP endpoint. */
+    private String endpoint;
+
+    /** Signalled as each request arrives at the local HTTP endpoint. */
+    private volatile CountDownLatch arrivals;
+
+    /** Released to let the local HTTP endpoint respond. */
+    private CountDownLatch release;
+
+    /** HTTP status code returned by the local HTTP endpoint. */
+    private volatile int status;
+
+    /** Executor used by the client to send messages. */
+    private ExecutorService sendingExecutor;
+
+    /** Client under test. */
+    private AsyncHttpSOAPClient client;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        arrivals = new CountDownLatch(0);
+        release = new CountDownLatch(0);
+        status = 200;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/soap", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    byte[] body = readFully(exchange.getRequestBody());
+                    arrivals.countDown();
+                    release.await();
+                    exchange.getResponseHeaders().set("Content-Type", "text/xml");
+                    exchange.sendResponseHeaders(status, body.length);
+                    exchange.getResponseBody().write(body);
+                } catch (InterruptedException e) {
+                    // server is shutting down
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/soap";
+
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(4);
+        sendingExecutor = Executors.newFixedThreadPool(4);
+        client = new AsyncHttpSOAPClient(new HttpClient(connectionManager), parserPool, sendingExecutor, 1);
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        release.countDown();
+        sendingExecutor.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        super.tearDown();
+    }
+
+    /** Tests that a message is sent asynchronously and its latency recorded. */
+    public void testSendAsync() throws Exception {
+        assertNull(client.getLatencyHistogram(endpoint));
+
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        Future<Envelope> response = client.sendAsync(endpoint, messageContext);
+
+        Envelope envelope = response.get(10, TimeUnit.SECONDS);
+        assertNotNull(envelope);
+        assertSame(envelope, messageContext.getInboundMessage());
+        assertEquals(1, client.getLatencyHistogram(endpoint).getTotalCount());
+    }
+
+    /** Tests that the synchronous send completes through the executor. */
+    public void testSend() throws Exception {
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        client.send(endpoint, messageContext);
+
+        assertNotNull(messageContext.getInboundMessage());
+        assertEquals(1, client.getLatencyHistogram(endpoint).getTotalCount());
+    }
+
+    /** Tests that a failed request fails the future with the client's exception. */
+    public void testFailure() throws Exception {
+        status = 404;
+
+        Future<Envelope> response = client.sendAsync(endpoint, buildMessageContext());
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Failed request did not fail the future");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SOAPClientException);
+        }
+
+        try {
+            client.send(endpoint, buildMessageContext());
+            fail("Failed request did not fail the send");
+        } catch (SOAPClientException e) {
+            // expected
+        }
+        assertEquals(2, client.getLatencyHistogram(endpoint).getTotalCount());
+    }
+
+    /** Tests that requests in excess of the per-host limit wait no longer than their deadline. */
+    public void testPerHostLimit() throws Exception {
+        arrivals = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        BasicSOAPMessageContext firstContext = buildMessageContext();
+        Future<Envelope> first = client.sendAsync(endpoint, firstContext);
+        assertTrue(arrivals.await(10, TimeUnit.SECONDS));
+
+        BasicSOAPMessageContext secondContext = buildMessageContext();
+        secondContext.setSOAPRequestParameters(new HttpSOAPRequestParameters(null,
+                System.currentTimeMillis() + 200));
+        Future<Envelope> second = client.sendAsync(endpoint, secondContext);
+        try {
+            second.get(10, TimeUnit.SECONDS);
+            fail("Request exceeding the per-host limit was sent");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SOAPClientException);
+        }
+        assertNull(secondContext.getInboundMessage());
+
+        release.countDown();
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+
+        // the permit is released once the first request completes
+        assertNotNull(client.sendAsync(endpoint, buildMessageContext()).get(10, TimeUnit.SECONDS));
+    }
+
+    /** Tests that the default request timeout bounds a request which carries no deadline. */
+    public void testDefaultRequestTimeout() throws Exception {
+        release = new CountDownLatch(1);
+        client.setDefaultRequestTimeout(300);
+
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        messageContext.setSOAPRequestParameters(new HttpSOAPRequestParameters("urn:test:action"));
+        long start = System.currentTimeMillis();
+        Future<Envelope> response = client.sendAsync(endpoint, messageContext);
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Request completed after its deadline");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SOAPClientException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        HttpSOAPRequestParameters requestParams = (HttpSOAPRequestParameters) messageContext
+                .getSOAPRequestParameters();
+        assertEquals("urn:test:action", requestParams.getSoapAction());
+        assertTrue(requestParams.getDeadline() > 0);
+    }
+
+    /**
+     * Builds a message context whose outbound message is an empty envelope.
+     * 
+     * @return the message context
+     */
+    private BasicSOAPMessageContext buildMessageContext() {
+        Envelope envelope = (Envelope) buildXMLObject(Envelope.DEFAULT_ELEMENT_NAME);
+        envelope.setBody((Body) buildXMLObject(Body.DEFAULT_ELEMENT_NAME));
+
+        BasicSOAPMessageContext messageContext = new BasicSOAPMessageContext();
+        messageContext.setOutboundMessage(envelope);
+        return messageContext;
+    }
+
+    /**
+     * Reads a stream fully.
+     * 
+     * @param in the stream
+     * 
+     * @return the bytes read
+     * 
+     * @throws IOException thrown if the stream can not be read
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.opensaml.ws.BaseTestCase;
+import org.opensaml.ws.soap.client.BasicSOAPMessageContext;
+import org.opensaml.ws.soap.client.SOAPClientException;
+import org.opensaml.ws.soap.client.SOAPFaultException;
+import org.opensaml.ws.soap.soap11.Body;
+import org.opensaml.ws.soap.soap11.Envelope;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test the {@link HttpSOAPClient} against a local HTTP endpoint.
+ */
+public class HttpSOAPClientTest extends BaseTestCase {
+
+    /** SOAP fault returned by the fault handler. */
+    private static final String FAULT = "<soap11:Envelope xmlns:soap11=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soap11:Body><soap11:Fault><faultcode>soap11:Server</faultcode><faultstring>Failed</faultstring>"
+            + "</soap11:Fault></soap11:Body></soap11:Envelope>";
+
+    /** Local HTTP endpoint. */
+    private HttpServer server;
+
+    /** Executor used by the local HTTP endpoint. */
+    private ExecutorService serverExecutor;
+
+    /** URL of the local HTTP endpoint. */
+    private String endpoint;
+
+    /** Handler of requests to the local HTTP endpoint. */
+    private volatile HttpHandler handler;
+
+    /** Content-Length header of the last request received. */
+    private volatile String requestContentLength;
+
+    /** Transfer-Encoding header of the last request received. */
+    private volatile String requestTransferEncoding;
+
+    /** Body of the last request received. */
+    private volatile byte[] requestBody;
+
+    /** Client under test. */
+    private HttpSOAPClient client;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/soap", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requestContentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                requestTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                requestBody = readFully(exchange.getRequestBody());
+                try {
+                    handler.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/soap";
+
+        client = new HttpSOAPClient(new HttpClient(new MultiThreadedHttpConnectionManager()), parserPool);
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        super.tearDown();
+    }
+
+    /** Tests that the request is sent with its length and the response is unmarshalled. */
+    public void testSend() throws Exception {
+        handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, requestBody);
+            }
+        };
+
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        messageContext.setSOAPRequestParameters(new HttpSOAPRequestParameters("urn:test:action"));
+        client.send(endpoint, messageContext);
+
+        assertNull(requestTransferEncoding);
+        assertNotNull(requestContentLength);
+        assertEquals(requestBody.length, Integer.parseInt(requestContentLength));
+
+        Envelope response = (Envelope) messageContext.getInboundMessage();
+        assertNotNull(response);
+        assertNotNull(response.getBody());
+    }
+
+    /** Tests that a SOAP fault is surfaced as a {@link SOAPFaultException}. */
+    public void testFault() throws Exception {
+        handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 500, FAULT.getBytes("UTF-8"));
+            }
+        };
+
+        try {
+            client.send(endpoint, buildMessageContext());
+            fail("SOAP fault was not surfaced");
+        } catch (SOAPFaultException e) {
+            assertEquals("Failed", e.getFault().getMessage().getValue());
+        }
+    }
+
+    /** Tests that a status code other than 200 or 500 fails the request. */
+    public void testUnexpectedStatus() throws Exception {
+        handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 404, new byte[0]);
+            }
+        };
+
+        try {
+            client.send(endpoint, buildMessageContext());
+            fail("Unexpected status code did not fail the request");
+        } catch (SOAPClientException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that the deadline bounds the whole exchange, even when the endpoint keeps sending the response slowly
+     * enough that no single read ever times out.
+     */
+    public void testDeadline() throws Exception {
+        handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        out.write(' ');
+                        out.flush();
+                        Thread.sleep(50);
+                    }
+                    out.write(requestBody);
+                } catch (InterruptedException e) {
+                    // server is shutting down
+                }
+            }
+        };
+
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        messageContext.setSOAPRequestParameters(new HttpSOAPRequestParameters(null,
+                System.currentTimeMillis() + 500));
+        long start = System.currentTimeMillis();
+        try {
+            client.send(endpoint, messageContext);
+            fail("Request completed after its deadline");
+        } catch (SOAPClientException e) {
+            assertTrue(System.currentTimeMillis() - start < 4000);
+        }
+    }
+
+    /** Tests that the envelope is serialized directly onto the request body with its length known up front. */
+    public void testStreamedRequestEntity() throws Exception {
+        RequestEntity entity = client.createRequestEntity((Envelope) buildMessageContext().getOutboundMessage(),
+                Charset.forName("UTF-8"));
+        assertTrue(entity instanceof HttpSOAPClient.ElementRequestEntity);
+        assertTrue(entity.isRepeatable());
+
+        long length = entity.getContentLength();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        entity.writeRequest(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        entity.writeRequest(second);
+        assertEquals(first.size(), length);
+        assertTrue(Arrays.equals(first.toByteArray(), second.toByteArray()));
+    }
+
+    /** Tests that a request whose deadline has already passed is not sent. */
+    public void testDeadlinePassed() throws Exception {
+        handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, requestBody);
+            }
+        };
+
+        BasicSOAPMessageContext messageContext = buildMessageContext();
+        messageContext.setSOAPRequestParameters(new HttpSOAPRequestParameters(null,
+                System.currentTimeMillis() - 1));
+        try {
+            client.send(endpoint, messageContext);
+            fail("Request was sent after its deadline");
+        } catch (SOAPClientException e) {
+            assertNull(requestBody);
+        }
+    }
+
+    /**
+     * Builds a message context whose outbound message is an empty envelope.
+     * 
+     * @return the message context
+     */
+    private BasicSOAPMessageContext buildMessageContext() {
+        Envelope envelope = (Envelope) buildXMLObject(Envelope.DEFAULT_ELEMENT_NAME);
+        envelope.setBody((Body) buildXMLObject(Body.DEFAULT_ELEMENT_NAME));
+
+        BasicSOAPMessageContext messageContext = new BasicSOAPMessageContext();
+        messageContext.setOutboundMessage(envelope);
+        return messageContext;
+    }
+
+    /**
+     * Sends a complete response.
+     * 
+     * @param exchange the exchange to respond to
+     * @param status the HTTP status code
+     * @param body the response body
+     * 
+     * @throws IOException thrown if the response can not be sent
+     */
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    /**
+     * Reads a stream fully.
+     * 
+     * @param in the stream
+     * 
+     * @return the bytes read
+     * 
+     * @throws IOException thrown if the stream can not be read
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.soap.client.http;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    /** Tests that latencies are recorded in the bucket whose inclusive upper bound they fall under. */
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] bounds = histogram.getBucketBounds();
+
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+        histogram.record(bounds[bounds.length - 1]);
+        histogram.record(bounds[bounds.length - 1] + 1);
+        histogram.record(Long.MAX_VALUE);
+
+        long[] counts = histogram.getCounts();
+        assertEquals(bounds.length + 1, counts.length);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[2]);
+        assertEquals(1, counts[bounds.length - 1]);
+        assertEquals(2, counts[bounds.length]);
+        assertEquals(7, histogram.getTotalCount());
+    }
+
+    /** Tests that an empty histogram has no counts. */
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        long[] counts = histogram.getCounts();
+        assertEquals(histogram.getBucketBounds().length + 1, counts.length);
+        for (long count : counts) {
+            assertEquals(0, count);
+        }
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+    /** Tests that the returned bounds and counts are copies. */
+    public void testSnapshots() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] bounds = histogram.getBucketBounds();
+        Arrays.fill(bounds, 0);
+        assertEquals(1, histogram.getBucketBounds()[0]);
+
+        histogram.record(0);
+        long[] counts = histogram.getCounts();
+        histogram.record(0);
+        assertEquals(1, counts[0]);
+        assertEquals(2, histogram.getCounts()[0]);
+    }
+}
@@ -19,7 +19,6 @@ package org.opensaml.ws.message.handler;
 import java.util.List;
 
 import org.opensaml.ws.message.MessageContext;
-import org.opensaml.xml.util.LazyList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,11 +31,11 @@ public class BasicHandlerChain implements HandlerChain {
     private final Logger log = LoggerFactory.getLogger(BasicHandlerChain.class);
     
     /** The handler chain. */
-    private List<Handler> handlers;
+    private VersionedList<Handler> handlers;
 
     /** Constructor. */
     public BasicHandlerChain() {
-        handlers = new LazyList<Handler>();
+        handlers = new VersionedList<Handler>();
     }
 
     /** {@inheritDoc} */
@@ -53,4 +52,14 @@ public class BasicHandlerChain implements HandlerChain {
         }
     }
 
+    /**
+     * Gets a count of the modifications made to the membership of this chain. The count changes whenever the
+     * handlers which would be invoked change, allowing state derived from the chain to be checked for staleness.
+     * 
+     * @return count of the modifications made to the membership of this chain
+     */
+    protected int getModificationCount() {
+        return handlers.getVersion();
+    }
+
 }
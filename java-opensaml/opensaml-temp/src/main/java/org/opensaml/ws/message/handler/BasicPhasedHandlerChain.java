@@ -1,86 +1,479 @@
-/*
- * Copyright 2009 University Corporation for Advanced Internet Development, Inc.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.opensaml.ws.message.handler;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-
-import org.opensaml.xml.util.LazyList;
-import org.opensaml.xml.util.LazyMap;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-/**
- * A basic implementation of {@link PhasedHandlerChain}.
- */
-public class BasicPhasedHandlerChain extends BasicHandlerChain implements PhasedHandlerChain {
-    
-    /** Class logger. */
-    private final Logger log = LoggerFactory.getLogger(BasicPhasedHandlerChain.class);
-    
-    /** The ordered list of phases to invoke. */
-    private List<String> phaseOrder;
-    
-    /** Map of phases to corresponding Handler chain. */
-    private Map<String, HandlerChain> phaseChains;
-
-    /** Constructor. */
-    public BasicPhasedHandlerChain() {
-        super();
-        phaseOrder = new LazyList<String>();
-        phaseChains = new LazyMap<String, HandlerChain>();
-    }
-
-    /** {@inheritDoc} */
-    public List<Handler> getHandlers() {
-        ArrayList<Handler> handlers = new ArrayList<Handler>();
-        for (String phaseName : getPhaseOrder()) {
-            HandlerChain phase = getPhaseChains().get(phaseName);
-            if (phase != null) {
-                List<Handler> phaseHandlers = phase.getHandlers();
-                if (!phaseHandlers.isEmpty()) {
-                    handlers.addAll(phaseHandlers);
-                } else {
-                    log.info("Specified phase name '{}' exists in PhasedHandlerChain, but contains no handlers",
-                        phaseName);
-                }
-            } else {
-                log.warn("Specified phase name '{}' does not exist in PhasedHandlerChain: {}",
-                        phaseName, getPhaseChains().keySet());
-            }
-        }
-        return Collections.unmodifiableList(handlers);
-    }
-
-    /** {@inheritDoc} */
-    public Map<String, HandlerChain> getPhaseChains() {
-        return phaseChains;
-    }
-
-    /** {@inheritDoc} */
-    public List<String> getPhaseOrder() {
-        return phaseOrder;
-    }
-
-    /** {@inheritDoc} */
-    public void setPhaseOrder(List<String> newPhaseOrder) {
-        phaseOrder = newPhaseOrder;
-    }
-
-}
+/*
+ * Copyright 2009 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.message.handler;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.xml.util.LazyMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A basic implementation of {@link PhasedHandlerChain}.
+ *
+ * <p>
+ * The phases are compiled into a flat, immutable, array of handlers the first time the chain is used, and again only
+ * after the phase order, the phase map, or the handlers of a phase have changed. Changes to the handlers of a phase
+ * are detected only for phases which are {@link BasicHandlerChain}s; after changing any other kind of phase chain
+ * {@link #compile()} must be called for the change to take effect.
+ * </p>
+ *
+ * <p>
+ * If instrumentation is enabled the number of invocations of each handler, and the time spent in it, is recorded and
+ * available from {@link #getHandlerStatistics()}.
+ * </p>
+ */
+public class BasicPhasedHandlerChain extends BasicHandlerChain implements PhasedHandlerChain {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(BasicPhasedHandlerChain.class);
+
+    /** The ordered list of phases to invoke. */
+    private volatile VersionedList<String> phaseOrder;
+
+    /** Map of phases to corresponding Handler chain. */
+    private PhaseMap phaseChains;
+
+    /** Whether handler invocations are instrumented. */
+    private volatile boolean instrumented;
+
+    /** The current compiled form of the chain, or null if the chain has not yet been compiled. */
+    private volatile CompiledChain compiledChain;
+
+    /** Number of times the chain has been compiled. Guarded by this chain. */
+    private int compilations;
+
+    /** Constructor. */
+    public BasicPhasedHandlerChain() {
+        super();
+        phaseOrder = new VersionedList<String>();
+        phaseChains = new PhaseMap();
+    }
+
+    /** {@inheritDoc} */
+    public List<Handler> getHandlers() {
+        return getCompiledChain().handlerList;
+    }
+
+    /** {@inheritDoc} */
+    public Map<String, HandlerChain> getPhaseChains() {
+        return phaseChains;
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getPhaseOrder() {
+        return phaseOrder;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The phase names are copied, later changes to the given list are not reflected in the phase order.
+     */
+    public void setPhaseOrder(List<String> newPhaseOrder) {
+        phaseOrder = new VersionedList<String>(newPhaseOrder);
+    }
+
+    /**
+     * Gets whether handler invocations are instrumented.
+     *
+     * @return whether handler invocations are instrumented
+     */
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+    /**
+     * Sets whether handler invocations are instrumented.
+     *
+     * @param instrument whether handler invocations are instrumented
+     */
+    public void setInstrumented(boolean instrument) {
+        instrumented = instrument;
+    }
+
+    /**
+     * Gets the statistics recorded for each handler, in invocation order. Statistics are recorded only while
+     * instrumentation is enabled and are retained for a handler as long as it remains in the chain.
+     *
+     * @return the statistics recorded for each handler
+     */
+    public List<HandlerStatistics> getHandlerStatistics() {
+        return Collections.unmodifiableList(Arrays.asList(getCompiledChain().statistics));
+    }
+
+    /** {@inheritDoc} */
+    public void invoke(MessageContext msgContext) throws HandlerException {
+        log.trace("Invoking phased handler chain");
+        CompiledChain chain = getCompiledChain();
+        Handler[] handlers = chain.handlers;
+        if (instrumented) {
+            HandlerStatistics[] statistics = chain.statistics;
+            for (int i = 0; i < handlers.length; i++) {
+                log.trace("Invoking handler: {}", handlers[i].getClass().getName());
+                long start = System.nanoTime();
+                try {
+                    handlers[i].invoke(msgContext);
+                } finally {
+                    statistics[i].record(System.nanoTime() - start);
+                }
+            }
+        } else {
+            for (Handler handler : handlers) {
+                log.trace("Invoking handler: {}", handler.getClass().getName());
+                handler.invoke(msgContext);
+            }
+        }
+    }
+
+    /**
+     * Compiles the phases of this chain into the flat list of handlers to be invoked. This need only be called after
+     * changing the handlers of a phase chain which is not a {@link BasicHandlerChain}, other changes are detected
+     * and cause the chain to be recompiled when next used.
+     */
+    public synchronized void compile() {
+        CompiledChain previous = compiledChain;
+        VersionedList<String> order = phaseOrder;
+        int orderVersion = order.getVersion();
+        int chainsVersion = phaseChains.getVersion();
+
+        ArrayList<Handler> handlers = new ArrayList<Handler>();
+        ArrayList<BasicHandlerChain> trackedPhases = new ArrayList<BasicHandlerChain>();
+        ArrayList<Integer> trackedCounts = new ArrayList<Integer>();
+        for (String phaseName : order) {
+            HandlerChain phase = phaseChains.get(phaseName);
+            if (phase != null) {
+                // read the count before the handlers, so a concurrent change leaves the compiled chain stale
+                if (phase instanceof BasicHandlerChain) {
+                    trackedPhases.add((BasicHandlerChain) phase);
+                    trackedCounts.add(((BasicHandlerChain) phase).getModificationCount());
+                }
+                List<Handler> phaseHandlers = phase.getHandlers();
+                if (!phaseHandlers.isEmpty()) {
+                    handlers.addAll(phaseHandlers);
+                } else {
+                    log.info("Specified phase name '{}' exists in PhasedHandlerChain, but contains no handlers",
+                        phaseName);
+                }
+            } else {
+                log.warn("Specified phase name '{}' does not exist in PhasedHandlerChain: {}",
+                        phaseName, phaseChains.keySet());
+            }
+        }
+
+        Map<Handler, HandlerStatistics> previousStatistics = new IdentityHashMap<Handler, HandlerStatistics>();
+        if (previous != null) {
+            for (HandlerStatistics statistics : previous.statistics) {
+                previousStatistics.put(statistics.getHandler(), statistics);
+            }
+        }
+
+        HandlerStatistics[] statistics = new HandlerStatistics[handlers.size()];
+        for (int i = 0; i < statistics.length; i++) {
+            statistics[i] = previousStatistics.get(handlers.get(i));
+            if (statistics[i] == null) {
+                statistics[i] = new HandlerStatistics(handlers.get(i));
+            }
+        }
+
+        BasicHandlerChain[] phases = trackedPhases.toArray(new BasicHandlerChain[trackedPhases.size()]);
+        int[] phaseCounts = new int[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            phaseCounts[i] = trackedCounts.get(i);
+        }
+
+        compiledChain = new CompiledChain(handlers.toArray(new Handler[handlers.size()]), statistics, order,
+                orderVersion, chainsVersion, phases, phaseCounts, ++compilations);
+        log.debug("Compiled phased handler chain of {} handlers", handlers.size());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The count is the number of times the chain has been compiled, once brought up to date.
+     */
+    protected int getModificationCount() {
+        return getCompiledChain().generation;
+    }
+
+    /**
+     * Gets the current compiled form of this chain, compiling it if it has not yet been compiled or is stale. Only one
+     * thread compiles a stale chain, others wait for and then use its result.
+     *
+     * @return the current compiled form of this chain
+     */
+    private CompiledChain getCompiledChain() {
+        CompiledChain chain = compiledChain;
+        if (chain == null || !isCurrent(chain)) {
+            synchronized (this) {
+                chain = compiledChain;
+                if (chain == null || !isCurrent(chain)) {
+                    compile();
+                    chain = compiledChain;
+                }
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Checks whether a compiled form of this chain reflects the current phase order, phase map and phase handlers.
+     *
+     * @param chain the compiled form of this chain
+     *
+     * @return true if the compiled form is current, false if it is stale
+     */
+    private boolean isCurrent(CompiledChain chain) {
+        if (chain.phaseOrder != phaseOrder || chain.phaseOrderVersion != phaseOrder.getVersion()
+                || chain.phaseChainsVersion != phaseChains.getVersion()) {
+            return false;
+        }
+        for (int i = 0; i < chain.phases.length; i++) {
+            if (chain.phaseCounts[i] != chain.phases[i].getModificationCount()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invocation statistics of a single handler.
+     */
+    public static class HandlerStatistics {
+
+        /** The handler. */
+        private final Handler handler;
+
+        /** Number of invocations of the handler. */
+        private final AtomicLong invocations;
+
+        /** Total time spent in the handler in nanoseconds. */
+        private final AtomicLong totalTime;
+
+        /**
+         * Constructor.
+         *
+         * @param statisticsHandler the handler
+         */
+        protected HandlerStatistics(Handler statisticsHandler) {
+            handler = statisticsHandler;
+            invocations = new AtomicLong();
+            totalTime = new AtomicLong();
+        }
+
+        /**
+         * Gets the handler.
+         *
+         * @return the handler
+         */
+        public Handler getHandler() {
+            return handler;
+        }
+
+        /**
+         * Gets the number of instrumented invocations of the handler.
+         *
+         * @return number of instrumented invocations of the handler
+         */
+        public long getInvocationCount() {
+            return invocations.get();
+        }
+
+        /**
+         * Gets the total time spent in instrumented invocations of the handler.
+         *
+         * @return total time spent in the handler in nanoseconds
+         */
+        public long getTotalTime() {
+            return totalTime.get();
+        }
+
+        /**
+         * Records an invocation of the handler.
+         *
+         * @param nanos time spent in the invocation in nanoseconds
+         */
+        protected void record(long nanos) {
+            invocations.incrementAndGet();
+            totalTime.addAndGet(nanos);
+        }
+    }
+
+    /** The compiled, immutable, form of the chain. */
+    private static final class CompiledChain {
+
+        /** Handlers in invocation order. */
+        private final Handler[] handlers;
+
+        /** Unmodifiable list view of the handlers. */
+        private final List<Handler> handlerList;
+
+        /** Statistics of each handler. */
+        private final HandlerStatistics[] statistics;
+
+        /** Phase order list from which the chain was compiled. */
+        private final VersionedList<String> phaseOrder;
+
+        /** Version of the phase order list when compiled. */
+        private final int phaseOrderVersion;
+
+        /** Version of the phase map when compiled. */
+        private final int phaseChainsVersion;
+
+        /** Phases whose modifications are tracked. */
+        private final BasicHandlerChain[] phases;
+
+        /** Modification count of each tracked phase when compiled. */
+        private final int[] phaseCounts;
+
+        /** Number of times the chain had been compiled, including this compilation. */
+        private final int generation;
+
+        /**
+         * Constructor.
+         *
+         * @param compiledHandlers handlers in invocation order
+         * @param handlerStatistics statistics of each handler
+         * @param order phase order list from which the chain was compiled
+         * @param orderVersion version of the phase order list when compiled
+         * @param chainsVersion version of the phase map when compiled
+         * @param trackedPhases phases whose modifications are tracked
+         * @param counts modification count of each tracked phase when compiled
+         * @param compilation number of times the chain had been compiled, including this compilation
+         */
+        private CompiledChain(Handler[] compiledHandlers, HandlerStatistics[] handlerStatistics,
+                VersionedList<String> order, int orderVersion, int chainsVersion, BasicHandlerChain[] trackedPhases,
+                int[] counts, int compilation) {
+            handlers = compiledHandlers;
+            handlerList = Collections.unmodifiableList(Arrays.asList(compiledHandlers));
+            statistics = handlerStatistics;
+            phaseOrder = order;
+            phaseOrderVersion = orderVersion;
+            phaseChainsVersion = chainsVersion;
+            phases = trackedPhases;
+            phaseCounts = counts;
+            generation = compilation;
+        }
+    }
+
+    /** Map of phase names to handler chains which counts the modifications made to it. */
+    private static final class PhaseMap extends AbstractMap<String, HandlerChain> {
+
+        /** Delegate map. */
+        private final Map<String, HandlerChain> delegate;
+
+        /** Number of modifications made to the map. */
+        private volatile int version;
+
+        /** Constructor. */
+        private PhaseMap() {
+            delegate = new LazyMap<String, HandlerChain>();
+        }
+
+        /**
+         * Gets the number of modifications made to the map.
+         *
+         * @return number of modifications made to the map
+         */
+        private int getVersion() {
+            return version;
+        }
+
+        /** {@inheritDoc} */
+        public HandlerChain get(Object key) {
+            return delegate.get(key);
+        }
+
+        /** {@inheritDoc} */
+        public boolean containsKey(Object key) {
+            return delegate.containsKey(key);
+        }
+
+        /** {@inheritDoc} */
+        public int size() {
+            return delegate.size();
+        }
+
+        /** {@inheritDoc} */
+        public HandlerChain put(String key, HandlerChain value) {
+            HandlerChain previous = delegate.put(key, value);
+            version++;
+            return previous;
+        }
+
+        /** {@inheritDoc} */
+        public HandlerChain remove(Object key) {
+            if (!delegate.containsKey(key)) {
+                return null;
+            }
+            HandlerChain removed = delegate.remove(key);
+            version++;
+            return removed;
+        }
+
+        /** {@inheritDoc} */
+        public void clear() {
+            delegate.clear();
+            version++;
+        }
+
+        /** {@inheritDoc} */
+        public Set<Map.Entry<String, HandlerChain>> entrySet() {
+            return new AbstractSet<Map.Entry<String, HandlerChain>>() {
+                public Iterator<Map.Entry<String, HandlerChain>> iterator() {
+                    final Iterator<Map.Entry<String, HandlerChain>> entries = delegate.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, HandlerChain>>() {
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        public Map.Entry<String, HandlerChain> next() {
+                            final Map.Entry<String, HandlerChain> entry = entries.next();
+                            return new AbstractMap.SimpleEntry<String, HandlerChain>(entry) {
+                                public HandlerChain setValue(HandlerChain value) {
+                                    super.setValue(value);
+                                    version++;
+                                    return entry.setValue(value);
+                                }
+                            };
+                        }
+
+                        public void remove() {
+                            entries.remove();
+                            version++;
+                        }
+                    };
+                }
+
+                public int size() {
+                    return delegate.size();
+                }
+            };
+        }
+    }
+}
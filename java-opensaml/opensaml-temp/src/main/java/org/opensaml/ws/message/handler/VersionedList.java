@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.message.handler;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.opensaml.xml.util.LazyList;
+
+/**
+ * A list which counts the modifications made to it, through any view, so that state derived from it can be cheaply
+ * checked for staleness.
+ *
+ * @param <ElementType> type of elements within the list
+ */
+@NotThreadSafe
+class VersionedList<ElementType> extends AbstractList<ElementType> {
+
+    /** Delegate list. */
+    private final List<ElementType> delegate;
+
+    /** Number of modifications made to the list. */
+    private volatile int version;
+
+    /** Constructor. */
+    VersionedList() {
+        delegate = new LazyList<ElementType>();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param elements initial elements of the list
+     */
+    VersionedList(Collection<? extends ElementType> elements) {
+        this();
+        if (elements != null) {
+            delegate.addAll(elements);
+        }
+    }
+
+    /**
+     * Gets the number of modifications made to the list.
+     *
+     * @return number of modifications made to the list
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /** {@inheritDoc} */
+    public ElementType get(int index) {
+        return delegate.get(index);
+    }
+
+    /** {@inheritDoc} */
+    public int size() {
+        return delegate.size();
+    }
+
+    /** {@inheritDoc} */
+    public ElementType set(int index, ElementType element) {
+        ElementType previous = delegate.set(index, element);
+        version++;
+        return previous;
+    }
+
+    /** {@inheritDoc} */
+    public void add(int index, ElementType element) {
+        delegate.add(index, element);
+        modCount++;
+        version++;
+    }
+
+    /** {@inheritDoc} */
+    public ElementType remove(int index) {
+        ElementType removed = delegate.remove(index);
+        modCount++;
+        version++;
+        return removed;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.security;
+
+import java.util.List;
+
+/**
+ * A {@link SecurityPolicyRule} which declares the relative cost of its evaluation and the rules which must be evaluated
+ * before it, allowing a policy to evaluate cheap rules, which may reject a message outright, before expensive ones.
+ */
+public interface CostedSecurityPolicyRule extends SecurityPolicyRule {
+
+    /** Relative cost of evaluating a rule. */
+    public enum Cost {
+
+        /** Evaluation inspects only the message context, for example checking a timestamp. */
+        CHEAP,
+
+        /** Evaluation performs lookups, for example in metadata. */
+        MODERATE,
+
+        /** Evaluation performs cryptographic operations or trust evaluation. */
+        EXPENSIVE
+    }
+
+    /**
+     * Gets the relative cost of evaluating this rule.
+     *
+     * @return relative cost of evaluating this rule
+     */
+    public Cost getEvaluationCost();
+
+    /**
+     * Gets the types of rule which, if present in the same policy, must be evaluated before this rule. Where two rules
+     * each depend on the other they are evaluated in the order in which they appear in the policy.
+     *
+     * @return types of rule which must be evaluated before this rule, never null
+     */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies();
+
+    /**
+     * Gets whether evaluating this rule may modify the message context, for example by setting its issuer or marking
+     * it authenticated. A policy never evaluates such a rule concurrently with any other rule.
+     *
+     * @return true if evaluating this rule may modify the message context
+     */
+    public boolean modifiesMessageContext();
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.security;
+
+/**
+ * A {@link SecurityPolicyRule} which may establish the inbound message issuer of the message context it evaluates, for
+ * example from the credential which authenticated the message.
+ *
+ * {@link CostedSecurityPolicyRule}s which read the inbound message issuer declare this type among their evaluation
+ * dependencies, so that a policy which reorders its rules still evaluates them after any rule which may derive the
+ * issuer.
+ */
+public interface IssuerDerivingSecurityPolicyRule extends SecurityPolicyRule {
+
+}
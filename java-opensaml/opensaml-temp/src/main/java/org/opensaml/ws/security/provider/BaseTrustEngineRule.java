@@ -16,7 +16,12 @@
 
 package org.opensaml.ws.security.provider;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.xml.security.CriteriaSet;
@@ -30,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * 
  * @param <TokenType> type of token which is being evaluated by the underlying trust engine
  */
-public abstract class BaseTrustEngineRule<TokenType> implements SecurityPolicyRule {
+public abstract class BaseTrustEngineRule<TokenType> implements CostedSecurityPolicyRule {
 
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(BaseTrustEngineRule.class);
@@ -107,4 +112,23 @@ public abstract class BaseTrustEngineRule<TokenType> implements SecurityPolicyRu
         }
     }
 
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.EXPENSIVE;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // trust is evaluated for the inbound message issuer, which another rule may derive
+        return Collections.<Class<? extends SecurityPolicyRule>>singletonList(IssuerDerivingSecurityPolicyRule.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Trust engine rules typically mark the message, or its issuer, authenticated.
+     */
+    public boolean modifiesMessageContext() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.IssuerDerivingSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.xml.security.CriteriaSet;
 import org.opensaml.xml.security.credential.Credential;
@@ -74,7 +75,8 @@ import org.slf4j.LoggerFactory;
  * unmodified.
  * </p>
  */
-public class ClientCertAuthRule extends BaseTrustEngineRule<X509Credential> {
+public class ClientCertAuthRule extends BaseTrustEngineRule<X509Credential> implements
+        IssuerDerivingSecurityPolicyRule {
 
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(ClientCertAuthRule.class);
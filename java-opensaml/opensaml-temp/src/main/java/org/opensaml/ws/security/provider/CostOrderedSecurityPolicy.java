@@ -0,0 +1,573 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.ws.security.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
+import org.opensaml.ws.security.CostedSecurityPolicyRule.Cost;
+import org.opensaml.ws.security.SecurityPolicyException;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Security policy implementation which evaluates its rules in order of cost, so that a message which fails a cheap
+ * rule, for example one checking its issue instant or for its replay, is rejected before any expensive rule, such as
+ * signature verification, is evaluated.
+ *
+ * <p>
+ * A policy evaluates successfully if, and only if, all policy rules evaluate successfully. Evaluation stops at the
+ * first rule which fails.
+ * </p>
+ *
+ * <p>
+ * Rules implementing {@link CostedSecurityPolicyRule} are evaluated cheapest first, but never before the rules they
+ * depend upon. Additional dependencies between rules, for example where a rule relies on the message issuer derived
+ * by an authentication rule, may be declared with {@link #addDependency(SecurityPolicyRule, SecurityPolicyRule)}.
+ * Rules not implementing {@link CostedSecurityPolicyRule} may depend on any rule before them, so they are evaluated
+ * in their list position relative to all other rules. Rules of equal cost are evaluated in list order.
+ * </p>
+ *
+ * <p>
+ * If an executor is set, expensive rules whose dependencies have been satisfied are evaluated concurrently, provided
+ * they do not modify the message context, which is not thread-safe. Rules which declare that they modify the context
+ * are always evaluated one at a time.
+ * </p>
+ *
+ * <p>
+ * The number of evaluations and failures of each rule, and the time spent in it, is recorded and available from
+ * {@link #getRuleStatistics()}. The evaluation order is computed once and recomputed only after the rules or their
+ * dependencies change.
+ * </p>
+ */
+public class CostOrderedSecurityPolicy extends BasicSecurityPolicy {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(CostOrderedSecurityPolicy.class);
+
+    /** Additional dependencies of rules, indexed by dependent rule. */
+    private final Map<SecurityPolicyRule, Set<SecurityPolicyRule>> dependencies;
+
+    /** Number of changes made to the additional dependencies. */
+    private volatile int dependenciesVersion;
+
+    /** Executor used to evaluate expensive rules concurrently, or null to evaluate all rules sequentially. */
+    private volatile ExecutorService executor;
+
+    /** The current evaluation plan, or null if none has been computed. */
+    private volatile EvaluationPlan plan;
+
+    /** Constructor. */
+    public CostOrderedSecurityPolicy() {
+        super();
+        dependencies = new IdentityHashMap<SecurityPolicyRule, Set<SecurityPolicyRule>>();
+    }
+
+    /**
+     * Gets the executor used to evaluate expensive rules concurrently.
+     *
+     * @return executor used to evaluate expensive rules concurrently, or null if all rules are evaluated sequentially
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to evaluate expensive rules concurrently. The lifecycle of the executor is managed by the
+     * caller.
+     *
+     * @param ruleExecutor executor used to evaluate expensive rules concurrently, or null to evaluate all rules
+     *            sequentially
+     */
+    public void setExecutor(ExecutorService ruleExecutor) {
+        executor = ruleExecutor;
+    }
+
+    /**
+     * Declares that one rule of this policy must be evaluated before another.
+     *
+     * @param dependent the rule which must be evaluated after the prerequisite
+     * @param prerequisite the rule which must be evaluated before the dependent
+     */
+    public void addDependency(SecurityPolicyRule dependent, SecurityPolicyRule prerequisite) {
+        if (dependent == null || prerequisite == null) {
+            throw new IllegalArgumentException("Dependent and prerequisite rules may not be null");
+        }
+
+        synchronized (dependencies) {
+            Set<SecurityPolicyRule> prerequisites = dependencies.get(dependent);
+            if (prerequisites == null) {
+                prerequisites = Collections.newSetFromMap(new IdentityHashMap<SecurityPolicyRule, Boolean>());
+                dependencies.put(dependent, prerequisites);
+            }
+            prerequisites.add(prerequisite);
+            dependenciesVersion++;
+        }
+    }
+
+    /**
+     * Gets the statistics recorded for each rule, in evaluation order.
+     *
+     * @return the statistics recorded for each rule
+     */
+    public List<RuleStatistics> getRuleStatistics() {
+        return getPlan().statisticsList;
+    }
+
+    /** {@inheritDoc} */
+    public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+        EvaluationPlan currentPlan = getPlan();
+        ExecutorService ruleExecutor = executor;
+        for (int i = 0; i < currentPlan.stages.length; i++) {
+            SecurityPolicyRule[] stage = currentPlan.stages[i];
+            RuleStatistics[] stageStatistics = currentPlan.stageStatistics[i];
+            if (stage.length == 1 || ruleExecutor == null) {
+                for (int j = 0; j < stage.length; j++) {
+                    evaluateRule(stage[j], stageStatistics[j], messageContext);
+                }
+            } else {
+                evaluateConcurrently(ruleExecutor, stage, stageStatistics, messageContext);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a single rule and records its statistics.
+     *
+     * @param rule the rule to evaluate
+     * @param statistics the statistics of the rule
+     * @param messageContext the message context being evaluated
+     *
+     * @throws SecurityPolicyException thrown if the rule fails
+     */
+    protected void evaluateRule(SecurityPolicyRule rule, RuleStatistics statistics, MessageContext messageContext)
+            throws SecurityPolicyException {
+        boolean success = false;
+        long start = System.nanoTime();
+        try {
+            rule.evaluate(messageContext);
+            success = true;
+        } finally {
+            statistics.record(System.nanoTime() - start, success);
+            if (!success) {
+                log.debug("Security policy rule {} failed", rule.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Evaluates a set of rules concurrently. If any rule fails the evaluation of the remaining rules is cancelled.
+     *
+     * @param ruleExecutor executor used to evaluate the rules
+     * @param rules the rules to evaluate
+     * @param statistics the statistics of each rule
+     * @param messageContext the message context being evaluated
+     *
+     * @throws SecurityPolicyException thrown if any of the rules fails
+     */
+    private void evaluateConcurrently(ExecutorService ruleExecutor, SecurityPolicyRule[] rules,
+            RuleStatistics[] statistics, MessageContext messageContext) throws SecurityPolicyException {
+        List<Future<Object>> results = new ArrayList<Future<Object>>(rules.length);
+        try {
+            for (int i = 0; i < rules.length; i++) {
+                results.add(ruleExecutor.submit(new RuleTask(rules[i], statistics[i], messageContext)));
+            }
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SecurityPolicyException("Interrupted while evaluating security policy rules", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SecurityPolicyException) {
+                throw (SecurityPolicyException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SecurityPolicyException("Error evaluating security policy rule", e);
+        } finally {
+            for (Future<Object> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Gets the current evaluation plan, computing it if the rules or their dependencies have changed.
+     *
+     * @return the current evaluation plan
+     */
+    private EvaluationPlan getPlan() {
+        List<SecurityPolicyRule> rules = getPolicyRules();
+        EvaluationPlan currentPlan = plan;
+        if (currentPlan == null || !currentPlan.isCurrent(rules, dependenciesVersion)) {
+            currentPlan = computePlan(rules);
+            plan = currentPlan;
+        }
+        return currentPlan;
+    }
+
+    /**
+     * Computes the order in which the given rules are evaluated.
+     *
+     * @param ruleList the rules of the policy
+     *
+     * @return the evaluation plan
+     */
+    private EvaluationPlan computePlan(List<SecurityPolicyRule> ruleList) {
+        int version;
+        Map<SecurityPolicyRule, Set<SecurityPolicyRule>> extraDependencies;
+        synchronized (dependencies) {
+            version = dependenciesVersion;
+            extraDependencies = new IdentityHashMap<SecurityPolicyRule, Set<SecurityPolicyRule>>(dependencies);
+        }
+
+        SecurityPolicyRule[] rules = ruleList.toArray(new SecurityPolicyRule[ruleList.size()]);
+        int count = rules.length;
+        Cost[] costs = new Cost[count];
+        boolean[][] dependsOn = new boolean[count][count];
+        for (int i = 0; i < count; i++) {
+            if (rules[i] instanceof CostedSecurityPolicyRule) {
+                CostedSecurityPolicyRule rule = (CostedSecurityPolicyRule) rules[i];
+                costs[i] = rule.getEvaluationCost();
+                for (Class<? extends SecurityPolicyRule> type : rule.getEvaluationDependencies()) {
+                    for (int j = 0; j < count; j++) {
+                        if (j != i && type.isInstance(rules[j])) {
+                            dependsOn[i][j] = true;
+                        }
+                    }
+                }
+            } else {
+                costs[i] = Cost.MODERATE;
+                for (int j = 0; j < count; j++) {
+                    if (j < i) {
+                        dependsOn[i][j] = true;
+                    } else if (j > i) {
+                        dependsOn[j][i] = true;
+                    }
+                }
+            }
+
+            Set<SecurityPolicyRule> prerequisites = extraDependencies.get(rules[i]);
+            if (prerequisites != null) {
+                for (int j = 0; j < count; j++) {
+                    if (j != i && prerequisites.contains(rules[j])) {
+                        dependsOn[i][j] = true;
+                    }
+                }
+            }
+        }
+
+        // rules which depend on each other are evaluated in list order
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (dependsOn[i][j] && dependsOn[j][i]) {
+                    dependsOn[i][j] = false;
+                }
+            }
+        }
+
+        List<SecurityPolicyRule[]> stages = new ArrayList<SecurityPolicyRule[]>();
+        boolean[] scheduled = new boolean[count];
+        int remaining = count;
+        while (remaining > 0) {
+            Cost lowestCost = null;
+            List<Integer> ready = new ArrayList<Integer>();
+            for (int i = 0; i < count; i++) {
+                if (!scheduled[i] && isReady(i, dependsOn, scheduled)) {
+                    ready.add(i);
+                    if (lowestCost == null || costs[i].compareTo(lowestCost) < 0) {
+                        lowestCost = costs[i];
+                    }
+                }
+            }
+
+            List<SecurityPolicyRule> stage = new ArrayList<SecurityPolicyRule>();
+            if (ready.isEmpty()) {
+                for (int i = 0; i < count; i++) {
+                    if (!scheduled[i]) {
+                        log.warn("Security policy rule dependencies are circular, evaluating {} in list order",
+                                rules[i].getClass().getName());
+                        scheduled[i] = true;
+                        stage.add(rules[i]);
+                        break;
+                    }
+                }
+            } else {
+                boolean concurrent = false;
+                for (int i : ready) {
+                    if (costs[i] != lowestCost) {
+                        continue;
+                    }
+                    boolean shareable = lowestCost == Cost.EXPENSIVE && !modifiesMessageContext(rules[i]);
+                    if (stage.isEmpty()) {
+                        concurrent = shareable;
+                    } else if (!concurrent || !shareable) {
+                        continue;
+                    }
+                    scheduled[i] = true;
+                    stage.add(rules[i]);
+                    if (!concurrent) {
+                        break;
+                    }
+                }
+            }
+            remaining -= stage.size();
+            stages.add(stage.toArray(new SecurityPolicyRule[stage.size()]));
+        }
+
+        EvaluationPlan previous = plan;
+        Map<SecurityPolicyRule, RuleStatistics> previousStatistics =
+                new IdentityHashMap<SecurityPolicyRule, RuleStatistics>();
+        if (previous != null) {
+            for (RuleStatistics statistics : previous.statisticsList) {
+                previousStatistics.put(statistics.getRule(), statistics);
+            }
+        }
+
+        log.debug("Computed security policy evaluation plan of {} rules in {} stages", count, stages.size());
+        return new EvaluationPlan(rules, version, stages.toArray(new SecurityPolicyRule[stages.size()][]),
+                previousStatistics);
+    }
+
+    /**
+     * Checks whether evaluating a rule may modify the message context. Only rules which declare otherwise may be
+     * evaluated concurrently.
+     *
+     * @param rule the rule
+     *
+     * @return true if evaluating the rule may modify the message context
+     */
+    private boolean modifiesMessageContext(SecurityPolicyRule rule) {
+        return !(rule instanceof CostedSecurityPolicyRule)
+                || ((CostedSecurityPolicyRule) rule).modifiesMessageContext();
+    }
+
+    /**
+     * Checks whether all the rules upon which a rule depends have been scheduled.
+     *
+     * @param rule index of the rule
+     * @param dependsOn dependencies between rules
+     * @param scheduled which rules have been scheduled
+     *
+     * @return true if all the rules upon which the rule depends have been scheduled
+     */
+    private boolean isReady(int rule, boolean[][] dependsOn, boolean[] scheduled) {
+        for (int j = 0; j < scheduled.length; j++) {
+            if (dependsOn[rule][j] && !scheduled[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluation statistics of a single rule.
+     */
+    public static class RuleStatistics {
+
+        /** The rule. */
+        private final SecurityPolicyRule rule;
+
+        /** Number of evaluations of the rule. */
+        private final AtomicLong evaluations;
+
+        /** Number of failed evaluations of the rule. */
+        private final AtomicLong failures;
+
+        /** Total time spent evaluating the rule in nanoseconds. */
+        private final AtomicLong totalTime;
+
+        /**
+         * Constructor.
+         *
+         * @param statisticsRule the rule
+         */
+        protected RuleStatistics(SecurityPolicyRule statisticsRule) {
+            rule = statisticsRule;
+            evaluations = new AtomicLong();
+            failures = new AtomicLong();
+            totalTime = new AtomicLong();
+        }
+
+        /**
+         * Gets the rule.
+         *
+         * @return the rule
+         */
+        public SecurityPolicyRule getRule() {
+            return rule;
+        }
+
+        /**
+         * Gets the number of evaluations of the rule.
+         *
+         * @return number of evaluations of the rule
+         */
+        public long getEvaluationCount() {
+            return evaluations.get();
+        }
+
+        /**
+         * Gets the number of failed evaluations of the rule.
+         *
+         * @return number of failed evaluations of the rule
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * Gets the total time spent evaluating the rule.
+         *
+         * @return total time spent evaluating the rule in nanoseconds
+         */
+        public long getTotalTime() {
+            return totalTime.get();
+        }
+
+        /**
+         * Records an evaluation of the rule.
+         *
+         * @param nanos time spent in the evaluation in nanoseconds
+         * @param success whether the evaluation succeeded
+         */
+        protected void record(long nanos, boolean success) {
+            evaluations.incrementAndGet();
+            if (!success) {
+                failures.incrementAndGet();
+            }
+            totalTime.addAndGet(nanos);
+        }
+    }
+
+    /** The order in which the rules of the policy are evaluated. */
+    private static final class EvaluationPlan {
+
+        /** Rules of the policy, in list order, from which the plan was computed. */
+        private final SecurityPolicyRule[] rules;
+
+        /** Version of the additional dependencies from which the plan was computed. */
+        private final int dependenciesVersion;
+
+        /** Stages of evaluation, each holding rules which may be evaluated concurrently. */
+        private final SecurityPolicyRule[][] stages;
+
+        /** Statistics of the rules of each stage. */
+        private final RuleStatistics[][] stageStatistics;
+
+        /** Statistics of each rule in evaluation order. */
+        private final List<RuleStatistics> statisticsList;
+
+        /**
+         * Constructor.
+         *
+         * @param policyRules rules of the policy, in list order
+         * @param version version of the additional dependencies
+         * @param evaluationStages stages of evaluation
+         * @param previousStatistics statistics of rules of the previous plan
+         */
+        private EvaluationPlan(SecurityPolicyRule[] policyRules, int version, SecurityPolicyRule[][] evaluationStages,
+                Map<SecurityPolicyRule, RuleStatistics> previousStatistics) {
+            rules = policyRules;
+            dependenciesVersion = version;
+            stages = evaluationStages;
+            stageStatistics = new RuleStatistics[stages.length][];
+
+            List<RuleStatistics> allStatistics = new ArrayList<RuleStatistics>(policyRules.length);
+            for (int i = 0; i < stages.length; i++) {
+                stageStatistics[i] = new RuleStatistics[stages[i].length];
+                for (int j = 0; j < stages[i].length; j++) {
+                    RuleStatistics statistics = previousStatistics.get(stages[i][j]);
+                    if (statistics == null) {
+                        statistics = new RuleStatistics(stages[i][j]);
+                    }
+                    stageStatistics[i][j] = statistics;
+                    allStatistics.add(statistics);
+                }
+            }
+            statisticsList = Collections.unmodifiableList(allStatistics);
+        }
+
+        /**
+         * Checks whether this plan was computed from the given rules and dependencies.
+         *
+         * @param policyRules the current rules of the policy
+         * @param version the current version of the additional dependencies
+         *
+         * @return true if the plan is current, false if it is stale
+         */
+        private boolean isCurrent(List<SecurityPolicyRule> policyRules, int version) {
+            if (version != dependenciesVersion || policyRules.size() != rules.length) {
+                return false;
+            }
+            for (int i = 0; i < rules.length; i++) {
+                if (policyRules.get(i) != rules[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Task which evaluates a single rule. */
+    private class RuleTask implements Callable<Object> {
+
+        /** The rule to evaluate. */
+        private final SecurityPolicyRule rule;
+
+        /** The statistics of the rule. */
+        private final RuleStatistics statistics;
+
+        /** The message context being evaluated. */
+        private final MessageContext messageContext;
+
+        /**
+         * Constructor.
+         *
+         * @param taskRule the rule to evaluate
+         * @param ruleStatistics the statistics of the rule
+         * @param context the message context being evaluated
+         */
+        public RuleTask(SecurityPolicyRule taskRule, RuleStatistics ruleStatistics, MessageContext context) {
+            rule = taskRule;
+            statistics = ruleStatistics;
+            messageContext = context;
+        }
+
+        /** {@inheritDoc} */
+        public Object call() throws SecurityPolicyException {
+            evaluateRule(rule, statistics, messageContext);
+            return null;
+        }
+    }
+}
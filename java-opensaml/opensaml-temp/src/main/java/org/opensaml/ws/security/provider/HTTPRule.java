@@ -16,7 +16,11 @@
 
 package org.opensaml.ws.security.provider;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.ws.transport.http.HTTPTransport;
@@ -27,7 +31,7 @@ import org.slf4j.LoggerFactory;
 /**
  * A security rule that checks basic HTTP connection properties.
  */
-public class HTTPRule implements SecurityPolicyRule {
+public class HTTPRule implements CostedSecurityPolicyRule {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(HTTPRule.class);
@@ -125,4 +129,19 @@ public class HTTPRule implements SecurityPolicyRule {
             throw new SecurityPolicyException("Request was required to be secured but was not");
         }
     }
+
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.CHEAP;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -16,7 +16,11 @@
 
 package org.opensaml.ws.security.provider;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.slf4j.Logger;
@@ -25,7 +29,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Security policy rule that requires that a message has been authenticated.
  */
-public class MandatoryAuthenticatedMessageRule implements SecurityPolicyRule {
+public class MandatoryAuthenticatedMessageRule implements CostedSecurityPolicyRule {
     
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(MandatoryAuthenticatedMessageRule.class);
@@ -37,4 +41,20 @@ public class MandatoryAuthenticatedMessageRule implements SecurityPolicyRule {
             throw new SecurityPolicyException("Inbound message issuer was not authenticated.");
         }
     }
+
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.CHEAP;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // the issuer may be authenticated by any other rule
+        return Collections.<Class<? extends SecurityPolicyRule>>singletonList(SecurityPolicyRule.class);
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
\ No newline at end of file
@@ -16,7 +16,11 @@
 
 package org.opensaml.ws.security.provider;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.CostedSecurityPolicyRule;
 import org.opensaml.ws.security.SecurityPolicyException;
 import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.xml.util.DatatypeHelper;
@@ -27,7 +31,7 @@ import org.slf4j.LoggerFactory;
  * Security policy rule implementation that which requires that an inbound message context issuer has been set by a
  * previous rule. Should typically run at the end of the security policy rule chain.
  */
-public class MandatoryIssuerRule implements SecurityPolicyRule {
+public class MandatoryIssuerRule implements CostedSecurityPolicyRule {
 
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(MandatoryIssuerRule.class);
@@ -42,4 +46,19 @@ public class MandatoryIssuerRule implements SecurityPolicyRule {
 
     }
 
+    /** {@inheritDoc} */
+    public Cost getEvaluationCost() {
+        return Cost.CHEAP;
+    }
+
+    /** {@inheritDoc} */
+    public List<Class<? extends SecurityPolicyRule>> getEvaluationDependencies() {
+        // the issuer may be established by any other rule
+        return Collections.<Class<? extends SecurityPolicyRule>>singletonList(SecurityPolicyRule.class);
+    }
+
+    /** {@inheritDoc} */
+    public boolean modifiesMessageContext() {
+        return false;
+    }
 }
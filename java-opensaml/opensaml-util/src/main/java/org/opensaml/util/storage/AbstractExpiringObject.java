@@ -20,6 +20,7 @@ import java.io.Serializable;
 
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
+import org.opensaml.util.time.ClockSupport;
 
 /** Base implementation for {@link ExpiringObject}. */
 public abstract class AbstractExpiringObject implements ExpiringObject, Serializable {
@@ -36,6 +37,15 @@ public abstract class AbstractExpiringObject implements ExpiringObject, Serializ
         expiration = expirationTime.toDateTime(ISOChronology.getInstanceUTC()).getMillis();
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param expirationTime time, in milliseconds since the epoch, this object should expire
+     */
+    public AbstractExpiringObject(long expirationTime) {
+        expiration = expirationTime;
+    }
+
     /** {@inheritDoc} */
     public DateTime getExpirationTime() {
         return new DateTime(expiration, ISOChronology.getInstanceUTC());
@@ -43,7 +53,7 @@ public abstract class AbstractExpiringObject implements ExpiringObject, Serializ
 
     /** {@inheritDoc} */
     public boolean isExpired() {
-        return getExpirationTime().isBeforeNow();
+        return expiration < ClockSupport.currentTimeMillis();
     }
 
     /** {@inheritDoc} */
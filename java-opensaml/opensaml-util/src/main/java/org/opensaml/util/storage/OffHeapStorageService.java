@@ -0,0 +1,594 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.opensaml.util.time.ClockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StorageService} which holds the serialized form of its values in direct, off-heap, buffers.
+ *
+ * Only the keys and a small handle per entry are held on the Java heap, the values themselves do not add to the live
+ * heap the garbage collector must trace. Each value is serialized when stored and deserialized, as a new object, each
+ * time it is retrieved. Values must therefore be {@link Serializable} and callers must store a value again for
+ * changes to it to be retained.
+ *
+ * The direct buffers are allocated, as a few large segments, when the service is created and are divided into
+ * fixed-size blocks. Each value occupies as many blocks as its serialized form needs; the blocks of a removed entry
+ * are reused by later entries.
+ *
+ * Each entry has an expiration time, that of the value if it is an {@link ExpiringObject} or otherwise the time it was
+ * stored plus the default time-to-live. Expired entries are never returned and are evicted when encountered, by
+ * {@link #evictExpired()}, or when room is needed for a new entry. Unexpired entries are never evicted to make room,
+ * as a replay cache which silently forgot entries would accept replayed messages; storing a value which does not fit,
+ * even after expired entries have been evicted, fails with an {@link IllegalStateException}.
+ *
+ * @param <KeyType> object type of the keys
+ * @param <ValueType> object type of the values
+ */
+@ThreadSafe
+public class OffHeapStorageService<KeyType, ValueType extends Serializable> implements
+        StorageService<KeyType, ValueType> {
+
+    /** Default size, in bytes, of the blocks in which values are stored. */
+    public static final int DEFAULT_BLOCK_SIZE = 128;
+
+    /** Maximum size, in bytes, of each preallocated segment. */
+    private static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(OffHeapStorageService.class);
+
+    /** Backing map of partitions to entry handles. */
+    private final ConcurrentMap<String, ConcurrentMap<KeyType, Slot>> store;
+
+    /** Size, in bytes, of the blocks in which values are stored. */
+    private final int blockSize;
+
+    /** Number of blocks in each segment. */
+    private final int blocksPerSegment;
+
+    /** Preallocated direct buffers from which blocks are taken. */
+    private final ByteBuffer[] segments;
+
+    /** Indexes of the free blocks, the first {@link #freeCount} of which are valid. Guarded by itself. */
+    private final int[] freeBlocks;
+
+    /** Number of free blocks. Guarded by {@link #freeBlocks}. */
+    private int freeCount;
+
+    /** Time-to-live, in milliseconds, of values which are not {@link ExpiringObject}s. */
+    private final long defaultTimeToLive;
+
+    /** Current total size of the stored values in bytes. */
+    private final AtomicLong usedBytes;
+
+    /**
+     * Constructor. Values are stored in blocks of {@value #DEFAULT_BLOCK_SIZE} bytes.
+     *
+     * @param maxBytes maximum total size of the stored values in bytes, rounded up to a whole number of blocks
+     * @param timeToLive time-to-live, in milliseconds, of values which are not {@link ExpiringObject}s
+     */
+    public OffHeapStorageService(long maxBytes, long timeToLive) {
+        this(maxBytes, DEFAULT_BLOCK_SIZE, timeToLive);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes maximum total size of the stored values in bytes, rounded up to a whole number of blocks
+     * @param valueBlockSize size, in bytes, of the blocks in which values are stored
+     * @param timeToLive time-to-live, in milliseconds, of values which are not {@link ExpiringObject}s
+     */
+    public OffHeapStorageService(long maxBytes, int valueBlockSize, long timeToLive) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (valueBlockSize < 1 || valueBlockSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + MAX_SEGMENT_SIZE);
+        }
+        if (timeToLive < 1) {
+            throw new IllegalArgumentException("Default time-to-live must be greater than 0");
+        }
+
+        long blocks = (maxBytes + valueBlockSize - 1) / valueBlockSize;
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity must not exceed " + Integer.MAX_VALUE + " blocks");
+        }
+        blockSize = valueBlockSize;
+        blocksPerSegment = MAX_SEGMENT_SIZE / valueBlockSize;
+
+        segments = new ByteBuffer[(int) ((blocks + blocksPerSegment - 1) / blocksPerSegment)];
+        for (int i = 0; i < segments.length; i++) {
+            long segmentBlocks = Math.min(blocksPerSegment, blocks - (long) i * blocksPerSegment);
+            segments[i] = ByteBuffer.allocateDirect((int) segmentBlocks * valueBlockSize);
+        }
+
+        freeBlocks = new int[(int) blocks];
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = freeBlocks.length - 1 - i;
+        }
+        freeCount = freeBlocks.length;
+
+        defaultTimeToLive = timeToLive;
+        store = new ConcurrentHashMap<String, ConcurrentMap<KeyType, Slot>>();
+        usedBytes = new AtomicLong();
+    }
+
+    /**
+     * Gets the maximum total size of the stored values in bytes.
+     *
+     * @return maximum total size of the stored values in bytes
+     */
+    public long getCapacity() {
+        return (long) freeBlocks.length * blockSize;
+    }
+
+    /**
+     * Gets the size of the blocks in which values are stored.
+     *
+     * @return size of the blocks in which values are stored in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Gets the current total size of the stored values in bytes.
+     *
+     * @return current total size of the stored values in bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<String> getPartitions() {
+        return store.keySet().iterator();
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<KeyType> getKeys(String partition) {
+        ConcurrentMap<KeyType, Slot> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+        return new KeyIterator(partitionMap);
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(String partition, KeyType key) {
+        return getSlot(partition, key) != null;
+    }
+
+    /** {@inheritDoc} */
+    public ValueType get(String partition, KeyType key) {
+        Slot slot = getSlot(partition, key);
+        if (slot == null) {
+            return null;
+        }
+        return deserialize(read(slot));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException thrown if the value can not be serialized or is larger than the capacity
+     * @throws IllegalStateException thrown if there is insufficient free capacity for the value, even after expired
+     *             entries have been evicted
+     */
+    public ValueType put(String partition, KeyType key, ValueType value) {
+        if (key == null) {
+            return null;
+        }
+
+        byte[] data = serialize(value);
+        int[] blocks = allocate(data.length);
+        write(blocks, data);
+        usedBytes.addAndGet(data.length);
+
+        long expiration;
+        if (value instanceof ExpiringObject && ((ExpiringObject) value).getExpirationTime() != null) {
+            expiration = ((ExpiringObject) value).getExpirationTime().getMillis();
+        } else {
+            expiration = ClockSupport.currentTimeMillis() + defaultTimeToLive;
+        }
+
+        ConcurrentMap<KeyType, Slot> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            partitionMap = new ConcurrentHashMap<KeyType, Slot>();
+            ConcurrentMap<KeyType, Slot> existing = store.putIfAbsent(partition, partitionMap);
+            if (existing != null) {
+                partitionMap = existing;
+            }
+        }
+
+        Slot previous = partitionMap.put(key, new Slot(blocks, data.length, expiration));
+        if (previous == null) {
+            return null;
+        }
+        byte[] previousData = release(previous, !previous.isExpired());
+        return previousData == null ? null : deserialize(previousData);
+    }
+
+    /** {@inheritDoc} */
+    public ValueType remove(String partition, KeyType key) {
+        if (key == null) {
+            return null;
+        }
+
+        ConcurrentMap<KeyType, Slot> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+
+        Slot removed = partitionMap.remove(key);
+        if (removed == null) {
+            return null;
+        }
+        byte[] removedData = release(removed, !removed.isExpired());
+        return removedData == null ? null : deserialize(removedData);
+    }
+
+    /**
+     * Evicts all expired entries.
+     *
+     * @return number of entries evicted
+     */
+    public int evictExpired() {
+        int evicted = 0;
+        for (ConcurrentMap<KeyType, Slot> partitionMap : store.values()) {
+            for (Map.Entry<KeyType, Slot> entry : partitionMap.entrySet()) {
+                if (entry.getValue().isExpired() && partitionMap.remove(entry.getKey(), entry.getValue())) {
+                    release(entry.getValue(), false);
+                    evicted++;
+                }
+            }
+        }
+        log.trace("Evicted {} expired entries", evicted);
+        return evicted;
+    }
+
+    /**
+     * Gets the handle of an unexpired entry, evicting the entry if it has expired.
+     *
+     * @param partition partition on which to operate
+     * @param key the key
+     *
+     * @return the entry handle or null if there is no unexpired entry for the key
+     */
+    private Slot getSlot(String partition, KeyType key) {
+        if (key == null) {
+            return null;
+        }
+
+        ConcurrentMap<KeyType, Slot> partitionMap = store.get(partition);
+        if (partitionMap == null) {
+            return null;
+        }
+
+        Slot slot = partitionMap.get(key);
+        if (slot != null && slot.isExpired()) {
+            if (partitionMap.remove(key, slot)) {
+                release(slot, false);
+            }
+            return null;
+        }
+        return slot;
+    }
+
+    /**
+     * Allocates the blocks to hold a value, evicting expired entries if necessary.
+     *
+     * @param size size of the value in bytes
+     *
+     * @return indexes of the allocated blocks
+     *
+     * @throws IllegalArgumentException thrown if the value is larger than the capacity
+     * @throws IllegalStateException thrown if there are insufficient free blocks, even after expired entries have been
+     *             evicted
+     */
+    private int[] allocate(int size) {
+        int count = (size + blockSize - 1) / blockSize;
+        if (count > freeBlocks.length) {
+            throw new IllegalArgumentException("Value of " + size + " bytes exceeds the storage service capacity of "
+                    + getCapacity() + " bytes");
+        }
+
+        int[] blocks = takeBlocks(count);
+        if (blocks == null) {
+            evictExpired();
+            blocks = takeBlocks(count);
+        }
+        if (blocks == null) {
+            throw new IllegalStateException("Storage service capacity of " + getCapacity()
+                    + " bytes exhausted, unable to store value of " + size + " bytes");
+        }
+        return blocks;
+    }
+
+    /**
+     * Takes blocks from the free list if enough are free.
+     *
+     * @param count number of blocks to take
+     *
+     * @return indexes of the taken blocks or null if fewer blocks are free
+     */
+    private int[] takeBlocks(int count) {
+        synchronized (freeBlocks) {
+            if (freeCount < count) {
+                return null;
+            }
+            int[] blocks = new int[count];
+            freeCount -= count;
+            System.arraycopy(freeBlocks, freeCount, blocks, 0, count);
+            return blocks;
+        }
+    }
+
+    /**
+     * Writes a serialized value to its newly allocated blocks. The blocks are not yet reachable from any other thread,
+     * which only sees them once the entry handle is published in the backing map.
+     *
+     * @param blocks indexes of the blocks
+     * @param data the serialized value
+     */
+    private void write(int[] blocks, byte[] data) {
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * blockSize;
+            blockView(blocks[i]).put(data, offset, Math.min(blockSize, data.length - offset));
+        }
+    }
+
+    /**
+     * Reads the serialized value held by an entry.
+     *
+     * @param slot handle of the entry
+     *
+     * @return copy of the serialized value or null if the entry has since been removed
+     */
+    private byte[] read(Slot slot) {
+        synchronized (freeBlocks) {
+            if (slot.isReleased()) {
+                return null;
+            }
+            return slot.copyData();
+        }
+    }
+
+    /**
+     * Releases the blocks held by a removed entry. The blocks are returned to the free list, and so may be reused,
+     * only once any read of them has completed.
+     *
+     * @param slot handle of the removed entry
+     * @param retrieve whether to return a copy of the serialized value
+     *
+     * @return copy of the serialized value or null if it was not requested
+     */
+    private byte[] release(Slot slot, boolean retrieve) {
+        byte[] data = null;
+        synchronized (freeBlocks) {
+            if (retrieve) {
+                data = slot.copyData();
+            }
+            slot.markReleased();
+            System.arraycopy(slot.getBlocks(), 0, freeBlocks, freeCount, slot.getBlocks().length);
+            freeCount += slot.getBlocks().length;
+        }
+        usedBytes.addAndGet(-slot.getSize());
+        return data;
+    }
+
+    /**
+     * Gets a view of a block, positioned at its start.
+     *
+     * @param block index of the block
+     *
+     * @return view of the block
+     */
+    private ByteBuffer blockView(int block) {
+        ByteBuffer view = segments[block / blocksPerSegment].duplicate();
+        view.position((block % blocksPerSegment) * blockSize);
+        return view;
+    }
+
+    /**
+     * Serializes a value.
+     *
+     * @param value the value
+     *
+     * @return the serialized value
+     */
+    private byte[] serialize(ValueType value) {
+        try {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytesOut);
+            objectOut.writeObject(value);
+            objectOut.close();
+            return bytesOut.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize value: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deserializes a value.
+     *
+     * @param data the serialized value, may be null
+     *
+     * @return the deserialized value or null if the serialized value was null
+     */
+    @SuppressWarnings("unchecked")
+    private ValueType deserialize(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(data));
+            return (ValueType) objectIn.readObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to deserialize stored value: " + e.getMessage(), e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to deserialize stored value: " + e.getMessage(), e);
+        }
+    }
+
+    /** Handle of a stored value. */
+    private final class Slot {
+
+        /** Indexes of the blocks holding the serialized value. */
+        private final int[] blocks;
+
+        /** Size of the serialized value in bytes. */
+        private final int size;
+
+        /** Expiration time in milliseconds since the epoch. */
+        private final long expiration;
+
+        /** Whether the blocks have been returned to the free list. Guarded by {@link #freeBlocks}. */
+        private boolean released;
+
+        /**
+         * Constructor.
+         *
+         * @param valueBlocks indexes of the blocks holding the serialized value
+         * @param valueSize size of the serialized value in bytes
+         * @param expirationTime expiration time in milliseconds since the epoch
+         */
+        private Slot(int[] valueBlocks, int valueSize, long expirationTime) {
+            blocks = valueBlocks;
+            size = valueSize;
+            expiration = expirationTime;
+        }
+
+        /**
+         * Gets the indexes of the blocks holding the serialized value.
+         *
+         * @return indexes of the blocks holding the serialized value
+         */
+        private int[] getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Gets the size of the serialized value.
+         *
+         * @return size of the serialized value in bytes
+         */
+        private int getSize() {
+            return size;
+        }
+
+        /**
+         * Gets whether the blocks have been returned to the free list.
+         *
+         * @return true if the blocks have been returned to the free list
+         */
+        private boolean isReleased() {
+            return released;
+        }
+
+        /** Marks the blocks as returned to the free list. */
+        private void markReleased() {
+            released = true;
+        }
+
+        /**
+         * Gets a copy of the serialized value.
+         *
+         * @return copy of the serialized value
+         */
+        private byte[] copyData() {
+            byte[] data = new byte[size];
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * blockSize;
+                blockView(blocks[i]).get(data, offset, Math.min(blockSize, size - offset));
+            }
+            return data;
+        }
+
+        /**
+         * Gets whether the entry has expired.
+         *
+         * @return true if the entry has expired
+         */
+        private boolean isExpired() {
+            return ClockSupport.currentTimeMillis() > expiration;
+        }
+    }
+
+    /** Iterator over the keys of a partition whose removal operation releases the removed entry. */
+    private class KeyIterator implements Iterator<KeyType> {
+
+        /** The iterated partition. */
+        private final ConcurrentMap<KeyType, Slot> partitionMap;
+
+        /** Iterator over the entries of the partition. */
+        private final Iterator<Map.Entry<KeyType, Slot>> entries;
+
+        /** The most recently returned entry. */
+        private Map.Entry<KeyType, Slot> current;
+
+        /**
+         * Constructor.
+         *
+         * @param iteratedPartition the iterated partition
+         */
+        public KeyIterator(ConcurrentMap<KeyType, Slot> iteratedPartition) {
+            partitionMap = iteratedPartition;
+            entries = iteratedPartition.entrySet().iterator();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        /** {@inheritDoc} */
+        public KeyType next() {
+            current = entries.next();
+            return current.getKey();
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException("No current key");
+            }
+            if (partitionMap.remove(current.getKey(), current.getValue())) {
+                release(current.getValue(), false);
+            }
+            current = null;
+        }
+    }
+}
@@ -19,7 +19,9 @@ package org.opensaml.util.storage;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
 import org.opensaml.util.StringSupport;
+import org.opensaml.util.time.ClockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -109,7 +111,8 @@ public class ReplayCache {
                     }
                 }
                 replayed = false;
-                addMessageID(entryHash, new DateTime().plus(entryDuration));
+                addMessageID(entryHash, new DateTime(ClockSupport.currentTimeMillis() + entryDuration,
+                        ISOChronology.getInstanceUTC()));
             } else {
                 log.debug("Replay of message ID {} detected in replay cache, will expire at {}", messageId, cacheEntry
                         .getExpirationTime().toString());
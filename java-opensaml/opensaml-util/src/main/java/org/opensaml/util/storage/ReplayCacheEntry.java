@@ -40,6 +40,17 @@ public class ReplayCacheEntry extends AbstractExpiringObject implements Serializ
         messageId = id;
     }
 
+    /**
+     * Constructor.
+     * 
+     * @param id ID of the message that may not be replayed
+     * @param expiration time, in milliseconds since the epoch, when this entry expires
+     */
+    public ReplayCacheEntry(String id, long expiration) {
+        super(expiration);
+        messageId = id;
+    }
+
     /**
      * Gets the ID of the message that may not be replayed.
      * 
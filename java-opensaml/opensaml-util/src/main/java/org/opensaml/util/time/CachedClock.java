@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A {@link Clock} which reads the system clock periodically, on a background thread, and returns the time last read.
+ * Reading the clock is then a single volatile read, at the cost of the returned time lagging the system clock by up to
+ * the clock's resolution, plus any delay in scheduling the background thread.
+ * 
+ * The background thread is a daemon thread and is stopped by {@link #destroy()}, after which the clock no longer
+ * advances.
+ */
+@ThreadSafe
+public class CachedClock implements Clock {
+
+    /** Default resolution, in milliseconds, of the clock: {@value} . */
+    public static final long DEFAULT_RESOLUTION = 10;
+
+    /** Resolution, in milliseconds, of the clock. */
+    private final long resolution;
+
+    /** Timer which periodically reads the system clock. */
+    private final Timer timer;
+
+    /** Time, in milliseconds since the epoch, last read from the system clock. */
+    private volatile long time;
+
+    /** Constructor. The clock has a resolution of {@link #DEFAULT_RESOLUTION} milliseconds. */
+    public CachedClock() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param clockResolution interval, in milliseconds, between reads of the system clock
+     */
+    public CachedClock(long clockResolution) {
+        if (clockResolution < 1) {
+            throw new IllegalArgumentException("Clock resolution must be greater than 0");
+        }
+        resolution = clockResolution;
+        time = System.currentTimeMillis();
+
+        timer = new Timer("CachedClock", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            public void run() {
+                time = System.currentTimeMillis();
+            }
+        }, resolution, resolution);
+    }
+
+    /** {@inheritDoc} */
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /**
+     * Gets the interval, in milliseconds, between reads of the system clock.
+     * 
+     * @return interval, in milliseconds, between reads of the system clock
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /** Stops the background thread which reads the system clock. */
+    public void destroy() {
+        timer.cancel();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+/**
+ * A source of the current time.
+ * 
+ * Components which compare instants against the current time read it from a clock, usually the one returned by
+ * {@link ClockSupport#getClock()}, so that the time source may be replaced, for example by a {@link CachedClock} to
+ * avoid reading the system clock on hot paths or by a {@link ManualClock} to test expiry logic.
+ */
+public interface Clock {
+
+    /**
+     * Gets the current time.
+     * 
+     * @return current time, in milliseconds since the epoch
+     */
+    public long currentTimeMillis();
+}
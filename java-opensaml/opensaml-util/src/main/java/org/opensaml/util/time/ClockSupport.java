@@ -0,0 +1,64 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+/**
+ * Access to the {@link Clock} used as the source of the current time.
+ * 
+ * The clock defaults to a {@link SystemClock}. Deployments which check many instants against the current time may
+ * install a {@link CachedClock}, and tests may install a {@link ManualClock}.
+ */
+public final class ClockSupport {
+
+    /** The clock used as the source of the current time. */
+    private static volatile Clock clock = new SystemClock();
+
+    /** Constructor. */
+    private ClockSupport() {
+    }
+
+    /**
+     * Gets the clock used as the source of the current time.
+     * 
+     * @return the clock used as the source of the current time
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Sets the clock used as the source of the current time.
+     * 
+     * @param newClock the clock used as the source of the current time, or null to use a {@link SystemClock}
+     */
+    public static void setClock(Clock newClock) {
+        if (newClock == null) {
+            clock = new SystemClock();
+        } else {
+            clock = newClock;
+        }
+    }
+
+    /**
+     * Gets the current time from the clock returned by {@link #getClock()}.
+     * 
+     * @return current time, in milliseconds since the epoch
+     */
+    public static long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * A {@link Clock} whose time only changes when it is set or advanced, allowing deterministic tests of logic which
+ * depends on the current time.
+ */
+@ThreadSafe
+public class ManualClock implements Clock {
+
+    /** Current time, in milliseconds since the epoch. */
+    private volatile long time;
+
+    /** Constructor. The clock starts at the current system time. */
+    public ManualClock() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param startTime time, in milliseconds since the epoch, at which the clock starts
+     */
+    public ManualClock(long startTime) {
+        time = startTime;
+    }
+
+    /** {@inheritDoc} */
+    public long currentTimeMillis() {
+        return time;
+    }
+
+    /**
+     * Sets the current time.
+     * 
+     * @param newTime the current time, in milliseconds since the epoch
+     */
+    public void setTime(long newTime) {
+        time = newTime;
+    }
+
+    /**
+     * Advances the clock.
+     * 
+     * @param millis number of milliseconds by which to advance the clock, may be negative
+     */
+    public synchronized void advance(long millis) {
+        time += millis;
+    }
+}
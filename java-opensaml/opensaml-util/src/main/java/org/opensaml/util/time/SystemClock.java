@@ -0,0 +1,29 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+import net.jcip.annotations.ThreadSafe;
+
+/** A {@link Clock} which reads the system clock on each call. */
+@ThreadSafe
+public class SystemClock implements Clock {
+
+    /** {@inheritDoc} */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.storage;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.util.time.ManualClock;
+
+/**
+ * Tests the off-heap storage service.
+ */
+public class OffHeapStorageServiceTest extends TestCase {
+
+    private OffHeapStorageService<String, String> storage;
+
+    private ManualClock clock;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        clock = new ManualClock();
+        ClockSupport.setClock(clock);
+        storage = new OffHeapStorageService<String, String>(4096, 60000);
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        ClockSupport.setClock(null);
+        super.tearDown();
+    }
+
+    /**
+     * Test storing, retrieving and removing a value.
+     */
+    public void testPutGetRemove() {
+        assertNull("Value was stored in empty storage", storage.get("test", "key"));
+        assertNull(storage.put("test", "key", "value"));
+        assertTrue(storage.contains("test", "key"));
+        assertEquals("value", storage.get("test", "key"));
+        assertTrue("Stored bytes were not accounted", storage.getUsedBytes() > 0);
+
+        assertEquals("value", storage.put("test", "key", "other"));
+        assertEquals("other", storage.get("test", "key"));
+
+        assertEquals("other", storage.remove("test", "key"));
+        assertFalse(storage.contains("test", "key"));
+        assertEquals("Removed bytes were not released", 0, storage.getUsedBytes());
+    }
+
+    /**
+     * Test that values are held per partition.
+     */
+    public void testPartitions() {
+        storage.put("one", "key", "first");
+        storage.put("two", "key", "second");
+        assertEquals("first", storage.get("one", "key"));
+        assertEquals("second", storage.get("two", "key"));
+        assertNull(storage.getKeys("three"));
+
+        int partitions = 0;
+        Iterator<String> partitionItr = storage.getPartitions();
+        while (partitionItr.hasNext()) {
+            partitionItr.next();
+            partitions++;
+        }
+        assertEquals(2, partitions);
+    }
+
+    /**
+     * Test that removal through the key iterator releases the stored bytes.
+     */
+    public void testKeyIteratorRemove() {
+        storage.put("test", "a", "value");
+        storage.put("test", "b", "value");
+
+        Iterator<String> keys = storage.getKeys("test");
+        while (keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        assertFalse(storage.contains("test", "a"));
+        assertFalse(storage.contains("test", "b"));
+        assertEquals(0, storage.getUsedBytes());
+    }
+
+    /**
+     * Test that expired values are not returned and are evicted.
+     */
+    public void testExpiration() {
+        storage = new OffHeapStorageService<String, String>(4096, 5);
+        storage.put("test", "key", "value");
+
+        clock.advance(5);
+        assertEquals("Unexpired value was not returned", "value", storage.get("test", "key"));
+
+        clock.advance(1);
+        assertNull("Expired value was returned", storage.get("test", "key"));
+        assertEquals(0, storage.getUsedBytes());
+    }
+
+    /**
+     * Test that the expiration time of an expiring value is used.
+     */
+    public void testExpiringObject() {
+        OffHeapStorageService<String, ReplayCacheEntry> entries =
+                new OffHeapStorageService<String, ReplayCacheEntry>(4096, 60000);
+
+        DateTime now = new DateTime(clock.currentTimeMillis());
+        entries.put("test", "expired", new ReplayCacheEntry("expired", now.minusMinutes(1)));
+        entries.put("test", "valid", new ReplayCacheEntry("valid", now.plusMinutes(1)));
+        assertEquals(1, entries.evictExpired());
+        assertFalse(entries.contains("test", "expired"));
+        assertEquals("valid", entries.get("test", "valid").getMessageId());
+    }
+
+    /**
+     * Test that values which do not fit are rejected rather than silently dropped.
+     */
+    public void testCapacity() {
+        storage = new OffHeapStorageService<String, String>(64, 16, 60000);
+        assertEquals(64, storage.getCapacity());
+        storage.put("test", "small", "value");
+        assertTrue(storage.contains("test", "small"));
+
+        try {
+            storage.put("test", "large", repeat('x', 100));
+            fail("Value larger than the capacity was accepted");
+        } catch (IllegalArgumentException e) {
+            assertFalse(storage.contains("test", "large"));
+        }
+
+        try {
+            storage.put("test", "medium", repeat('x', 50));
+            fail("Value larger than the free capacity was accepted");
+        } catch (IllegalStateException e) {
+            assertFalse(storage.contains("test", "medium"));
+        }
+        assertEquals("value", storage.get("test", "small"));
+        assertTrue(storage.getUsedBytes() <= storage.getCapacity());
+    }
+
+    /**
+     * Test that expired entries are evicted to make room for a new value.
+     */
+    public void testEvictExpiredWhenFull() {
+        storage = new OffHeapStorageService<String, String>(64, 16, 1000);
+        storage.put("test", "old", repeat('x', 40));
+
+        clock.advance(1001);
+        storage.put("test", "new", repeat('y', 40));
+        assertFalse(storage.contains("test", "old"));
+        assertEquals(repeat('y', 40), storage.get("test", "new"));
+    }
+
+    /**
+     * Test that values spanning several blocks round trip and that the blocks of removed values are reused.
+     */
+    public void testBlockReuse() {
+        storage = new OffHeapStorageService<String, String>(256, 16, 60000);
+        for (int i = 0; i < 100; i++) {
+            String value = repeat((char) ('a' + i % 26), i % 150);
+            storage.put("test", "key", value);
+            storage.put("test", "other", value + "!");
+            assertEquals(value, storage.get("test", "key"));
+            assertEquals(value + "!", storage.remove("test", "other"));
+        }
+        storage.remove("test", "key");
+        assertEquals(0, storage.getUsedBytes());
+    }
+
+    /**
+     * Test that a value spanning several segments round trips.
+     */
+    public void testValueAcrossSegments() {
+        int blockSize = 400 * 1024;
+        storage = new OffHeapStorageService<String, String>(5 * blockSize, blockSize, 60000);
+
+        String value = repeat('z', 3 * blockSize);
+        storage.put("test", "key", value);
+        assertEquals(value, storage.get("test", "key"));
+    }
+
+    /**
+     * Builds a string of a repeated character.
+     *
+     * @param c the character
+     * @param length the length of the string
+     *
+     * @return the string
+     */
+    private String repeat(char c, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
\ No newline at end of file
@@ -18,6 +18,9 @@ package org.opensaml.util.storage;
 
 import junit.framework.TestCase;
 
+import org.opensaml.util.time.ClockSupport;
+import org.opensaml.util.time.ManualClock;
+
 
 /**
  * Testing SAML message replay security policy rule.
@@ -79,4 +82,26 @@ public class ReplayCacheTest extends TestCase {
         assertFalse("Message was not replay, previous cache entry should have expired", replayCache.isReplay("test",
                 messageID));
     }
+
+    /**
+     * Test expiration of replay cache entries against a manually advanced clock.
+     */
+    public void testExpirationWithManualClock() {
+        ManualClock clock = new ManualClock(1000000);
+        ClockSupport.setClock(clock);
+        try {
+            ReplayCache replayCache = new ReplayCache(storageEngine, 10000);
+            assertFalse("Message was not replay, insert into empty cache", replayCache.isReplay("test", messageID));
+
+            clock.advance(10000);
+            assertTrue("Message was replay, cache entry expires after the current time", replayCache.isReplay("test",
+                    messageID));
+
+            clock.advance(1);
+            assertFalse("Message was not replay, previous cache entry should have expired", replayCache.isReplay(
+                    "test", messageID));
+        } finally {
+            ClockSupport.setClock(null);
+        }
+    }
 }
\ No newline at end of file
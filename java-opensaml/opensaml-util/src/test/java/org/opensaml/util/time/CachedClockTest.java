@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.util.time;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link CachedClock}.
+ */
+public class CachedClockTest extends TestCase {
+
+    /**
+     * Tests that the clock follows the system clock to within its resolution.
+     */
+    public void testAdvances() throws InterruptedException {
+        CachedClock clock = new CachedClock(5);
+        try {
+            assertEquals(5, clock.getResolution());
+
+            long start = clock.currentTimeMillis();
+            assertTrue(Math.abs(System.currentTimeMillis() - start) < 1000);
+
+            Thread.sleep(100);
+            assertTrue("Clock did not advance", clock.currentTimeMillis() > start);
+            assertTrue("Clock ran ahead of the system clock", clock.currentTimeMillis() <= System.currentTimeMillis());
+        } finally {
+            clock.destroy();
+        }
+    }
+
+    /**
+     * Tests that an invalid resolution is rejected.
+     */
+    public void testInvalidResolution() {
+        try {
+            new CachedClock(0);
+            fail("Clock with no resolution was created");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
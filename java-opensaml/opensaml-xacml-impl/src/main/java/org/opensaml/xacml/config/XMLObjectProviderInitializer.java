@@ -33,4 +33,9 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    protected String getGeneratedRegistrationClassName() {
+        return "org.opensaml.xacml.config.GeneratedXMLObjectProviderRegistration";
+    }
+
 }
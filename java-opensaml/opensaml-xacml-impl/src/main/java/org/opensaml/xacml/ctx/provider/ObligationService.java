@@ -14,38 +14,55 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.opensaml.xacml.ctx.provider;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.opensaml.xacml.ctx.DecisionType.DECISION;
 import org.opensaml.xacml.policy.EffectType;
 import org.opensaml.xacml.policy.ObligationType;
 import org.opensaml.xacml.policy.ObligationsType;
 
-/** A service for evaluating the obligations within a context. */
+/**
+ * A service for evaluating the obligations within a context.
+ * 
+ * The registered obligation handlers are held in an immutable registry, indexed by obligation ID, which is replaced
+ * whenever a handler is added or removed. Processing obligations therefore takes no lock and dispatches each effective
+ * obligation directly to its handlers.
+ * 
+ * If an {@link Executor} is set, handlers with the same precedence, whose relative order is unspecified, are evaluated
+ * concurrently. Handlers must then be safe for concurrent use.
+ */
 public class ObligationService {
 
-    /** Read/write lock around the registered obligation handlers. */
-    private ReentrantReadWriteLock rwLock;
+    /** Lock around changes to the registered obligation handlers. */
+    private final Lock writeLock;
+
+    /** Registry of the registered obligation handlers. */
+    private volatile HandlerRegistry registry;
 
-    /** Registered obligation handlers. */
-    private Set<BaseObligationHandler> obligationHandlers;
+    /** Executor used to evaluate handlers with the same precedence concurrently, or null. */
+    private volatile Executor executor;
 
     /** Constructor. */
     public ObligationService() {
-        rwLock = new ReentrantReadWriteLock(true);
-        obligationHandlers = new TreeSet<BaseObligationHandler>(new ObligationHandlerComparator());
+        writeLock = new ReentrantLock();
+        registry = new HandlerRegistry(Collections.<BaseObligationHandler> emptySet());
     }
 
     /**
@@ -54,7 +71,27 @@ public class ObligationService {
      * @return registered obligation handlers
      */
     public Set<BaseObligationHandler> getObligationHandlers() {
-        return Collections.unmodifiableSet(obligationHandlers);
+        return registry.getHandlers();
+    }
+
+    /**
+     * Gets the executor used to evaluate handlers with the same precedence concurrently.
+     * 
+     * @return executor used to evaluate handlers with the same precedence concurrently, or null if handlers are
+     *         evaluated sequentially
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to evaluate handlers with the same precedence concurrently.
+     * 
+     * @param handlerExecutor executor used to evaluate handlers with the same precedence concurrently, or null if
+     *            handlers are to be evaluated sequentially
+     */
+    public void setExecutor(Executor handlerExecutor) {
+        executor = handlerExecutor;
     }
 
     /**
@@ -69,13 +106,7 @@ public class ObligationService {
             return;
         }
 
-        Lock writeLock = rwLock.writeLock();
-        writeLock.lock();
-        try {
-            obligationHandlers.add(handler);
-        } finally {
-            writeLock.unlock();
-        }
+        addObligationhandler(Collections.singleton(handler));
     }
 
     /**
@@ -90,10 +121,11 @@ public class ObligationService {
             return;
         }
 
-        Lock writeLock = rwLock.writeLock();
         writeLock.lock();
         try {
+            TreeSet<BaseObligationHandler> obligationHandlers = newHandlerSet();
             obligationHandlers.addAll(handlers);
+            registry = new HandlerRegistry(obligationHandlers);
         } finally {
             writeLock.unlock();
         }
@@ -111,10 +143,12 @@ public class ObligationService {
             return;
         }
 
-        Lock writeLock = rwLock.writeLock();
         writeLock.lock();
         try {
-            obligationHandlers.remove(handler);
+            TreeSet<BaseObligationHandler> obligationHandlers = newHandlerSet();
+            if (obligationHandlers.remove(handler)) {
+                registry = new HandlerRegistry(obligationHandlers);
+            }
         } finally {
             writeLock.unlock();
         }
@@ -123,28 +157,42 @@ public class ObligationService {
     /**
      * Processes the obligations within the effective XACML policy.
      * 
-     * This method waits until a read lock is obtained for the set of registered obligation handlers.
+     * Handlers are evaluated in order of precedence against the current registry, without waiting for any lock.
      * 
      * @param context current processing context
      * 
      * @throws ObligationProcessingException thrown if there is a problem evaluating an obligation
      */
     public void processObligations(ObligationProcessingContext context) throws ObligationProcessingException {
-        Lock readLock = rwLock.readLock();
-        readLock.lock();
-        try {
-            Iterator<BaseObligationHandler> handlerItr = obligationHandlers.iterator();
-            Map<String, ObligationType> effectiveObligations = preprocessObligations(context);
+        HandlerRegistry currentRegistry = registry;
+        if (currentRegistry.isEmpty()) {
+            return;
+        }
 
-            BaseObligationHandler handler;
-            while (handlerItr.hasNext()) {
-                handler = handlerItr.next();
-                if (effectiveObligations.containsKey(handler.getObligationId())) {
-                    handler.evaluateObligation(context, effectiveObligations.get(handler.getObligationId()));
-                }
+        Map<String, ObligationType> effectiveObligations = preprocessObligations(context);
+        if (effectiveObligations.isEmpty()) {
+            return;
+        }
+
+        BaseObligationHandler[] handlers = currentRegistry.selectHandlers(effectiveObligations.keySet());
+        Executor currentExecutor = executor;
+        if (currentExecutor == null) {
+            for (BaseObligationHandler handler : handlers) {
+                handler.evaluateObligation(context, effectiveObligations.get(handler.getObligationId()));
             }
-        } finally {
-            readLock.unlock();
+            return;
+        }
+
+        int stageStart = 0;
+        int stageEnd;
+        while (stageStart < handlers.length) {
+            stageEnd = stageStart + 1;
+            while (stageEnd < handlers.length
+                    && handlers[stageEnd].getHandlerPrecedence() == handlers[stageStart].getHandlerPrecedence()) {
+                stageEnd++;
+            }
+            evaluateStage(context, effectiveObligations, handlers, stageStart, stageEnd, currentExecutor);
+            stageStart = stageEnd;
         }
     }
 
@@ -181,8 +229,165 @@ public class ObligationService {
         return effectiveObligations;
     }
 
+    /**
+     * Creates a new, ordered, set containing the currently registered obligation handlers.
+     * 
+     * @return new set containing the currently registered obligation handlers
+     */
+    private TreeSet<BaseObligationHandler> newHandlerSet() {
+        TreeSet<BaseObligationHandler> obligationHandlers = new TreeSet<BaseObligationHandler>(
+                new ObligationHandlerComparator());
+        obligationHandlers.addAll(registry.getHandlers());
+        return obligationHandlers;
+    }
+
+    /**
+     * Evaluates a stage of handlers, all with the same precedence, concurrently. The first handler of the stage is
+     * evaluated by the calling thread.
+     * 
+     * @param context current processing context
+     * @param effectiveObligations effective obligations, indexed by obligation ID
+     * @param handlers the selected handlers, in order of precedence
+     * @param stageStart index of the first handler in the stage
+     * @param stageEnd index after the last handler in the stage
+     * @param stageExecutor executor used to evaluate the other handlers of the stage
+     * 
+     * @throws ObligationProcessingException thrown if there is a problem evaluating an obligation
+     */
+    private void evaluateStage(final ObligationProcessingContext context,
+            final Map<String, ObligationType> effectiveObligations, BaseObligationHandler[] handlers, int stageStart,
+            int stageEnd, Executor stageExecutor) throws ObligationProcessingException {
+        List<FutureTask<Object>> evaluations = new ArrayList<FutureTask<Object>>(stageEnd - stageStart - 1);
+        FutureTask<Object> evaluation;
+        for (int i = stageStart + 1; i < stageEnd; i++) {
+            final BaseObligationHandler handler = handlers[i];
+            evaluation = new FutureTask<Object>(new Callable<Object>() {
+                public Object call() throws ObligationProcessingException {
+                    handler.evaluateObligation(context, effectiveObligations.get(handler.getObligationId()));
+                    return null;
+                }
+            });
+            evaluations.add(evaluation);
+            stageExecutor.execute(evaluation);
+        }
+
+        BaseObligationHandler first = handlers[stageStart];
+        ObligationProcessingException failure = null;
+        try {
+            first.evaluateObligation(context, effectiveObligations.get(first.getObligationId()));
+        } catch (ObligationProcessingException e) {
+            failure = e;
+        }
+
+        for (FutureTask<Object> stageEvaluation : evaluations) {
+            try {
+                stageEvaluation.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new ObligationProcessingException("Interrupted while evaluating obligations", e);
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else if (failure == null) {
+                    failure = (ObligationProcessingException) cause;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Immutable registry of obligation handlers, indexed by obligation ID. */
+    private static class HandlerRegistry {
+
+        /** Registered handlers, in order of precedence. */
+        private final Set<BaseObligationHandler> handlers;
+
+        /** Indexes, into the handlers in order of precedence, of the handlers of each obligation ID. */
+        private final Map<String, int[]> handlerIndexes;
+
+        /** Registered handlers, in order of precedence. */
+        private final BaseObligationHandler[] orderedHandlers;
+
+        /**
+         * Constructor.
+         * 
+         * @param obligationHandlers registered handlers, in order of precedence
+         */
+        public HandlerRegistry(Set<BaseObligationHandler> obligationHandlers) {
+            handlers = Collections.unmodifiableSet(obligationHandlers);
+            orderedHandlers = obligationHandlers.toArray(new BaseObligationHandler[obligationHandlers.size()]);
+
+            HashMap<String, int[]> indexes = new HashMap<String, int[]>();
+            int[] obligationIndexes;
+            for (int i = 0; i < orderedHandlers.length; i++) {
+                obligationIndexes = indexes.get(orderedHandlers[i].getObligationId());
+                if (obligationIndexes == null) {
+                    obligationIndexes = new int[] {i};
+                } else {
+                    obligationIndexes = Arrays.copyOf(obligationIndexes, obligationIndexes.length + 1);
+                    obligationIndexes[obligationIndexes.length - 1] = i;
+                }
+                indexes.put(orderedHandlers[i].getObligationId(), obligationIndexes);
+            }
+            handlerIndexes = indexes;
+        }
+
+        /**
+         * Gets the registered handlers.
+         * 
+         * @return registered handlers, in order of precedence
+         */
+        public Set<BaseObligationHandler> getHandlers() {
+            return handlers;
+        }
+
+        /**
+         * Gets whether no handlers are registered.
+         * 
+         * @return true if no handlers are registered
+         */
+        public boolean isEmpty() {
+            return orderedHandlers.length == 0;
+        }
+
+        /**
+         * Selects the handlers of the given obligations.
+         * 
+         * @param obligationIds IDs of the obligations
+         * 
+         * @return handlers of the given obligations, in order of precedence
+         */
+        public BaseObligationHandler[] selectHandlers(Collection<String> obligationIds) {
+            int[] selected = new int[orderedHandlers.length];
+            int selectedCount = 0;
+            int[] obligationIndexes;
+            for (String obligationId : obligationIds) {
+                obligationIndexes = handlerIndexes.get(obligationId);
+                if (obligationIndexes != null) {
+                    System.arraycopy(obligationIndexes, 0, selected, selectedCount, obligationIndexes.length);
+                    selectedCount += obligationIndexes.length;
+                }
+            }
+            Arrays.sort(selected, 0, selectedCount);
+
+            BaseObligationHandler[] selectedHandlers = new BaseObligationHandler[selectedCount];
+            for (int i = 0; i < selectedCount; i++) {
+                selectedHandlers[i] = orderedHandlers[selected[i]];
+            }
+            return selectedHandlers;
+        }
+    }
+
     /** Comparator used to order obligation handlers by precedence. */
-    private class ObligationHandlerComparator implements Comparator<BaseObligationHandler> {
+    private static class ObligationHandlerComparator implements Comparator<BaseObligationHandler> {
 
         /** {@inheritDoc} */
         public int compare(BaseObligationHandler o1, BaseObligationHandler o2) {
@@ -16,6 +16,12 @@
 
 package org.opensaml.xacml.ctx.provider;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.opensaml.common.BaseTestCase;
 import org.opensaml.xacml.ctx.DecisionType;
 import org.opensaml.xacml.ctx.ResultType;
@@ -93,6 +99,65 @@ obligations.getObligations().add(obligation);
         assertEquals(8, count);
     }
 
+    public void testRemoveObligationHandler() throws Exception {
+        ObligationService obligSrvc = new ObligationService();
+
+        AdditiveObligationHandler add2 = new AdditiveObligationHandler("add2", 3, 2);
+        obligSrvc.addObligationhandler(new AdditiveObligationHandler("add1", 1, 1));
+        obligSrvc.addObligationhandler(add2);
+        obligSrvc.addObligationhandler(new AdditiveObligationHandler("unused", 2, 100));
+        assertEquals(3, obligSrvc.getObligationHandlers().size());
+
+        obligSrvc.removeObligationHandler(add2);
+        assertEquals(2, obligSrvc.getObligationHandlers().size());
+
+        obligSrvc.processObligations(processingCtx);
+
+        assertEquals(1, count);
+    }
+
+    public void testConcurrentEvaluation() throws Exception {
+        List<String> evaluated = Collections.synchronizedList(new ArrayList<String>());
+
+        ObligationService obligSrvc = new ObligationService();
+        obligSrvc.addObligationhandler(new RecordingObligationHandler("add1", 1, evaluated));
+        obligSrvc.addObligationhandler(new RecordingObligationHandler("add2", 2, evaluated));
+        obligSrvc.addObligationhandler(new RecordingObligationHandler("multiply1", 2, evaluated));
+        obligSrvc.addObligationhandler(new RecordingObligationHandler("multiply2", 3, evaluated));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            obligSrvc.setExecutor(executor);
+            obligSrvc.processObligations(processingCtx);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4, evaluated.size());
+        assertEquals("add1", evaluated.get(0));
+        assertTrue(evaluated.subList(1, 3).contains("add2"));
+        assertTrue(evaluated.subList(1, 3).contains("multiply1"));
+        assertEquals("multiply2", evaluated.get(3));
+    }
+
+    public class RecordingObligationHandler extends BaseObligationHandler {
+
+        private List<String> evaluated;
+
+        public RecordingObligationHandler(String id, int precedence, List<String> evaluated) {
+            super(id, precedence);
+            this.evaluated = evaluated;
+        }
+
+        /** {@inheritDoc} */
+        public void evaluateObligation(ObligationProcessingContext context, ObligationType obligation)
+                throws ObligationProcessingException {
+            assertEquals(getObligationId(), obligation.getObligationId());
+            evaluated.add(getObligationId());
+        }
+
+    }
+
     public class AdditiveObligationHandler extends BaseObligationHandler {
 
         private int addFactor;
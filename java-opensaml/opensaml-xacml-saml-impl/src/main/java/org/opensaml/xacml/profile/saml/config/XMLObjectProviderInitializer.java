@@ -35,4 +35,9 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    protected String getGeneratedRegistrationClassName() {
+        return "org.opensaml.xacml.profile.saml.config.GeneratedXMLObjectProviderRegistration";
+    }
+
 }
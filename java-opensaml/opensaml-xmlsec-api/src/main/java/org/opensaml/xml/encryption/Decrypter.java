@@ -17,7 +17,9 @@
 package org.opensaml.xml.encryption;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,9 +28,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.IvParameterSpec;
+
 import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.opensaml.util.Base64;
 import org.opensaml.xml.Configuration;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.io.Marshaller;
@@ -164,6 +172,14 @@ import org.w3c.dom.NodeList;
  * This should only be done where the caller's use case really requires it.
  * </p>
  * 
+ * <p>
+ * By default, EncryptedData whose cipher text is carried inline in a CipherValue is decrypted as a stream: the
+ * Base64 content is decoded and deciphered incrementally and the resulting plaintext is fed directly to the parser,
+ * so neither the raw cipher text nor the plaintext is ever buffered in full. If the EncryptedData can not be handled
+ * this way, for example because it uses a CipherReference, decryption falls back to the Apache XML Security
+ * {@link XMLCipher}. Streaming decryption may be disabled via {@link #setStreamingDecryption(boolean)}.
+ * </p>
+ * 
  */
 public class Decrypter {
 
@@ -199,6 +215,9 @@ public class Decrypter {
     /** Flag to determine whether by default the Element which backs the underlying decrypted SAMLObject will be the 
      * root of a new DOM document. */
     private boolean defaultRootInNewDocument;
+
+    /** Flag to determine whether inline cipher text is decrypted directly into the parser. */
+    private boolean streamingDecryption;
     
 
     /**
@@ -229,6 +248,7 @@ public class Decrypter {
         unmarshallerFactory = Configuration.getUnmarshallerFactory();
         
         defaultRootInNewDocument = false;
+        streamingDecryption = true;
     }
     
     /**
@@ -251,6 +271,26 @@ public class Decrypter {
        defaultRootInNewDocument = flag; 
     }
 
+    /**
+     * Get the flag which indicates whether cipher text carried inline in a CipherValue is decrypted as a stream
+     * directly into the parser, rather than being decrypted to a byte array first. Defaults to true.
+     * 
+     * @return the current value of the flag for this decrypter instance
+     */
+    public boolean isStreamingDecryption() {
+        return streamingDecryption;
+    }
+
+    /**
+     * Set the flag which indicates whether cipher text carried inline in a CipherValue is decrypted as a stream
+     * directly into the parser, rather than being decrypted to a byte array first. Defaults to true.
+     * 
+     * @param flag the new value of the flag for this decrypter instance
+     */
+    public void setStreamingDecryption(boolean flag) {
+        streamingDecryption = flag;
+    }
+
     /**
      * Get the Java Cryptography Architecture (JCA) security provider name that should be used to provide the decryption
      * support.
@@ -556,6 +596,14 @@ public class Decrypter {
         }
         Element targetElement = encryptedData.getDOM();
 
+        if (isStreamingDecryption()) {
+            InputStream plaintext = getPlaintextStream(encryptedData, dataEncKey);
+            if (plaintext != null) {
+                return parseInputStream(plaintext, targetElement.getOwnerDocument());
+            }
+            log.debug("EncryptedData can not be decrypted as a stream, falling back to buffered decryption");
+        }
+
         XMLCipher xmlCipher;
         try {
             if (getJCAProviderName() != null) {
@@ -584,6 +632,67 @@ public class Decrypter {
         return docFragment;
     }
 
+    /**
+     * Builds a stream which produces the plaintext of the supplied EncryptedData as its inline CipherValue is read.
+     * 
+     * The cipher text is expected to be laid out as described by the XML Encryption specification for block ciphers,
+     * i.e. the initialization vector followed by the encrypted octets.
+     * 
+     * @param encryptedData encrypted data element containing the data to be decrypted
+     * @param dataEncKey Java Key with which to attempt decryption of the encrypted data
+     * @return the plaintext stream, or null if the EncryptedData can not be decrypted as a stream
+     * @throws DecryptionException thrown if the cipher can not be initialized with the given key
+     */
+    protected InputStream getPlaintextStream(EncryptedData encryptedData, Key dataEncKey) throws DecryptionException {
+        if (encryptedData.getEncryptionMethod() == null || encryptedData.getCipherData() == null
+                || encryptedData.getCipherData().getCipherValue() == null) {
+            return null;
+        }
+        String cipherText = encryptedData.getCipherData().getCipherValue().getValue();
+        String algorithmURI = encryptedData.getEncryptionMethod().getAlgorithm();
+        if (cipherText == null || DatatypeHelper.isEmpty(algorithmURI)) {
+            return null;
+        }
+
+        String jceAlgorithm = JCEMapper.translateURItoJCEID(algorithmURI);
+        if (jceAlgorithm == null) {
+            return null;
+        }
+
+        InputStream encrypted = new Base64.InputStream(new CharSequenceInputStream(cipherText));
+        try {
+            Cipher cipher;
+            if (getJCAProviderName() != null) {
+                cipher = Cipher.getInstance(jceAlgorithm, getJCAProviderName());
+            } else {
+                cipher = Cipher.getInstance(jceAlgorithm);
+            }
+
+            // the initialization vector of the block encryption algorithms is a single block
+            int ivLength = cipher.getBlockSize();
+            if (ivLength <= 0) {
+                return null;
+            }
+            byte[] iv = new byte[ivLength];
+            int offset = 0;
+            while (offset < ivLength) {
+                int read = encrypted.read(iv, offset, ivLength - offset);
+                if (read < 0) {
+                    throw new DecryptionException("CipherValue is shorter than the initialization vector");
+                }
+                offset += read;
+            }
+            cipher.init(Cipher.DECRYPT_MODE, dataEncKey, new IvParameterSpec(iv));
+            return new CipherInputStream(encrypted, cipher);
+        } catch (IOException e) {
+            log.error("Error decoding CipherValue of encrypted data element", e);
+            throw new DecryptionException("Error decoding CipherValue of encrypted data element", e);
+        } catch (GeneralSecurityException e) {
+            log.error("Error initialzing cipher instance on data decryption", e);
+            throw new DecryptionException("Error initialzing cipher instance on data decryption", e);
+        }
+    }
+
     /**
      * Attempts to decrypt the supplied EncryptedKey and returns the resulting Java security Key object. The algorithm
      * of the decrypted key must be supplied by the caller based on knowledge of the associated EncryptedData
@@ -978,6 +1087,54 @@ public class Decrypter {
      * return domImplLS; }
      */
 
+    /** Stream of the (ASCII) characters of a character sequence, avoiding a copy of the whole sequence. */
+    private static class CharSequenceInputStream extends InputStream {
+
+        /** The underlying characters. */
+        private final CharSequence characters;
+
+        /** Index of the next character to read. */
+        private int position;
+
+        /**
+         * Constructor.
+         * 
+         * @param source the underlying characters
+         */
+        public CharSequenceInputStream(CharSequence source) {
+            characters = source;
+        }
+
+        /** {@inheritDoc} */
+        public int read() {
+            if (position >= characters.length()) {
+                return -1;
+            }
+            return characters.charAt(position++) & 0xff;
+        }
+
+        /** {@inheritDoc} */
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int remaining = characters.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) characters.charAt(position++);
+            }
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        public int available() {
+            return characters.length() - position;
+        }
+    }
+
     /*
      * Initialize the Apache XML security library if it hasn't been already
      */
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.signature;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Computes the digital signatures for a batch of signable XMLObjects using a caller supplied
+ * {@link ExecutorService}.
+ *
+ * The DOM is not thread safe and, as described in {@link Signer}, signatures within a single DOM tree may depend on
+ * the order in which they are computed. Signatures are therefore grouped by the owner document of their marshalled
+ * DOM. Each group is signed sequentially, in the order given, by a single task while distinct groups are signed
+ * concurrently. Canonicalization, digesting and the signature operation of independent documents thus scale with
+ * the number of threads available to the executor.
+ *
+ * A failure to sign one object does not prevent the others from being signed. Instead the outcome of each object is
+ * reported individually by {@link #signObjects(List)}. If the calling thread is interrupted while waiting, tasks which
+ * have not started are cancelled and running tasks stop after their current signature. The batch waits for those
+ * running tasks so that no DOM is modified once {@link #signObjects(List)} returns, reports every signature left
+ * without an outcome as failed and restores the interrupt status of the calling thread.
+ */
+@ThreadSafe
+public class ParallelSigner {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ParallelSigner.class);
+
+    /** Executor used to compute signatures. */
+    private final ExecutorService executor;
+
+    /**
+     * Constructor.
+     *
+     * @param signingExecutor executor used to compute signatures, the lifecycle of which is managed by the caller
+     */
+    public ParallelSigner(ExecutorService signingExecutor) {
+        if (signingExecutor == null) {
+            throw new IllegalArgumentException("Signing executor may not be null");
+        }
+        executor = signingExecutor;
+    }
+
+    /**
+     * Gets the executor used to compute signatures.
+     *
+     * @return executor used to compute signatures
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Signs the given XMLObjects and waits for all signatures to be computed. Objects which share a DOM document are
+     * signed in the order provided.
+     *
+     * @param signatures an ordered list of signatures to compute
+     *
+     * @return list, parallel to the given list, containing null for each signature that was successfully computed or
+     *         the error that prevented the signature at the same index from being computed
+     */
+    public List<SignatureException> signObjects(List<Signature> signatures) {
+        List<SignatureException> results = new ArrayList<SignatureException>(signatures.size());
+        if (signatures.isEmpty()) {
+            return results;
+        }
+
+        Map<Document, List<Integer>> documentGroups = new IdentityHashMap<Document, List<Integer>>();
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        for (int i = 0; i < signatures.size(); i++) {
+            results.add(null);
+            Signature signature = signatures.get(i);
+            Element signatureElement = signature == null ? null : signature.getDOM();
+            if (signatureElement == null) {
+                results.set(i, new SignatureException("Signature at index " + i + " has not been marshalled"));
+                continue;
+            }
+
+            Document owner = signatureElement.getOwnerDocument();
+            List<Integer> group = documentGroups.get(owner);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                documentGroups.put(owner, group);
+                groups.add(group);
+            }
+            group.add(i);
+        }
+
+        log.debug("Signing {} objects in {} independent documents", signatures.size(), groups.size());
+        boolean[] completed = new boolean[signatures.size()];
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<SigningTask> tasks = new ArrayList<SigningTask>(groups.size());
+        List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+        for (List<Integer> group : groups) {
+            SigningTask task = new SigningTask(signatures, group, results, completed, aborted);
+            tasks.add(task);
+            futures.add(executor.submit(task));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                abort(tasks, futures, aborted);
+                SignatureException error = new SignatureException(
+                        "Interrupted while waiting for signature computation", e);
+                for (List<Integer> group : groups) {
+                    recordGroupFailure(group, results, completed, error);
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                recordGroupFailure(groups.get(i), results, completed, new SignatureException(
+                        "Signature computation error", e));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Abandons a batch. Tasks which have not started are cancelled and the method waits, ignoring interrupts, for
+     * running tasks to finish their current signature.
+     *
+     * @param tasks the tasks of the batch
+     * @param futures the futures of the tasks, in the same order
+     * @param aborted flag indicating to running tasks that the batch was abandoned
+     */
+    private void abort(List<SigningTask> tasks, List<Future<?>> futures, AtomicBoolean aborted) {
+        aborted.set(true);
+        for (int i = 0; i < tasks.size(); i++) {
+            SigningTask task = tasks.get(i);
+            if (task.claim()) {
+                futures.get(i).cancel(false);
+            } else {
+                task.awaitFinished();
+            }
+        }
+    }
+
+    /**
+     * Records the given error for each signature in the group whose computation has not completed. Signatures which
+     * were successfully computed keep their outcome.
+     *
+     * @param group indexes of the signatures in the failed group
+     * @param results the result list
+     * @param completed flags indicating which signatures have a final outcome
+     * @param error the error to record
+     */
+    private void recordGroupFailure(List<Integer> group, List<SignatureException> results, boolean[] completed,
+            SignatureException error) {
+        log.error("Unable to compute signatures for document", error);
+        synchronized (results) {
+            for (Integer index : group) {
+                if (!completed[index]) {
+                    completed[index] = true;
+                    results.set(index, error);
+                }
+            }
+        }
+    }
+
+    /** Task which sequentially signs all signatures within a single document. */
+    private class SigningTask implements Callable<Object> {
+
+        /** All signatures in the batch. */
+        private final List<Signature> signatures;
+
+        /** Indexes of the signatures signed by this task. */
+        private final List<Integer> group;
+
+        /** Batch result list. */
+        private final List<SignatureException> results;
+
+        /** Flags, guarded by the result list, indicating which signatures have a final outcome. */
+        private final boolean[] completed;
+
+        /** Whether the batch was abandoned and no further signatures should be computed. */
+        private final AtomicBoolean aborted;
+
+        /** Whether the task has been claimed, either to run or to be skipped. */
+        private final AtomicBoolean claimed;
+
+        /** Latch released once a task which was claimed to run has finished. */
+        private final CountDownLatch finished;
+
+        /**
+         * Constructor.
+         *
+         * @param batch all signatures in the batch
+         * @param indexes indexes of the signatures signed by this task
+         * @param outcomes batch result list
+         * @param completedFlags flags indicating which signatures have a final outcome
+         * @param abortFlag flag indicating the batch was abandoned
+         */
+        public SigningTask(List<Signature> batch, List<Integer> indexes, List<SignatureException> outcomes,
+                boolean[] completedFlags, AtomicBoolean abortFlag) {
+            signatures = batch;
+            group = indexes;
+            results = outcomes;
+            completed = completedFlags;
+            aborted = abortFlag;
+            claimed = new AtomicBoolean();
+            finished = new CountDownLatch(1);
+        }
+
+        /**
+         * Claims this task. Only the first caller, either the executing thread or an aborting batch, succeeds.
+         *
+         * @return true if this call claimed the task
+         */
+        public boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /** Waits, ignoring interrupts, until a task which was claimed to run has finished. */
+        public void awaitFinished() {
+            while (true) {
+                try {
+                    finished.await();
+                    return;
+                } catch (InterruptedException e) {
+                    // keep waiting, the interrupt status is restored by the batch
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public Object call() {
+            if (!claim()) {
+                return null;
+            }
+            try {
+                signGroup();
+            } finally {
+                finished.countDown();
+            }
+            return null;
+        }
+
+        /** Signs each signature of the group in order until the batch is abandoned. */
+        private void signGroup() {
+            for (Integer index : group) {
+                if (aborted.get()) {
+                    return;
+                }
+                SignatureException error = null;
+                try {
+                    Signer.signObject(signatures.get(index));
+                } catch (SignatureException e) {
+                    error = e;
+                }
+                synchronized (results) {
+                    if (!completed[index]) {
+                        completed[index] = true;
+                        results.set(index, error);
+                    }
+                }
+            }
+        }
+    }
+}
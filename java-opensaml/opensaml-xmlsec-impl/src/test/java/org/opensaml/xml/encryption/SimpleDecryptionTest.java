@@ -134,9 +134,27 @@ public class SimpleDecryptionTest extends XMLObjectBaseTestCase {
         }
         
         assertEquals(targetDOM, decryptedXMLObject);
-        
+
     }
-    
+
+    /**
+     *  Test decryption of an EncryptedData object which is of type Element, with streaming decryption disabled.
+     */
+    public void testEncryptedElementBuffered() {
+        Decrypter decrypter = new Decrypter(keyResolver, null, null);
+        decrypter.setStreamingDecryption(false);
+
+        XMLObject decryptedXMLObject = null;
+        try {
+            decryptedXMLObject = decrypter.decryptData(encryptedData);
+        } catch (DecryptionException e) {
+            fail("Error on decryption of EncryptedData to element: " + e);
+        }
+
+        assertEquals(targetDOM, decryptedXMLObject);
+
+    }
+
     /**
      *  Test decryption of an EncryptedData object which is of type Element, where the decryption
      *  key is found as an inline EncryptedKey within EncryptedData/KeyInfo.
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 University Corporation for Advanced Internet Development, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xml.signature;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObjectBaseTestCase;
+import org.opensaml.xml.mock.SignableSimpleXMLObject;
+import org.opensaml.xml.mock.SignableSimpleXMLObjectBuilder;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.opensaml.xml.util.XMLConstants;
+import org.w3c.dom.Element;
+
+/**
+ * Test of {@link ParallelSigner}.
+ */
+public class ParallelSignerTest extends XMLObjectBaseTestCase {
+
+    /** Credential used to sign and verify. */
+    private Credential signingCredential;
+
+    /** Builder of mock XML objects. */
+    private SignableSimpleXMLObjectBuilder sxoBuilder;
+
+    /** Builder of Signature XML objects. */
+    private SignatureBuilder sigBuilder;
+
+    /** Executor used for signing. */
+    private ExecutorService executor;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        KeyPair keyPair = SecurityHelper.generateKeyPair("RSA", 1024, null);
+        signingCredential = SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+        sxoBuilder = new SignableSimpleXMLObjectBuilder();
+        sigBuilder = new SignatureBuilder();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    /**
+     * Tests signing a batch of independent documents.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testSignIndependentDocuments() throws Exception {
+        List<Signature> signatures = new ArrayList<Signature>();
+        for (int i = 0; i < 16; i++) {
+            SignableSimpleXMLObject sxo = getXMLObjectWithSignature("ID" + i);
+            Configuration.getMarshallerFactory().getMarshaller(sxo).marshall(sxo);
+            signatures.add(sxo.getSignature());
+        }
+
+        List<SignatureException> results = new ParallelSigner(executor).signObjects(signatures);
+        assertEquals(signatures.size(), results.size());
+
+        SignatureValidator sigValidator = new SignatureValidator(signingCredential);
+        for (int i = 0; i < signatures.size(); i++) {
+            assertNull("Signature " + i + " failed", results.get(i));
+            sigValidator.validate(signatures.get(i));
+        }
+    }
+
+    /**
+     * Tests that a failure to sign one object is reported without affecting the others.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testPerObjectFailure() throws Exception {
+        SignableSimpleXMLObject marshalled = getXMLObjectWithSignature("GOOD");
+        Configuration.getMarshallerFactory().getMarshaller(marshalled).marshall(marshalled);
+        SignableSimpleXMLObject unmarshalled = getXMLObjectWithSignature("BAD");
+
+        List<Signature> signatures = new ArrayList<Signature>();
+        signatures.add(unmarshalled.getSignature());
+        signatures.add(marshalled.getSignature());
+
+        List<SignatureException> results = new ParallelSigner(executor).signObjects(signatures);
+        assertNotNull("Unmarshalled signature did not fail", results.get(0));
+        assertNull("Marshalled signature failed", results.get(1));
+
+        new SignatureValidator(signingCredential).validate(marshalled.getSignature());
+    }
+
+    /**
+     * Tests that interrupting the caller cancels signatures which have not been computed.
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testInterrupt() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService blockedExecutor = Executors.newSingleThreadExecutor();
+        blockedExecutor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                release.await();
+                return null;
+            }
+        });
+
+        List<Signature> signatures = new ArrayList<Signature>();
+        for (int i = 0; i < 4; i++) {
+            SignableSimpleXMLObject sxo = getXMLObjectWithSignature("ID" + i);
+            Configuration.getMarshallerFactory().getMarshaller(sxo).marshall(sxo);
+            signatures.add(sxo.getSignature());
+        }
+
+        List<SignatureException> results;
+        try {
+            Thread.currentThread().interrupt();
+            results = new ParallelSigner(blockedExecutor).signObjects(signatures);
+            assertTrue("Interrupt status was not restored", Thread.interrupted());
+        } finally {
+            release.countDown();
+            blockedExecutor.shutdown();
+        }
+        assertTrue(blockedExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < signatures.size(); i++) {
+            assertNotNull("Signature " + i + " was not reported as failed", results.get(i));
+            Element signatureValue = (Element) signatures.get(i).getDOM()
+                    .getElementsByTagNameNS(XMLConstants.XMLSIG_NS, "SignatureValue").item(0);
+            assertEquals("Signature " + i + " was computed after the batch was abandoned", "",
+                    signatureValue.getTextContent().trim());
+        }
+    }
+
+    /**
+     * Creates a XMLObject that has a Signature child element.
+     *
+     * @param id ID of the object
+     *
+     * @return a XMLObject that has a Signature child element
+     */
+    private SignableSimpleXMLObject getXMLObjectWithSignature(String id) {
+        SignableSimpleXMLObject sxo = sxoBuilder.buildObject();
+        sxo.setId(id);
+
+        Signature sig = sigBuilder.buildObject();
+        sig.setSigningCredential(signingCredential);
+        sig.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        sig.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA1);
+
+        DocumentInternalIDContentReference contentReference = new DocumentInternalIDContentReference(id);
+        contentReference.getTransforms().add(SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE);
+        contentReference.getTransforms().add(SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        contentReference.setDigestAlgorithm(SignatureConstants.ALGO_ID_DIGEST_SHA1);
+        sig.getContentReferences().add(contentReference);
+
+        sxo.setSignature(sig);
+        return sxo;
+    }
+}